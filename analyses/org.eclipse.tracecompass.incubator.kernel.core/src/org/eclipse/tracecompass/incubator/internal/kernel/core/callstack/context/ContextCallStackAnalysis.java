@@ -74,6 +74,16 @@ public class ContextCallStackAnalysis extends ProfilingCallGraphAnalysisModule {
 
     @Override
     protected @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(@NonNull ITmfEvent event) {
+        Pair<ICallStackElement, long[]> stackTrace = getSampledStackTrace(event);
+        if (stackTrace == null) {
+            return null;
+        }
+        ICallStackElement element = stackTrace.getFirst();
+        return new Pair<>(element, getCallSite(element, stackTrace.getSecond(), event.getTimestamp().getValue()));
+    }
+
+    @Override
+    protected @Nullable Pair<ICallStackElement, long[]> getSampledStackTrace(@NonNull ITmfEvent event) {
         Map<String, Collection<Object>> callStack = getCallStack(event);
         if (callStack.isEmpty()) {
             return null;
@@ -91,7 +101,7 @@ public class ContextCallStackAnalysis extends ProfilingCallGraphAnalysisModule {
         if (kernelCs.size() + userCs.size() == 0) {
             long[] stack = new long[1];
             stack[0] = 0;
-            return new Pair<>(element, getCallSite(element, stack, event.getTimestamp().getValue()));
+            return new Pair<>(element, stack);
         }
         long[] stack = new long[userCs.size() + kernelCs.size()];
         int i = 0;
@@ -103,7 +113,7 @@ public class ContextCallStackAnalysis extends ProfilingCallGraphAnalysisModule {
             stack[i] = (call instanceof Long) ? (long) call : UNDEFINED_SYMBOL;
             i++;
         }
-        return new Pair<>(element, getCallSite(element, stack, event.getTimestamp().getValue()));
+        return new Pair<>(element, stack);
 
     }
 
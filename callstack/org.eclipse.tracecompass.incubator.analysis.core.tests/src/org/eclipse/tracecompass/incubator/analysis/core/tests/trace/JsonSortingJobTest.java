@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.analysis.core.tests.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.JsonSortingJob;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.tests.stubs.trace.TmfTraceStub;
+import org.junit.Test;
+
+/**
+ * Test the {@link JsonSortingJob}
+ */
+public class JsonSortingJobTest {
+
+    private static final String TS_KEY = "\"ts\":";
+    /*
+     * The number of characters of events in a run, small enough for the trace
+     * to have more runs than are merged at once
+     */
+    private static final long RUN_SIZE = 256;
+    private static final int NB_EVENTS = 4000;
+    /* The number of events with the same timestamp */
+    private static final int SAME_TS = 4;
+
+    private static class SmallRunsSortingJob extends JsonSortingJob {
+
+        public SmallRunsSortingJob(ITmfTrace trace, String path) {
+            super(trace, path, TS_KEY, 1);
+        }
+
+        @Override
+        protected long getRunSize(int nbThreads) {
+            return RUN_SIZE;
+        }
+
+        @Override
+        protected void processMetadata(ITmfTrace trace, String dir) {
+            // No metadata
+        }
+    }
+
+    /**
+     * Test sorting a shuffled trace split in hundreds of runs, so that groups
+     * of runs are merged before the final merge. The events with the same
+     * timestamp are in different runs and should keep their order in the
+     * trace.
+     *
+     * @throws IOException
+     *             error writing or reading the trace
+     * @throws InterruptedException
+     *             interrupted while waiting for the job
+     */
+    @Test
+    public void testSmallRuns() throws IOException, InterruptedException {
+        // Timestamps in microseconds of 13 digits and 3 decimals
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < NB_EVENTS; i++) {
+            long ts = 1650000000000000L + (i / SAME_TS) * 1001L;
+            events.add("{" + TS_KEY + ts / 1000 + '.' + String.format("%03d", ts % 1000) + ",\"id\":" + i + "}");
+        }
+        Collections.shuffle(events, new Random(42));
+        // All the timestamps have the same length, and the sort is stable
+        List<String> expected = new ArrayList<>(events);
+        expected.sort(Comparator.comparing(event -> event.substring(0, event.indexOf(','))));
+
+        File file = File.createTempFile("unsorted", ".json");
+        ITmfTrace trace = new TmfTraceStub() {
+            @Override
+            public String getPath() {
+                return file.getAbsolutePath();
+            }
+
+            @Override
+            public String getName() {
+                return file.getName();
+            }
+        };
+        File sortedFile = new File(TmfTraceManager.getSupplementaryFileDir(trace) + file.getName());
+        try {
+            Files.write(file.toPath(), ('[' + String.join(",", events) + ']').getBytes(StandardCharsets.ISO_8859_1));
+            Job job = new SmallRunsSortingJob(trace, file.getAbsolutePath());
+            job.schedule();
+            job.join();
+            IStatus result = job.getResult();
+            assertNotNull(result);
+            assertTrue(result.getMessage(), result.isOK());
+
+            String sorted = new String(Files.readAllBytes(sortedFile.toPath()), StandardCharsets.ISO_8859_1);
+            assertEquals("[\n" + String.join(",\n", expected) + "\n]\n", sorted);
+        } finally {
+            trace.dispose();
+            file.delete();
+            sortedFile.delete();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.analysis.core.tests.weighted;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.tests.stubs.weighted.SimpleTree;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.PackedWeightedTreeSet;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTreeSet;
+import org.junit.Test;
+
+/**
+ * Test the {@link PackedWeightedTreeSet} class
+ */
+@NonNullByDefault
+public class PackedWeightedTreeSetTest {
+
+    private static final String OBJ1 = "obj1";
+    private static final String OBJ2 = "obj2";
+    private static final String OBJ3 = "obj3";
+
+    private static WeightedTree<String> createTree(long weight) {
+        // obj1 -> (obj2 -> obj3), obj3
+        WeightedTree<String> tree = new WeightedTree<>(OBJ1, weight);
+        WeightedTree<String> child = new WeightedTree<>(OBJ2, weight / 2);
+        child.addChild(new WeightedTree<>(OBJ3, weight / 4));
+        tree.addChild(child);
+        tree.addChild(new WeightedTree<>(OBJ3, weight / 2));
+        return tree;
+    }
+
+    private static @Nullable WeightedTree<String> getChild(Collection<WeightedTree<String>> trees, String object) {
+        for (WeightedTree<String> tree : trees) {
+            if (tree.getObject().equals(object)) {
+                return tree;
+            }
+        }
+        return null;
+    }
+
+    private static void assertTreeEquals(WeightedTree<String> expected, WeightedTree<String> actual) {
+        assertEquals(expected.getObject(), actual.getObject());
+        assertEquals(expected.getWeight(), actual.getWeight());
+        Collection<WeightedTree<String>> actualChildren = actual.getChildren();
+        assertEquals(expected.getChildren().size(), actualChildren.size());
+        for (WeightedTree<String> expectedChild : expected.getChildren()) {
+            WeightedTree<String> actualChild = getChild(actualChildren, expectedChild.getObject());
+            assertNotNull(actualChild);
+            assertTreeEquals(expectedChild, actualChild);
+        }
+    }
+
+    /**
+     * Test that adding trees gives the same trees as the
+     * {@link WeightedTreeSet}
+     */
+    @Test
+    public void testAddingTrees() {
+        String element1 = "element1";
+        String element2 = "element2";
+
+        PackedWeightedTreeSet<String, String, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        WeightedTreeSet<String, String> expectedSet = new WeightedTreeSet<>();
+        assertTrue(treeSet.getElements().isEmpty());
+        assertTrue(treeSet.getTreesFor(element1).isEmpty());
+
+        treeSet.addWeightedTree(element1, createTree(100));
+        expectedSet.addWeightedTree(element1, createTree(100));
+        treeSet.addWeightedTree(element1, createTree(40));
+        expectedSet.addWeightedTree(element1, createTree(40));
+        treeSet.addWeightedTree(element1, new WeightedTree<>(OBJ2, 10));
+        expectedSet.addWeightedTree(element1, new WeightedTree<>(OBJ2, 10));
+        treeSet.addWeightedTree(element2, createTree(8));
+        expectedSet.addWeightedTree(element2, createTree(8));
+
+        assertEquals(expectedSet.getElements().size(), treeSet.getElements().size());
+        assertEquals(9, treeSet.getNbNodes());
+        for (String element : Arrays.asList(element1, element2)) {
+            Collection<WeightedTree<String>> expectedTrees = expectedSet.getTreesFor(element);
+            Collection<WeightedTree<String>> trees = treeSet.getTreesFor(element);
+            assertEquals(expectedTrees.size(), trees.size());
+            for (WeightedTree<String> expected : expectedTrees) {
+                WeightedTree<String> tree = getChild(trees, expected.getObject());
+                assertNotNull(tree);
+                assertTreeEquals(expected, tree);
+            }
+        }
+    }
+
+    /**
+     * Test adding a tree a number of times at once
+     */
+    @Test
+    public void testAddingTreeCount() {
+        String element = "element";
+        PackedWeightedTreeSet<String, String, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        treeSet.addWeightedTree(element, createTree(100), 3);
+        treeSet.addWeightedTree(element, createTree(100), 1);
+
+        Collection<WeightedTree<String>> trees = treeSet.getTreesFor(element);
+        assertEquals(1, trees.size());
+        assertTreeEquals(createTree(400), trees.iterator().next());
+    }
+
+    /**
+     * Test adding trees to hierarchical elements in the set
+     */
+    @Test
+    public void testAddingTreeData() {
+        SimpleTree element1 = new SimpleTree("element1");
+        SimpleTree element2 = new SimpleTree("element2");
+        element1.addChild(element2);
+
+        PackedWeightedTreeSet<String, SimpleTree, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        treeSet.addWeightedTree(element2, createTree(10));
+        Collection<SimpleTree> elements = treeSet.getElements();
+        assertEquals(Collections.singleton(element1), elements);
+        assertTrue(treeSet.getTreesFor(element1).isEmpty());
+        assertEquals(1, treeSet.getTreesFor(element2).size());
+    }
+
+    /**
+     * Test adding weights to paths
+     */
+    @Test
+    public void testAddPath() {
+        String element = "element";
+        PackedWeightedTreeSet<String, String, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        int leafNode = treeSet.addPath(element, Arrays.asList(OBJ1, OBJ2, OBJ3), 1);
+        treeSet.addPath(element, Arrays.asList(OBJ1, OBJ2), 2);
+        treeSet.addPath(element, Arrays.asList(OBJ1, OBJ3), 3);
+        treeSet.addPath(element, Arrays.asList(OBJ2), 4);
+        // Add the first path again, from its last node
+        treeSet.addToPath(leafNode, 1);
+
+        Collection<WeightedTree<String>> trees = treeSet.getTreesFor(element);
+        assertEquals(2, trees.size());
+        WeightedTree<String> tree = getChild(trees, OBJ1);
+        assertNotNull(tree);
+        assertEquals(7, tree.getWeight());
+        WeightedTree<String> child = getChild(tree.getChildren(), OBJ2);
+        assertNotNull(child);
+        assertEquals(4, child.getWeight());
+        WeightedTree<String> leaf = getChild(child.getChildren(), OBJ3);
+        assertNotNull(leaf);
+        assertEquals(2, leaf.getWeight());
+        assertTrue(leaf.getChildren().isEmpty());
+        child = getChild(tree.getChildren(), OBJ3);
+        assertNotNull(child);
+        assertEquals(3, child.getWeight());
+        tree = getChild(trees, OBJ2);
+        assertNotNull(tree);
+        assertEquals(4, tree.getWeight());
+        assertNull(getChild(tree.getChildren(), OBJ3));
+    }
+
+    /**
+     * Test that the trees of the set are read-only, but can be copied and
+     * merged with other trees
+     */
+    @Test
+    public void testCopyAndMerge() {
+        String element = "element";
+        PackedWeightedTreeSet<String, String, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        treeSet.addWeightedTree(element, createTree(100));
+        WeightedTree<String> packed = treeSet.getTreesFor(element).iterator().next();
+
+        // Copy the tree, the copy can be modified
+        WeightedTree<String> copy = packed.copyOf();
+        assertTreeEquals(createTree(100), copy);
+        copy.addToWeight(10);
+        assertEquals(110, copy.getWeight());
+        assertEquals(100, packed.getWeight());
+
+        // Merge the packed tree in a regular tree
+        WeightedTree<String> tree = createTree(20);
+        tree.merge(packed);
+        assertTreeEquals(createTree(120), tree);
+    }
+
+    /**
+     * Test that the modification of the trees of the set is not supported
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        String element = "element";
+        PackedWeightedTreeSet<String, String, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        treeSet.addWeightedTree(element, createTree(100));
+        treeSet.getTreesFor(element).iterator().next().addChild(new WeightedTree<>(OBJ2));
+    }
+
+    /**
+     * Test a set with more nodes than the initial capacity of the arrays
+     */
+    @Test
+    public void testManyNodes() {
+        String element = "element";
+        int nbRoots = 1000;
+        int depth = 5;
+        PackedWeightedTreeSet<String, String, WeightedTree<String>> treeSet = PackedWeightedTreeSet.create();
+        for (int i = 0; i < nbRoots; i++) {
+            String[] path = new String[depth];
+            for (int j = 0; j < depth; j++) {
+                path[j] = "obj" + (i + j);
+            }
+            treeSet.addPath(element, Arrays.asList(path), 1);
+            treeSet.addPath(element, Arrays.asList(path), 1);
+        }
+        assertEquals(nbRoots * depth, treeSet.getNbNodes());
+        Collection<WeightedTree<String>> trees = treeSet.getTreesFor(element);
+        assertEquals(nbRoots, trees.size());
+        for (WeightedTree<String> tree : trees) {
+            assertEquals(depth, tree.getMaxDepth());
+            assertEquals(2, tree.getWeight());
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.analysis.core.weighted.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+/**
+ * A weighted tree set that keeps the nodes of all its trees in parallel
+ * primitive arrays instead of {@link WeightedTree} objects, for trees with
+ * millions of nodes, like the call graphs of sampled traces. The objects of
+ * the nodes are interned and each node only keeps the ID of its object, its
+ * parent, first child, next sibling and weight. The child of a node for an
+ * object is found in an open-addressing hash table keyed on the parent node
+ * and the object ID.
+ *
+ * The trees returned by {@link #getTreesFor(Object)} are read-only views of
+ * the nodes, created on demand by a {@link IViewFactory}, so that the trees of
+ * a set can be of a subclass of {@link WeightedTree}. They can be traversed
+ * like other weighted trees and their {@link WeightedTree#copyOf()} method
+ * should return a regular tree, that can be modified and merged.
+ *
+ * This set only keeps the weight of the nodes, trees with additional metrics
+ * should use a {@link WeightedTreeSet}.
+ *
+ * @param <N>
+ *            The type of objects represented by each node in the tree
+ * @param <E>
+ *            The type of elements used to group the trees. If this type extends
+ *            {@link ITree}, then the elements and their associated weighted
+ *            trees will be grouped in a hierarchical style
+ * @param <T>
+ *            The type of the tree views of the nodes
+ */
+public class PackedWeightedTreeSet<@NonNull N, E, @NonNull T extends WeightedTree<N>> implements IWeightedTreeSet<N, E, T> {
+
+    /**
+     * Creates the read-only views of the nodes of a set
+     *
+     * @param <N>
+     *            The type of objects represented by each node in the tree
+     * @param <T>
+     *            The type of the tree views
+     */
+    @FunctionalInterface
+    public interface IViewFactory<@NonNull N, @NonNull T extends WeightedTree<N>> {
+
+        /**
+         * Create the view of a node. The view should not be modifiable.
+         *
+         * @param object
+         *            The object of the node
+         * @param weight
+         *            The weight of the node
+         * @param children
+         *            Supplies the views of the children of the node, read from
+         *            the set when it is called
+         * @return The view of the node
+         */
+        T createView(N object, long weight, Supplier<Collection<T>> children);
+    }
+
+    private static final int NO_NODE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long EMPTY_KEY = -1L;
+
+    private final Set<E> fRootElements = new HashSet<>();
+    /* The node under which are the trees of each element, it has no object */
+    private final Map<Object, Integer> fElementNodes = new HashMap<>();
+
+    /* Interned objects */
+    private final Map<N, Integer> fObjectIds = new HashMap<>();
+    private final List<N> fObjects = new ArrayList<>();
+
+    /* Nodes */
+    private int fNbNodes = 0;
+    private int[] fObjectId = new int[INITIAL_CAPACITY];
+    private int[] fParent = new int[INITIAL_CAPACITY];
+    private int[] fFirstChild = new int[INITIAL_CAPACITY];
+    private int[] fNextSibling = new int[INITIAL_CAPACITY];
+    private long[] fWeight = new long[INITIAL_CAPACITY];
+
+    /* Open-addressing child lookup table, (parent, object ID) to node */
+    private long[] fChildKeys = newKeys(INITIAL_CAPACITY * 2);
+    private int[] fChildNodes = new int[INITIAL_CAPACITY * 2];
+
+    private final IViewFactory<N, T> fViewFactory;
+
+    /**
+     * Constructor
+     *
+     * @param viewFactory
+     *            Creates the views of the nodes returned by this set
+     */
+    public PackedWeightedTreeSet(IViewFactory<N, T> viewFactory) {
+        fViewFactory = viewFactory;
+    }
+
+    /**
+     * Create a packed set whose trees are viewed as {@link WeightedTree}
+     *
+     * @param <N>
+     *            The type of objects represented by each node in the tree
+     * @param <E>
+     *            The type of elements used to group the trees
+     * @return The new set
+     */
+    public static <@NonNull N, E> PackedWeightedTreeSet<N, E, WeightedTree<N>> create() {
+        return new PackedWeightedTreeSet<>(PackedWeightedTree::new);
+    }
+
+    @Override
+    public Collection<E> getElements() {
+        return fRootElements;
+    }
+
+    @Override
+    public synchronized Collection<T> getTreesFor(Object element) {
+        Integer elementNode = fElementNodes.get(element);
+        if (elementNode == null) {
+            return Collections.emptyList();
+        }
+        return getChildren(elementNode);
+    }
+
+    /**
+     * Add a weighted tree for an element in this set. If a tree for the same
+     * object already exists, their weights are added, and so are the weights
+     * of their children, recursively. The tree itself is not kept.
+     *
+     * @param dstGroup
+     *            The group to which to add this tree
+     * @param tree
+     *            The weighted tree to add to this set
+     */
+    public synchronized void addWeightedTree(E dstGroup, WeightedTree<N> tree) {
+        addTree(getElementNode(dstGroup), tree, 1);
+    }
+
+    /**
+     * Add a weighted tree for an element in this set a number of times, as if
+     * it was added that many times with
+     * {@link #addWeightedTree(Object, WeightedTree)}: the weights of the tree
+     * are multiplied by the count.
+     *
+     * @param dstGroup
+     *            The group to which to add this tree
+     * @param tree
+     *            The weighted tree to add to this set
+     * @param count
+     *            The number of times to add the tree
+     */
+    public synchronized void addWeightedTree(E dstGroup, WeightedTree<N> tree, long count) {
+        addTree(getElementNode(dstGroup), tree, count);
+    }
+
+    /**
+     * Add a weight to all the nodes of a path in the trees of an element,
+     * creating the nodes that do not exist. For example, for a sampled
+     * callstack, the path is the stack trace from the caller to the callee
+     * and the weight is the number of samples.
+     *
+     * @param dstGroup
+     *            The group to which to add this path
+     * @param path
+     *            The objects of the path, starting with the object of the root
+     *            of the tree
+     * @param weight
+     *            The weight to add to each node of the path
+     * @return The ID of the last node of the path, to add weights to the path
+     *         again with {@link #addToPath(int, long)}
+     */
+    public synchronized int addPath(E dstGroup, List<N> path, long weight) {
+        int node = getElementNode(dstGroup);
+        for (N object : path) {
+            node = getOrCreateChild(node, internObject(object));
+            fWeight[node] += weight;
+        }
+        return node;
+    }
+
+    /**
+     * Add a weight to a node and all its ancestors, without looking up the
+     * nodes of the path
+     *
+     * @param node
+     *            The ID of the last node of the path, as returned by
+     *            {@link #addPath(Object, List, long)}
+     * @param weight
+     *            The weight to add to each node of the path
+     */
+    public synchronized void addToPath(int node, long weight) {
+        // The element nodes have no parent and are not weighted
+        for (int current = node; fParent[current] != NO_NODE; current = fParent[current]) {
+            fWeight[current] += weight;
+        }
+    }
+
+    /**
+     * Get the number of nodes of all the trees of this set
+     *
+     * @return The number of nodes
+     */
+    public synchronized int getNbNodes() {
+        // Do not count the element nodes
+        return fNbNodes - fElementNodes.size();
+    }
+
+    // ------------------------------------------------------------------------
+    // Nodes
+    // ------------------------------------------------------------------------
+
+    private int getElementNode(E dstGroup) {
+        Integer elementNode = fElementNodes.get(dstGroup);
+        if (elementNode != null) {
+            return elementNode;
+        }
+        // Make sure the root element is present
+        E root = dstGroup;
+        if (dstGroup instanceof ITree) {
+            ITree parent = ((ITree) dstGroup).getParent();
+            while (parent != null) {
+                root = (E) parent;
+                parent = parent.getParent();
+            }
+        }
+        fRootElements.add(root);
+        int node = newNode(NO_NODE, NO_NODE);
+        fElementNodes.put(dstGroup, node);
+        return node;
+    }
+
+    private void addTree(int parent, WeightedTree<N> tree, long count) {
+        int node = getOrCreateChild(parent, internObject(tree.getObject()));
+        fWeight[node] += tree.getWeight() * count;
+        for (WeightedTree<N> child : tree.getChildren()) {
+            addTree(node, child, count);
+        }
+    }
+
+    private int internObject(N object) {
+        Integer id = fObjectIds.get(object);
+        if (id == null) {
+            id = fObjects.size();
+            fObjects.add(object);
+            fObjectIds.put(object, id);
+        }
+        return id;
+    }
+
+    private int newNode(int parent, int objectId) {
+        if (fNbNodes == fObjectId.length) {
+            int capacity = fObjectId.length * 2;
+            fObjectId = Arrays.copyOf(fObjectId, capacity);
+            fParent = Arrays.copyOf(fParent, capacity);
+            fFirstChild = Arrays.copyOf(fFirstChild, capacity);
+            fNextSibling = Arrays.copyOf(fNextSibling, capacity);
+            fWeight = Arrays.copyOf(fWeight, capacity);
+        }
+        int node = fNbNodes++;
+        fObjectId[node] = objectId;
+        fParent[node] = parent;
+        fFirstChild[node] = NO_NODE;
+        fNextSibling[node] = NO_NODE;
+        fWeight[node] = 0;
+        return node;
+    }
+
+    private int getOrCreateChild(int parent, int objectId) {
+        long key = childKey(parent, objectId);
+        int mask = fChildKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (fChildKeys[slot] != EMPTY_KEY) {
+            if (fChildKeys[slot] == key) {
+                return fChildNodes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        // New child, insert it first in the children of the parent
+        int node = newNode(parent, objectId);
+        fNextSibling[node] = fFirstChild[parent];
+        fFirstChild[parent] = node;
+        fChildKeys[slot] = key;
+        fChildNodes[slot] = node;
+        // Keep the load factor of the table under 1/2
+        if (fNbNodes * 2 > fChildKeys.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private void rehash() {
+        long[] keys = fChildKeys;
+        int[] nodes = fChildNodes;
+        fChildKeys = newKeys(keys.length * 2);
+        fChildNodes = new int[keys.length * 2];
+        int mask = fChildKeys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                int slot = hash(keys[i]) & mask;
+                while (fChildKeys[slot] != EMPTY_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                fChildKeys[slot] = keys[i];
+                fChildNodes[slot] = nodes[i];
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        return keys;
+    }
+
+    private static long childKey(int parent, int objectId) {
+        return ((long) parent << 32) | (objectId & 0xFFFFFFFFL);
+    }
+
+    private static int hash(long key) {
+        // Mix the bits so that consecutive keys spread in the table
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private synchronized List<T> getChildren(int node) {
+        List<T> children = new ArrayList<>();
+        for (int child = fFirstChild[node]; child != NO_NODE; child = fNextSibling[child]) {
+            int childNode = child;
+            children.add(fViewFactory.createView(fObjects.get(fObjectId[child]), fWeight[child], () -> getChildren(childNode)));
+        }
+        return children;
+    }
+
+    // ------------------------------------------------------------------------
+    // Views
+    // ------------------------------------------------------------------------
+
+    /**
+     * A read-only view of a node as a weighted tree
+     */
+    private static final class PackedWeightedTree<@NonNull N> extends WeightedTree<N> {
+
+        private final Supplier<Collection<WeightedTree<N>>> fChildren;
+
+        public PackedWeightedTree(N object, long weight, Supplier<Collection<WeightedTree<N>>> children) {
+            super(object, weight);
+            fChildren = children;
+        }
+
+        @Override
+        public Collection<WeightedTree<N>> getChildren() {
+            return fChildren.get();
+        }
+
+        @Override
+        public WeightedTree<N> copyOf() {
+            WeightedTree<N> copy = new WeightedTree<>(getObject(), getWeight());
+            for (WeightedTree<N> child : getChildren()) {
+                copy.addChild(child.copyOf());
+            }
+            return copy;
+        }
+
+        @Override
+        public void addToWeight(long weight) {
+            throw new UnsupportedOperationException("Packed weighted trees are read-only, use a copy"); //$NON-NLS-1$
+        }
+
+        @Override
+        public void addChild(WeightedTree<N> child) {
+            throw new UnsupportedOperationException("Packed weighted trees are read-only, use a copy"); //$NON-NLS-1$
+        }
+    }
+}
@@ -227,7 +227,7 @@ public class WeightedTree<@NonNull T> implements Comparable<WeightedTree<T>> {
      *            The tree to merge to this one
      */
     private void mergeChildren(WeightedTree<T> other) {
-        for (WeightedTree<T> otherChildSite : other.fChildren.values()) {
+        for (WeightedTree<T> otherChildSite : other.getChildren()) {
             T childObject = otherChildSite.getObject();
             WeightedTree<T> childSite = fChildren.get(childObject);
             if (childSite == null) {
@@ -0,0 +1,493 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.analysis.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.Activator;
+import org.eclipse.tracecompass.internal.tmf.core.trace.indexer.TmfBTreeTraceIndexer;
+import org.eclipse.tracecompass.tmf.core.io.BufferedRandomAccessFile;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceUpdatedSignal;
+import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.ITmfCheckpointIndex;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.checkpoint.TmfCheckpoint;
+import org.eclipse.tracecompass.tmf.core.trace.location.TmfLongLocation;
+
+/**
+ * Checkpoint indexer for JSON traces whose events are JSON objects in a file,
+ * located by their offset in the file. Instead of reading all the events of
+ * the trace in order, the file is split in chunks that are read in parallel.
+ *
+ * A first pass finds the events of each chunk, their number and time range.
+ * The chunks are split at arbitrary offsets, so each chunk starts at the
+ * first object that follows another object, and the start of each chunk is
+ * verified against the end of the previous one. A chunk that did not start on
+ * an event boundary is read again from the right offset. Once the number of
+ * events of each chunk is known, a second pass finds the offsets and
+ * timestamps of the checkpoints of each chunk, parsing only the events of the
+ * checkpoints.
+ *
+ * Small files, or indexes that were already built, are indexed by the
+ * checkpoint indexer.
+ */
+@SuppressWarnings("restriction")
+public class ChunkedJsonTraceIndexer extends TmfBTreeTraceIndexer {
+
+    /** The minimal size of a chunk of the file */
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    /** The number of chunks per thread, to balance the work of the threads */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /** The number of objects read between checks for cancellation */
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    /**
+     * The reader of the events of a JSON trace, used by the indexer to find
+     * the events in the file and their time range. The methods reading events
+     * are called concurrently for the different chunks of the file.
+     */
+    public interface IJsonEventReader {
+
+        /**
+         * Get the file containing the events
+         *
+         * @return The file, or <code>null</code> if the trace has no file
+         */
+        @Nullable File getFile();
+
+        /**
+         * Move the file position to the start of the events
+         *
+         * @param file
+         *            The file, opened at its start
+         * @throws IOException
+         *             Exceptions reading the file
+         */
+        void goToDataStart(RandomAccessFile file) throws IOException;
+
+        /**
+         * Get the time range of an event
+         *
+         * @param json
+         *            The JSON string of an object of the file
+         * @return The time range of the event, or <code>null</code> if this
+         *         object is not an event of the trace
+         */
+        @Nullable TmfTimeRange getEventRange(String json);
+
+        /**
+         * Handle an object of the file that is not an event, like metadata.
+         * The objects are handled in the order of the file, once all the
+         * chunks are read.
+         *
+         * @param json
+         *            The JSON string of the object
+         * @return <code>true</code> to skip this object and continue reading
+         *         the events, <code>false</code> if the trace ends at this
+         *         object
+         */
+        boolean handleOtherData(String json);
+    }
+
+    /** An object of a chunk that is not an event */
+    private static class OtherData {
+        private final long fOffset;
+        private final String fJson;
+        private final long fEventsBefore;
+        private final @Nullable ITmfTimestamp fStartBefore;
+        private final @Nullable ITmfTimestamp fEndBefore;
+
+        public OtherData(long offset, String json, long eventsBefore, @Nullable ITmfTimestamp startBefore, @Nullable ITmfTimestamp endBefore) {
+            fOffset = offset;
+            fJson = json;
+            fEventsBefore = eventsBefore;
+            fStartBefore = startBefore;
+            fEndBefore = endBefore;
+        }
+    }
+
+    /** A chunk of the file */
+    private static class Chunk {
+        /* The offset at which this chunk ends, events starting after are in the next chunk */
+        private final long fEnd;
+        /* The offset of the first object of this chunk, or -1 if none */
+        private long fFirst = -1;
+        /* The offset of the first object after this chunk, or -1 if none */
+        private long fNext = -1;
+        private long fNbEvents = 0;
+        private @Nullable ITmfTimestamp fStartTime = null;
+        private @Nullable ITmfTimestamp fEndTime = null;
+        private List<OtherData> fOthers = new ArrayList<>();
+        /* The rank of the first event of this chunk */
+        private long fBase = 0;
+        /* The number of events of this chunk that are part of the trace */
+        private long fLimit = 0;
+
+        public Chunk(long end) {
+            fEnd = end;
+        }
+    }
+
+    private final ITmfTrace fTrace;
+    private final int fInterval;
+    private final IJsonEventReader fReader;
+    private volatile boolean fChunkIndexing = false;
+    private boolean fBuiltOnce = false;
+    private @Nullable Job fJob = null;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            The trace to index
+     * @param interval
+     *            The checkpoint interval
+     * @param reader
+     *            The reader of the events of the trace
+     */
+    public ChunkedJsonTraceIndexer(ITmfTrace trace, int interval, IJsonEventReader reader) {
+        super(trace, interval);
+        fTrace = trace;
+        fInterval = interval;
+        fReader = reader;
+    }
+
+    @Override
+    public void buildIndex(long offset, TmfTimeRange range, boolean waitForCompletion) {
+        Job job = null;
+        synchronized (this) {
+            job = fJob;
+            File file = fReader.getFile();
+            if (job == null && !fBuiltOnce && offset == 0 && file != null && file.length() >= 2 * MIN_CHUNK_SIZE && getTraceIndex().isCreatedFromScratch()) {
+                job = createIndexingJob(file);
+                fChunkIndexing = true;
+                fJob = job;
+                job.schedule();
+            }
+        }
+        if (job == null) {
+            super.buildIndex(offset, range, waitForCompletion);
+            return;
+        }
+        if (waitForCompletion) {
+            try {
+                job.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Job createIndexingJob(File file) {
+        Job job = new Job("Indexing " + fTrace.getName()) { //$NON-NLS-1$
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                return index(file, monitor);
+            }
+        };
+        job.setSystem(true);
+        return job;
+    }
+
+    @Override
+    public boolean isIndexing() {
+        return fChunkIndexing || super.isIndexing();
+    }
+
+    @Override
+    public synchronized void updateIndex(ITmfContext context, ITmfTimestamp timestamp) {
+        // The checkpoints are inserted by the chunk indexing, if running
+        if (!fChunkIndexing) {
+            super.updateIndex(context, timestamp);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        Job job = fJob;
+        if (job != null) {
+            job.cancel();
+            try {
+                job.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.dispose();
+    }
+
+    private IStatus index(File file, IProgressMonitor monitor) {
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        boolean indexed = false;
+        try {
+            indexed = indexChunks(file, nbThreads, executor, monitor);
+        } catch (IOException | ExecutionException e) {
+            Activator.getInstance().logError("Error indexing trace " + fTrace.getName(), e); //$NON-NLS-1$
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+            synchronized (this) {
+                fChunkIndexing = false;
+                fJob = null;
+            }
+        }
+        if (monitor.isCanceled()) {
+            return Status.CANCEL_STATUS;
+        }
+        if (!indexed) {
+            /*
+             * Index the trace by reading all its events, waiting for the
+             * index so that the callers waiting for this job wait for it too
+             */
+            super.buildIndex(0, TmfTimeRange.ETERNITY, true);
+        }
+        return Status.OK_STATUS;
+    }
+
+    /**
+     * Index the trace by chunks
+     *
+     * @return Whether the trace was indexed
+     */
+    private boolean indexChunks(File file, int nbThreads, ExecutorService executor, IProgressMonitor monitor) throws IOException, InterruptedException, ExecutionException {
+        long dataStart;
+        try (RandomAccessFile rafile = new BufferedRandomAccessFile(file, "r")) { //$NON-NLS-1$
+            fReader.goToDataStart(rafile);
+            dataStart = rafile.getFilePointer();
+        }
+        long length = file.length();
+        int nbChunks = (int) Math.max(1, Math.min((length - dataStart) / MIN_CHUNK_SIZE, nbThreads * CHUNKS_PER_THREAD));
+        List<Chunk> chunks = new ArrayList<>();
+        List<Long> chunkStarts = new ArrayList<>();
+        for (int i = 0; i < nbChunks; i++) {
+            chunkStarts.add(dataStart + (length - dataStart) * i / nbChunks);
+            chunks.add(new Chunk(i == nbChunks - 1 ? Long.MAX_VALUE : dataStart + (length - dataStart) * (i + 1) / nbChunks));
+        }
+
+        // First pass: find the events of each chunk
+        List<Callable<Void>> scans = new ArrayList<>();
+        for (int i = 0; i < nbChunks; i++) {
+            Chunk chunk = chunks.get(i);
+            long start = chunkStarts.get(i);
+            boolean exact = (i == 0);
+            scans.add(() -> {
+                try (JsonObjectScanner scanner = new JsonObjectScanner(file)) {
+                    scanChunk(chunk, exact ? start : scanner.sync(start), scanner, monitor);
+                }
+                return null;
+            });
+        }
+        waitFor(executor.invokeAll(scans));
+        if (monitor.isCanceled()) {
+            return false;
+        }
+
+        // Verify the chunk boundaries, reading again the chunks that did not
+        // start on an event
+        try (JsonObjectScanner scanner = new JsonObjectScanner(file)) {
+            for (int i = 1; i < nbChunks; i++) {
+                Chunk previous = chunks.get(i - 1);
+                Chunk chunk = chunks.get(i);
+                if (chunk.fFirst != previous.fNext) {
+                    scanChunk(chunk, previous.fNext, scanner, monitor);
+                }
+            }
+        }
+
+        // Handle the other data in order and compute the rank of each chunk
+        long nbEvents = 0;
+        ITmfTimestamp startTime = null;
+        ITmfTimestamp endTime = null;
+        boolean ended = false;
+        for (Chunk chunk : chunks) {
+            chunk.fBase = nbEvents;
+            if (ended) {
+                continue;
+            }
+            chunk.fLimit = chunk.fNbEvents;
+            ITmfTimestamp chunkStart = chunk.fStartTime;
+            ITmfTimestamp chunkEnd = chunk.fEndTime;
+            for (OtherData other : chunk.fOthers) {
+                if (!fReader.handleOtherData(other.fJson)) {
+                    // The trace ends here
+                    chunk.fLimit = other.fEventsBefore;
+                    chunkStart = other.fStartBefore;
+                    chunkEnd = other.fEndBefore;
+                    ended = true;
+                    break;
+                }
+            }
+            nbEvents += chunk.fLimit;
+            if (chunkStart != null && (startTime == null || chunkStart.compareTo(startTime) < 0)) {
+                startTime = chunkStart;
+            }
+            if (chunkEnd != null && (endTime == null || chunkEnd.compareTo(endTime) > 0)) {
+                endTime = chunkEnd;
+            }
+        }
+
+        // Second pass: find the checkpoints of each chunk
+        List<Callable<List<ITmfCheckpoint>>> checkpointScans = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            checkpointScans.add(() -> {
+                try (JsonObjectScanner scanner = new JsonObjectScanner(file)) {
+                    return getCheckpoints(chunk, scanner, monitor);
+                }
+            });
+        }
+        List<Future<List<ITmfCheckpoint>>> checkpoints = executor.invokeAll(checkpointScans);
+        waitFor(checkpoints);
+        if (monitor.isCanceled()) {
+            return false;
+        }
+
+        TmfTimeRange range = (startTime == null || endTime == null) ? TmfTimeRange.NULL_RANGE : new TmfTimeRange(startTime, endTime);
+        synchronized (this) {
+            ITmfCheckpointIndex index = getTraceIndex();
+            for (Future<List<ITmfCheckpoint>> chunkCheckpoints : checkpoints) {
+                for (ITmfCheckpoint checkpoint : chunkCheckpoints.get()) {
+                    index.insert(checkpoint);
+                }
+            }
+            index.setTimeRange(range);
+            index.setNbEvents(nbEvents);
+            index.setIndexComplete();
+            fBuiltOnce = true;
+        }
+        fTrace.broadcast(new TmfTraceUpdatedSignal(this, fTrace, range, nbEvents));
+        return true;
+    }
+
+    private static void waitFor(List<? extends Future<?>> futures) throws InterruptedException, ExecutionException {
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * Find the events of a chunk, their number and time range, and the other
+     * objects of the chunk
+     *
+     * @param from
+     *            The offset to start reading from, at or before the first
+     *            object of the chunk, or -1 if there is no object
+     */
+    private void scanChunk(Chunk chunk, long from, JsonObjectScanner scanner, IProgressMonitor monitor) throws IOException {
+        chunk.fNbEvents = 0;
+        chunk.fStartTime = null;
+        chunk.fEndTime = null;
+        chunk.fOthers = new ArrayList<>();
+        if (from < 0) {
+            chunk.fFirst = -1;
+            chunk.fNext = -1;
+            return;
+        }
+        scanner.seek(from);
+        long start = scanner.nextStart();
+        chunk.fFirst = start;
+        int count = 0;
+        while (start >= 0 && start < chunk.fEnd) {
+            if (++count % CANCEL_CHECK_INTERVAL == 0 && monitor.isCanceled()) {
+                return;
+            }
+            String json = scanner.readObject(true);
+            if (json == null) {
+                start = -1;
+                break;
+            }
+            TmfTimeRange range = null;
+            try {
+                range = fReader.getEventRange(json);
+            } catch (RuntimeException e) {
+                // Not an event
+            }
+            if (range == null) {
+                chunk.fOthers.add(new OtherData(start, json, chunk.fNbEvents, chunk.fStartTime, chunk.fEndTime));
+            } else {
+                chunk.fNbEvents++;
+                ITmfTimestamp startTime = chunk.fStartTime;
+                if (startTime == null || range.getStartTime().compareTo(startTime) < 0) {
+                    chunk.fStartTime = range.getStartTime();
+                }
+                ITmfTimestamp endTime = chunk.fEndTime;
+                if (endTime == null || range.getEndTime().compareTo(endTime) > 0) {
+                    chunk.fEndTime = range.getEndTime();
+                }
+            }
+            start = scanner.nextStart();
+        }
+        chunk.fNext = start;
+    }
+
+    /**
+     * Get the checkpoints of a chunk, only the events of the checkpoints are
+     * parsed
+     */
+    private List<ITmfCheckpoint> getCheckpoints(Chunk chunk, JsonObjectScanner scanner, IProgressMonitor monitor) throws IOException {
+        List<ITmfCheckpoint> checkpoints = new ArrayList<>();
+        if (chunk.fLimit == 0) {
+            return checkpoints;
+        }
+        scanner.seek(chunk.fFirst);
+        Iterator<OtherData> others = chunk.fOthers.iterator();
+        OtherData other = others.hasNext() ? others.next() : null;
+        long rank = chunk.fBase;
+        long end = chunk.fBase + chunk.fLimit;
+        while (rank < end) {
+            if (rank % CANCEL_CHECK_INTERVAL == 0 && monitor.isCanceled()) {
+                break;
+            }
+            long start = scanner.nextStart();
+            if (start < 0) {
+                break;
+            }
+            if (other != null && start == other.fOffset) {
+                scanner.readObject(false);
+                other = others.hasNext() ? others.next() : null;
+                continue;
+            }
+            boolean isCheckpoint = (rank % fInterval == 0);
+            String json = scanner.readObject(isCheckpoint);
+            if (json == null) {
+                break;
+            }
+            if (isCheckpoint) {
+                TmfTimeRange range = fReader.getEventRange(json);
+                if (range != null) {
+                    checkpoints.add(new TmfCheckpoint(range.getStartTime(), new TmfLongLocation(start), rank / fInterval));
+                }
+            }
+            rank++;
+        }
+        return checkpoints;
+    }
+}
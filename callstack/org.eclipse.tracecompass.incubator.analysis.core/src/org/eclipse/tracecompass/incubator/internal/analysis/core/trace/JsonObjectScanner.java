@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.analysis.core.trace;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.io.BufferedRandomAccessFile;
+
+/**
+ * Reads the JSON objects of a file, keeping track of their offset. The bytes
+ * of the file are read as characters, like the JSON traces read their events.
+ */
+class JsonObjectScanner implements AutoCloseable {
+    private final BufferedRandomAccessFile fFile;
+    private final StringBuilder fBuilder = new StringBuilder();
+
+    public JsonObjectScanner(File file) throws IOException {
+        fFile = new BufferedRandomAccessFile(file, "r"); //$NON-NLS-1$
+    }
+
+    public void seek(long offset) throws IOException {
+        fFile.seek(offset);
+    }
+
+    /**
+     * Get the current offset in the file
+     *
+     * @return The offset
+     */
+    public long getOffset() throws IOException {
+        return fFile.getFilePointer();
+    }
+
+    /**
+     * Skip the characters up to and including the next occurrence of a
+     * character
+     *
+     * @return Whether the character was found before the end of the file
+     */
+    public boolean skipPast(char character) throws IOException {
+        int c = fFile.read();
+        while (c != -1 && c != character) {
+            c = fFile.read();
+        }
+        return c != -1;
+    }
+
+    /**
+     * Find the first object at or after an offset that follows another
+     * object, ie that is after a '}' and a ','. This is a guess of an
+     * event boundary that needs to be verified, as it may be in an
+     * object.
+     *
+     * @return The offset of the object, or -1 if there is none
+     */
+    public long sync(long offset) throws IOException {
+        fFile.seek(offset);
+        int prev1 = 0;
+        int prev2 = 0;
+        int c = fFile.read();
+        while (c != -1) {
+            if (c == '{' && prev1 == ',' && prev2 == '}') {
+                return fFile.getFilePointer() - 1;
+            }
+            if (!Character.isWhitespace(c)) {
+                prev2 = prev1;
+                prev1 = c;
+            }
+            c = fFile.read();
+        }
+        return -1;
+    }
+
+    /**
+     * Move to the start of the next object, its opening brace is read
+     *
+     * @return The offset of the object, or -1 if there is none
+     */
+    public long nextStart() throws IOException {
+        int c = fFile.read();
+        while (c != -1 && c != '{') {
+            c = fFile.read();
+        }
+        return c == -1 ? -1 : fFile.getFilePointer() - 1;
+    }
+
+    /**
+     * Move to the start of the next object of an array, its opening brace is
+     * read. Only the separators of the array elements are skipped, so this
+     * stops at the end of the array.
+     *
+     * @return The offset of the object, or -1 if the array has no more
+     *         object
+     */
+    public long nextInArray() throws IOException {
+        int c = fFile.read();
+        while (c == ',' || Character.isWhitespace(c)) {
+            c = fFile.read();
+        }
+        return c == '{' ? fFile.getFilePointer() - 1 : -1;
+    }
+
+    /**
+     * Read the rest of the object whose start was found by
+     * {@link #nextStart()} or {@link #nextInArray()}
+     *
+     * @param keep
+     *            Whether to return the object string, or an empty string
+     * @return The object, or <code>null</code> if the end of file is
+     *         reached before the end of the object
+     */
+    public @Nullable String readObject(boolean keep) throws IOException {
+        StringBuilder sb = fBuilder;
+        sb.setLength(0);
+        if (keep) {
+            sb.append('{');
+        }
+        int depth = 1;
+        boolean inString = false;
+        int c = fFile.read();
+        while (c != -1) {
+            if (keep) {
+                sb.append((char) c);
+            }
+            if (inString) {
+                if (c == '\\') {
+                    c = fFile.read();
+                    if (c == -1) {
+                        return null;
+                    }
+                    if (keep) {
+                        sb.append((char) c);
+                    }
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return keep ? sb.toString() : ""; //$NON-NLS-1$
+                }
+            }
+            c = fFile.read();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fFile.close();
+    }
+}
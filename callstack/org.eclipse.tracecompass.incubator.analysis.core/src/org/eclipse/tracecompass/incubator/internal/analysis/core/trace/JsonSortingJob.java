@@ -0,0 +1,489 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.analysis.core.trace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.Activator;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+
+/**
+ * Job sorting the events of a JSON trace by timestamp, with an external merge
+ * sort whose memory usage is bounded.
+ *
+ * The events are read sequentially and split in runs of a size bounded by the
+ * available memory. Each run is sorted and written to a temporary file by a
+ * thread pool while the next runs are read. The runs are then merged, by
+ * groups in parallel if there are too many of them, and the last merge writes
+ * the events directly to the sorted trace file in the supplementary files
+ * directory.
+ *
+ * The events are kept as the bytes of the original file, and events with the
+ * same timestamp keep their original order.
+ */
+public abstract class JsonSortingJob extends Job {
+
+    private static final String TEMP_DIR = ".tmp"; //$NON-NLS-1$
+    /* The minimum number of characters of events in a run */
+    private static final long MIN_RUN_SIZE = 1 << 20;
+    /* The estimated number of bytes of memory used per character of events */
+    private static final int BYTES_PER_CHAR = 4;
+    /* The maximum number of runs merged at once */
+    private static final int MAX_FAN_IN = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CANCEL_CHECK_INTERVAL = 1 << 16;
+    /*
+     * The maximum number of digits of a scaled timestamp parsed without
+     * BigDecimal, any number of 18 digits fits in a long
+     */
+    private static final int MAX_FAST_DIGITS = 18;
+    private static final byte[] HEADER = "[\n".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+    private static final byte[] SEPARATOR = ",\n".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+    private static final byte[] FOOTER = "\n]\n".getBytes(StandardCharsets.ISO_8859_1); //$NON-NLS-1$
+
+    private static final Comparator<RunReader> RUN_COMPARATOR = Comparator.<RunReader> comparingLong(run -> run.fTs).thenComparingInt(run -> run.fIndex);
+
+    /**
+     * Reads the events of a sorted run file. A run file has its number of
+     * events, followed by the timestamp, length and bytes of each event.
+     */
+    private static class RunReader implements AutoCloseable {
+        private final DataInputStream fInput;
+        private final int fIndex;
+        private int fRemaining;
+        private long fTs = Long.MIN_VALUE;
+        private byte[] fEvent = new byte[0];
+
+        public RunReader(File file, int index) throws IOException {
+            fInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            fIndex = index;
+            fRemaining = fInput.readInt();
+        }
+
+        /**
+         * Read the next event of the run
+         *
+         * @return Whether there was an event to read
+         */
+        public boolean next() throws IOException {
+            if (fRemaining == 0) {
+                return false;
+            }
+            fRemaining--;
+            fTs = fInput.readLong();
+            fEvent = new byte[fInput.readInt()];
+            fInput.readFully(fEvent);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            fInput.close();
+        }
+    }
+
+    private final ITmfTrace fTrace;
+    private final String fPath;
+    private final String fTsKey;
+    private final int fBracketsToSkip;
+
+    /**
+     * Constructor
+     *
+     * @param trace
+     *            the trace to be sort
+     * @param path
+     *            the path to the trace file
+     * @param tsKey
+     *            the timestamp key, e.g. "ts":
+     * @param bracketsToSkip
+     *            the number of '[' to skip before reaching the array of
+     *            events
+     */
+    public JsonSortingJob(ITmfTrace trace, String path, String tsKey, int bracketsToSkip) {
+        super("Sorting " + trace.getName()); //$NON-NLS-1$
+        fTrace = trace;
+        fPath = path;
+        fTsKey = tsKey;
+        fBracketsToSkip = bracketsToSkip;
+    }
+
+    /**
+     * Getter for the trace path
+     *
+     * @return the path
+     */
+    public String getPath() {
+        return fPath;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        ITmfTrace trace = fTrace;
+        String dir = TmfTraceManager.getSupplementaryFileDir(trace);
+        File tempDir = new File(dir + TEMP_DIR);
+        if (!tempDir.exists() && !tempDir.mkdirs()) {
+            return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Could not create directory " + tempDir); //$NON-NLS-1$
+        }
+        int nbThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        SubMonitor subMonitor = SubMonitor.convert(monitor, 3);
+        try {
+            List<File> runs = createRuns(tempDir, nbThreads, executor, subMonitor.split(1));
+            if (runs.isEmpty()) {
+                return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "No events to sort in trace " + trace.getName()); //$NON-NLS-1$
+            }
+            int level = 0;
+            while (runs.size() > MAX_FAN_IN && !monitor.isCanceled()) {
+                runs = mergeGroups(runs, tempDir, level++, executor, subMonitor);
+            }
+            subMonitor.setWorkRemaining(1);
+            File sortedFile = new File(dir + new File(trace.getPath()).getName());
+            File tempFile = new File(tempDir, sortedFile.getName());
+            try (OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE)) {
+                mergeToJson(runs, output, subMonitor.split(1));
+            }
+            if (monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            Files.move(tempFile.toPath(), sortedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            processMetadata(trace, dir);
+        } catch (IOException | ExecutionException e) {
+            Activator.getInstance().logError("Error sorting trace " + trace.getName(), e); //$NON-NLS-1$
+            return new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Error sorting trace " + trace.getName(), e); //$NON-NLS-1$
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Status.CANCEL_STATUS;
+        } catch (OperationCanceledException e) {
+            return Status.CANCEL_STATUS;
+        } finally {
+            executor.shutdownNow();
+            File[] files = tempDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            tempDir.delete();
+        }
+        return Status.OK_STATUS;
+    }
+
+    /**
+     * Read the events of the trace and write them to sorted run files. The
+     * runs are sorted and written by the executor while the next runs are
+     * read, with at most one run per thread waiting to be written.
+     */
+    private List<File> createRuns(File tempDir, int nbThreads, ExecutorService executor, IProgressMonitor monitor) throws IOException, InterruptedException, ExecutionException {
+        File file = new File(fPath);
+        long runSize = getRunSize(nbThreads);
+        SubMonitor subMonitor = SubMonitor.convert(monitor, (int) Math.min(Integer.MAX_VALUE, file.length() / runSize + 1));
+        Semaphore pending = new Semaphore(nbThreads);
+        List<Future<File>> futures = new ArrayList<>();
+        try (JsonObjectScanner scanner = new JsonObjectScanner(file)) {
+            for (int i = 0; i < fBracketsToSkip; i++) {
+                scanner.skipPast('[');
+            }
+            List<String> events = new ArrayList<>();
+            long size = 0;
+            while (scanner.nextInArray() != -1) {
+                String event = scanner.readObject(true);
+                if (event == null) {
+                    break;
+                }
+                events.add(event);
+                size += event.length();
+                if (size >= runSize) {
+                    futures.add(submitRun(events, new File(tempDir, "run" + futures.size()), executor, pending)); //$NON-NLS-1$
+                    events = new ArrayList<>();
+                    size = 0;
+                    subMonitor.split(1);
+                }
+            }
+            if (!events.isEmpty()) {
+                futures.add(submitRun(events, new File(tempDir, "run" + futures.size()), executor, pending)); //$NON-NLS-1$
+            }
+        }
+        List<File> runs = new ArrayList<>();
+        for (Future<File> future : futures) {
+            runs.add(future.get());
+        }
+        return runs;
+    }
+
+    /**
+     * Get the number of characters of events in a run. Each thread may sort
+     * a run while the next runs are read, so the runs are bounded by the
+     * maximum memory shared by the threads.
+     *
+     * @param nbThreads
+     *            the number of threads sorting the runs
+     * @return the number of characters of events after which a run is sorted
+     */
+    protected long getRunSize(int nbThreads) {
+        return Math.max(MIN_RUN_SIZE, Runtime.getRuntime().maxMemory() / (BYTES_PER_CHAR * 2L * (nbThreads + 1)));
+    }
+
+    private Future<File> submitRun(List<String> events, File runFile, ExecutorService executor, Semaphore pending) throws InterruptedException {
+        pending.acquire();
+        return executor.submit(() -> {
+            try {
+                writeRun(events, runFile);
+                return runFile;
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * Sort the events of a run by timestamp, keeping the order of the events
+     * with the same timestamp, and write them to a run file
+     */
+    private void writeRun(List<String> events, File runFile) throws IOException {
+        int nbEvents = events.size();
+        long[] timestamps = new long[nbEvents];
+        Integer[] order = new Integer[nbEvents];
+        for (int i = 0; i < nbEvents; i++) {
+            timestamps[i] = getTimestamp(events.get(i), fTsKey);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE))) {
+            output.writeInt(nbEvents);
+            for (int i : order) {
+                byte[] event = events.get(i).getBytes(StandardCharsets.ISO_8859_1);
+                output.writeLong(timestamps[i]);
+                output.writeInt(event.length);
+                output.write(event);
+            }
+        }
+    }
+
+    /**
+     * Merge groups of runs in parallel, to get at most {@link #MAX_FAN_IN}
+     * runs to merge to the sorted file
+     */
+    private static List<File> mergeGroups(List<File> runs, File tempDir, int level, ExecutorService executor, IProgressMonitor monitor) throws InterruptedException, ExecutionException {
+        List<Future<File>> futures = new ArrayList<>();
+        for (int start = 0; start < runs.size(); start += MAX_FAN_IN) {
+            List<File> group = runs.subList(start, Math.min(runs.size(), start + MAX_FAN_IN));
+            File merged = new File(tempDir, "merge" + level + '_' + futures.size()); //$NON-NLS-1$
+            futures.add(executor.submit(() -> {
+                mergeToRun(group, merged, monitor);
+                for (File run : group) {
+                    run.delete();
+                }
+                return merged;
+            }));
+        }
+        List<File> merged = new ArrayList<>();
+        for (Future<File> future : futures) {
+            merged.add(future.get());
+        }
+        return merged;
+    }
+
+    private static void mergeToRun(List<File> runs, File runFile, IProgressMonitor monitor) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            int nbEvents = 0;
+            for (File run : runs) {
+                RunReader reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                nbEvents += reader.fRemaining;
+            }
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE))) {
+                output.writeInt(nbEvents);
+                merge(readers, monitor, reader -> {
+                    output.writeLong(reader.fTs);
+                    output.writeInt(reader.fEvent.length);
+                    output.write(reader.fEvent);
+                });
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void mergeToJson(List<File> runs, OutputStream output, IProgressMonitor monitor) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            for (File run : runs) {
+                readers.add(new RunReader(run, readers.size()));
+            }
+            output.write(HEADER);
+            boolean[] first = { true };
+            merge(readers, monitor, reader -> {
+                if (!first[0]) {
+                    output.write(SEPARATOR);
+                }
+                first[0] = false;
+                output.write(reader.fEvent);
+            });
+            output.write(FOOTER);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventWriter {
+        void write(RunReader reader) throws IOException;
+    }
+
+    /**
+     * K-way merge of the runs, the events are written in timestamp order, then
+     * in the order of the runs
+     */
+    private static void merge(List<RunReader> readers, IProgressMonitor monitor, EventWriter writer) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, readers.size()), RUN_COMPARATOR);
+        for (RunReader reader : readers) {
+            if (reader.next()) {
+                queue.add(reader);
+            }
+        }
+        long count = 0;
+        RunReader reader = queue.poll();
+        while (reader != null) {
+            writer.write(reader);
+            if (reader.next()) {
+                queue.add(reader);
+            }
+            if (++count % CANCEL_CHECK_INTERVAL == 0 && monitor.isCanceled()) {
+                return;
+            }
+            reader = queue.poll();
+        }
+    }
+
+    /**
+     * Get the timestamp of an event, scaled by 1000 so that the fractional
+     * part of the usual timestamps is kept.
+     *
+     * @param event
+     *            the event string
+     * @param key
+     *            the timestamp key
+     * @return the timestamp, or {@link Long#MIN_VALUE} if the event has none,
+     *         so that it is sorted first
+     */
+    private static long getTimestamp(String event, String key) {
+        int index = event.indexOf(key);
+        if (index < 0) {
+            return Long.MIN_VALUE;
+        }
+        int start = index + key.length();
+        int length = event.length();
+        while (start < length && (Character.isWhitespace(event.charAt(start)) || event.charAt(start) == '"')) {
+            start++;
+        }
+        int end = start;
+        while (end < length && isNumberChar(event.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
+            return Long.MIN_VALUE;
+        }
+        // Fast path for plain decimal numbers, the decimals after the third
+        // are truncated
+        long value = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean negative = event.charAt(start) == '-';
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            char c = event.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c < '0' || c > '9') {
+                return parseTimestamp(event.substring(start, end));
+            } else if (decimals < 3) {
+                if (digits >= MAX_FAST_DIGITS) {
+                    return parseTimestamp(event.substring(start, end));
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            }
+        }
+        int scale = 3 - Math.max(decimals, 0);
+        if (digits + scale > MAX_FAST_DIGITS) {
+            return parseTimestamp(event.substring(start, end));
+        }
+        for (int i = 0; i < scale; i++) {
+            value *= 10;
+        }
+        return negative ? -value : value;
+    }
+
+    private static long parseTimestamp(String value) {
+        try {
+            return new BigDecimal(value).movePointRight(3).toBigInteger().longValueExact();
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        } catch (ArithmeticException e) {
+            // Out of range, sort it at the end it belongs to
+            return value.startsWith("-") ? Long.MIN_VALUE : Long.MAX_VALUE; //$NON-NLS-1$
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == 'e' || c == 'E';
+    }
+
+    /**
+     * Process the metadata of the trace, once the events are sorted
+     *
+     * @param trace
+     *            the trace
+     * @param dir
+     *            the supplementary files directory of the trace
+     * @throws IOException
+     *             if the metadata could not be read or written
+     */
+    protected abstract void processMetadata(ITmfTrace trace, String dir) throws IOException;
+}
@@ -11,23 +11,35 @@
 
 package org.eclipse.tracecompass.incubator.callstack.core.tests.callgraph;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Objects;
 
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICpuTimeProvider;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
 import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesystem.CallStackSeries;
 import org.eclipse.tracecompass.incubator.callstack.core.tests.flamechart.CallStackTestBase;
 import org.eclipse.tracecompass.incubator.callstack.core.tests.stubs.CallStackAnalysisStub;
 import org.eclipse.tracecompass.incubator.internal.analysis.core.model.CompositeHostModel;
@@ -36,6 +48,7 @@ import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.c
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CallGraphAnalysis;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.junit.After;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -66,22 +79,227 @@ public class CallGraphWithCallStackAnalysisTest extends CallStackTestBase {
         CallGraph cg = cga.getCallGraph();
 
         try {
-            Collection<ICallStackElement> elements = cg.getElements();
-            for (ICallStackElement group : elements) {
-                String firstLevelName = group.getName();
-                switch (firstLevelName) {
-                case "1":
-                    verifyProcess1(cg, group);
-                    break;
-                case "5":
-                    verifyProcess5(cg, group);
-                    break;
-                default:
-                    fail("Unknown process in callstack");
+            verifyCallGraph(cg);
+        } finally {
+            cga.dispose();
+        }
+    }
+
+    /**
+     * Test that the callgraph saved in the supplementary files is read by a
+     * new callgraph analysis, instead of being computed and saved again
+     *
+     * @throws TmfAnalysisException
+     *             Propagates exceptions
+     * @throws IOException
+     *             Exceptions accessing the file
+     */
+    @Test
+    public void testPersistedCallGraph() throws TmfAnalysisException, IOException {
+        CallStackAnalysisStub module = getModule();
+        // Compute the callgraph once, it is saved with the supplementary files
+        module.getCallGraph();
+        Path file = Paths.get(TmfTraceManager.getSupplementaryFileDir(getTrace()), module.getId() + ".callgraph");
+        assertTrue(Files.exists(file));
+        byte[] content = Files.readAllBytes(file);
+        // A file saved again would have a new modification time
+        FileTime savedTime = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(file, savedTime);
+
+        CallGraphAnalysis cga = getCallGraphModule();
+        try {
+            verifyCallGraph(cga.getCallGraph());
+            assertTrue("The callgraph should be read from the file", cga.isCallGraphReadFromFile());
+        } finally {
+            cga.dispose();
+        }
+        assertEquals("The file should not be saved again", savedTime, Files.getLastModifiedTime(file));
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    /**
+     * Test that a persisted callgraph file computed from another state of the
+     * trace is not read, but recomputed and saved again
+     *
+     * @throws TmfAnalysisException
+     *             Exceptions thrown by the analysis
+     * @throws IOException
+     *             Exceptions accessing the file
+     */
+    @Test
+    public void testStaleCallGraphFile() throws TmfAnalysisException, IOException {
+        CallStackAnalysisStub module = getModule();
+        module.getCallGraph();
+        Path file = Paths.get(TmfTraceManager.getSupplementaryFileDir(getTrace()), module.getId() + ".callgraph");
+        byte[] content = Files.readAllBytes(file);
+
+        // Change the first value of the key, after the magic number, version and key length
+        byte[] stale = Arrays.copyOf(content, content.length);
+        stale[Integer.BYTES * 3 + Long.BYTES - 1]++;
+        Files.write(file, stale);
+
+        CallGraphAnalysis cga = getCallGraphModule();
+        try {
+            verifyCallGraph(cga.getCallGraph());
+            assertFalse("The stale callgraph should not be read", cga.isCallGraphReadFromFile());
+        } finally {
+            cga.dispose();
+        }
+        assertArrayEquals(content, Files.readAllBytes(file));
+    }
+
+    /**
+     * Test that the callgraph of a selection covering the whole trace,
+     * assembled from the partial callgraphs of time buckets, is the same as
+     * the full callgraph
+     */
+    @Test
+    public void testFullSelectionCallGraph() {
+        CallStackAnalysisStub cga = getModule();
+        try {
+            long start = getTrace().getStartTime().toNanos() - 1;
+            long end = getTrace().getEndTime().toNanos() + 1;
+            verifyCallGraph(cga.getCallGraph(TmfTimestamp.fromNanos(start), TmfTimestamp.fromNanos(end)));
+        } finally {
+            cga.dispose();
+        }
+    }
+
+    /**
+     * Test that the callgraphs of sub-ranges, assembled from the partial
+     * callgraphs of time buckets, are the same as the callgraphs computed
+     * directly for those ranges. The buckets of this trace are 1 ns long, so
+     * most calls cross bucket boundaries.
+     */
+    @Test
+    public void testSubRangeCallGraph() {
+        CallStackAnalysisStub module = getModule();
+        DirectCallGraphAnalysis direct = new DirectCallGraphAnalysis(module);
+        try {
+            long[][] ranges = { { 3, 17 }, { 4, 14 }, { 1, 9 }, { 8, 20 }, { 6, 7 } };
+            for (long[] range : ranges) {
+                String message = "[" + range[0] + ", " + range[1] + "]";
+                CallGraph actual = module.getCallGraph(TmfTimestamp.fromNanos(range[0]), TmfTimestamp.fromNanos(range[1]));
+                CallGraph expected = direct.compute(range[0], range[1]);
+                assertEquals(message, expected.getElements(), actual.getElements());
+                for (ICallStackElement element : expected.getElements()) {
+                    compareElements(message, element, expected, actual);
                 }
             }
         } finally {
-            cga.dispose();
+            direct.dispose();
+            module.dispose();
+        }
+    }
+
+    /**
+     * Test that the callgraph built in parallel for the leaf elements of the
+     * trace, the threads of the processes, is the same as the callgraph built
+     * serially
+     */
+    @Test
+    public void testParallelCallGraph() {
+        CallStackAnalysisStub module = getModule();
+        DirectCallGraphAnalysis serial = new DirectCallGraphAnalysis(module, 1);
+        DirectCallGraphAnalysis parallel = new DirectCallGraphAnalysis(module, 4);
+        try {
+            long start = getTrace().getStartTime().toNanos();
+            long end = getTrace().getEndTime().toNanos();
+            CallGraph expected = serial.compute(start, end);
+            CallGraph actual = parallel.compute(start, end);
+            verifyCallGraph(actual);
+            assertEquals(expected.getElements(), actual.getElements());
+            for (ICallStackElement element : expected.getElements()) {
+                compareElements("parallel", element, expected, actual);
+            }
+        } finally {
+            serial.dispose();
+            parallel.dispose();
+            module.dispose();
+        }
+    }
+
+    private static void compareElements(String message, ICallStackElement element, CallGraph expected, CallGraph actual) {
+        compareCallSites(message + ' ' + element.getName(), expected.getCallingContextTree(element), actual.getCallingContextTree(element));
+        for (ICallStackElement child : element.getChildrenElements()) {
+            compareElements(message, child, expected, actual);
+        }
+    }
+
+    private static void compareCallSites(String message, Collection<AggregatedCallSite> expected, Collection<AggregatedCallSite> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (AggregatedCallSite expectedSite : expected) {
+            String siteMessage = message + '/' + expectedSite.getObject();
+            AggregatedCallSite actualSite = null;
+            for (AggregatedCallSite candidate : actual) {
+                if (candidate.getObject().equals(expectedSite.getObject())) {
+                    actualSite = candidate;
+                }
+            }
+            assertNotNull(siteMessage, actualSite);
+            assertEquals(siteMessage, expectedSite.getWeight(), actualSite.getWeight());
+            assertTrue(siteMessage, expectedSite instanceof AggregatedCalledFunction);
+            assertTrue(siteMessage, actualSite instanceof AggregatedCalledFunction);
+            AggregatedCalledFunction expectedFunction = (AggregatedCalledFunction) expectedSite;
+            AggregatedCalledFunction actualFunction = (AggregatedCalledFunction) actualSite;
+            assertEquals(siteMessage, expectedFunction.getNbCalls(), actualFunction.getNbCalls());
+            assertEquals(siteMessage, expectedFunction.getSelfTime(), actualFunction.getSelfTime());
+            IStatistics<ICalledFunction> expectedDurations = expectedFunction.getFunctionStatistics().getDurationStatistics();
+            IStatistics<ICalledFunction> actualDurations = actualFunction.getFunctionStatistics().getDurationStatistics();
+            assertEquals(siteMessage, expectedDurations.getNbElements(), actualDurations.getNbElements());
+            assertEquals(siteMessage, expectedDurations.getMin(), actualDurations.getMin());
+            assertEquals(siteMessage, expectedDurations.getMax(), actualDurations.getMax());
+            assertEquals(siteMessage, expectedDurations.getTotal(), actualDurations.getTotal());
+            IStatistics<ICalledFunction> expectedSelfTimes = expectedFunction.getFunctionStatistics().getSelfTimeStatistics();
+            IStatistics<ICalledFunction> actualSelfTimes = actualFunction.getFunctionStatistics().getSelfTimeStatistics();
+            assertEquals(siteMessage, expectedSelfTimes.getMin(), actualSelfTimes.getMin());
+            assertEquals(siteMessage, expectedSelfTimes.getMax(), actualSelfTimes.getMax());
+            assertEquals(siteMessage, expectedSelfTimes.getTotal(), actualSelfTimes.getTotal());
+            compareCallSites(siteMessage, expectedSite.getCallees(), actualSite.getCallees());
+        }
+    }
+
+    /**
+     * Computes the callgraph of a time range directly from the callstack,
+     * without the time buckets
+     */
+    private static class DirectCallGraphAnalysis extends CallGraphAnalysis {
+        private final CallStackAnalysisStub fModule;
+
+        public DirectCallGraphAnalysis(CallStackAnalysisStub module) {
+            super(module);
+            fModule = module;
+        }
+
+        public DirectCallGraphAnalysis(CallStackAnalysisStub module, int maxThreads) {
+            this(module);
+            setMaxThreads(maxThreads);
+        }
+
+        public CallGraph compute(long start, long end) {
+            CallStackSeries series = fModule.getCallStackSeries();
+            assertNotNull(series);
+            CallGraph callGraph = new CallGraph();
+            assertTrue(iterateOverCallstackSerie(series, ModelManager.getModelFor(fModule.getHostId()), callGraph, start, end, new NullProgressMonitor()));
+            return callGraph;
+        }
+    }
+
+    private static void verifyCallGraph(CallGraph cg) {
+        Collection<ICallStackElement> elements = cg.getElements();
+        assertEquals(2, elements.size());
+        for (ICallStackElement group : elements) {
+            String firstLevelName = group.getName();
+            switch (firstLevelName) {
+            case "1":
+                verifyProcess1(cg, group);
+                break;
+            case "5":
+                verifyProcess5(cg, group);
+                break;
+            default:
+                fail("Unknown process in callstack");
+            }
         }
     }
 
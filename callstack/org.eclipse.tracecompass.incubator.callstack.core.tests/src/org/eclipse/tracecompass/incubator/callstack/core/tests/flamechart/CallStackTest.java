@@ -17,6 +17,9 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -24,16 +27,19 @@ import java.util.List;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.os.linux.core.model.HostThread;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.model.ModelManager;
 import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
 import org.eclipse.tracecompass.incubator.callstack.core.flamechart.CallStack;
+import org.eclipse.tracecompass.incubator.callstack.core.flamechart.CallStackReader;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesystem.CallStackSeries;
 import org.eclipse.tracecompass.incubator.callstack.core.tests.stubs.CallStackAnalysisStub;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.InstrumentedCallStackElement;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CalledFunctionFactory;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.junit.Test;
 
@@ -335,4 +341,112 @@ public class CallStackTest extends CallStackTestBase {
         assertNull(function);
 
     }
+
+    /**
+     * Test that {@link CallStack#iterateOverCallStack(long, long, java.util.function.Consumer)}
+     * returns the same function calls, in the same order, as a depth-first
+     * traversal with
+     * {@link CallStack#getNextFunction(long, int, ICalledFunction, IHostModel, long, long)}
+     */
+    @Test
+    public void testCallStackIterate() {
+        CallStack element = getElementToTest();
+        IHostModel model = ModelManager.getModelFor("");
+        long[][] ranges = { { START_TIME, END_TIME }, { 4L, 10L }, { 10L, 14L }, { END_TIME + 1, END_TIME + 3 } };
+        for (long[] range : ranges) {
+            List<ICalledFunction> expected = new ArrayList<>();
+            collectNextFunctions(element, null, 1, model, range[0], range[1], expected);
+            List<ICalledFunction> actual = new ArrayList<>();
+            element.iterateOverCallStack(range[0], range[1], actual::add);
+            assertEquals("Range " + range[0] + '-' + range[1], expected, actual);
+        }
+    }
+
+    /**
+     * Test reading the callstack in many small windows with the
+     * {@link CallStackReader}, so that calls cross the boundaries of the
+     * windows, which are halved when they have too many intervals and doubled
+     * when they have few. The calls should be the same as with a depth-first
+     * traversal with
+     * {@link CallStack#getNextFunction(long, int, ICalledFunction, IHostModel, long, long)}
+     */
+    @Test
+    public void testCallStackReaderWindows() {
+        CallStack element = getElementToTest();
+        CallStackAnalysisStub module = getModule();
+        ITmfStateSystem ss = module.getStateSystem();
+        assertNotNull(ss);
+        List<Integer> quarks = new ArrayList<>();
+        for (int depth = 1; depth <= element.getMaxDepth(); depth++) {
+            quarks.add(element.getQuarkAtDepth(depth));
+        }
+        IHostModel model = ModelManager.getModelFor("");
+
+        /*
+         * Read the whole trace in one window of at most 4 intervals: the first
+         * window has the 5 calls of the element, so it is halved and the call
+         * (9, 13) crosses the boundary of the next window
+         */
+        List<long[]> windows = new ArrayList<>();
+        assertReaderCalls(element, getRecordingStateSystem(ss, windows), quarks, model, 1, 4);
+        assertTrue("The range should be read in several windows", windows.size() > 2);
+        assertEquals("The first window should be halved", windows.get(0)[0], windows.get(1)[0]);
+        assertTrue("The first window should be halved", windows.get(1)[1] < windows.get(0)[1]);
+
+        /*
+         * Start with windows of 1 ns: the windows without any call starting in
+         * them are doubled and the calls span several windows
+         */
+        windows.clear();
+        assertReaderCalls(element, getRecordingStateSystem(ss, windows), quarks, model, 64, 4);
+        assertTrue("The range should be read in several windows", windows.size() > 2);
+        assertEquals("The first window should be 1 ns long", windows.get(0)[0], windows.get(0)[1]);
+        assertTrue("Some window should be doubled", windows.stream().anyMatch(window -> window[1] - window[0] > 1));
+
+        // Windows of 1 ns that are never resized, and windows that are always halved
+        assertReaderCalls(element, ss, quarks, model, 64, 1);
+        assertReaderCalls(element, ss, quarks, model, 1, 1);
+    }
+
+    private static void assertReaderCalls(CallStack element, ITmfStateSystem ss, List<Integer> quarks, IHostModel model, int initialNbWindows, int maxWindowIntervals) {
+        long[][] ranges = { { START_TIME, END_TIME }, { 4L, 10L }, { 10L, 14L }, { 7L, 16L } };
+        for (long[] range : ranges) {
+            List<ICalledFunction> expected = new ArrayList<>();
+            collectNextFunctions(element, null, 1, model, range[0], range[1], expected);
+            List<ICalledFunction> actual = new ArrayList<>();
+            new CallStackReader(element, ss, quarks, time -> model, MONITOR, initialNbWindows, maxWindowIntervals).read(range[0], range[1], actual::add);
+            assertEquals("Range " + range[0] + '-' + range[1] + " with " + initialNbWindows + " windows of " + maxWindowIntervals + " intervals", expected, actual);
+        }
+    }
+
+    /**
+     * Get a state system that records the time windows of the 2D queries
+     * before delegating them to the actual state system
+     */
+    private static ITmfStateSystem getRecordingStateSystem(ITmfStateSystem ss, List<long[]> windows) {
+        return (ITmfStateSystem) Proxy.newProxyInstance(ITmfStateSystem.class.getClassLoader(), new Class<?>[] { ITmfStateSystem.class }, (proxy, method, args) -> {
+            if (method.getName().equals("query2D") && args.length == 3 && args[1] instanceof Long) {
+                windows.add(new long[] { (Long) args[1], (Long) args[2] });
+            }
+            try {
+                return method.invoke(ss, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static void collectNextFunctions(CallStack callStack, @Nullable ICalledFunction parent, int depth, IHostModel model, long start, long end, List<ICalledFunction> functions) {
+        if (depth > callStack.getMaxDepth()) {
+            return;
+        }
+        long rangeStart = parent == null ? start : Math.max(start, parent.getStart());
+        long rangeEnd = parent == null ? end : Math.min(end, parent.getEnd());
+        ICalledFunction function = callStack.getNextFunction(parent == null ? callStack.getStartTime() : parent.getStart(), depth, parent, model, rangeStart, rangeEnd);
+        while (function != null) {
+            functions.add(function);
+            collectNextFunctions(callStack, function, depth + 1, model, start, end, functions);
+            function = callStack.getNextFunction(function.getEnd(), depth, parent, model, rangeStart, rangeEnd);
+        }
+    }
 }
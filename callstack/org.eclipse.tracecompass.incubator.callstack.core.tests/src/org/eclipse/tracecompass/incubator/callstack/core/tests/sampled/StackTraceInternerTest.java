@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.tests.sampled;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.AllGroupDescriptor;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IWeightedTreeGroupDescriptor;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.CallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.PackedCallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.ProfilingCallGraphAnalysisModule;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.StackTraceInterner;
+import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
+import org.eclipse.tracecompass.tmf.core.util.Pair;
+import org.junit.Test;
+
+/**
+ * Test that the callgraphs built with the {@link StackTraceInterner} are the
+ * same as the callgraphs built by adding the callsites of each stack trace
+ */
+public class StackTraceInternerTest {
+
+    /* The time at which the symbol key of the elements changes */
+    private static final long SYMBOL_KEY_CHANGE = 100;
+
+    private static final long @NonNull [][] STACK_TRACES = {
+            { 1, 2, 3, 4 },
+            { 1, 2, 3 },
+            { 1, 3, 4 },
+            { 1, 2, 5 },
+            { 1, 2, 5, 4 },
+            { 10, 11, 12 },
+            { 10, 11 },
+            { 1 }
+    };
+
+    private static class TestProfilingAnalysis extends ProfilingCallGraphAnalysisModule {
+
+        @Override
+        public Collection<IWeightedTreeGroupDescriptor> getGroupDescriptors() {
+            return Collections.singleton(AllGroupDescriptor.getInstance());
+        }
+
+        @Override
+        public Map<String, Collection<Object>> getCallStack(@NonNull ITmfEvent event) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        protected @Nullable Pair<@NonNull ICallStackElement, @NonNull AggregatedCallSite> getProfiledStackTrace(@NonNull ITmfEvent event) {
+            return null;
+        }
+    }
+
+    /**
+     * Create an element whose symbol key changes at
+     * {@link #SYMBOL_KEY_CHANGE}
+     */
+    private static @NonNull ICallStackElement createElement(String name) {
+        CallStackElement element = new CallStackElement(name, AllGroupDescriptor.getInstance()) {
+            @Override
+            protected int retrieveSymbolKeyAt(long time) {
+                return time < SYMBOL_KEY_CHANGE ? 1 : 2;
+            }
+        };
+        element.setSymbolKeyElement(element);
+        return element;
+    }
+
+    /**
+     * Test interning stack traces repeated on many elements, before and after
+     * the change of their symbol keys
+     */
+    @Test
+    public void testInternedCallGraph() {
+        TestProfilingAnalysis module = new TestProfilingAnalysis();
+        try {
+            ICallStackElement[] elements = { createElement("1"), createElement("2") };
+            CallGraph interned = new CallGraph();
+            CallGraph expected = new CallGraph();
+            StackTraceInterner interner = new StackTraceInterner(module, interned);
+            for (int i = 0; i < 2 * SYMBOL_KEY_CHANGE; i++) {
+                ICallStackElement element = elements[i % 3 == 0 ? 1 : 0];
+                long[] stackTrace = STACK_TRACES[i % STACK_TRACES.length];
+                interner.addStackTrace(element, stackTrace, i);
+                expected.addAggregatedCallSite(element, module.getCallSite(element, stackTrace, i));
+            }
+            for (ICallStackElement element : elements) {
+                assertSameTrees(element.getName(), expected.getCallingContextTree(element), interned.getCallingContextTree(element));
+            }
+        } finally {
+            module.dispose();
+        }
+    }
+
+    /**
+     * Test interning stack traces in a packed callgraph
+     */
+    @Test
+    public void testPackedCallGraph() {
+        TestProfilingAnalysis module = new TestProfilingAnalysis();
+        try {
+            ICallStackElement[] elements = { createElement("1"), createElement("2") };
+            PackedCallGraph interned = new PackedCallGraph();
+            CallGraph expected = new CallGraph();
+            StackTraceInterner interner = new StackTraceInterner(module, interned);
+            for (int i = 0; i < 2 * SYMBOL_KEY_CHANGE; i++) {
+                ICallStackElement element = elements[i % 3 == 0 ? 1 : 0];
+                long[] stackTrace = STACK_TRACES[i % STACK_TRACES.length];
+                interner.addStackTrace(element, stackTrace, i);
+                expected.addAggregatedCallSite(element, module.getCallSite(element, stackTrace, i));
+            }
+            assertTrue(interned.isPacked());
+            assertTrue(interned.getNbPackedCallSites() > 0);
+            assertEquals(expected.getElements(), interned.getElements());
+            for (ICallStackElement element : elements) {
+                assertSameTrees(element.getName(), expected.getCallingContextTree(element), interned.getCallingContextTree(element));
+            }
+        } finally {
+            module.dispose();
+        }
+    }
+
+    /**
+     * Test that a packed callgraph is unpacked when a callsite that does not
+     * only count samples is added, and that the stack traces interned before
+     * are still counted
+     */
+    @Test
+    public void testUnpackedCallGraph() {
+        TestProfilingAnalysis module = new TestProfilingAnalysis();
+        try {
+            ICallStackElement element = createElement("1");
+            PackedCallGraph interned = new PackedCallGraph();
+            CallGraph expected = new CallGraph();
+            StackTraceInterner interner = new StackTraceInterner(module, interned);
+            for (int i = 0; i < 2 * STACK_TRACES.length; i++) {
+                long[] stackTrace = STACK_TRACES[i % STACK_TRACES.length];
+                interner.addStackTrace(element, stackTrace, i);
+                expected.addAggregatedCallSite(element, module.getCallSite(element, stackTrace, i));
+                if (i == STACK_TRACES.length) {
+                    AggregatedCallSite callSite = new AggregatedCallSite(CallStackSymbolFactory.createSymbol(1L, element, i), 10);
+                    interned.addAggregatedCallSite(element, callSite);
+                    expected.addAggregatedCallSite(element, callSite.copyOf());
+                    assertFalse(interned.isPacked());
+                }
+            }
+            assertSameTrees(element.getName(), expected.getCallingContextTree(element), interned.getCallingContextTree(element));
+        } finally {
+            module.dispose();
+        }
+    }
+
+    /**
+     * Test that the same stack trace of another element, or of the same
+     * element with another symbol key, is not added to the callsites of the
+     * stack traces already seen
+     */
+    @Test
+    public void testRepeatedStackTraceKeys() {
+        TestProfilingAnalysis module = new TestProfilingAnalysis();
+        try {
+            ICallStackElement element1 = createElement("1");
+            ICallStackElement element2 = createElement("2");
+            long[] stackTrace = { 1, 2, 3 };
+            CallGraph callGraph = new CallGraph();
+            StackTraceInterner interner = new StackTraceInterner(module, callGraph);
+            interner.addStackTrace(element1, stackTrace, 1);
+            interner.addStackTrace(element1, stackTrace, 2);
+            interner.addStackTrace(element2, stackTrace, 3);
+            interner.addStackTrace(element1, stackTrace, SYMBOL_KEY_CHANGE);
+            interner.addStackTrace(element1, stackTrace, 4);
+
+            Map<Object, Long> weights = getRootWeights(callGraph.getCallingContextTree(element1));
+            assertEquals(2, weights.size());
+            assertEquals(Long.valueOf(3), weights.get(CallStackSymbolFactory.createSymbol(1L, element1, 1)));
+            assertEquals(Long.valueOf(1), weights.get(CallStackSymbolFactory.createSymbol(1L, element1, SYMBOL_KEY_CHANGE)));
+
+            weights = getRootWeights(callGraph.getCallingContextTree(element2));
+            assertEquals(1, weights.size());
+            assertEquals(Long.valueOf(1), weights.get(CallStackSymbolFactory.createSymbol(1L, element2, 3)));
+        } finally {
+            module.dispose();
+        }
+    }
+
+    /**
+     * Test interning more distinct stack traces than the initial capacity of
+     * the interner, so that the stack traces already seen are found after the
+     * table is rehashed
+     */
+    @Test
+    public void testRehash() {
+        TestProfilingAnalysis module = new TestProfilingAnalysis();
+        try {
+            ICallStackElement element = createElement("1");
+            CallGraph interned = new CallGraph();
+            CallGraph expected = new CallGraph();
+            StackTraceInterner interner = new StackTraceInterner(module, interned);
+            int nbStackTraces = 3000;
+            for (int repeat = 0; repeat < 3; repeat++) {
+                for (int i = 0; i < nbStackTraces; i++) {
+                    // Vary the depth and the callers of the stack traces
+                    long[] stackTrace = (i % 2 == 0) ? new long[] { 1, 2 + i % 7, 100 + i } : new long[] { 1, 100 + i };
+                    interner.addStackTrace(element, stackTrace, i % SYMBOL_KEY_CHANGE);
+                    expected.addAggregatedCallSite(element, module.getCallSite(element, stackTrace, i % SYMBOL_KEY_CHANGE));
+                }
+            }
+            assertSameTrees(element.getName(), expected.getCallingContextTree(element), interned.getCallingContextTree(element));
+        } finally {
+            module.dispose();
+        }
+    }
+
+    private static Map<Object, Long> getRootWeights(Collection<AggregatedCallSite> callSites) {
+        Map<Object, Long> weights = new HashMap<>();
+        for (AggregatedCallSite callSite : callSites) {
+            weights.put(callSite.getObject(), callSite.getWeight());
+        }
+        return weights;
+    }
+
+    private static void assertSameTrees(String message, Collection<? extends WeightedTree<?>> expected, Collection<? extends WeightedTree<?>> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        Map<Object, WeightedTree<?>> actualTrees = new HashMap<>();
+        for (WeightedTree<?> tree : actual) {
+            actualTrees.put(tree.getObject(), tree);
+        }
+        for (WeightedTree<?> tree : expected) {
+            String treeMessage = message + '/' + tree.getObject();
+            WeightedTree<?> actualTree = actualTrees.get(tree.getObject());
+            assertNotNull(treeMessage, actualTree);
+            assertEquals(treeMessage, tree.getWeight(), actualTree.getWeight());
+            assertSameTrees(treeMessage, tree.getChildren(), actualTree.getChildren());
+        }
+    }
+}
@@ -19,6 +19,7 @@ import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.analysis.os.linux.core.model.HostThread;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ProcessStatusInterval;
@@ -301,7 +302,101 @@ public class CallStack {
      *            The consumer to consume the function calls
      */
     public void iterateOverCallStack(long startTime, long endTime, Consumer<ICalledFunction> consumer) {
-        // TODO Do we need this? If so, implement me!
+        new CallStackReader(this, fStateSystem, fQuarks, time -> ModelManager.getModelFor(getHostId(time)), new NullProgressMonitor())
+                .read(startTime, endTime, consumer);
+    }
+
+    /**
+     * Iterate over the callstack in a depth-first manner. The function calls
+     * of all depths are streamed from 2D queries to the state system over
+     * consecutive time windows and each call is consumed before its children. Calls are bounded by the time
+     * range and by their parent, like those returned by
+     * {@link #getNextFunction(long, int, ICalledFunction, IHostModel, long, long)}.
+     *
+     * @param startTime
+     *            The start time of the iteration
+     * @param endTime
+     *            The end time of the iteration
+     * @param model
+     *            The operating system model to retrieve extra information
+     * @param monitor
+     *            The progress monitor to cancel the iteration
+     * @param consumer
+     *            The consumer to consume the function calls
+     */
+    public void iterateOverCallStack(long startTime, long endTime, IHostModel model, IProgressMonitor monitor, Consumer<ICalledFunction> consumer) {
+        new CallStackReader(this, fStateSystem, fQuarks, time -> model, monitor)
+                .read(startTime, endTime, consumer);
+    }
+
+    /**
+     * Get the function calls that cross any of some times, ie that start before
+     * the time and end after it. The functions are read with a single query to
+     * the state system, they are not bounded by any time range and have their
+     * parent set. Since the parent of a function crossing a time also crosses
+     * it, parents are returned before their children.
+     *
+     * @param times
+     *            The times the functions should cross
+     * @param model
+     *            The operating system model to retrieve extra information
+     * @return The functions crossing the times
+     */
+    public List<ICalledFunction> getFunctionsCrossing(Collection<Long> times, IHostModel model) {
+        long ssStart = fStateSystem.getStartTime();
+        long ssEnd = fStateSystem.getCurrentEndTime();
+        List<Long> queryTimes = new ArrayList<>();
+        for (Long time : times) {
+            if (time > ssStart && time <= ssEnd) {
+                queryTimes.add(time);
+            }
+        }
+        if (queryTimes.isEmpty() || fQuarks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(queryTimes);
+        List<List<ITmfStateInterval>> depthIntervals = new ArrayList<>();
+        for (int i = 0; i < fQuarks.size(); i++) {
+            depthIntervals.add(new ArrayList<>());
+        }
+        try {
+            for (ITmfStateInterval interval : fStateSystem.query2D(fQuarks, queryTimes)) {
+                int depth = fQuarks.indexOf(interval.getAttribute());
+                if (depth >= 0 && !interval.getStateValue().isNull() && crossesAny(interval, queryTimes)) {
+                    depthIntervals.get(depth).add(interval);
+                }
+            }
+        } catch (StateSystemDisposedException | TimeRangeException | IndexOutOfBoundsException e) {
+            return Collections.emptyList();
+        }
+        List<ICalledFunction> functions = new ArrayList<>();
+        List<ICalledFunction> parents = Collections.emptyList();
+        for (List<ITmfStateInterval> intervals : depthIntervals) {
+            List<ICalledFunction> depthFunctions = new ArrayList<>(intervals.size());
+            for (ITmfStateInterval interval : intervals) {
+                long start = interval.getStartTime();
+                ICalledFunction parent = null;
+                for (ICalledFunction candidate : parents) {
+                    if (candidate.getStart() <= start && candidate.getEnd() > start) {
+                        parent = candidate;
+                        break;
+                    }
+                }
+                depthFunctions.add(CalledFunctionFactory.create(start, interval.getEndTime() + 1, interval.getValue(), getSymbolKeyAt(start), getThreadId(start), parent, model));
+            }
+            functions.addAll(depthFunctions);
+            parents = depthFunctions;
+        }
+        return functions;
+    }
+
+    private static boolean crossesAny(ITmfStateInterval interval, List<Long> sortedTimes) {
+        // Find the first time after the start of the interval
+        int index = Collections.binarySearch(sortedTimes, interval.getStartTime() + 1);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < sortedTimes.size() && sortedTimes.get(index) <= interval.getEndTime();
     }
 
     /**
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.flamechart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.Activator;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CalledFunctionFactory;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
+import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
+import org.eclipse.tracecompass.statesystem.core.exceptions.TimeRangeException;
+import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Streams all the function calls of a {@link CallStack} in a time range with
+ * 2D queries on the quarks of all its depths, instead of querying the state
+ * system for each function.
+ *
+ * The range is read in consecutive time windows. The intervals starting in a
+ * window are sorted by start time, then by depth, which is the depth-first
+ * order of the calls, each call before its children, so only the intervals of
+ * one window are in memory at a time. The windows are resized so that each
+ * holds at most {@link #MAX_WINDOW_INTERVALS} intervals: a window with more
+ * intervals is read again with half its duration, and the next window is
+ * twice as long when a window has few intervals. The calls have their
+ * parent set and their times bounded by the range and their parent's times,
+ * as {@link CallStack#getNextFunction(long, int, ICalledFunction, IHostModel,
+ * long, long)} would have returned them.
+ */
+public class CallStackReader {
+
+    /** The number of windows to start reading the range with */
+    private static final int INITIAL_NB_WINDOWS = 64;
+    /** The maximum number of intervals read in a window */
+    private static final int MAX_WINDOW_INTERVALS = 1 << 14;
+
+    private final CallStack fCallStack;
+    private final ITmfStateSystem fStateSystem;
+    private final List<Integer> fQuarks;
+    private final Map<Integer, Integer> fDepths = new HashMap<>();
+    private final LongFunction<IHostModel> fModelProvider;
+    private final IProgressMonitor fMonitor;
+    private final Comparator<ITmfStateInterval> fComparator;
+    private final int fInitialNbWindows;
+    private final int fMaxWindowIntervals;
+
+    /**
+     * Constructor
+     *
+     * @param callStack
+     *            The callstack to read
+     * @param ss
+     *            The state system containing the callstack
+     * @param quarks
+     *            The quarks of each depth of the callstack
+     * @param modelProvider
+     *            Provides the host model of the functions from their start
+     *            time
+     * @param monitor
+     *            The progress monitor to cancel the read
+     */
+    public CallStackReader(CallStack callStack, ITmfStateSystem ss, List<Integer> quarks, LongFunction<IHostModel> modelProvider, IProgressMonitor monitor) {
+        this(callStack, ss, quarks, modelProvider, monitor, INITIAL_NB_WINDOWS, MAX_WINDOW_INTERVALS);
+    }
+
+    /**
+     * Constructor with the sizes of the windows, so that small callstacks can
+     * be read in many windows
+     *
+     * @param callStack
+     *            The callstack to read
+     * @param ss
+     *            The state system containing the callstack
+     * @param quarks
+     *            The quarks of each depth of the callstack
+     * @param modelProvider
+     *            Provides the host model of the functions from their start
+     *            time
+     * @param monitor
+     *            The progress monitor to cancel the read
+     * @param initialNbWindows
+     *            The number of windows to start reading the range with
+     * @param maxWindowIntervals
+     *            The maximum number of intervals read in a window
+     */
+    @VisibleForTesting
+    public CallStackReader(CallStack callStack, ITmfStateSystem ss, List<Integer> quarks, LongFunction<IHostModel> modelProvider, IProgressMonitor monitor, int initialNbWindows, int maxWindowIntervals) {
+        fInitialNbWindows = initialNbWindows;
+        fMaxWindowIntervals = maxWindowIntervals;
+        fCallStack = callStack;
+        fStateSystem = ss;
+        fQuarks = quarks;
+        for (int depth = 0; depth < quarks.size(); depth++) {
+            fDepths.put(quarks.get(depth), depth);
+        }
+        fModelProvider = modelProvider;
+        fMonitor = monitor;
+        fComparator = Comparator.comparingLong(ITmfStateInterval::getStartTime)
+                .thenComparingInt(interval -> getDepth(interval));
+    }
+
+    /**
+     * Visit the function calls depth-first, each call before its children
+     *
+     * @param start
+     *            The start of the time range, functions are bounded by it
+     * @param end
+     *            The end of the time range, functions are bounded by it
+     * @param consumer
+     *            The consumer of the function calls
+     */
+    public void read(long start, long end, Consumer<ICalledFunction> consumer) {
+        long queryStart = Math.max(fStateSystem.getStartTime(), start);
+        long queryEnd = Math.min(fStateSystem.getCurrentEndTime(), end);
+        if (fQuarks.isEmpty() || queryStart > queryEnd) {
+            return;
+        }
+        /* The last call visited at each depth, the parents of the next calls */
+        @Nullable ICalledFunction[] parents = new @Nullable ICalledFunction[fQuarks.size()];
+        long duration = (queryEnd - queryStart) / fInitialNbWindows + 1;
+        long windowStart = queryStart;
+        while (windowStart <= queryEnd && !fMonitor.isCanceled()) {
+            long windowEnd = queryEnd - windowStart < duration ? queryEnd : windowStart + duration - 1;
+            List<ITmfStateInterval> intervals = new ArrayList<>();
+            try {
+                for (ITmfStateInterval interval : fStateSystem.query2D(fQuarks, windowStart, windowEnd)) {
+                    // The intervals starting before the window were visited with a previous one
+                    if (!interval.getStateValue().isNull() && (interval.getStartTime() >= windowStart || windowStart == queryStart)) {
+                        intervals.add(interval);
+                    }
+                }
+            } catch (StateSystemDisposedException | TimeRangeException e) {
+                Activator.getInstance().logError("Error reading the callstack", e); //$NON-NLS-1$
+                return;
+            }
+            if (intervals.size() > fMaxWindowIntervals && windowEnd > windowStart) {
+                // Too many intervals, read a smaller window
+                duration = (windowEnd - windowStart + 1) / 2;
+                continue;
+            }
+            intervals.sort(fComparator);
+            for (ITmfStateInterval interval : intervals) {
+                if (fMonitor.isCanceled()) {
+                    return;
+                }
+                visit(interval, parents, start, end, consumer);
+            }
+            windowStart = windowEnd + 1;
+            if (intervals.size() < fMaxWindowIntervals / 4 && duration < Long.MAX_VALUE / 2) {
+                duration *= 2;
+            }
+        }
+    }
+
+    private int getDepth(ITmfStateInterval interval) {
+        Integer depth = fDepths.get(interval.getAttribute());
+        if (depth == null) {
+            throw new IllegalStateException("The interval " + interval + " is not in the callstack"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return depth;
+    }
+
+    private void visit(ITmfStateInterval interval, @Nullable ICalledFunction[] parents, long start, long end, Consumer<ICalledFunction> consumer) {
+        int depth = getDepth(interval);
+        long intervalStart = interval.getStartTime();
+        long intervalEnd = interval.getEndTime() + 1;
+        long rangeStart = start;
+        long rangeEnd = end;
+        ICalledFunction parent = depth > 0 ? parents[depth - 1] : null;
+        if (parent != null) {
+            rangeStart = parent.getStart();
+            rangeEnd = parent.getEnd();
+        }
+        ICalledFunction function = null;
+        // Only the calls intersecting the range and their parent are visited
+        if ((depth == 0 || parent != null) && intervalEnd > rangeStart && intervalStart < rangeEnd) {
+            function = CalledFunctionFactory.create(Math.max(rangeStart, intervalStart), Math.min(rangeEnd, intervalEnd), interval.getValue(),
+                    fCallStack.getSymbolKeyAt(intervalStart), fCallStack.getThreadId(intervalStart), parent, fModelProvider.apply(intervalStart));
+            consumer.accept(function);
+        }
+        parents[depth] = function;
+        // The calls visited deeper are not the children of this call
+        Arrays.fill(parents, depth + 1, parents.length, null);
+    }
+}
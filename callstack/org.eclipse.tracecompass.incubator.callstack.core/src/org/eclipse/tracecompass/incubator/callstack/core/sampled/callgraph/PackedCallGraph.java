@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.PackedWeightedTreeSet;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A callgraph of sampled stack traces, whose callsites are kept in a
+ * {@link PackedWeightedTreeSet} instead of callsite objects. The callsites of
+ * sampled stack traces only count the samples, so each of them only needs a
+ * few primitive fields.
+ *
+ * The callsites returned by {@link #getCallingContextTree(ICallStackElement)}
+ * are read-only views, their {@link AggregatedCallSite#copyOf()} method
+ * returns a regular {@link AggregatedStackTraces}.
+ *
+ * If a callsite that keeps more than the weights is added, for example with
+ * statistics, the callgraph is unpacked: its callsites are copied to regular
+ * callsite objects and it then behaves like a {@link CallGraph}.
+ */
+public class PackedCallGraph extends CallGraph {
+
+    private @Nullable PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> fPackedSet = new PackedWeightedTreeSet<>(PackedCallSite::new);
+    private final Set<ICallStackElement> fElements = new HashSet<>();
+
+    /**
+     * Get whether the callsites of this callgraph are still packed
+     *
+     * @return <code>false</code> if the callgraph was unpacked
+     */
+    public boolean isPacked() {
+        return fPackedSet != null;
+    }
+
+    /**
+     * Get the number of packed callsites of this callgraph
+     *
+     * @return The number of callsites, or 0 if the callgraph was unpacked
+     */
+    public int getNbPackedCallSites() {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        return packedSet == null ? 0 : packedSet.getNbNodes();
+    }
+
+    @Override
+    public Collection<AggregatedCallSite> getCallingContextTree(ICallStackElement element) {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        if (packedSet == null) {
+            return super.getCallingContextTree(element);
+        }
+        return packedSet.getTreesFor(element);
+    }
+
+    @Override
+    public void addAggregatedCallSite(ICallStackElement dstGroup, AggregatedCallSite callsite) {
+        addAggregatedCallSite(dstGroup, callsite, 1);
+    }
+
+    /**
+     * Add an aggregated callsite to a callstack element a number of times, for
+     * example for the number of samples of a stack trace. The weights of the
+     * callsites that only count samples are multiplied by the count, the other
+     * callsites are merged once per sample. The callsite is not kept by the
+     * callgraph.
+     *
+     * @param dstGroup
+     *            the destination group
+     * @param callsite
+     *            the callsite to add
+     * @param count
+     *            the number of times to add the callsite
+     */
+    public void addAggregatedCallSite(ICallStackElement dstGroup, AggregatedCallSite callsite, long count) {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        if (packedSet != null && onlyMergesWeights(callsite)) {
+            packedSet.addWeightedTree(dstGroup, callsite, count);
+            fElements.add(dstGroup);
+            return;
+        }
+        unpack();
+        AggregatedCallSite copy = callsite.copyOf();
+        for (long i = 1; i < count; i++) {
+            copy.merge(callsite);
+        }
+        super.addAggregatedCallSite(dstGroup, copy);
+    }
+
+    /**
+     * Add the callsites of a stack trace, from the root, to a callstack
+     * element, each with the same weight
+     *
+     * @param dstGroup
+     *            the destination group
+     * @param symbols
+     *            the symbols of the callsites of the stack trace, from the
+     *            root
+     * @param weight
+     *            the weight to add to each callsite
+     * @return The ID of the last callsite, to add the same stack trace again
+     *         with {@link #addToStackTrace(int, long)}
+     * @throws IllegalStateException
+     *             if the callgraph was unpacked
+     */
+    public int addStackTrace(ICallStackElement dstGroup, ICallStackSymbol[] symbols, long weight) {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        if (packedSet == null) {
+            throw new IllegalStateException("The callgraph was unpacked"); //$NON-NLS-1$
+        }
+        fElements.add(dstGroup);
+        return packedSet.addPath(dstGroup, Arrays.asList(symbols), weight);
+    }
+
+    /**
+     * Add a weight to the callsites of a stack trace added with
+     * {@link #addStackTrace(ICallStackElement, ICallStackSymbol[], long)}
+     *
+     * @param callSiteId
+     *            the ID of the last callsite of the stack trace
+     * @param weight
+     *            the weight to add to each callsite
+     * @throws IllegalStateException
+     *             if the callgraph was unpacked
+     */
+    public void addToStackTrace(int callSiteId, long weight) {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        if (packedSet == null) {
+            throw new IllegalStateException("The callgraph was unpacked"); //$NON-NLS-1$
+        }
+        packedSet.addToPath(callSiteId, weight);
+    }
+
+    @Override
+    public Collection<ICallStackElement> getElements() {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        if (packedSet == null) {
+            return super.getElements();
+        }
+        return ImmutableSet.copyOf(packedSet.getElements());
+    }
+
+    /**
+     * Copy the packed callsites to regular callsites, to add callsites that
+     * keep more than their weights
+     */
+    private void unpack() {
+        PackedWeightedTreeSet<ICallStackSymbol, ICallStackElement, AggregatedCallSite> packedSet = fPackedSet;
+        if (packedSet == null) {
+            return;
+        }
+        fPackedSet = null;
+        for (ICallStackElement element : fElements) {
+            for (AggregatedCallSite callsite : packedSet.getTreesFor(element)) {
+                super.addAggregatedCallSite(element, callsite.copyOf());
+            }
+        }
+        fElements.clear();
+    }
+
+    /**
+     * Get whether a callsite and its children only count samples, so that
+     * merging them only adds their weights
+     *
+     * @param callsite
+     *            The callsite
+     * @return <code>true</code> if the callsites are all
+     *         {@link AggregatedStackTraces}
+     */
+    static boolean onlyMergesWeights(WeightedTree<?> callsite) {
+        if (!(callsite instanceof AggregatedStackTraces || callsite instanceof PackedCallSite)) {
+            return false;
+        }
+        for (WeightedTree<?> child : callsite.getChildren()) {
+            if (!onlyMergesWeights(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A read-only view of a packed callsite
+     */
+    private static final class PackedCallSite extends AggregatedCallSite {
+
+        private final Supplier<Collection<AggregatedCallSite>> fChildren;
+
+        public PackedCallSite(ICallStackSymbol symbol, long weight, Supplier<Collection<AggregatedCallSite>> children) {
+            super(symbol, weight);
+            fChildren = children;
+        }
+
+        @Override
+        public Collection<WeightedTree<ICallStackSymbol>> getChildren() {
+            return Collections.unmodifiableCollection(fChildren.get());
+        }
+
+        @Override
+        public AggregatedCallSite copyOf() {
+            AggregatedStackTraces copy = new AggregatedStackTraces(getObject());
+            copy.addToWeight(getWeight() - copy.getWeight());
+            for (WeightedTree<ICallStackSymbol> child : getChildren()) {
+                copy.addChild(child.copyOf());
+            }
+            return copy;
+        }
+
+        @Override
+        public void addToWeight(long weight) {
+            throw new UnsupportedOperationException("Packed callsites are read-only, use a copy"); //$NON-NLS-1$
+        }
+
+        @Override
+        public void addChild(WeightedTree<ICallStackSymbol> child) {
+            throw new UnsupportedOperationException("Packed callsites are read-only, use a copy"); //$NON-NLS-1$
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
@@ -55,6 +56,7 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
     private final Set<ICallStackElement> fRootElements = new HashSet<>();
 
     private @Nullable CallGraph fFullRangeCallGraph;
+    private volatile @Nullable SampleStore fSampleStore;
     private @Nullable Collection<ISymbolProvider> fSymbolProviders = null;
 
     /**
@@ -78,13 +80,41 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
 
     @Override
     public CallGraph getCallGraph(ITmfTimestamp start, ITmfTimestamp end) {
-        CallGraph cg = executeForRange(new TmfTimeRange(start, end));
+        // Aggregate the samples stored by the analysis if it was run
+        SampleStore store = fSampleStore;
+        if (store != null) {
+            return store.getCallGraph(start.toNanos(), end.toNanos());
+        }
+        CallGraph cg = executeForRange(new TmfTimeRange(start, end), null);
         if (cg == null) {
             return CallGraph.EMPTY_GRAPH;
         }
         return cg;
     }
 
+    /**
+     * Get the callsites of the samples of some elements in a time range,
+     * aggregated from the samples stored by the analysis, without reading the
+     * trace again
+     *
+     * @param elements
+     *            Selects the elements whose samples to aggregate
+     * @param start
+     *            The start of the range, inclusive
+     * @param end
+     *            The end of the range, inclusive
+     * @return The aggregated callsites, one per distinct root symbol, or
+     *         <code>null</code> if the analysis has not completed and the
+     *         samples are not stored yet
+     */
+    protected @Nullable Collection<AggregatedCallSite> getStoredSamples(Predicate<ICallStackElement> elements, long start, long end) {
+        SampleStore store = fSampleStore;
+        if (store == null) {
+            return null;
+        }
+        return store.getCallSites(elements, start, end);
+    }
+
     @Override
     public CallGraph getCallGraph() {
         CallGraph cg = fFullRangeCallGraph;
@@ -163,17 +193,38 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
      */
     protected abstract @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(ITmfEvent event);
 
+    /**
+     * Get the stack trace of an event as an array of addresses, for analyses
+     * whose samples are such arrays. When this method returns a stack trace,
+     * it is used instead of {@link #getProfiledStackTrace(ITmfEvent)} and the
+     * repeated stack traces of an element are added to the callgraph without
+     * creating new callsites.
+     *
+     * @param event
+     *            The trace event to process
+     * @return A pair of callstack element and stack trace, where the symbol at
+     *         position 0 is the top of the stack, or <code>null</code> to use
+     *         {@link #getProfiledStackTrace(ITmfEvent)} for this event
+     */
+    protected @Nullable Pair<ICallStackElement, long[]> getSampledStackTrace(ITmfEvent event) {
+        return null;
+    }
+
     @Override
     protected boolean executeAnalysis(@NonNull IProgressMonitor monitor) throws TmfAnalysisException {
-        CallGraph callgraph = executeForRange(TmfTimeRange.ETERNITY);
+        // Store the samples while reading the trace to build range callgraphs
+        SampleStore store = new SampleStore();
+        CallGraph callgraph = executeForRange(TmfTimeRange.ETERNITY, store);
         if (callgraph == null) {
             return false;
         }
+        store.done();
+        fSampleStore = store;
         fFullRangeCallGraph = callgraph;
         return true;
     }
 
-    private @Nullable CallGraph executeForRange(TmfTimeRange range) {
+    private @Nullable CallGraph executeForRange(TmfTimeRange range, @Nullable SampleStore store) {
         ITmfTrace trace = getTrace();
         if (trace == null) {
             throw new NullPointerException("Trace has not been set, yet the analysis is being run!"); //$NON-NLS-1$
@@ -185,8 +236,9 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
         }
 
         try {
-            CallGraph callGraph = new CallGraph();
-            request = new ProfilingEventRequest(trace, callGraph, range);
+            // The callsites of sampled stack traces are packed
+            CallGraph callGraph = new PackedCallGraph();
+            request = new ProfilingEventRequest(trace, callGraph, range, store);
             fRequest = request;
             trace.sendRequest(request);
 
@@ -213,6 +265,8 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
 
         private final ITmfTrace fTrace;
         private final CallGraph fCallGraph;
+        private final @Nullable SampleStore fStore;
+        private final StackTraceInterner fInterner;
 
         /**
          * Constructor
@@ -223,8 +277,11 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
          *            The callgraph to fill
          * @param range
          *            The time range of this request
+         * @param store
+         *            The store to add the samples to, or <code>null</code> if
+         *            the samples are not stored
          */
-        public ProfilingEventRequest(ITmfTrace trace, CallGraph callgraph, TmfTimeRange range) {
+        public ProfilingEventRequest(ITmfTrace trace, CallGraph callgraph, TmfTimeRange range, @Nullable SampleStore store) {
             super(TmfEvent.class,
                     range,
                     0,
@@ -232,6 +289,8 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
                     ITmfEventRequest.ExecutionType.BACKGROUND);
             fTrace = trace;
             fCallGraph = callgraph;
+            fStore = store;
+            fInterner = new StackTraceInterner(ProfilingCallGraphAnalysisModule.this, callgraph, store);
         }
 
         @Override
@@ -253,10 +312,19 @@ public abstract class ProfilingCallGraphAnalysisModule extends TmfAbstractAnalys
         }
 
         private void processEvent(ITmfEvent event) {
+            Pair<ICallStackElement, long[]> stackTrace = getSampledStackTrace(event);
+            if (stackTrace != null) {
+                fInterner.addStackTrace(stackTrace.getFirst(), stackTrace.getSecond(), event.getTimestamp().toNanos());
+                return;
+            }
             Pair<ICallStackElement, AggregatedCallSite> perfCallSite = getProfiledStackTrace(event);
             if (perfCallSite == null) {
                 return;
             }
+            SampleStore store = fStore;
+            if (store != null) {
+                store.addSample(event.getTimestamp().toNanos(), perfCallSite.getFirst(), perfCallSite.getSecond());
+            }
             fCallGraph.addAggregatedCallSite(perfCallSite.getFirst(), perfCallSite.getSecond());
         }
     }
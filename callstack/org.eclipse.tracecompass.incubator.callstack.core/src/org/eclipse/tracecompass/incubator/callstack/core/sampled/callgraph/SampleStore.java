@@ -0,0 +1,385 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+
+/**
+ * A store of the samples of a profiled trace, to aggregate the call graph of
+ * any time range without reading the trace again. The samples of each element
+ * are kept in columns: one for the timestamps and one for the ID of the stack
+ * of each sample. The stacks are interned, each distinct stack of an element
+ * being kept only once.
+ *
+ * The store is filled while reading the trace with
+ * {@link #addSample(long, ICallStackElement, AggregatedCallSite)}, or with
+ * {@link #addSample(long, int)} for stacks interned by the caller. Once
+ * {@link #done()} is called, it is read-only and can be queried concurrently.
+ */
+class SampleStore {
+
+    private static final int INITIAL_SIZE = 64;
+    private static final int INITIAL_TABLE_SIZE = 1024;
+    private static final int NO_STACK = -1;
+
+    /** A distinct stack, with the element it belongs to */
+    private static class Stack {
+        private final ICallStackElement fElement;
+        private final AggregatedCallSite fCallSite;
+        private final ElementSamples fSamples;
+
+        public Stack(ICallStackElement element, AggregatedCallSite callSite, ElementSamples samples) {
+            fElement = element;
+            fCallSite = callSite;
+            fSamples = samples;
+        }
+    }
+
+    /** The samples of an element, in columns sorted by time */
+    private static class ElementSamples {
+        private long[] fTimes = new long[INITIAL_SIZE];
+        private int[] fStackIds = new int[INITIAL_SIZE];
+        private int fSize = 0;
+        private boolean fSorted = true;
+
+        public void add(long time, int stackId) {
+            if (fSize == fTimes.length) {
+                int newLength = fSize * 2;
+                fTimes = Arrays.copyOf(fTimes, newLength);
+                fStackIds = Arrays.copyOf(fStackIds, newLength);
+            }
+            if (fSize > 0 && time < fTimes[fSize - 1]) {
+                fSorted = false;
+            }
+            fTimes[fSize] = time;
+            fStackIds[fSize] = stackId;
+            fSize++;
+        }
+
+        /**
+         * Sort the samples by time, they may not be added in order for
+         * experiments whose traces are not synchronized
+         */
+        public void done() {
+            if (fSorted) {
+                fTimes = Arrays.copyOf(fTimes, fSize);
+                fStackIds = Arrays.copyOf(fStackIds, fSize);
+                return;
+            }
+            Integer[] order = new Integer[fSize];
+            for (int i = 0; i < fSize; i++) {
+                order[i] = i;
+            }
+            long[] times = fTimes;
+            Arrays.sort(order, (i1, i2) -> Long.compare(times[i1], times[i2]));
+            long[] sortedTimes = new long[fSize];
+            int[] sortedStackIds = new int[fSize];
+            for (int i = 0; i < fSize; i++) {
+                sortedTimes[i] = fTimes[order[i]];
+                sortedStackIds[i] = fStackIds[order[i]];
+            }
+            fTimes = sortedTimes;
+            fStackIds = sortedStackIds;
+            fSorted = true;
+        }
+
+        /**
+         * Get the index of the first sample at or after a time
+         */
+        public int ceilingIndex(long time) {
+            int low = 0;
+            int high = fSize;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (fTimes[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final List<Stack> fStacks = new ArrayList<>();
+    private final Map<ICallStackElement, ElementSamples> fSamples = new HashMap<>();
+    /*
+     * Open addressing table of the stacks added with their callsites, with the
+     * hash of each stack, to find a stack without allocating a key
+     */
+    private int[] fTableStackIds = newTable(INITIAL_TABLE_SIZE);
+    private int[] fTableHashes = new int[INITIAL_TABLE_SIZE];
+    private int fTableSize = 0;
+
+    /**
+     * Add a sample to the store, its stack being interned with the stacks of
+     * the element that have the same callsites
+     *
+     * @param time
+     *            The timestamp of the sample
+     * @param element
+     *            The element this sample belongs to
+     * @param callSite
+     *            The stack of this sample
+     */
+    public void addSample(long time, ICallStackElement element, AggregatedCallSite callSite) {
+        int hash = element.hashCode() * 31 + hashTree(callSite);
+        int[] stackIds = fTableStackIds;
+        int mask = stackIds.length - 1;
+        int index = hash & mask;
+        while (stackIds[index] != NO_STACK) {
+            int stackId = stackIds[index];
+            Stack stack = fStacks.get(stackId);
+            if (fTableHashes[index] == hash && stack.fElement.equals(element) && sameTree(stack.fCallSite, callSite)) {
+                addSample(time, stackId);
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        int stackId = addStack(element, callSite);
+        stackIds[index] = stackId;
+        fTableHashes[index] = hash;
+        fTableSize++;
+        if (fTableSize * 2 > stackIds.length) {
+            rehash();
+        }
+        addSample(time, stackId);
+    }
+
+    /**
+     * Add a stack to the store, for stacks interned by the caller
+     *
+     * @param element
+     *            The element this stack belongs to
+     * @param callSite
+     *            The callsites of the stack
+     * @return The ID of the stack, to add samples with
+     *         {@link #addSample(long, int)}
+     */
+    public int addStack(ICallStackElement element, AggregatedCallSite callSite) {
+        int stackId = fStacks.size();
+        ElementSamples samples = fSamples.computeIfAbsent(element, e -> new ElementSamples());
+        // Keep a copy, the callsite will be merged in the full callgraph
+        fStacks.add(new Stack(element, callSite.copyOf(), samples));
+        return stackId;
+    }
+
+    /**
+     * Add a sample of a stack to the store
+     *
+     * @param time
+     *            The timestamp of the sample
+     * @param stackId
+     *            The ID of the stack, as returned by
+     *            {@link #addStack(ICallStackElement, AggregatedCallSite)}
+     */
+    public void addSample(long time, int stackId) {
+        fStacks.get(stackId).fSamples.add(time, stackId);
+    }
+
+    /**
+     * Get the hash of the symbols and weights of a callsite and its children
+     */
+    private static int hashTree(WeightedTree<?> callSite) {
+        int childrenHash = 0;
+        for (WeightedTree<?> child : callSite.getChildren()) {
+            // The children are not ordered
+            childrenHash += hashTree(child);
+        }
+        return (callSite.getObject().hashCode() * 31 + Long.hashCode(callSite.getWeight())) * 31 + childrenHash;
+    }
+
+    /**
+     * Get whether two callsites have the same symbols and weights, as well as
+     * their children
+     */
+    private static boolean sameTree(WeightedTree<?> callSite, WeightedTree<?> other) {
+        if (!callSite.getObject().equals(other.getObject()) || callSite.getWeight() != other.getWeight()) {
+            return false;
+        }
+        Collection<? extends WeightedTree<?>> children = callSite.getChildren();
+        Collection<? extends WeightedTree<?>> otherChildren = other.getChildren();
+        if (children.size() != otherChildren.size()) {
+            return false;
+        }
+        for (WeightedTree<?> child : children) {
+            @Nullable WeightedTree<?> otherChild = null;
+            for (WeightedTree<?> candidate : otherChildren) {
+                if (candidate.getObject().equals(child.getObject())) {
+                    otherChild = candidate;
+                    break;
+                }
+            }
+            if (otherChild == null || !sameTree(child, otherChild)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] oldStackIds = fTableStackIds;
+        int[] oldHashes = fTableHashes;
+        int[] stackIds = newTable(oldStackIds.length * 2);
+        int[] hashes = new int[stackIds.length];
+        int mask = stackIds.length - 1;
+        for (int i = 0; i < oldStackIds.length; i++) {
+            if (oldStackIds[i] == NO_STACK) {
+                continue;
+            }
+            int index = oldHashes[i] & mask;
+            while (stackIds[index] != NO_STACK) {
+                index = (index + 1) & mask;
+            }
+            stackIds[index] = oldStackIds[i];
+            hashes[index] = oldHashes[i];
+        }
+        fTableStackIds = stackIds;
+        fTableHashes = hashes;
+    }
+
+    private static int[] newTable(int size) {
+        int[] table = new int[size];
+        Arrays.fill(table, NO_STACK);
+        return table;
+    }
+
+    /**
+     * Complete the store, the samples are sorted by time and the store should
+     * not be modified afterwards
+     */
+    public void done() {
+        // No stack is added anymore
+        fTableStackIds = newTable(1);
+        fTableHashes = new int[1];
+        fTableSize = 0;
+        fSamples.values().forEach(ElementSamples::done);
+    }
+
+    /**
+     * Get the call graph of the samples in a time range
+     *
+     * @param start
+     *            The start of the range, inclusive
+     * @param end
+     *            The end of the range, inclusive
+     * @return The call graph for the range
+     */
+    public CallGraph getCallGraph(long start, long end) {
+        // Count the samples of each stack in the range
+        int[] counts = new int[fStacks.size()];
+        for (ElementSamples samples : fSamples.values()) {
+            for (int i = samples.ceilingIndex(start); i < samples.fSize && samples.fTimes[i] <= end; i++) {
+                counts[samples.fStackIds[i]]++;
+            }
+        }
+
+        // Add each stack once, with the weights of all its samples
+        PackedCallGraph callGraph = new PackedCallGraph();
+        for (int stackId = 0; stackId < counts.length; stackId++) {
+            int count = counts[stackId];
+            if (count == 0) {
+                continue;
+            }
+            Stack stack = fStacks.get(stackId);
+            callGraph.addAggregatedCallSite(stack.fElement, stack.fCallSite, count);
+        }
+        return callGraph;
+    }
+
+    /**
+     * Get the callsites of the samples of some elements in a time range, for
+     * example the elements of a thread
+     *
+     * @param elements
+     *            Selects the elements whose samples to aggregate
+     * @param start
+     *            The start of the range, inclusive
+     * @param end
+     *            The end of the range, inclusive
+     * @return The aggregated callsites, one per distinct root symbol
+     */
+    public Collection<AggregatedCallSite> getCallSites(Predicate<ICallStackElement> elements, long start, long end) {
+        Map<Object, AggregatedCallSite> callSites = new LinkedHashMap<>();
+        for (Entry<ICallStackElement, ElementSamples> entry : fSamples.entrySet()) {
+            if (!elements.test(entry.getKey())) {
+                continue;
+            }
+            ElementSamples samples = entry.getValue();
+            // Sort the stack IDs of the range to count the samples of each stack
+            int from = samples.ceilingIndex(start);
+            int to = from;
+            while (to < samples.fSize && samples.fTimes[to] <= end) {
+                to++;
+            }
+            int[] stackIds = Arrays.copyOfRange(samples.fStackIds, from, to);
+            Arrays.sort(stackIds);
+            int i = 0;
+            while (i < stackIds.length) {
+                int stackId = stackIds[i];
+                int count = 0;
+                while (i < stackIds.length && stackIds[i] == stackId) {
+                    count++;
+                    i++;
+                }
+                AggregatedCallSite sampled = getSampledCallSite(fStacks.get(stackId).fCallSite, count);
+                AggregatedCallSite callSite = callSites.putIfAbsent(sampled.getObject(), sampled);
+                if (callSite != null) {
+                    callSite.merge(sampled);
+                }
+            }
+        }
+        return callSites.values();
+    }
+
+    /**
+     * Get a copy of the callsite of a stack with the weights of a number of
+     * samples of that stack. The weights of stacks whose callsites only merge
+     * weights are multiplied by the number of samples, the other stacks are
+     * merged once per sample.
+     */
+    private static AggregatedCallSite getSampledCallSite(AggregatedCallSite callSite, int count) {
+        AggregatedCallSite sampled = callSite.copyOf();
+        if (count == 1) {
+            return sampled;
+        }
+        if (PackedCallGraph.onlyMergesWeights(callSite)) {
+            scaleWeights(sampled, count);
+            return sampled;
+        }
+        for (int i = 1; i < count; i++) {
+            sampled.merge(callSite);
+        }
+        return sampled;
+    }
+
+    private static void scaleWeights(WeightedTree<?> callSite, int count) {
+        callSite.addToWeight(callSite.getWeight() * (count - 1));
+        for (WeightedTree<?> child : callSite.getChildren()) {
+            scaleWeights(child, count);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+
+/**
+ * Interns the stack traces added to a callgraph. The first time a stack trace
+ * is seen for an element, its callsites are created and added to the
+ * callgraph, and the path of callsites it ends up in is kept. When the same
+ * stack trace is seen again, the weights of the callsites of that path are
+ * incremented, without creating new callsites or symbols.
+ *
+ * The stack traces are kept in an open addressing hash table, so that looking
+ * up a stack trace does not allocate any object. If the callgraph is a
+ * {@link PackedCallGraph}, the ID of the last callsite of the stack trace is
+ * kept instead of the path of callsites.
+ */
+public class StackTraceInterner {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_CALLSITE = -1;
+
+    /** A stack trace already added to the callgraph */
+    private static class InternedStack {
+        private final ICallStackElement fElement;
+        private final int fSymbolKey;
+        private final long[] fStackTrace;
+        private final int fHash;
+        /* The callsites of the stack trace in the callgraph, from the root */
+        private final WeightedTree<ICallStackSymbol>[] fPath;
+        /* The weight to add to each callsite of the path */
+        private final long[] fWeights;
+        /* The ID of this stack trace in the sample store, if any */
+        private final int fStoreId;
+        /* The ID of the last callsite in the packed callgraph, if any */
+        private final int fPackedId;
+
+        public InternedStack(ICallStackElement element, int symbolKey, long[] stackTrace, int hash, WeightedTree<ICallStackSymbol>[] path, long[] weights, int storeId, int packedId) {
+            fElement = element;
+            fSymbolKey = symbolKey;
+            fStackTrace = stackTrace;
+            fHash = hash;
+            fPath = path;
+            fWeights = weights;
+            fStoreId = storeId;
+            fPackedId = packedId;
+        }
+    }
+
+    private final ProfilingCallGraphAnalysisModule fModule;
+    private final CallGraph fCallGraph;
+    private final @Nullable SampleStore fStore;
+    private @Nullable InternedStack[] fTable = new InternedStack[INITIAL_CAPACITY];
+    private int fSize = 0;
+    private boolean fHasPackedIds = false;
+
+    /**
+     * Constructor
+     *
+     * @param module
+     *            The module creating the callsites
+     * @param callGraph
+     *            The callgraph to add the stack traces to
+     */
+    public StackTraceInterner(ProfilingCallGraphAnalysisModule module, CallGraph callGraph) {
+        this(module, callGraph, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param module
+     *            The module creating the callsites
+     * @param callGraph
+     *            The callgraph to add the stack traces to
+     * @param store
+     *            The store to add the samples to, or <code>null</code> if the
+     *            samples are not stored
+     */
+    StackTraceInterner(ProfilingCallGraphAnalysisModule module, CallGraph callGraph, @Nullable SampleStore store) {
+        fModule = module;
+        fCallGraph = callGraph;
+        fStore = store;
+    }
+
+    /**
+     * Add a stack trace to the callgraph
+     *
+     * @param element
+     *            The element this stack trace belongs to
+     * @param stackTrace
+     *            The stack trace, the symbol at position 0 being the top of the
+     *            stack
+     * @param ts
+     *            The timestamp of this stack trace
+     */
+    public void addStackTrace(ICallStackElement element, long[] stackTrace, long ts) {
+        if (stackTrace.length == 0) {
+            return;
+        }
+        PackedCallGraph packedCallGraph = getPackedCallGraph();
+        if (packedCallGraph == null && fHasPackedIds) {
+            // The callgraph was unpacked, its callsite IDs are not valid anymore
+            fTable = new InternedStack[INITIAL_CAPACITY];
+            fSize = 0;
+            fHasPackedIds = false;
+        }
+        int symbolKey = element.getSymbolKeyAt(ts);
+        int hash = (System.identityHashCode(element) * 31 + symbolKey) * 31 + Arrays.hashCode(stackTrace);
+        @Nullable InternedStack[] table = fTable;
+        int mask = table.length - 1;
+        int index = hash & mask;
+        InternedStack interned = table[index];
+        while (interned != null) {
+            if (interned.fHash == hash && interned.fElement == element && interned.fSymbolKey == symbolKey && Arrays.equals(interned.fStackTrace, stackTrace)) {
+                // Already seen, just add the weights to the path
+                if (packedCallGraph != null && interned.fPackedId != NO_CALLSITE) {
+                    packedCallGraph.addToStackTrace(interned.fPackedId, interned.fWeights[0]);
+                }
+                for (int i = 0; i < interned.fPath.length; i++) {
+                    interned.fPath[i].addToWeight(interned.fWeights[i]);
+                }
+                SampleStore store = fStore;
+                if (store != null) {
+                    store.addSample(ts, interned.fStoreId);
+                }
+                return;
+            }
+            index = (index + 1) & mask;
+            interned = table[index];
+        }
+
+        // First time this stack trace is seen, create its callsites
+        AggregatedCallSite callSite = fModule.getCallSite(element, stackTrace, ts);
+        int storeId = -1;
+        SampleStore store = fStore;
+        if (store != null) {
+            storeId = store.addStack(element, callSite);
+            store.addSample(ts, storeId);
+        }
+        long[] weights = new long[stackTrace.length];
+        @Nullable WeightedTree<ICallStackSymbol> current = callSite;
+        for (int i = 0; i < weights.length && current != null; i++) {
+            weights[i] = current.getWeight();
+            Collection<WeightedTree<ICallStackSymbol>> children = current.getChildren();
+            current = children.isEmpty() ? null : children.iterator().next();
+        }
+        ICallStackSymbol[] symbols = getSymbols(callSite, stackTrace.length);
+        if (packedCallGraph != null && symbols != null && PackedCallGraph.onlyMergesWeights(callSite) && sameWeights(weights)) {
+            // Add the stack trace to the packed callsites and keep its last one
+            int packedId = packedCallGraph.addStackTrace(element, symbols, weights[0]);
+            @SuppressWarnings("unchecked")
+            WeightedTree<ICallStackSymbol>[] path = new WeightedTree[0];
+            table[index] = new InternedStack(element, symbolKey, stackTrace.clone(), hash, path, weights, storeId, packedId);
+            fHasPackedIds = true;
+        } else {
+            fCallGraph.addAggregatedCallSite(element, callSite);
+
+            // Only intern the stack traces whose callsites only merge weights,
+            // the callsites of a packed callgraph cannot be modified
+            if (!(callSite instanceof AggregatedStackTraces) || symbols == null || getPackedCallGraph() != null) {
+                return;
+            }
+            WeightedTree<ICallStackSymbol>[] path = findPath(element, symbols);
+            if (path == null) {
+                return;
+            }
+            table[index] = new InternedStack(element, symbolKey, stackTrace.clone(), hash, path, weights, storeId, NO_CALLSITE);
+        }
+        fSize++;
+        if (fSize * 2 > table.length) {
+            rehash();
+        }
+    }
+
+    /**
+     * Get the callgraph if its callsites are packed
+     */
+    private @Nullable PackedCallGraph getPackedCallGraph() {
+        CallGraph callGraph = fCallGraph;
+        if (callGraph instanceof PackedCallGraph && ((PackedCallGraph) callGraph).isPacked()) {
+            return (PackedCallGraph) callGraph;
+        }
+        return null;
+    }
+
+    private static boolean sameWeights(long[] weights) {
+        for (long weight : weights) {
+            if (weight != weights[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the symbols of a callsite chain, or <code>null</code> if it is not a
+     * chain of the expected length
+     */
+    private static ICallStackSymbol @Nullable [] getSymbols(AggregatedCallSite callSite, int length) {
+        ICallStackSymbol[] symbols = new ICallStackSymbol[length];
+        @Nullable WeightedTree<ICallStackSymbol> current = callSite;
+        for (int i = 0; i < length; i++) {
+            if (current == null) {
+                return null;
+            }
+            symbols[i] = current.getObject();
+            Collection<WeightedTree<ICallStackSymbol>> children = current.getChildren();
+            if (children.size() > 1) {
+                return null;
+            }
+            current = children.isEmpty() ? null : children.iterator().next();
+        }
+        return current == null ? symbols : null;
+    }
+
+    /**
+     * Find the callsites of the callgraph for a path of symbols
+     */
+    @SuppressWarnings("unchecked")
+    private WeightedTree<ICallStackSymbol> @Nullable [] findPath(ICallStackElement element, ICallStackSymbol[] symbols) {
+        WeightedTree<ICallStackSymbol>[] path = new WeightedTree[symbols.length];
+        Collection<? extends WeightedTree<ICallStackSymbol>> candidates = fCallGraph.getCallingContextTree(element);
+        for (int i = 0; i < symbols.length; i++) {
+            WeightedTree<ICallStackSymbol> found = null;
+            for (WeightedTree<ICallStackSymbol> candidate : candidates) {
+                if (candidate.getObject().equals(symbols[i])) {
+                    found = candidate;
+                    break;
+                }
+            }
+            if (found == null) {
+                return null;
+            }
+            path[i] = found;
+            candidates = found.getChildren();
+        }
+        return path;
+    }
+
+    private void rehash() {
+        @Nullable InternedStack[] oldTable = fTable;
+        @Nullable InternedStack[] table = new InternedStack[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (InternedStack interned : oldTable) {
+            if (interned == null) {
+                continue;
+            }
+            int index = interned.fHash & mask;
+            while (table[index] != null) {
+                index = (index + 1) & mask;
+            }
+            table[index] = interned;
+        }
+        fTable = table;
+    }
+}
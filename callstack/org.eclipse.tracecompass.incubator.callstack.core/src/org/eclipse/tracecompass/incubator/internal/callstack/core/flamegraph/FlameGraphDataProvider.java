@@ -11,17 +11,14 @@
 
 package org.eclipse.tracecompass.incubator.internal.callstack.core.flamegraph;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -38,7 +35,6 @@ import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.FlowScopeLog;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.FlowScopeLogBuilder;
-import org.eclipse.tracecompass.datastore.core.serialization.ISafeByteBufferWriter;
 import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.AllGroupDescriptor;
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.IDataPalette;
@@ -51,16 +47,7 @@ import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTr
 import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTreeGroupBy;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.provider.FlameChartEntryModel;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.provider.FlameChartEntryModel.EntryType;
-import org.eclipse.tracecompass.internal.provisional.statesystem.core.statevalue.CustomStateValue;
 import org.eclipse.tracecompass.segmentstore.core.ISegment;
-import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
-import org.eclipse.tracecompass.statesystem.core.ITmfStateSystemBuilder;
-import org.eclipse.tracecompass.statesystem.core.StateSystemFactory;
-import org.eclipse.tracecompass.statesystem.core.backend.IStateHistoryBackend;
-import org.eclipse.tracecompass.statesystem.core.backend.StateHistoryBackendFactory;
-import org.eclipse.tracecompass.statesystem.core.exceptions.StateSystemDisposedException;
-import org.eclipse.tracecompass.statesystem.core.interval.ITmfStateInterval;
-import org.eclipse.tracecompass.statesystem.core.statevalue.ITmfStateValue;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
 import org.eclipse.tracecompass.tmf.core.model.AbstractTmfTraceDataProvider;
@@ -85,7 +72,6 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
 
 /**
  * A data provider for flame graphs, using a {@link IWeightedTreeProvider} as
@@ -105,7 +91,6 @@ import com.google.common.collect.TreeMultimap;
  * @param <T>
  *            The type of the tree provided
  */
-@SuppressWarnings("restriction")
 public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTree<@NonNull N>> extends AbstractTmfTraceDataProvider implements ITimeGraphDataProvider<FlameChartEntryModel>, IOutputStyleProvider {
 
     /**
@@ -133,9 +118,6 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
      */
     private static final Logger LOGGER = TraceCompassLog.getLogger(FlameGraphDataProvider.class);
 
-    /* State System attributes for the root levels */
-    private static final String FUNCTION_LEVEL = "::Function"; //$NON-NLS-1$
-
     private final IWeightedTreeProvider<N, E, T> fWtProvider;
 
     private final String fAnalysisId;
@@ -175,45 +157,13 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
 
     /** An internal class to describe the data for an entry */
     private class WeightedTreeEntry {
-        private ITmfStateSystem fSs;
-        private Integer fQuark;
-
-        public WeightedTreeEntry(ITmfStateSystem ss, Integer quark) {
-            fSs = ss;
-            fQuark = quark;
-        }
-    }
-
-    private static class CalleeCustomValue<@NonNull N> extends CustomStateValue {
-        private WeightedTree<N> fCallSite;
-
-        public CalleeCustomValue(WeightedTree<N> rootFunction) {
-            fCallSite = rootFunction;
-        }
-
-        @Override
-        public int compareTo(ITmfStateValue o) {
-            if (!(o instanceof CalleeCustomValue)) {
-                return -1;
-            }
-            return fCallSite.compareTo(((CalleeCustomValue) o).fCallSite);
-        }
-
-        @Override
-        protected Byte getCustomTypeId() {
-            return 103;
-        }
-
-        @Override
-        protected void serializeValue(ISafeByteBufferWriter buffer) {
-            throw new UnsupportedOperationException("This state value is not meant to be written to disk"); //$NON-NLS-1$
-        }
+        private FlameGraphLayout<N> fLayout;
+        private FlameGraphLayout<N>.Row fRow;
 
-        @Override
-        protected int getSerializedValueSize() {
-            throw new UnsupportedOperationException("This state value is not meant to be written to disk"); //$NON-NLS-1$
+        public WeightedTreeEntry(FlameGraphLayout<N> layout, FlameGraphLayout<N>.Row row) {
+            fLayout = layout;
+            fRow = row;
         }
-
     }
 
     /**
@@ -365,64 +315,6 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
 
     }
 
-    private ITmfStateSystem elementToStateSystem(IWeightedTreeProvider<N, E, T> wtProvider, IWeightedTreeSet<N, Object, WeightedTree<N>> callGraph, Object element) {
-        // Create an in-memory state system for this element
-        IStateHistoryBackend backend = StateHistoryBackendFactory.createInMemoryBackend("org.eclipse.tracecompass.incubator.callgraph.ss", 0L); //$NON-NLS-1$
-        ITmfStateSystemBuilder ssb = StateSystemFactory.newStateSystem(backend);
-
-        // Add the functions
-        List<WeightedTree<N>> rootFunctions = new ArrayList<>(callGraph.getTreesFor(element));
-        rootFunctions.sort(CCT_COMPARATOR2);
-        int quarkFct = ssb.getQuarkAbsoluteAndAdd(FUNCTION_LEVEL);
-        Deque<Long> timestampStack = new ArrayDeque<>();
-        timestampStack.push(0L);
-        for (WeightedTree<N> rootFunction : rootFunctions) {
-            recursivelyAddChildren(wtProvider, ssb, quarkFct, rootFunction, timestampStack);
-        }
-        Long endTime = timestampStack.pop();
-        ssb.closeHistory(endTime);
-
-        return ssb;
-    }
-
-    private void recursivelyAddChildren(IWeightedTreeProvider<N, E, T> wtProvider, ITmfStateSystemBuilder ssb, int quarkFct, WeightedTree<N> callSite, Deque<Long> timestampStack) {
-        Long lastEnd = timestampStack.peek();
-        if (lastEnd == null) {
-            return;
-        }
-        ssb.pushAttribute(lastEnd, new CalleeCustomValue(callSite), quarkFct);
-
-        // Push the children to the state system
-        timestampStack.push(lastEnd);
-        List<WeightedTree<N>> children = new ArrayList<>(callSite.getChildren());
-        children.sort(CCT_COMPARATOR2);
-        for (WeightedTree<N> callsite : children) {
-            recursivelyAddChildren(wtProvider, ssb, quarkFct, callsite, timestampStack);
-        }
-        timestampStack.pop();
-
-        // Add the extra sites
-        List<String> extraDataSets = wtProvider.getExtraDataSets();
-        for (int i = 0; i < extraDataSets.size(); i++) {
-            Collection<WeightedTree<@NonNull N>> extraDataTrees = callSite.getExtraDataTrees(i);
-            if (extraDataTrees.isEmpty()) {
-                continue;
-            }
-            String dataSetName = extraDataSets.get(i);
-            int quarkExtra = ssb.getQuarkAbsoluteAndAdd(dataSetName);
-            long extraStartTime = lastEnd;
-            for (WeightedTree<@NonNull N> extraTree : extraDataTrees) {
-                ssb.modifyAttribute(extraStartTime, new CalleeCustomValue(extraTree), quarkExtra);
-                extraStartTime += extraTree.getWeight();
-            }
-
-        }
-
-        long currentEnd = timestampStack.pop() + callSite.getWeight();
-        timestampStack.push(currentEnd);
-        ssb.popAttribute(currentEnd, quarkFct);
-    }
-
     /**
      * Build the entry list for one thread
      */
@@ -454,39 +346,31 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             return;
         }
 
-        Deque<Long> timestampStack = new ArrayDeque<>();
-        timestampStack.push(0L);
-
-        // Get the state system to represent this callgraph
-        ITmfStateSystem ss = elementToStateSystem(wtProvider, callGraph, element);
-        entry.setEndTime(ss.getCurrentEndTime());
+        // Lay out the trees of this element
+        List<String> extraDataSets = wtProvider.getExtraDataSets();
+        FlameGraphLayout<N> layout = new FlameGraphLayout<>(rootTrees, CCT_COMPARATOR2, extraDataSets);
+        long layoutEnd = layout.getEndTime();
+        entry.setEndTime(layoutEnd);
 
         // Add entry items for the main weighted tree levels
-        int quark = ss.optQuarkAbsolute(FUNCTION_LEVEL);
-        if (quark == ITmfStateSystem.INVALID_ATTRIBUTE) {
-            return;
-        }
-        int i = 0;
-        for (Integer subQuark : ss.getSubAttributes(quark, false)) {
+        List<FlameGraphLayout<N>.Row> depthRows = layout.getDepthRows();
+        for (int i = 0; i < depthRows.size(); i++) {
             FlameChartEntryModel.Builder child = new FlameChartEntryModel.Builder(ENTRY_ID.getAndIncrement(), entry.getId(), String.valueOf(i), 0, EntryType.FUNCTION, i);
-            child.setEndTime(ss.getCurrentEndTime());
+            child.setEndTime(layoutEnd);
             builder.add(child);
-            i++;
-            fCgEntries.put(child.getId(), new WeightedTreeEntry(ss, subQuark));
+            fCgEntries.put(child.getId(), new WeightedTreeEntry(layout, depthRows.get(i)));
         }
 
         // Add items for the extra entries
-        List<String> extraDataSets = wtProvider.getExtraDataSets();
-        for (int set = 0; set < extraDataSets.size(); set++) {
-            String dataSetName = extraDataSets.get(set);
-            quark = ss.optQuarkAbsolute(dataSetName);
-            if (quark == ITmfStateSystem.INVALID_ATTRIBUTE) {
+        for (String dataSetName : extraDataSets) {
+            FlameGraphLayout<N>.Row row = layout.getExtraRow(dataSetName);
+            if (row == null) {
                 continue;
             }
             FlameChartEntryModel.Builder child = new FlameChartEntryModel.Builder(ENTRY_ID.getAndIncrement(), entry.getId(), dataSetName, 0, EntryType.KERNEL, -1);
-            child.setEndTime(ss.getCurrentEndTime());
+            child.setEndTime(layoutEnd);
             builder.add(child);
-            fCgEntries.put(child.getId(), new WeightedTreeEntry(ss, quark));
+            fCgEntries.put(child.getId(), new WeightedTreeEntry(layout, row));
         }
 
         return;
@@ -508,14 +392,12 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             // No entry selected, assume all
             selected = fEntries.keySet();
         }
-        List<WeightedTreeEntry> selectedEntries = new ArrayList<>();
-        Multimap<WeightedTreeEntry, Pair<Integer, Long>> requested = HashMultimap.create();
+        Multimap<FlameGraphLayout<N>, Pair<WeightedTreeEntry, Long>> requested = HashMultimap.create();
 
         for (Long id : selected) {
             WeightedTreeEntry entry = fCgEntries.get(id);
             if (entry != null) {
-                selectedEntries.add(entry);
-                requested.put(entry, new Pair<>(entry.fQuark, id));
+                requested.put(entry.fLayout, new Pair<>(entry, id));
             }
         }
 
@@ -530,57 +412,33 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
             return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
         }
 
+        // The layout rows are queried with the times in ascending order
+        List<Long> sortedTimes = new ArrayList<>(times);
+        Collections.sort(sortedTimes);
+
         // For each element and callgraph, get the states
-        try {
-            for (WeightedTreeEntry element : requested.keySet()) {
-                if (subMonitor.isCanceled()) {
-                    return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
-                }
-                Collection<Pair<Integer, Long>> depths = Objects.requireNonNull(requested.get(element));
-                rowModels.addAll(getStatesForElement(times, predicates, subMonitor, element.fSs, depths));
+        for (FlameGraphLayout<N> element : requested.keySet()) {
+            if (subMonitor.isCanceled()) {
+                return new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED);
             }
-        } catch (StateSystemDisposedException e) {
-            // Nothing to do
+            Collection<Pair<WeightedTreeEntry, Long>> rows = Objects.requireNonNull(requested.get(element));
+            rowModels.addAll(getStatesForElement(sortedTimes, predicates, subMonitor, rows));
         }
 
         return new TmfModelResponse<>(new TimeGraphModel(rowModels), ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
     }
 
     private List<ITimeGraphRowModel> getStatesForElement(List<Long> times, Map<Integer, Predicate<Multimap<String, Object>>> predicates, IProgressMonitor monitor,
-            ITmfStateSystem ss, Collection<Pair<Integer, Long>> depths) throws StateSystemDisposedException {
-        List<Integer> quarks = new ArrayList<>();
-        for (Pair<Integer, Long> pair : depths) {
-            quarks.add(pair.getFirst());
-        }
-        TreeMultimap<Integer, ITmfStateInterval> intervals = TreeMultimap.create(Comparator.naturalOrder(),
-                Comparator.comparing(ITmfStateInterval::getStartTime));
-        long ssEndTime = ss.getCurrentEndTime();
-        for (ITmfStateInterval interval : ss.query2D(quarks, times)) {
-            if (monitor.isCanceled()) {
-                return Collections.emptyList();
-            }
-            // Ignore the null intervals of value 1 at the end of the state
-            // system
-            if (interval.getStartTime() == ssEndTime &&
-                    interval.getStartTime() == interval.getEndTime() &&
-                    interval.getValue() == null) {
-                continue;
-            }
-            intervals.put(interval.getAttribute(), interval);
-        }
-
+            Collection<Pair<WeightedTreeEntry, Long>> entries) {
         List<ITimeGraphRowModel> rows = new ArrayList<>();
-        for (Pair<Integer, Long> pair : depths) {
-            int quark = pair.getFirst();
-            NavigableSet<ITmfStateInterval> states = intervals.get(quark);
-
+        for (Pair<WeightedTreeEntry, Long> pair : entries) {
             if (monitor.isCanceled()) {
                 return Collections.emptyList();
             }
             List<ITimeGraphState> eventList = new ArrayList<>();
             Long key = Objects.requireNonNull(pair.getSecond());
-            states.forEach(i -> {
-                ITimeGraphState timegraphState = createTimeGraphState(i, ssEndTime);
+            pair.getFirst().fRow.query(times, (start, duration, callsite) -> {
+                ITimeGraphState timegraphState = createTimeGraphState(start, duration, callsite);
                 applyFilterAndAddState(eventList, timegraphState, key, predicates, monitor);
             });
             rows.add(new TimeGraphRowModel(key, eventList));
@@ -589,14 +447,9 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
 
     }
 
-    private ITimeGraphState createTimeGraphState(ITmfStateInterval interval, long ssEndTime) {
+    private ITimeGraphState createTimeGraphState(long startTime, long duration, @Nullable WeightedTree<N> callsite) {
         IWeightedTreeProvider<N, E, T> wtProvider = fWtProvider;
-        long startTime = interval.getStartTime();
-        long duration = interval.getEndTime() - startTime + (ssEndTime == interval.getEndTime() ? 0 : 1);
-        Object valueObject = interval.getValue();
-        if (valueObject instanceof CalleeCustomValue) {
-
-            WeightedTree<N> callsite = ((CalleeCustomValue) valueObject).fCallSite;
+        if (callsite != null) {
             String displayString = wtProvider.toDisplayString((T) callsite);
             return new TimeGraphState(startTime, duration, displayString, fWtProvider.getPalette().getStyleFor(callsite));
         }
@@ -714,17 +567,7 @@ public class FlameGraphDataProvider<@NonNull N, E, @NonNull T extends WeightedTr
 
     /** Find the callsite at the time and depth requested */
     private @Nullable WeightedTree<@NonNull N> findCallSite(WeightedTreeEntry cgEntry, Long time) {
-        try {
-            ITmfStateInterval interval = cgEntry.fSs.querySingleState(time, cgEntry.fQuark);
-
-            Object valueObject = interval.getValue();
-            if (valueObject instanceof CalleeCustomValue) {
-                return ((CalleeCustomValue) valueObject).fCallSite;
-            }
-        } catch (StateSystemDisposedException e) {
-            // Nothing to do
-        }
-        return null;
+        return cgEntry.fRow.getTreeAt(time);
     }
 
     @Override
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.flamegraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+
+/**
+ * The layout of the weighted trees of one element of a flame graph. The boxes
+ * of each depth of the trees and of each extra data set are kept in arrays
+ * sorted by start time, so that the states of a row can be looked up directly
+ * for the times requested.
+ *
+ * The trees are laid out from time 0, each tree taking a length equal to its
+ * weight, and the children of a tree are laid out one after the other from the
+ * start of their parent.
+ *
+ * @param <N>
+ *            The type of objects represented by each node in the tree
+ */
+class FlameGraphLayout<@NonNull N> {
+
+    private static final int INITIAL_SIZE = 16;
+
+    /**
+     * Consumer of the states of a row
+     *
+     * @param <N>
+     *            The type of objects represented by each node in the tree
+     */
+    @FunctionalInterface
+    interface IStateConsumer<@NonNull N> {
+        /**
+         * Accept a state of a row
+         *
+         * @param start
+         *            The start time of the state
+         * @param duration
+         *            The duration of the state
+         * @param tree
+         *            The tree represented by this state, or <code>null</code>
+         *            if there is no tree at this time
+         */
+        void accept(long start, long duration, @Nullable WeightedTree<N> tree);
+    }
+
+    /**
+     * A row of the flame graph, with the start times, lengths and trees of its
+     * boxes sorted by start time. Boxes of a row do not overlap.
+     */
+    final class Row {
+        private long[] fStarts = new long[INITIAL_SIZE];
+        private long[] fLengths = new long[INITIAL_SIZE];
+        private int[] fTrees = new int[INITIAL_SIZE];
+        private int fSize = 0;
+
+        private void add(long start, long length, int tree) {
+            if (fSize == fStarts.length) {
+                int newLength = fSize * 2;
+                fStarts = Arrays.copyOf(fStarts, newLength);
+                fLengths = Arrays.copyOf(fLengths, newLength);
+                fTrees = Arrays.copyOf(fTrees, newLength);
+            }
+            fStarts[fSize] = start;
+            fLengths[fSize] = length;
+            fTrees[fSize] = tree;
+            fSize++;
+        }
+
+        /**
+         * Sort the boxes by start time and make them extend until the start of
+         * the next box, or the end of the layout for the last one.
+         */
+        private void fillGaps() {
+            boolean sorted = true;
+            for (int i = 1; i < fSize && sorted; i++) {
+                sorted = fStarts[i - 1] <= fStarts[i];
+            }
+            if (!sorted) {
+                Integer[] order = new Integer[fSize];
+                for (int i = 0; i < fSize; i++) {
+                    order[i] = i;
+                }
+                long[] starts = fStarts;
+                Arrays.sort(order, Comparator.comparingLong(i -> starts[i]));
+                long[] sortedStarts = new long[fSize];
+                int[] sortedTrees = new int[fSize];
+                for (int i = 0; i < fSize; i++) {
+                    sortedStarts[i] = fStarts[order[i]];
+                    sortedTrees[i] = fTrees[order[i]];
+                }
+                fStarts = sortedStarts;
+                fTrees = sortedTrees;
+                fLengths = new long[fSize];
+            }
+            for (int i = 0; i < fSize - 1; i++) {
+                fLengths[i] = fStarts[i + 1] - fStarts[i];
+            }
+            if (fSize > 0) {
+                fLengths[fSize - 1] = fEndTime - fStarts[fSize - 1];
+            }
+        }
+
+        /**
+         * Get the index of the last box starting at or before a time
+         *
+         * @return The index of the box, or -1 if all boxes start after time
+         */
+        private int floorIndex(long time) {
+            int index = Arrays.binarySearch(fStarts, 0, fSize, time);
+            if (index >= 0) {
+                return index;
+            }
+            return -index - 2;
+        }
+
+        /**
+         * Get the tree whose box contains the requested time
+         *
+         * @param time
+         *            The time at which to get the tree
+         * @return The tree at this time, or <code>null</code> if there is no
+         *         tree at this time
+         */
+        public @Nullable WeightedTree<N> getTreeAt(long time) {
+            int index = floorIndex(time);
+            if (index < 0 || time >= fStarts[index] + fLengths[index]) {
+                return null;
+            }
+            return fNodes.get(fTrees[index]);
+        }
+
+        /**
+         * Get the states of this row that contain at least one of the
+         * requested times. Each state is either a box or the gap between 2
+         * boxes, the gaps being sent with a <code>null</code> tree. Boxes that
+         * do not contain any of the requested times, ie that are smaller than
+         * the resolution of the query, are culled without being visited, so
+         * the cost of a query depends on the number of times requested, not on
+         * the number of boxes in the row.
+         *
+         * @param times
+         *            The times requested, sorted in ascending order
+         * @param consumer
+         *            The consumer of the states, that will receive them in
+         *            ascending order of start time
+         */
+        public void query(List<Long> times, IStateConsumer<N> consumer) {
+            long covered = Long.MIN_VALUE;
+            for (Long time : times) {
+                long t = time;
+                if (t < 0 || t < covered) {
+                    continue;
+                }
+                if (t > fEndTime) {
+                    return;
+                }
+                int index = floorIndex(t);
+                if (index >= 0 && t < fStarts[index] + fLengths[index]) {
+                    consumer.accept(fStarts[index], fLengths[index], fNodes.get(fTrees[index]));
+                    covered = fStarts[index] + fLengths[index];
+                    continue;
+                }
+                // The time is in a gap between boxes
+                long gapStart = index >= 0 ? fStarts[index] + fLengths[index] : 0;
+                if (index + 1 < fSize) {
+                    consumer.accept(gapStart, fStarts[index + 1] - gapStart, null);
+                    covered = fStarts[index + 1];
+                    continue;
+                }
+                // The last gap extends to and includes the end of the layout,
+                // unless it is empty
+                if (gapStart < fEndTime) {
+                    consumer.accept(gapStart, fEndTime - gapStart, null);
+                }
+                return;
+            }
+        }
+    }
+
+    private final List<WeightedTree<N>> fNodes = new ArrayList<>();
+    private final List<Row> fDepthRows = new ArrayList<>();
+    private final Map<String, Row> fExtraRows = new LinkedHashMap<>();
+    private final Comparator<WeightedTree<N>> fComparator;
+    private final List<String> fExtraDataSets;
+    private final long fEndTime;
+
+    /**
+     * Constructor, lays out the trees
+     *
+     * @param rootTrees
+     *            The root trees to lay out
+     * @param comparator
+     *            The comparator to sort trees of a same level
+     * @param extraDataSets
+     *            The names of the extra data sets of the trees
+     */
+    public FlameGraphLayout(Collection<WeightedTree<N>> rootTrees, Comparator<WeightedTree<N>> comparator, List<String> extraDataSets) {
+        fComparator = comparator;
+        fExtraDataSets = extraDataSets;
+        List<WeightedTree<N>> roots = new ArrayList<>(rootTrees);
+        roots.sort(comparator);
+        long end = 0;
+        for (WeightedTree<N> root : roots) {
+            end = addTree(root, end, 0);
+        }
+        fEndTime = end;
+        for (Row row : fExtraRows.values()) {
+            row.fillGaps();
+        }
+    }
+
+    /**
+     * Add a tree and its children to the layout
+     *
+     * @return The end time of the tree
+     */
+    private long addTree(WeightedTree<N> tree, long start, int depth) {
+        int id = fNodes.size();
+        fNodes.add(tree);
+        if (depth == fDepthRows.size()) {
+            fDepthRows.add(new Row());
+        }
+        long end = start + tree.getWeight();
+        fDepthRows.get(depth).add(start, end - start, id);
+
+        List<WeightedTree<N>> children = new ArrayList<>(tree.getChildren());
+        children.sort(fComparator);
+        long childStart = start;
+        for (WeightedTree<N> child : children) {
+            childStart = addTree(child, childStart, depth + 1);
+        }
+
+        // Add the extra trees
+        for (int i = 0; i < fExtraDataSets.size(); i++) {
+            Collection<WeightedTree<N>> extraDataTrees = tree.getExtraDataTrees(i);
+            if (extraDataTrees.isEmpty()) {
+                continue;
+            }
+            Row row = fExtraRows.computeIfAbsent(fExtraDataSets.get(i), name -> new Row());
+            long extraStart = start;
+            for (WeightedTree<N> extraTree : extraDataTrees) {
+                int extraId = fNodes.size();
+                fNodes.add(extraTree);
+                row.add(extraStart, extraTree.getWeight(), extraId);
+                extraStart += extraTree.getWeight();
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Get the end time of this layout, which is the sum of the weights of the
+     * root trees
+     *
+     * @return The end time
+     */
+    public long getEndTime() {
+        return fEndTime;
+    }
+
+    /**
+     * Get the rows of the trees, one per depth
+     *
+     * @return The rows of each depth, the index in the list being the depth
+     */
+    public List<Row> getDepthRows() {
+        return fDepthRows;
+    }
+
+    /**
+     * Get the row of an extra data set
+     *
+     * @param dataSetName
+     *            The name of the extra data set
+     * @return The row of this data set, or <code>null</code> if no tree has
+     *         extra data for this data set
+     */
+    public @Nullable Row getExtraRow(String dataSetName) {
+        return fExtraRows.get(dataSetName);
+    }
+}
@@ -120,6 +120,18 @@ abstract class AbstractCalledFunction implements ICalledFunction {
         fSelfTime -= childDuration;
     }
 
+    /**
+     * Set the self time of a function whose children were not added to it,
+     * like a function cut in parts whose self time is the sum of the self
+     * times of its parts.
+     *
+     * @param selfTime
+     *            The self time of the function
+     */
+    void setSelfTime(long selfTime) {
+        fSelfTime = selfTime;
+    }
+
     @Override
     public long getSelfTime() {
         return fSelfTime;
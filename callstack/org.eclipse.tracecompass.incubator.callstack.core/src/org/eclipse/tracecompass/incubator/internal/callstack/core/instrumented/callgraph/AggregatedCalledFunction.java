@@ -86,6 +86,31 @@ public class AggregatedCalledFunction extends AggregatedCallSite {
         mergeProcessStatuses(toCopy);
     }
 
+    /**
+     * Constructor with the data of a function read from a file
+     *
+     * @param symbol
+     *            The symbol of the function
+     * @param statistics
+     *            The statistics of the function
+     * @param duration
+     *            The total duration of the function
+     * @param selfTime
+     *            The total self time of the function
+     * @param cpuTime
+     *            The total CPU time of the function
+     * @param processId
+     *            The process ID of the function
+     */
+    AggregatedCalledFunction(ICallStackSymbol symbol, AggregatedCalledFunctionStatistics statistics, long duration, long selfTime, long cpuTime, int processId) {
+        super(symbol, 0);
+        fStatistics = statistics;
+        fDuration = duration;
+        fSelfTime = selfTime;
+        fCpuTime = cpuTime;
+        fProcessId = processId;
+    }
+
     @Override
     public long getWeight() {
         return fDuration;
@@ -167,6 +192,37 @@ public class AggregatedCalledFunction extends AggregatedCallSite {
         getFunctionStatistics().update(function);
     }
 
+    /**
+     * Add a callee for a part of a function call, cut by the bounds of a time
+     * range. The part's durations are added to the callee, but not to the
+     * statistics, as the call is counted once all its parts are known.
+     *
+     * @param child
+     *            The part of the function that was called
+     * @param aggregatedChild
+     *            The aggregated data of the callee
+     */
+    synchronized void addChildPart(AbstractCalledFunction child, AggregatedCalledFunction aggregatedChild) {
+        aggregatedChild.addFunctionPart(child);
+        super.addChild(aggregatedChild);
+    }
+
+    /**
+     * Adds a part of a function call, cut by the bounds of a time range, to
+     * this aggregated called function data. Its durations are added to this
+     * one, but not to the statistics, as the call is counted once all its
+     * parts are known.
+     *
+     * @param function
+     *            The part of the function that was called
+     */
+    synchronized void addFunctionPart(AbstractCalledFunction function) {
+        addToDuration(function.getLength());
+        addToSelfTime(function.getSelfTime());
+        addToCpuTime(function.getCpuTime());
+        fProcessId = function.getProcessId();
+    }
+
     /**
      * Modify the function's duration
      *
@@ -306,6 +362,25 @@ public class AggregatedCalledFunction extends AggregatedCallSite {
         status.update(interval);
     }
 
+    /**
+     * Get the aggregated process statuses of this function
+     *
+     * @return The process statuses
+     */
+    Collection<AggregatedThreadStatus> getProcessStatuses() {
+        return fProcessStatuses.values();
+    }
+
+    /**
+     * Add an aggregated process status to this function, read from a file
+     *
+     * @param status
+     *            The aggregated process status
+     */
+    void addProcessStatus(AggregatedThreadStatus status) {
+        fProcessStatuses.put(status.getProcessStatus(), status);
+    }
+
     @Override
     public @NonNull Collection<@NonNull WeightedTree<@NonNull ICallStackSymbol>> getExtraDataTrees(int index) {
         if (index == 0) {
@@ -11,6 +11,8 @@
 
 package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
 
+import java.util.function.ToLongFunction;
+
 import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
 import org.eclipse.tracecompass.analysis.timing.core.statistics.Statistics;
 import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
@@ -25,11 +27,11 @@ public class AggregatedCalledFunctionStatistics {
 
     // Duration statistics will be kept for all calls of the method, so we make
     // them on the called function themselves
-    private final IStatistics<ICalledFunction> fDurations;
+    private IStatistics<ICalledFunction> fDurations;
     // Self time statistics are on aggregated called function because self times
     // are known only at the end, once the aggregation is over
-    private final IStatistics<ICalledFunction> fSelfTimes;
-    private final IStatistics<ICalledFunction> fCpuTimes;
+    private IStatistics<ICalledFunction> fSelfTimes;
+    private IStatistics<ICalledFunction> fCpuTimes;
     // FIXME: Should this class manage the number of calls, or the callsite?
     // Common info with sampling, so maybe callsite
     private final IStatistics<ICalledFunction> fNbCalls;
@@ -44,6 +46,23 @@ public class AggregatedCalledFunctionStatistics {
         fNbCalls = new Statistics<>(f -> f.getCpuTime());
     }
 
+    /**
+     * Constructor with statistics read from a file
+     *
+     * @param durations
+     *            The statistics for the durations
+     * @param selfTimes
+     *            The statistics for the self times
+     * @param cpuTimes
+     *            The statistics for the CPU times
+     */
+    AggregatedCalledFunctionStatistics(PersistedStatistics durations, PersistedStatistics selfTimes, PersistedStatistics cpuTimes) {
+        fDurations = durations;
+        fSelfTimes = selfTimes;
+        fCpuTimes = cpuTimes;
+        fNbCalls = new Statistics<>(f -> f.getCpuTime());
+    }
+
     /**
      * Update the durations and self time statistics for a function. This
      * function should be called only once all the children of the function have
@@ -68,9 +87,9 @@ public class AggregatedCalledFunctionStatistics {
      *            The statistics node to be merged
      */
     public void merge(AggregatedCalledFunctionStatistics statisticsNode) {
-        fDurations.merge(statisticsNode.fDurations);
-        fSelfTimes.merge(statisticsNode.fSelfTimes);
-        fCpuTimes.merge(statisticsNode.fCpuTimes);
+        fDurations = merge(fDurations, statisticsNode.fDurations, ICalledFunction::getLength);
+        fSelfTimes = merge(fSelfTimes, statisticsNode.fSelfTimes, ICalledFunction::getSelfTime);
+        fCpuTimes = merge(fCpuTimes, statisticsNode.fCpuTimes, ICalledFunction::getCpuTime);
     }
 
     /**
@@ -85,9 +104,7 @@ public class AggregatedCalledFunctionStatistics {
      *            the statistics are to be added to this one.
      */
     public void merge(AggregatedCalledFunctionStatistics other, boolean isGroup) {
-        fDurations.merge(other.fDurations);
-        fSelfTimes.merge(other.fSelfTimes);
-        fCpuTimes.merge(other.fCpuTimes);
+        merge(other);
         // if (!isGroup) {
         // // If the other is not a group, also update the data per call
         // fNbDataPerCall += stats.fNbDataPerCall;
@@ -99,6 +116,21 @@ public class AggregatedCalledFunctionStatistics {
         // }
     }
 
+    /**
+     * Merge statistics. The {@link Statistics} class only merges with its own
+     * class, so statistics read from a file are merged in a copy of the
+     * statistics.
+     */
+    private static IStatistics<ICalledFunction> merge(IStatistics<ICalledFunction> statistics, IStatistics<ICalledFunction> other, ToLongFunction<ICalledFunction> mapper) {
+        if (statistics instanceof Statistics && other instanceof Statistics) {
+            statistics.merge(other);
+            return statistics;
+        }
+        PersistedStatistics merged = (statistics instanceof PersistedStatistics) ? (PersistedStatistics) statistics : PersistedStatistics.copyOf(mapper, statistics);
+        merged.merge(other);
+        return merged;
+    }
+
     /**
      * Get the statistics for the duration of the called functions
      *
@@ -11,11 +11,24 @@
 
 package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -40,14 +53,18 @@ import org.eclipse.tracecompass.incubator.callstack.core.instrumented.statesyste
 import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.Activator;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.InstrumentedCallStackElement;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph.CallGraphBuckets.Region;
 import org.eclipse.tracecompass.incubator.internal.callstack.core.palette.FlameWithKernelPalette;
+import org.eclipse.tracecompass.statesystem.core.ITmfStateSystem;
 import org.eclipse.tracecompass.tmf.core.analysis.IAnalysisModule;
 import org.eclipse.tracecompass.tmf.core.analysis.TmfAbstractAnalysisModule;
+import org.eclipse.tracecompass.tmf.core.statesystem.ITmfAnalysisModuleWithStateSystems;
 import org.eclipse.tracecompass.tmf.core.symbols.ISymbolProvider;
 import org.eclipse.tracecompass.tmf.core.symbols.SymbolProviderManager;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.CacheBuilder;
@@ -95,15 +112,35 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
             new MetricType(CPU_TIME_TITLE, DataType.NANOSECONDS, null, true),
             new MetricType(NB_CALLS_TITLE, DataType.NUMBER, null, false));
 
+    private static final String CALL_GRAPH_FILE_SUFFIX = ".callgraph"; //$NON-NLS-1$
+
+    /* Number of time buckets whose partial callgraphs are kept for selections */
+    private static final int NB_BUCKETS = 32;
+
     // ------------------------------------------------------------------------
     // Attributes
     // ------------------------------------------------------------------------
 
     private final IFlameChartProvider fCsProvider;
-    private final CallGraph fCallGraph = new CallGraph();
+    /* Maximum number of threads on which the callgraphs of the leaf elements are built */
+    private int fMaxThreads = Runtime.getRuntime().availableProcessors();
+    private volatile CallGraph fCallGraph = new CallGraph();
+    /* The file from which to read the full range callgraph when requested */
+    private volatile @Nullable Path fCallGraphFile = null;
+    /* Whether the full range callgraph was read from the file instead of computed */
+    private volatile boolean fReadFromFile = false;
 
     private @Nullable Collection<ISymbolProvider> fSymbolProviders = null;
-    private boolean fHasKernelStatuses = false;
+    private volatile boolean fHasKernelStatuses = false;
+
+    /*
+     * The partial callgraphs of time buckets, from which the selection
+     * callgraphs are assembled. The buckets are created on the first selection
+     * and each partial callgraph is computed when a selection first covers its
+     * bucket. They are replaced when the time range of the trace changes.
+     */
+    private volatile @Nullable CallGraphBuckets fBuckets = null;
+    private final Object fBucketsLock = new Object();
 
     // Keep a very small cache of selection callgraphs, to avoid having to
     // compute again
@@ -112,9 +149,7 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
             .build(new CacheLoader<TmfTimeRange, CallGraph>() {
                 @Override
                 public CallGraph load(TmfTimeRange range) {
-                    CallGraph cg = new CallGraph();
-                    executeForRange(cg, range, new NullProgressMonitor());
-                    return cg;
+                    return executeForSelection(range, new NullProgressMonitor());
                 }
             }));
 
@@ -151,6 +186,13 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
         return true;
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+        fBuckets = null;
+        fRangeCallgraphs.invalidateAll();
+    }
+
     @Override
     protected Iterable<IAnalysisModule> getDependentAnalyses() {
         return Collections.singleton(fCsProvider);
@@ -158,14 +200,100 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
 
     @Override
     protected boolean executeAnalysis(@Nullable IProgressMonitor monitor) {
-        return executeForRange(fCallGraph, TmfTimeRange.ETERNITY, monitor);
+        Path file = getCallGraphFilePath();
+        if (monitor != null && file != null && Files.exists(file) && waitForProviders(monitor)) {
+            Boolean hasKernelStatuses = CallGraphFile.readHasKernelStatuses(file, getCallGraphFileKey());
+            if (hasKernelStatuses != null) {
+                // The callgraph was saved, it will be read when first requested
+                fHasKernelStatuses = hasKernelStatuses;
+                fCallGraphFile = file;
+                monitor.done();
+                return true;
+            }
+        }
+        CallGraph callGraph = new CallGraph();
+        if (!executeForRange(callGraph, TmfTimeRange.ETERNITY, monitor)) {
+            return false;
+        }
+        fCallGraph = callGraph;
+        if (file != null) {
+            writeCallGraph(file, callGraph);
+        }
+        return true;
     }
 
-    private boolean executeForRange(CallGraph callgraph, TmfTimeRange range, @Nullable IProgressMonitor monitor) {
+    private @Nullable Path getCallGraphFilePath() {
         ITmfTrace trace = getTrace();
-        if (monitor == null || trace == null) {
-            return false;
+        if (trace == null) {
+            return null;
+        }
+        return Paths.get(TmfTraceManager.getSupplementaryFileDir(trace), getId() + CALL_GRAPH_FILE_SUFFIX);
+    }
+
+    /**
+     * Get the key of the call graph file: the start and end times and the
+     * number of attributes of the state systems of the providers. A file
+     * written with another key was computed from another version of the trace
+     * or callstack and is not read.
+     */
+    private long[] getCallGraphFileKey() {
+        List<Long> key = new ArrayList<>();
+        for (IAnalysisModule module : getDependentAnalyses()) {
+            if (module instanceof ITmfAnalysisModuleWithStateSystems) {
+                for (ITmfStateSystem ss : ((ITmfAnalysisModuleWithStateSystems) module).getStateSystems()) {
+                    key.add(ss.getStartTime());
+                    key.add(ss.getCurrentEndTime());
+                    key.add((long) ss.getNbAttributes());
+                }
+            }
+        }
+        return key.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void writeCallGraph(Path file, CallGraph callGraph) {
+        CallStackSeries series = getSeries();
+        if (series == null) {
+            return;
+        }
+        try {
+            CallGraphFile.write(file, callGraph, series.getRootElements(), fHasKernelStatuses, getCallGraphFileKey());
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Call graph analysis: cannot save the call graph to " + file, e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Read the callgraph from the file if it was not read yet. If the file
+     * cannot be read, the callgraph is computed again.
+     */
+    private synchronized void readCallGraph() {
+        Path file = fCallGraphFile;
+        if (file == null) {
+            // Already read
+            return;
         }
+        CallStackSeries series = getSeries();
+        try {
+            CallGraphFile.Content content = (series == null) ? null : CallGraphFile.read(file, series.getRootElements(), ModelManager.getModelFor(fCsProvider.getHostId()), getCallGraphFileKey());
+            if (content != null) {
+                fHasKernelStatuses = content.hasKernelStatuses();
+                fCallGraph = content.getCallGraph();
+                fReadFromFile = true;
+                fCallGraphFile = null;
+                return;
+            }
+        } catch (IOException e) {
+            Activator.getInstance().logWarning("Call graph analysis: cannot read the call graph from " + file, e); //$NON-NLS-1$
+        }
+        CallGraph callGraph = new CallGraph();
+        if (executeForRange(callGraph, TmfTimeRange.ETERNITY, new NullProgressMonitor())) {
+            fCallGraph = callGraph;
+            writeCallGraph(file, callGraph);
+        }
+        fCallGraphFile = null;
+    }
+
+    private boolean waitForProviders(IProgressMonitor monitor) {
         Iterable<IAnalysisModule> dependentAnalyses = getDependentAnalyses();
         for (IAnalysisModule module : dependentAnalyses) {
             if (!(module instanceof IFlameChartProvider)) {
@@ -175,18 +303,31 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
         }
         // TODO:Look at updates while the state system's being built
         dependentAnalyses.forEach((t) -> t.waitForCompletion(monitor));
+        return true;
+    }
 
+    private boolean executeForRange(CallGraph callgraph, TmfTimeRange range, @Nullable IProgressMonitor monitor) {
+        long time0 = range.getStartTime().toNanos();
+        long time1 = range.getEndTime().toNanos();
+        return executeForRegion(callgraph, new Region(Math.min(time0, time1), Math.max(time0, time1)), monitor);
+    }
+
+    private boolean executeForRegion(CallGraph callgraph, Region region, @Nullable IProgressMonitor monitor) {
+        ITmfTrace trace = getTrace();
+        if (monitor == null || trace == null) {
+            return false;
+        }
+        if (!waitForProviders(monitor)) {
+            return false;
+        }
+        Iterable<IAnalysisModule> dependentAnalyses = getDependentAnalyses();
         for (IAnalysisModule module : dependentAnalyses) {
             IFlameChartProvider callstackModule = (IFlameChartProvider) module;
             IHostModel model = ModelManager.getModelFor(callstackModule.getHostId());
 
             CallStackSeries callstack = callstackModule.getCallStackSeries();
             if (callstack != null) {
-                long time0 = range.getStartTime().toNanos();
-                long time1 = range.getEndTime().toNanos();
-                long start = Math.min(time0, time1);
-                long end = Math.max(time0, time1);
-                if (!iterateOverCallstackSerie(callstack, model, callgraph, start, end, monitor)) {
+                if (!iterateOverCallstackSerie(callstack, model, callgraph, region, monitor)) {
                     return false;
                 }
             }
@@ -197,8 +338,104 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
     }
 
     /**
-     * Iterate over a callstack series. It will do a depth-first search to create
-     * the callgraph
+     * Compute the callgraph of a time selection. The partial callgraphs of
+     * the time buckets covered by the selection are merged and only the rest
+     * of the selection, before and after those buckets, is computed.
+     */
+    private CallGraph executeForSelection(TmfTimeRange range, IProgressMonitor monitor) {
+        long time0 = range.getStartTime().toNanos();
+        long time1 = range.getEndTime().toNanos();
+        long start = Math.min(time0, time1);
+        long end = Math.max(time0, time1);
+        CallGraph callGraph = new CallGraph();
+        CallGraphBuckets buckets = getBuckets(monitor);
+        int first = (buckets == null) ? 0 : buckets.getFirstBucketFrom(start);
+        int last = (buckets == null) ? -1 : buckets.getLastBucketTo(end);
+        List<CallGraph> partials = new ArrayList<>();
+        for (int i = first; buckets != null && i <= last; i++) {
+            CallGraph partial = buckets.getPartial(i, (partialCallGraph, region) -> executeForRegion(partialCallGraph, region, monitor));
+            if (partial == null) {
+                break;
+            }
+            partials.add(partial);
+        }
+        if (buckets == null || first > last || partials.size() <= last - first) {
+            // No bucket is covered by the selection, or they could not be computed, compute it all
+            executeForRegion(callGraph, new Region(start, end), monitor);
+            return callGraph;
+        }
+        partials.forEach(partial -> CallGraphBuckets.mergePartial(partial, callGraph));
+        List<Region> regions = new ArrayList<>();
+        Region before = buckets.getRegionBefore(start, first);
+        if (before.getStart() < before.getEnd()) {
+            regions.add(before);
+        }
+        Region after = buckets.getRegionAfter(last, end);
+        if (after.getStart() < after.getEnd()) {
+            regions.add(after);
+        }
+        for (Region region : regions) {
+            executeForRegion(callGraph, region, monitor);
+        }
+        buckets.addCrossingCallStatistics(first, last, start, end, regions, callGraph);
+        return callGraph;
+    }
+
+    /**
+     * Get the time buckets of the current range of the trace, creating them if
+     * they are not available yet or if the range of the trace changed. Only
+     * the calls crossing the boundaries of the buckets are read here, the
+     * partial callgraphs of the buckets are computed when needed.
+     */
+    private @Nullable CallGraphBuckets getBuckets(IProgressMonitor monitor) {
+        ITmfTrace trace = getTrace();
+        if (trace == null || !waitForProviders(monitor)) {
+            return null;
+        }
+        long start = trace.getStartTime().toNanos();
+        long end = trace.getEndTime().toNanos() + 1;
+        synchronized (fBucketsLock) {
+            CallGraphBuckets buckets = fBuckets;
+            if (buckets != null && buckets.getStart() == start && buckets.getEnd() == end) {
+                return buckets;
+            }
+            if (buckets != null) {
+                // The trace range changed, the selections computed before are stale
+                fRangeCallgraphs.invalidateAll();
+            }
+            buckets = createBuckets(start, end);
+            fBuckets = buckets;
+            return buckets;
+        }
+    }
+
+    private CallGraphBuckets createBuckets(long start, long end) {
+        CallGraphBuckets buckets = new CallGraphBuckets(start, end, NB_BUCKETS);
+        // Get the calls that will be cut in parts by the buckets
+        List<Long> boundaries = buckets.getBoundaries();
+        for (IAnalysisModule module : getDependentAnalyses()) {
+            IFlameChartProvider callstackModule = (IFlameChartProvider) module;
+            IHostModel model = ModelManager.getModelFor(callstackModule.getHostId());
+            CallStackSeries callstack = callstackModule.getCallStackSeries();
+            if (callstack == null) {
+                continue;
+            }
+            List<ICallStackElement> leafElements = new ArrayList<>();
+            callstack.getRootElements().forEach(element -> collectLeafElements(element, leafElements));
+            for (ICallStackElement element : leafElements) {
+                if (element instanceof InstrumentedCallStackElement) {
+                    CallStack callStack = ((InstrumentedCallStackElement) element).getCallStack();
+                    buckets.addCrossingCalls(element, callStack.getFunctionsCrossing(boundaries, model), model);
+                }
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Iterate over a callstack series. It will do a depth-first search to find
+     * the leaf elements, whose callgraphs are then created in parallel and
+     * merged in the order of the elements
      *
      * @param callstackSerie
      *            The series to iterate over
@@ -216,82 +453,220 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
      */
     @VisibleForTesting
     protected boolean iterateOverCallstackSerie(CallStackSeries callstackSerie, IHostModel model, CallGraph callgraph, long start, long end, IProgressMonitor monitor) {
+        return iterateOverCallstackSerie(callstackSerie, model, callgraph, new Region(start, end), monitor);
+    }
+
+    private boolean iterateOverCallstackSerie(CallStackSeries callstackSerie, IHostModel model, CallGraph callgraph, Region region, IProgressMonitor monitor) {
         // The root elements are the same as the one from the callstack series
         Collection<ICallStackElement> rootElements = callstackSerie.getRootElements();
+        List<ICallStackElement> leafElements = new ArrayList<>();
         for (ICallStackElement element : rootElements) {
             if (monitor.isCanceled()) {
                 return false;
             }
-            iterateOverElement(element, model, callgraph, start, end, monitor);
+            collectLeafElements(element, leafElements);
         }
-        return true;
+
+        List<LeafCallGraph> leafCallGraphs = buildLeafCallGraphs(leafElements, model, region, monitor);
+        if (leafCallGraphs == null) {
+            return false;
+        }
+        for (int i = 0; i < leafCallGraphs.size(); i++) {
+            LeafCallGraph leafCallGraph = leafCallGraphs.get(i);
+            fHasKernelStatuses |= leafCallGraph.fHasKernelStatuses;
+            ICallStackElement element = leafElements.get(i);
+            for (AggregatedCallSite callsite : leafCallGraph.fCallSites.values()) {
+                callgraph.addAggregatedCallSite(element, callsite);
+            }
+            leafCallGraph.fPartSelfTimes.forEach(region::addPartSelfTime);
+        }
+        return !monitor.isCanceled();
+    }
+
+    /**
+     * Build the callgraphs of the leaf elements. The callstack of each leaf is
+     * independent, so they are built in parallel, on a pool created for this
+     * run and shut down once it is done: building them blocks on the state
+     * system and on the sampling data of the model, which may request the
+     * trace.
+     *
+     * @return the callgraphs of the leaf elements, in the order of the
+     *         elements, or null if the run was interrupted
+     */
+    private @Nullable List<LeafCallGraph> buildLeafCallGraphs(List<ICallStackElement> leafElements, IHostModel model, Region region, IProgressMonitor monitor) {
+        List<LeafCallGraph> leafCallGraphs = new ArrayList<>(leafElements.size());
+        int nbThreads = Math.min(fMaxThreads, leafElements.size());
+        if (nbThreads <= 1) {
+            for (ICallStackElement element : leafElements) {
+                leafCallGraphs.add(iterateOverLeafElement(element, model, region, monitor));
+            }
+            return leafCallGraphs;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<LeafCallGraph>> futures = new ArrayList<>(leafElements.size());
+            for (ICallStackElement element : leafElements) {
+                futures.add(executor.submit(() -> iterateOverLeafElement(element, model, region, monitor)));
+            }
+            for (Future<LeafCallGraph> future : futures) {
+                leafCallGraphs.add(future.get());
+            }
+            return leafCallGraphs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Set the maximum number of threads on which the callgraphs of the leaf
+     * elements are built
+     *
+     * @param maxThreads
+     *            the maximum number of threads, 1 to build them serially
+     */
+    @VisibleForTesting
+    protected void setMaxThreads(int maxThreads) {
+        fMaxThreads = maxThreads;
     }
 
-    private void iterateOverElement(ICallStackElement element, IHostModel model, CallGraph callgraph, long start, long end, IProgressMonitor monitor) {
+    private static void collectLeafElements(ICallStackElement element, List<ICallStackElement> leafElements) {
         // Iterator over the children of the element until we reach the leaves
         if (element.isLeaf()) {
-            iterateOverLeafElement(element, model, callgraph, start, end, monitor);
+            leafElements.add(element);
             return;
         }
         for (ICallStackElement child : element.getChildrenElements()) {
-            iterateOverElement(child, model, callgraph, start, end, monitor);
+            collectLeafElements(child, leafElements);
         }
     }
 
-    private void iterateOverLeafElement(ICallStackElement element, IHostModel model, CallGraph callgraph, long start, long end, IProgressMonitor monitor) {
+    /**
+     * The callsites of a leaf element, built independently from the other
+     * elements before being added to the callgraph
+     */
+    private static final class LeafCallGraph {
+        private final Map<Object, AggregatedCalledFunction> fCallSites = new LinkedHashMap<>();
+        /* The self times of the parts of the calls cut by the region's bounds */
+        private final Map<ICalledFunction, Long> fPartSelfTimes = new IdentityHashMap<>();
+        private volatile boolean fHasKernelStatuses = false;
+
+        public void addCallSite(AggregatedCalledFunction callsite) {
+            AggregatedCalledFunction existing = fCallSites.putIfAbsent(callsite.getObject(), callsite);
+            if (existing != null) {
+                existing.merge(callsite);
+            }
+        }
+    }
+
+    /**
+     * A function of the callstack being iterated over, with its callsite and
+     * the end of the last child, from which to get the sampling data. If the
+     * function is a part of a call cut by the bounds of the region, the call
+     * is also kept.
+     */
+    private static final class CallFrame {
+        private final AbstractCalledFunction fFunction;
+        private final AggregatedCalledFunction fCallSite;
+        private final int fDepth;
+        private final @Nullable ICalledFunction fCrossingCall;
+        private long fLastSampleEnd;
+
+        public CallFrame(AbstractCalledFunction function, AggregatedCalledFunction callSite, int depth, @Nullable ICalledFunction crossingCall, long lastSampleEnd) {
+            fFunction = function;
+            fCallSite = callSite;
+            fDepth = depth;
+            fCrossingCall = crossingCall;
+            fLastSampleEnd = lastSampleEnd;
+        }
+    }
+
+    private LeafCallGraph iterateOverLeafElement(ICallStackElement element, IHostModel model, Region region, IProgressMonitor monitor) {
         if (!(element instanceof InstrumentedCallStackElement)) {
             throw new IllegalStateException("Call Graph Analysis: The element does not have the right type"); //$NON-NLS-1$
         }
         InstrumentedCallStackElement insElement = (InstrumentedCallStackElement) element;
         CallStack callStack = insElement.getCallStack();
+        LeafCallGraph leafCallGraph = new LeafCallGraph();
 
         // If there is no children for this callstack, just return
         if (callStack.getMaxDepth() == 0) {
-            return;
+            return leafCallGraph;
         }
-        fHasKernelStatuses |= callStack.hasKernelStatuses();
-        // Start with the first function
-        AbstractCalledFunction nextFunction = (AbstractCalledFunction) callStack.getNextFunction(callStack.getStartTime(), 1, null, model, start, end);
-        while (nextFunction != null) {
-            AggregatedCalledFunction aggregatedChild = createCallSite(CallStackSymbolFactory.createSymbol(nextFunction.getSymbol(), element, nextFunction.getStart()));
-            iterateOverCallstack(element, callStack, nextFunction, 2, aggregatedChild, model, start, end, monitor);
-            aggregatedChild.addFunctionCall(nextFunction);
-            // Add the kernel statuses if available
-            Iterable<ProcessStatusInterval> kernelStatuses = callStack.getKernelStatuses(nextFunction, Collections.emptyList());
-            for (ProcessStatusInterval status : kernelStatuses) {
-                aggregatedChild.addKernelStatus(status);
+        leafCallGraph.fHasKernelStatuses = callStack.hasKernelStatuses();
+        /*
+         * The functions of all depths are read in one pass, each function
+         * before its children. The frames of the functions that are not
+         * ancestors of the next function are complete and are popped.
+         */
+        long start = region.getStart();
+        Deque<CallFrame> frames = new ArrayDeque<>();
+        callStack.iterateOverCallStack(start, region.getEnd(), model, monitor, calledFunction -> {
+            AbstractCalledFunction function = (AbstractCalledFunction) calledFunction;
+            while (!frames.isEmpty() && frames.peek().fFunction != function.getParent()) {
+                completeFrame(frames.pop(), frames.peek(), callStack, model, leafCallGraph);
             }
-            callgraph.addAggregatedCallSite(element, aggregatedChild);
-            nextFunction = (AbstractCalledFunction) callStack.getNextFunction(nextFunction.getEnd(), 1, null, model, start, end);
+            CallFrame parent = frames.peek();
+            if (parent != null && parent.fDepth < callStack.getMaxDepth()) {
+                // Add sampling data of the time between the previous and this function
+                int threadId = parent.fFunction.getThreadId();
+                if (threadId > 0) {
+                    Collection<AggregatedCallSite> samplingData = model.getSamplingData(threadId, parent.fLastSampleEnd, function.getStart());
+                    samplingData.forEach(parent.fCallSite::addChild);
+                    parent.fLastSampleEnd = function.getEnd();
+                }
+            }
+            AggregatedCalledFunction callSite = createCallSite(CallStackSymbolFactory.createSymbol(function.getSymbol(), element, function.getStart()));
+            int depth = (parent == null) ? 1 : parent.fDepth + 1;
+            frames.push(new CallFrame(function, callSite, depth, region.getCrossingCall(element, depth, function), start));
+        });
+        while (!frames.isEmpty()) {
+            completeFrame(frames.pop(), frames.peek(), callStack, model, leafCallGraph);
         }
+        return leafCallGraph;
     }
 
-    private void iterateOverCallstack(ICallStackElement element, CallStack callstack, ICalledFunction function, int nextLevel, AggregatedCalledFunction aggregatedCall, IHostModel model, long start, long end, IProgressMonitor monitor) {
-        if (nextLevel > callstack.getMaxDepth()) {
-            return;
-        }
+    private static void completeFrame(CallFrame frame, @Nullable CallFrame parent, CallStack callStack, IHostModel model, LeafCallGraph leafCallGraph) {
+        AbstractCalledFunction function = frame.fFunction;
+        // Get the sampling to the end of the function
         int threadId = function.getThreadId();
-        long lastSampleEnd = start;
-
-        AbstractCalledFunction nextFunction = (AbstractCalledFunction) callstack.getNextFunction(function.getStart(), nextLevel, function, model, Math.max(function.getStart(), start), Math.min(function.getEnd(), end));
-        while (nextFunction != null) {
-            // Add sampling data of the time between next function and beginning of next
-            // level
-            if (threadId > 0) {
-                Collection<AggregatedCallSite> samplingData = model.getSamplingData(threadId, lastSampleEnd, nextFunction.getStart());
-                samplingData.forEach(aggregatedCall::addChild);
-                lastSampleEnd = nextFunction.getEnd();
+        if (frame.fDepth < callStack.getMaxDepth() && threadId > 0) {
+            Collection<AggregatedCallSite> samplingData = model.getSamplingData(threadId, frame.fLastSampleEnd, function.getEnd() - frame.fLastSampleEnd);
+            samplingData.forEach(frame.fCallSite::addChild);
+        }
+        ICalledFunction crossingCall = frame.fCrossingCall;
+        if (crossingCall != null) {
+            // Part of a call cut by the region's bounds, the call will be
+            // added to the statistics once all its parts are known
+            leafCallGraph.fPartSelfTimes.merge(crossingCall, function.getSelfTime(), Long::sum);
+        }
+        if (parent != null) {
+            if (crossingCall != null) {
+                parent.fCallSite.addChildPart(function, frame.fCallSite);
+            } else {
+                parent.fCallSite.addChild(function, frame.fCallSite);
             }
-            AggregatedCalledFunction aggregatedChild = createCallSite(CallStackSymbolFactory.createSymbol(nextFunction.getSymbol(), element, nextFunction.getStart()));
-            iterateOverCallstack(element, callstack, nextFunction, nextLevel + 1, aggregatedChild, model, start, end, monitor);
-            aggregatedCall.addChild(nextFunction, aggregatedChild);
-            nextFunction = (AbstractCalledFunction) callstack.getNextFunction(nextFunction.getEnd(), nextLevel, function, model, Math.max(function.getStart(), start), Math.min(function.getEnd(), end));
+            return;
         }
-        // Get the sampling to the end of the function
-        if (threadId > 0) {
-            Collection<AggregatedCallSite> samplingData = model.getSamplingData(threadId, lastSampleEnd, function.getEnd() - lastSampleEnd);
-            samplingData.forEach(aggregatedCall::addChild);
+        if (crossingCall != null) {
+            frame.fCallSite.addFunctionPart(function);
+        } else {
+            frame.fCallSite.addFunctionCall(function);
         }
+        // Add the kernel statuses if available
+        Iterable<ProcessStatusInterval> kernelStatuses = callStack.getKernelStatuses(function, Collections.emptyList());
+        for (ProcessStatusInterval status : kernelStatuses) {
+            frame.fCallSite.addKernelStatus(status);
+        }
+        leafCallGraph.addCallSite(frame.fCallSite);
     }
 
     /**
@@ -323,9 +698,24 @@ public class CallGraphAnalysis extends TmfAbstractAnalysisModule implements ICal
 
     @Override
     public CallGraph getCallGraph() {
+        if (fCallGraphFile != null) {
+            readCallGraph();
+        }
         return fCallGraph;
     }
 
+    /**
+     * Get whether the full range callgraph was read from the file saved with
+     * the supplementary files of the trace, instead of being computed from
+     * the callstack
+     *
+     * @return true if the callgraph was read from the file
+     */
+    @VisibleForTesting
+    public boolean isCallGraphReadFromFile() {
+        return fReadFromFile;
+    }
+
     @Override
     public Collection<IWeightedTreeGroupDescriptor> getGroupDescriptors() {
         List<IWeightedTreeGroupDescriptor> descriptors = new ArrayList<>();
@@ -0,0 +1,455 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
+import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+import org.eclipse.tracecompass.incubator.callstack.core.symbol.CallStackSymbolFactory;
+
+/**
+ * The partial call graphs of consecutive time buckets of a trace. The call
+ * graph of a time range is assembled by merging the partial call graphs of the
+ * buckets covered by the range, only the parts of the range outside of those
+ * buckets need to be computed. The partial call graph of a bucket is computed
+ * the first time a range covers it, different buckets can be computed
+ * concurrently.
+ *
+ * The function calls crossing the boundaries of the buckets are cut in parts,
+ * one per bucket. The durations of the parts are added to the partial call
+ * graphs, but not their statistics: the calls are added to the statistics
+ * when assembling the call graph of a range, once, with their duration in the
+ * range and the sum of the self times of their parts.
+ */
+class CallGraphBuckets {
+
+    /**
+     * A time range for which to compute a call graph. The function calls
+     * crossing its start or end, when they are bucket boundaries, are cut in
+     * parts and the self time of their part in this range is kept.
+     */
+    static final class Region {
+
+        private final long fStart;
+        private final long fEnd;
+        private final Map<ICallStackElement, Map<Integer, ICalledFunction>> fStartCalls;
+        private final Map<ICallStackElement, Map<Integer, ICalledFunction>> fEndCalls;
+        private final Map<ICalledFunction, Long> fPartSelfTimes = new IdentityHashMap<>();
+
+        /**
+         * Constructor for a range whose calls are not cut in parts
+         *
+         * @param start
+         *            The start of the range
+         * @param end
+         *            The end of the range
+         */
+        public Region(long start, long end) {
+            this(start, end, Collections.emptyMap(), Collections.emptyMap());
+        }
+
+        private Region(long start, long end, Map<ICallStackElement, Map<Integer, ICalledFunction>> startCalls, Map<ICallStackElement, Map<Integer, ICalledFunction>> endCalls) {
+            fStart = start;
+            fEnd = end;
+            fStartCalls = startCalls;
+            fEndCalls = endCalls;
+        }
+
+        public long getStart() {
+            return fStart;
+        }
+
+        public long getEnd() {
+            return fEnd;
+        }
+
+        /**
+         * Get the call that is cut in parts by this region, of which a
+         * function read in this region is a part
+         *
+         * @param element
+         *            The element of the function
+         * @param depth
+         *            The depth of the function, starting at 1
+         * @param function
+         *            The function, bounded by this region
+         * @return The call crossing a bound of this region that this function
+         *         is a part of, or <code>null</code> if the function is a
+         *         complete call
+         */
+        public @Nullable ICalledFunction getCrossingCall(ICallStackElement element, int depth, ICalledFunction function) {
+            ICalledFunction call = null;
+            if (function.getStart() == fStart) {
+                call = getCall(fStartCalls, element, depth);
+            }
+            if (call == null && function.getEnd() == fEnd) {
+                call = getCall(fEndCalls, element, depth);
+            }
+            return call;
+        }
+
+        private static @Nullable ICalledFunction getCall(Map<ICallStackElement, Map<Integer, ICalledFunction>> calls, ICallStackElement element, int depth) {
+            Map<Integer, ICalledFunction> elementCalls = calls.get(element);
+            return elementCalls == null ? null : elementCalls.get(depth);
+        }
+
+        /**
+         * Add the self time of a part of a call in this region
+         *
+         * @param call
+         *            The call crossing a bound of this region
+         * @param selfTime
+         *            The self time of the part
+         */
+        public void addPartSelfTime(ICalledFunction call, long selfTime) {
+            fPartSelfTimes.merge(call, selfTime, Long::sum);
+        }
+
+        /**
+         * Get the self time of the part of a call in this region
+         *
+         * @param call
+         *            The call crossing a bound of this region
+         * @return The self time of the part, or 0 if the call does not have a
+         *         part in this region
+         */
+        public long getPartSelfTime(ICalledFunction call) {
+            return fPartSelfTimes.getOrDefault(call, 0L);
+        }
+    }
+
+    private final long[] fBoundaries;
+    /* The calls crossing each boundary, by element and depth */
+    private final List<Map<ICallStackElement, Map<Integer, ICalledFunction>>> fCrossingCalls;
+    private final Map<ICallStackElement, IHostModel> fModels = new HashMap<>();
+    private final @Nullable CallGraph[] fPartials;
+    private final @Nullable Region[] fRegions;
+    /* The locks under which the partial call graph of each bucket is computed */
+    private final Object[] fLocks;
+
+    /**
+     * Constructor
+     *
+     * @param start
+     *            The start of the first bucket
+     * @param end
+     *            The end of the last bucket
+     * @param nbBuckets
+     *            The maximum number of buckets, there may be less for very
+     *            small ranges
+     */
+    public CallGraphBuckets(long start, long end, int nbBuckets) {
+        long duration = Math.max(1, end - start);
+        int nb = (int) Math.max(1, Math.min(nbBuckets, duration));
+        fBoundaries = new long[nb + 1];
+        for (int i = 0; i <= nb; i++) {
+            fBoundaries[i] = start + (duration / nb) * i + Math.min(i, duration % nb);
+        }
+        fCrossingCalls = new ArrayList<>(nb + 1);
+        for (int i = 0; i <= nb; i++) {
+            fCrossingCalls.add(new HashMap<>());
+        }
+        fPartials = new CallGraph[nb];
+        fRegions = new Region[nb];
+        fLocks = new Object[nb];
+        for (int i = 0; i < nb; i++) {
+            fLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Get the start of the first bucket
+     *
+     * @return The start of the buckets
+     */
+    public long getStart() {
+        return fBoundaries[0];
+    }
+
+    /**
+     * Get the end of the last bucket
+     *
+     * @return The end of the buckets
+     */
+    public long getEnd() {
+        return fBoundaries[fBoundaries.length - 1];
+    }
+
+    /**
+     * Get the number of buckets
+     *
+     * @return The number of buckets
+     */
+    public int getNbBuckets() {
+        return fPartials.length;
+    }
+
+    /**
+     * Get the boundaries of the buckets, the start of each bucket followed by
+     * the end of the last one
+     *
+     * @return The boundaries of the buckets
+     */
+    public List<Long> getBoundaries() {
+        List<Long> boundaries = new ArrayList<>(fBoundaries.length);
+        for (long boundary : fBoundaries) {
+            boundaries.add(boundary);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Add the calls of an element that cross the boundaries of the buckets
+     *
+     * @param element
+     *            The element of the calls
+     * @param calls
+     *            The calls crossing any boundary, with their parent set
+     * @param model
+     *            The model of the host on which the calls were running
+     */
+    public void addCrossingCalls(ICallStackElement element, Collection<ICalledFunction> calls, IHostModel model) {
+        fModels.put(element, model);
+        for (ICalledFunction call : calls) {
+            int depth = 0;
+            for (ICalledFunction function = call; function != null; function = function.getParent()) {
+                depth++;
+            }
+            // Find the first boundary after the start of the call
+            int index = Arrays.binarySearch(fBoundaries, call.getStart() + 1);
+            for (int i = index < 0 ? -index - 1 : index; i < fBoundaries.length && fBoundaries[i] < call.getEnd(); i++) {
+                fCrossingCalls.get(i).computeIfAbsent(element, e -> new HashMap<>()).put(depth, call);
+            }
+        }
+    }
+
+    /**
+     * Get the region of a bucket, whose calls crossing its bounds are cut in
+     * parts
+     *
+     * @param bucket
+     *            The index of the bucket
+     * @return The region of the bucket
+     */
+    private synchronized Region getBucketRegion(int bucket) {
+        Region region = fRegions[bucket];
+        if (region == null) {
+            region = new Region(fBoundaries[bucket], fBoundaries[bucket + 1], fCrossingCalls.get(bucket), fCrossingCalls.get(bucket + 1));
+            fRegions[bucket] = region;
+        }
+        return region;
+    }
+
+    /**
+     * Get the partial call graph of a bucket, computing it for the region of
+     * the bucket if it was not computed yet
+     *
+     * @param bucket
+     *            The index of the bucket
+     * @param computer
+     *            Fills a call graph with the calls of a region, returns whether
+     *            it was successful
+     * @return The partial call graph of the bucket, or <code>null</code> if it
+     *         could not be computed
+     */
+    public @Nullable CallGraph getPartial(int bucket, BiPredicate<CallGraph, Region> computer) {
+        synchronized (fLocks[bucket]) {
+            CallGraph partial = fPartials[bucket];
+            if (partial != null) {
+                return partial;
+            }
+            partial = new CallGraph();
+            if (!computer.test(partial, getBucketRegion(bucket))) {
+                // Drop the self times of the parts computed before failing
+                resetBucketRegion(bucket);
+                return null;
+            }
+            fPartials[bucket] = partial;
+            return partial;
+        }
+    }
+
+    private synchronized void resetBucketRegion(int bucket) {
+        fRegions[bucket] = null;
+    }
+
+    /**
+     * Get the first bucket starting at or after a time
+     *
+     * @param time
+     *            The time
+     * @return The index of the bucket, or the number of buckets if no bucket
+     *         starts after the time
+     */
+    public int getFirstBucketFrom(long time) {
+        int index = Arrays.binarySearch(fBoundaries, 0, fPartials.length, time);
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * Get the last bucket ending at or before a time
+     *
+     * @param time
+     *            The time
+     * @return The index of the bucket, or -1 if no bucket ends before the time
+     */
+    public int getLastBucketTo(long time) {
+        int index = Arrays.binarySearch(fBoundaries, 1, fBoundaries.length, time);
+        return (index < 0 ? -index - 1 : index + 1) - 2;
+    }
+
+    /**
+     * Get the region from a time to the start of a bucket, whose calls
+     * crossing the bucket's start are cut in parts
+     *
+     * @param start
+     *            The start of the region
+     * @param bucket
+     *            The bucket at the end of the region
+     * @return The region
+     */
+    public Region getRegionBefore(long start, int bucket) {
+        return new Region(start, fBoundaries[bucket], Collections.emptyMap(), fCrossingCalls.get(bucket));
+    }
+
+    /**
+     * Get the region from the end of a bucket to a time, whose calls crossing
+     * the bucket's end are cut in parts
+     *
+     * @param bucket
+     *            The bucket at the start of the region
+     * @param end
+     *            The end of the region
+     * @return The region
+     */
+    public Region getRegionAfter(int bucket, long end) {
+        return new Region(fBoundaries[bucket + 1], end, fCrossingCalls.get(bucket + 1), Collections.emptyMap());
+    }
+
+    /**
+     * Merge a copy of the partial call graph of a bucket in a call graph
+     *
+     * @param partial
+     *            The partial call graph to merge
+     * @param callGraph
+     *            The call graph in which to merge the partial
+     */
+    public static void mergePartial(CallGraph partial, CallGraph callGraph) {
+        for (ICallStackElement element : partial.getElements()) {
+            mergeElement(element, partial, callGraph);
+        }
+    }
+
+    private static void mergeElement(ICallStackElement element, CallGraph partial, CallGraph callGraph) {
+        for (AggregatedCallSite callSite : partial.getCallingContextTree(element)) {
+            callGraph.addAggregatedCallSite(element, callSite.copyOf());
+        }
+        for (ICallStackElement child : element.getChildrenElements()) {
+            mergeElement(child, partial, callGraph);
+        }
+    }
+
+    /**
+     * Add the calls crossing the boundaries of consecutive buckets to the
+     * statistics of a call graph assembled from the partial call graphs of
+     * those buckets and of the regions around them. Each call is counted
+     * once, bounded by the range of the call graph. The partial call graphs
+     * of the buckets must have been computed.
+     *
+     * @param first
+     *            The first bucket of the call graph
+     * @param last
+     *            The last bucket of the call graph
+     * @param start
+     *            The start of the range of the call graph
+     * @param end
+     *            The end of the range of the call graph
+     * @param regions
+     *            The other regions computed for the call graph
+     * @param callGraph
+     *            The assembled call graph
+     */
+    public void addCrossingCallStatistics(int first, int last, long start, long end, Collection<Region> regions, CallGraph callGraph) {
+        List<Region> allRegions = new ArrayList<>(regions);
+        for (int i = first; i <= last; i++) {
+            allRegions.add(getBucketRegion(i));
+        }
+        // A call crossing many boundaries is counted once
+        Set<ICalledFunction> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = first; i <= last + 1; i++) {
+            for (Entry<ICallStackElement, Map<Integer, ICalledFunction>> entry : fCrossingCalls.get(i).entrySet()) {
+                ICallStackElement element = entry.getKey();
+                IHostModel model = fModels.get(element);
+                for (ICalledFunction call : entry.getValue().values()) {
+                    if (model == null || !visited.add(call)) {
+                        continue;
+                    }
+                    AggregatedCalledFunction callSite = findCallSite(callGraph, element, call, start);
+                    if (callSite == null) {
+                        continue;
+                    }
+                    long selfTime = 0;
+                    for (Region region : allRegions) {
+                        selfTime += region.getPartSelfTime(call);
+                    }
+                    AbstractCalledFunction function = CalledFunctionFactory.create(Math.max(start, call.getStart()), Math.min(end, call.getEnd()),
+                            call.getSymbol(), call.getProcessId(), call.getThreadId(), null, model);
+                    function.setSelfTime(selfTime);
+                    callSite.getFunctionStatistics().update(function);
+                }
+            }
+        }
+    }
+
+    private static @Nullable AggregatedCalledFunction findCallSite(CallGraph callGraph, ICallStackElement element, ICalledFunction call, long start) {
+        // The path of the call, from the root
+        Deque<ICalledFunction> path = new ArrayDeque<>();
+        for (ICalledFunction function = call; function != null; function = function.getParent()) {
+            path.push(function);
+        }
+        Collection<AggregatedCallSite> callSites = callGraph.getCallingContextTree(element);
+        AggregatedCallSite callSite = null;
+        for (ICalledFunction function : path) {
+            ICallStackSymbol symbol = CallStackSymbolFactory.createSymbol(function.getSymbol(), element, Math.max(start, function.getStart()));
+            callSite = null;
+            for (AggregatedCallSite candidate : callSites) {
+                if (candidate.getObject().equals(symbol)) {
+                    callSite = candidate;
+                    break;
+                }
+            }
+            if (callSite == null) {
+                return null;
+            }
+            callSites = callSite.getCallees();
+        }
+        return (callSite instanceof AggregatedCalledFunction) ? (AggregatedCalledFunction) callSite : null;
+    }
+}
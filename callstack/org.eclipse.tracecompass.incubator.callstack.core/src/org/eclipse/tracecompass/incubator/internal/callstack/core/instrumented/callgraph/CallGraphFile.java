@@ -0,0 +1,420 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.os.linux.core.model.ProcessStatus;
+import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
+import org.eclipse.tracecompass.incubator.analysis.core.concepts.ICallStackSymbol;
+import org.eclipse.tracecompass.incubator.analysis.core.model.IHostModel;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.symbol.ResolvableSymbol;
+import org.eclipse.tracecompass.incubator.internal.callstack.core.symbol.StringSymbol;
+
+/**
+ * Reads and writes the full range call graph of a {@link CallGraphAnalysis} to
+ * a file in the supplementary files folder of the trace, so it does not need
+ * to be computed again when the trace is opened again.
+ *
+ * The file contains, for each element of the callstack series, the path of
+ * names to the element followed by its aggregated callsites, written depth
+ * first with their symbol, times, statistics and process statuses. Elements
+ * are matched by their path with the elements of the series when the file is
+ * read. The file is memory-mapped to be read.
+ *
+ * The header of the file contains a key describing the state of the trace and
+ * callstack the call graph was computed from. A file whose key does not match
+ * the current key is stale and is not read.
+ */
+final class CallGraphFile {
+
+    private static final int MAGIC = 0x43474631; // "CGF1"
+    private static final int VERSION = 2;
+
+    private static final byte RESOLVABLE_SYMBOL = 0;
+    private static final byte STRING_SYMBOL = 1;
+
+    private static final ToLongFunction<ICalledFunction> DURATION = ICalledFunction::getLength;
+    private static final ToLongFunction<ICalledFunction> SELF_TIME = ICalledFunction::getSelfTime;
+    private static final ToLongFunction<ICalledFunction> CPU_TIME = ICalledFunction::getCpuTime;
+
+    private CallGraphFile() {
+        // Utility class
+    }
+
+    /**
+     * The content of a call graph file
+     */
+    static final class Content {
+        private final CallGraph fCallGraph;
+        private final boolean fHasKernelStatuses;
+
+        private Content(CallGraph callGraph, boolean hasKernelStatuses) {
+            fCallGraph = callGraph;
+            fHasKernelStatuses = hasKernelStatuses;
+        }
+
+        /**
+         * Get the call graph read from the file
+         *
+         * @return The call graph
+         */
+        public CallGraph getCallGraph() {
+            return fCallGraph;
+        }
+
+        /**
+         * Get whether the call graph has kernel statuses
+         *
+         * @return Whether the call graph has kernel statuses
+         */
+        public boolean hasKernelStatuses() {
+            return fHasKernelStatuses;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Write
+    // ------------------------------------------------------------------------
+
+    /**
+     * Write a call graph to a file. The file is first written to a temporary
+     * file that then replaces the file, so a partially written file is never
+     * read.
+     *
+     * @param file
+     *            The file to write
+     * @param callGraph
+     *            The call graph to write
+     * @param rootElements
+     *            The root elements of the callstack series of the call graph
+     * @param hasKernelStatuses
+     *            Whether the call graph has kernel statuses
+     * @param key
+     *            The key of the state the call graph was computed from
+     * @throws IOException
+     *             Exceptions writing the file
+     */
+    public static void write(Path file, CallGraph callGraph, Collection<ICallStackElement> rootElements, boolean hasKernelStatuses, long[] key) throws IOException {
+        Map<List<String>, ICallStackElement> elements = new HashMap<>();
+        for (ICallStackElement root : rootElements) {
+            collectElements(root, new ArrayList<>(), elements);
+        }
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp"); //$NON-NLS-1$
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(key.length);
+            for (long value : key) {
+                out.writeLong(value);
+            }
+            out.writeBoolean(hasKernelStatuses);
+            List<Map.Entry<List<String>, ICallStackElement>> withCallSites = new ArrayList<>();
+            for (Map.Entry<List<String>, ICallStackElement> entry : elements.entrySet()) {
+                if (!callGraph.getCallingContextTree(entry.getValue()).isEmpty()) {
+                    withCallSites.add(entry);
+                }
+            }
+            out.writeInt(withCallSites.size());
+            for (Map.Entry<List<String>, ICallStackElement> entry : withCallSites) {
+                List<String> path = entry.getKey();
+                out.writeInt(path.size());
+                for (String name : path) {
+                    writeString(out, name);
+                }
+                Collection<AggregatedCallSite> callSites = callGraph.getCallingContextTree(entry.getValue());
+                out.writeInt(callSites.size());
+                for (AggregatedCallSite callSite : callSites) {
+                    writeCallSite(out, (AggregatedCalledFunction) callSite);
+                }
+            }
+        }
+        try {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void collectElements(ICallStackElement element, List<String> parentPath, Map<List<String>, ICallStackElement> elements) {
+        List<String> path = new ArrayList<>(parentPath);
+        path.add(element.getName());
+        elements.put(path, element);
+        for (ICallStackElement child : element.getChildrenElements()) {
+            collectElements(child, path, elements);
+        }
+    }
+
+    private static void writeCallSite(DataOutputStream out, AggregatedCalledFunction callSite) throws IOException {
+        writeSymbol(out, callSite.getObject());
+        out.writeLong(callSite.getDuration());
+        out.writeLong(callSite.getSelfTime());
+        out.writeLong(callSite.getCpuTime());
+        out.writeInt(callSite.getProcessId());
+        AggregatedCalledFunctionStatistics statistics = callSite.getFunctionStatistics();
+        writeStatistics(out, statistics.getDurationStatistics(), true);
+        writeStatistics(out, statistics.getSelfTimeStatistics(), false);
+        writeStatistics(out, statistics.getCpuTimesStatistics(), false);
+        Collection<AggregatedThreadStatus> statuses = callSite.getProcessStatuses();
+        out.writeInt(statuses.size());
+        for (AggregatedThreadStatus status : statuses) {
+            writeString(out, status.getProcessStatus().name());
+            out.writeLong(status.getWeight());
+        }
+        List<AggregatedCalledFunction> children = new ArrayList<>();
+        for (WeightedTree<ICallStackSymbol> child : callSite.getChildren()) {
+            if (child instanceof AggregatedCalledFunction) {
+                children.add((AggregatedCalledFunction) child);
+            }
+        }
+        out.writeInt(children.size());
+        for (AggregatedCalledFunction child : children) {
+            writeCallSite(out, child);
+        }
+    }
+
+    private static void writeSymbol(DataOutputStream out, ICallStackSymbol symbol) throws IOException {
+        if (symbol instanceof ResolvableSymbol) {
+            ResolvableSymbol resolvable = (ResolvableSymbol) symbol;
+            out.writeByte(RESOLVABLE_SYMBOL);
+            out.writeLong(resolvable.getAddress());
+            out.writeInt(resolvable.getPid());
+            out.writeLong(resolvable.getTimestamp());
+            return;
+        }
+        out.writeByte(STRING_SYMBOL);
+        writeString(out, symbol.toString());
+    }
+
+    private static void writeStatistics(DataOutputStream out, IStatistics<ICalledFunction> statistics, boolean withObjects) throws IOException {
+        out.writeLong(statistics.getNbElements());
+        out.writeLong(statistics.getTotal());
+        out.writeLong(statistics.getMin());
+        out.writeLong(statistics.getMax());
+        out.writeDouble(statistics.getMean());
+        out.writeDouble(PersistedStatistics.getSumSquares(statistics));
+        if (withObjects) {
+            writeFunction(out, statistics.getMinObject());
+            writeFunction(out, statistics.getMaxObject());
+        }
+    }
+
+    private static void writeFunction(DataOutputStream out, @Nullable ICalledFunction function) throws IOException {
+        out.writeBoolean(function != null);
+        if (function != null) {
+            out.writeLong(function.getStart());
+            out.writeLong(function.getEnd());
+            out.writeInt(function.getProcessId());
+            out.writeInt(function.getThreadId());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // ------------------------------------------------------------------------
+    // Read
+    // ------------------------------------------------------------------------
+
+    /**
+     * Read a call graph from a file
+     *
+     * @param file
+     *            The file to read
+     * @param rootElements
+     *            The root elements of the callstack series of the call graph
+     * @param model
+     *            The model of the host, for the minimum and maximum functions
+     *            of the statistics
+     * @param key
+     *            The key of the current state of the trace and callstack
+     * @return The content of the file, or <code>null</code> if the file is
+     *         not a valid call graph file, is stale or its elements are not in
+     *         the callstack series
+     * @throws IOException
+     *             Exceptions reading the file
+     */
+    public static @Nullable Content read(Path file, Collection<ICallStackElement> rootElements, IHostModel model, long[] key) throws IOException {
+        Map<List<String>, ICallStackElement> elements = new HashMap<>();
+        for (ICallStackElement root : rootElements) {
+            collectElements(root, new ArrayList<>(), elements);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!readHeader(buffer, key)) {
+                return null;
+            }
+            boolean hasKernelStatuses = buffer.get() != 0;
+            CallGraph callGraph = new CallGraph();
+            int nbElements = buffer.getInt();
+            for (int i = 0; i < nbElements; i++) {
+                int pathLength = buffer.getInt();
+                List<String> path = new ArrayList<>(pathLength);
+                for (int j = 0; j < pathLength; j++) {
+                    path.add(readString(buffer));
+                }
+                ICallStackElement element = elements.get(path);
+                if (element == null) {
+                    // The callstack series changed since the file was written
+                    return null;
+                }
+                int nbCallSites = buffer.getInt();
+                for (int j = 0; j < nbCallSites; j++) {
+                    callGraph.addAggregatedCallSite(element, readCallSite(buffer, model));
+                }
+            }
+            return new Content(callGraph, hasKernelStatuses);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            // Truncated or corrupted file
+            return null;
+        }
+    }
+
+    /**
+     * Read the header of a call graph file, to know if it is valid and whether
+     * the call graph has kernel statuses without reading the whole file
+     *
+     * @param file
+     *            The file to read
+     * @param key
+     *            The key of the current state of the trace and callstack
+     * @return Whether the call graph has kernel statuses, or <code>null</code>
+     *         if the file is not a valid call graph file or is stale
+     */
+    public static @Nullable Boolean readHasKernelStatuses(Path file, long[] key) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 3 + Long.BYTES * key.length + 1);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read the whole header
+            }
+            header.flip();
+            if (header.remaining() < header.capacity() || !readHeader(header, key)) {
+                return null;
+            }
+            return header.get() != 0;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the magic number, version and key of a file and check that they
+     * match the current ones
+     */
+    private static boolean readHeader(ByteBuffer buffer, long[] key) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != key.length) {
+            return false;
+        }
+        for (long value : key) {
+            if (buffer.getLong() != value) {
+                // The call graph was computed from another state of the trace
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static AggregatedCalledFunction readCallSite(ByteBuffer buffer, IHostModel model) {
+        ICallStackSymbol symbol = readSymbol(buffer);
+        long duration = buffer.getLong();
+        long selfTime = buffer.getLong();
+        long cpuTime = buffer.getLong();
+        int processId = buffer.getInt();
+        PersistedStatistics durations = readStatistics(buffer, DURATION, symbol, model, true);
+        PersistedStatistics selfTimes = readStatistics(buffer, SELF_TIME, symbol, model, false);
+        PersistedStatistics cpuTimes = readStatistics(buffer, CPU_TIME, symbol, model, false);
+        AggregatedCalledFunction callSite = new AggregatedCalledFunction(symbol, new AggregatedCalledFunctionStatistics(durations, selfTimes, cpuTimes), duration, selfTime, cpuTime, processId);
+        int nbStatuses = buffer.getInt();
+        for (int i = 0; i < nbStatuses; i++) {
+            AggregatedThreadStatus status = new AggregatedThreadStatus(ProcessStatus.valueOf(readString(buffer)));
+            status.addToWeight(buffer.getLong());
+            callSite.addProcessStatus(status);
+        }
+        int nbChildren = buffer.getInt();
+        for (int i = 0; i < nbChildren; i++) {
+            callSite.addChild(readCallSite(buffer, model));
+        }
+        return callSite;
+    }
+
+    private static ICallStackSymbol readSymbol(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+        case RESOLVABLE_SYMBOL:
+            return new ResolvableSymbol(buffer.getLong(), buffer.getInt(), buffer.getLong());
+        case STRING_SYMBOL:
+            return new StringSymbol(readString(buffer));
+        default:
+            throw new IllegalArgumentException("Unknown symbol type " + type); //$NON-NLS-1$
+        }
+    }
+
+    private static PersistedStatistics readStatistics(ByteBuffer buffer, ToLongFunction<ICalledFunction> mapper, ICallStackSymbol symbol, IHostModel model, boolean withObjects) {
+        long nbElements = buffer.getLong();
+        long total = buffer.getLong();
+        long min = buffer.getLong();
+        long max = buffer.getLong();
+        double mean = buffer.getDouble();
+        double sumSquares = buffer.getDouble();
+        ICalledFunction minObject = null;
+        ICalledFunction maxObject = null;
+        if (withObjects) {
+            minObject = readFunction(buffer, symbol, model);
+            maxObject = readFunction(buffer, symbol, model);
+        }
+        return new PersistedStatistics(mapper, nbElements, total, min, max, mean, sumSquares, minObject, maxObject);
+    }
+
+    private static @Nullable ICalledFunction readFunction(ByteBuffer buffer, ICallStackSymbol symbol, IHostModel model) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        long start = buffer.getLong();
+        long end = buffer.getLong();
+        int processId = buffer.getInt();
+        int threadId = buffer.getInt();
+        return CalledFunctionFactory.create(start, end, symbol.toString(), processId, threadId, null, model);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.callstack.core.instrumented.callgraph;
+
+import java.util.function.ToLongFunction;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.analysis.timing.core.statistics.IStatistics;
+import org.eclipse.tracecompass.incubator.callstack.core.instrumented.ICalledFunction;
+
+/**
+ * Statistics on called functions that can be restored from their values, for
+ * call graphs read from a file. They are computed like the
+ * {@link org.eclipse.tracecompass.analysis.timing.core.statistics.Statistics}
+ * class, with the sum of squares of differences from the mean kept to merge
+ * statistics together, and they can be merged with any other statistics.
+ */
+class PersistedStatistics implements IStatistics<ICalledFunction> {
+
+    private final ToLongFunction<ICalledFunction> fMapper;
+    private long fNbElements;
+    private long fTotal;
+    private long fMin;
+    private long fMax;
+    private double fMean;
+    private double fSumSquares;
+    private @Nullable ICalledFunction fMinObject;
+    private @Nullable ICalledFunction fMaxObject;
+
+    /**
+     * Constructor, restores statistics from their values
+     *
+     * @param mapper
+     *            The function mapping the called functions to their value
+     * @param nbElements
+     *            The number of elements
+     * @param total
+     *            The sum of the values
+     * @param min
+     *            The minimum value
+     * @param max
+     *            The maximum value
+     * @param mean
+     *            The mean value
+     * @param sumSquares
+     *            The sum of squares of differences from the mean
+     * @param minObject
+     *            The element with the minimum value
+     * @param maxObject
+     *            The element with the maximum value
+     */
+    public PersistedStatistics(ToLongFunction<ICalledFunction> mapper, long nbElements, long total, long min, long max, double mean, double sumSquares,
+            @Nullable ICalledFunction minObject, @Nullable ICalledFunction maxObject) {
+        fMapper = mapper;
+        fNbElements = nbElements;
+        fTotal = total;
+        fMin = min;
+        fMax = max;
+        fMean = mean;
+        fSumSquares = sumSquares;
+        fMinObject = minObject;
+        fMaxObject = maxObject;
+    }
+
+    /**
+     * Copy statistics in a persisted statistics object
+     *
+     * @param mapper
+     *            The function mapping the called functions to their value
+     * @param statistics
+     *            The statistics to copy
+     * @return The copied statistics
+     */
+    public static PersistedStatistics copyOf(ToLongFunction<ICalledFunction> mapper, IStatistics<ICalledFunction> statistics) {
+        return new PersistedStatistics(mapper, statistics.getNbElements(), statistics.getTotal(), statistics.getMin(), statistics.getMax(),
+                statistics.getMean(), getSumSquares(statistics), statistics.getMinObject(), statistics.getMaxObject());
+    }
+
+    /**
+     * Get the sum of squares of differences from the mean of statistics. It
+     * is derived from the standard deviation, which is only available with
+     * more than 2 elements.
+     *
+     * @param statistics
+     *            The statistics
+     * @return The sum of squares of differences from the mean
+     */
+    public static double getSumSquares(IStatistics<?> statistics) {
+        if (statistics instanceof PersistedStatistics) {
+            return ((PersistedStatistics) statistics).fSumSquares;
+        }
+        long nbElements = statistics.getNbElements();
+        if (nbElements < 2) {
+            return 0.0;
+        }
+        if (nbElements == 2) {
+            double delta = (double) statistics.getMax() - statistics.getMin();
+            return delta * delta / 2;
+        }
+        double stdDev = statistics.getStdDev();
+        return stdDev * stdDev * (nbElements - 1);
+    }
+
+    @Override
+    public long getMin() {
+        return fMin;
+    }
+
+    @Override
+    public long getMax() {
+        return fMax;
+    }
+
+    @Override
+    public @Nullable ICalledFunction getMinObject() {
+        return fMinObject;
+    }
+
+    @Override
+    public @Nullable ICalledFunction getMaxObject() {
+        return fMaxObject;
+    }
+
+    @Override
+    public long getNbElements() {
+        return fNbElements;
+    }
+
+    @Override
+    public double getMean() {
+        return fMean;
+    }
+
+    @Override
+    public double getStdDev() {
+        return fNbElements > 2 ? Math.sqrt(fSumSquares / (fNbElements - 1)) : Double.NaN;
+    }
+
+    @Override
+    public long getTotal() {
+        return fTotal;
+    }
+
+    @Override
+    public void update(ICalledFunction object) {
+        long value = fMapper.applyAsLong(object);
+        if (fNbElements == 0 || value < fMin) {
+            fMin = value;
+            fMinObject = object;
+        }
+        if (fNbElements == 0 || value > fMax) {
+            fMax = value;
+            fMaxObject = object;
+        }
+        fNbElements++;
+        fTotal += value;
+        double delta = value - fMean;
+        fMean += delta / fNbElements;
+        fSumSquares += delta * (value - fMean);
+    }
+
+    @Override
+    public void merge(IStatistics<ICalledFunction> other) {
+        long otherNbElements = other.getNbElements();
+        if (otherNbElements == 0) {
+            return;
+        }
+        if (fNbElements == 0 || other.getMin() < fMin) {
+            fMin = other.getMin();
+            fMinObject = other.getMinObject();
+        }
+        if (fNbElements == 0 || other.getMax() > fMax) {
+            fMax = other.getMax();
+            fMaxObject = other.getMaxObject();
+        }
+        long nbElements = fNbElements + otherNbElements;
+        double delta = other.getMean() - fMean;
+        fSumSquares += getSumSquares(other) + delta * delta * fNbElements * otherNbElements / nbElements;
+        fMean += delta * otherNbElements / nbElements;
+        fTotal += other.getTotal();
+        fNbElements = nbElements;
+    }
+
+    @Override
+    public String toString() {
+        return "Min: " + fMin + ", Max: " + fMax + ", Mean: " + fMean + ", Nb elements: " + fNbElements; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+    }
+}
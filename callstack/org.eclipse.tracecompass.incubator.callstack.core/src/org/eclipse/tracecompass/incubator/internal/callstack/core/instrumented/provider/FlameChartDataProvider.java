@@ -22,6 +22,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -93,6 +94,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 
@@ -116,17 +118,27 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
      */
     private static final Logger LOGGER = TraceCompassLog.getLogger(FlameChartDataProvider.class);
 
-    private final Map<Long, FlameChartEntryModel> fEntries = new HashMap<>();
+    /*
+     * The entry maps are read by concurrent row, arrow and tooltip requests
+     * without locking. Each bidirectional mapping is kept in 2 concurrent maps,
+     * the inverse map being filled when the ID is first assigned.
+     */
+    private final Map<Long, FlameChartEntryModel> fEntries = new ConcurrentHashMap<>();
     // Key is the row ID that requires linked data (for instance a kernel row) and
     // value is the row being linked to (the one from the callstack)
-    private final BiMap<Long, Long> fLinkedEntries = HashBiMap.create();
+    private final Map<Long, Long> fLinkedEntries = new ConcurrentHashMap<>();
+    // Inverse of fLinkedEntries, the key is the callstack row ID
+    private final Map<Long, Long> fLinkingEntries = new ConcurrentHashMap<>();
     private final Collection<ISymbolProvider> fProviders = new ArrayList<>();
-    private final BiMap<Long, CallStackDepth> fIdToCallstack = HashBiMap.create();
-    private final BiMap<Long, ICallStackElement> fIdToElement = HashBiMap.create();
+    private final Map<Long, CallStackDepth> fIdToCallstack = new ConcurrentHashMap<>();
+    private final Map<CallStackDepth, Long> fCallstackToId = new ConcurrentHashMap<>();
+    private final Map<ICallStackElement, Long> fElementToId = new ConcurrentHashMap<>();
+    // Snapshot of the distinct callstacks of the entries, published with the tree
+    private volatile Set<CallStack> fCallStacks = Collections.emptySet();
     private final long fTraceId = ENTRY_ID.getAndIncrement();
 
     /** Cache for entry metadata */
-    private final Map<Long, @NonNull Multimap<@NonNull String, @NonNull Object>> fEntryMetadata = new HashMap<>();
+    private final Map<Long, @NonNull Multimap<@NonNull String, @NonNull Object>> fEntryMetadata = new ConcurrentHashMap<>();
 
     private static class TidInformation {
         private final HostThread fTid;
@@ -225,8 +237,8 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
 
     private final String fAnalysisId;
     private final FlameChartArrowProvider fArrowProvider;
-    private @Nullable TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fCached;
-    private @Nullable ThreadData fThreadData = null;
+    private volatile @Nullable TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fCached;
+    private volatile @Nullable ThreadData fThreadData = null;
 
     /**
      * Constructor
@@ -256,18 +268,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             return new TmfModelResponse<>(Collections.emptyList(), Status.COMPLETED, CommonStatusMessage.COMPLETED);
         }
         List<ITimeGraphArrow> tgArrows = new ArrayList<>();
-        // First, get the distinct callstacks
-        List<CallStackDepth> csList = new ArrayList<>();
-        synchronized (fIdToCallstack) {
-            // Quick copy the values to a list to avoid keeping the lock for too
-            // long, adding to a hashSet takes time to calculate the CallStack's
-            // hash.
-            csList.addAll(fIdToCallstack.values());
-        }
-        Set<CallStack> callstacks = new HashSet<>();
-        for (CallStackDepth csd : csList) {
-            callstacks.add(csd.getCallStack());
-        }
+        Set<CallStack> callstacks = fCallStacks;
 
         // Find the source and destination entry for each arrow
         for (ITmfStateInterval interval : arrows) {
@@ -304,9 +305,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             // We found the callstack, find the right depth and its entry id
             int currentDepth = callstack.getCurrentDepth(ts);
             CallStackDepth csd = new CallStackDepth(callstack, currentDepth);
-            synchronized (fIdToCallstack) {
-                return fIdToCallstack.inverse().get(csd);
-            }
+            return fCallstackToId.get(csd);
         }
         return null;
     }
@@ -394,24 +393,31 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
 
     // Get an entry for a quark
     private long getEntryId(CallStackDepth stack) {
-        synchronized (fIdToCallstack) {
-            return fIdToCallstack.inverse().computeIfAbsent(stack, q -> ENTRY_ID.getAndIncrement());
-        }
+        return fCallstackToId.computeIfAbsent(stack, q -> {
+            long id = ENTRY_ID.getAndIncrement();
+            fIdToCallstack.put(id, q);
+            return id;
+        });
     }
 
     private long getEntryId(ICallStackElement instrumentedCallStackElement) {
-        return fIdToElement.inverse().computeIfAbsent(instrumentedCallStackElement, q -> ENTRY_ID.getAndIncrement());
+        return fElementToId.computeIfAbsent(instrumentedCallStackElement, q -> ENTRY_ID.getAndIncrement());
     }
 
     // Get a new entry for a kernel entry ID
     private long getKernelEntryId(long baseId) {
-        return fLinkedEntries.inverse().computeIfAbsent(baseId, id -> ENTRY_ID.getAndIncrement());
+        return fLinkingEntries.computeIfAbsent(baseId, id -> {
+            long kernelId = ENTRY_ID.getAndIncrement();
+            fLinkedEntries.put(kernelId, id);
+            return kernelId;
+        });
     }
 
     @Override
     public TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> fetchTree(Map<String, Object> fetchParameters, @Nullable IProgressMonitor monitor) {
-        if (fCached != null) {
-            return fCached;
+        TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> cached = fCached;
+        if (cached != null) {
+            return cached;
         }
 
         try (FlowScopeLog scope = new FlowScopeLogBuilder(LOGGER, Level.FINE, "FlameChartDataProvider#fetchTree") //$NON-NLS-1$
@@ -450,6 +456,11 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             for (FlameChartEntryModel model : tree) {
                 fEntryMetadata.put(model.getId(), model.getMetadata());
             }
+            Set<CallStack> callstacks = new HashSet<>();
+            for (CallStackDepth csd : fIdToCallstack.values()) {
+                callstacks.add(csd.getCallStack());
+            }
+            fCallStacks = ImmutableSet.copyOf(callstacks);
 
             if (complete) {
                 TmfModelResponse<TmfTreeModel<FlameChartEntryModel>> response = new TmfModelResponse<>(new TmfTreeModel<>(Collections.emptyList(), tree),
@@ -640,7 +651,7 @@ public class FlameChartDataProvider extends AbstractTmfTraceDataProvider impleme
             // See if any more row needs to be filled with these function's data
             // TODO: Kernel might not be the only type of linked entries (for instance,
             // locations of sampling data)
-            Long linked = fLinkedEntries.inverse().get(entry.getKey());
+            Long linked = fLinkingEntries.get(entry.getKey());
             if (linked == null || !entries.containsKey(linked)) {
                 continue;
             }
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.perf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.QueryParameters;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderResponseCache;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderService;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.EntryStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.ExperimentModelStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.OutputResponseStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.TgTreeOutputResponseStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.XyTreeOutputResponseStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.utils.RestServerTest;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Benchmarks full round trips of the states and XY endpoints of the
+ * {@link DataProviderService}, with the in-process test server and the test
+ * traces, for different numbers of requested items. The response cache is
+ * invalidated before each request so that the data provider is queried.
+ */
+public class DataProviderServiceBenchmark extends RestServerTest {
+
+    private static final String TEST_STATES = "States round trip (%d items)";
+    private static final String TEST_XY = "XY round trip (%d points)";
+
+    private static final String CALL_STACK_DATAPROVIDER_ID = "org.eclipse.tracecompass.internal.analysis.profiling.callstack.provider.CallStackDataProvider";
+    private static final String XY_DATAPROVIDER_ID = "org.eclipse.tracecompass.analysis.os.linux.core.cpuusage.CpuUsageDataProvider";
+    private static final String REQUESTED_TIMERANGE_KEY = "requested_timerange";
+    private static final String REQUESTED_TIMES_KEY = "requested_times";
+    private static final String REQUESTED_ITEMS_KEY = "requested_items";
+    private static final String START = "start";
+    private static final String END = "end";
+    private static final String NB_TIMES = "nbTimes";
+
+    private static final long UST_START = 1450193697034689597L;
+    private static final long UST_END = 1450193745774189602L;
+    private static final long ARM_64_START = 1412670961211260539L;
+    private static final long ARM_64_END = 1412670967217750839L;
+
+    private static final int LOOP_COUNT = 10;
+    private static final int MAX_ITER = 100;
+    private static final int STATES_NB_TIMES = 2000;
+    private static final int[] ITEM_COUNTS = { 1, 16, 64, 256 };
+    private static final int[] XY_NB_TIMES = { 100, 1000, 10000 };
+
+    /**
+     * Benchmark the time graph states endpoint
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the analysis
+     */
+    @Test
+    public void benchmarkStates() throws InterruptedException {
+        ExperimentModelStub exp = assertPostExperiment(CONTEXT_SWITCHES_UST_STUB.getName(), CONTEXT_SWITCHES_UST_STUB);
+        String expUUID = exp.getUUID().toString();
+        TgTreeOutputResponseStub tree = (TgTreeOutputResponseStub) waitForTree(getTimeGraphTreeEndpoint(expUUID, CALL_STACK_DATAPROVIDER_ID), TgTreeOutputResponseStub.class, UST_START, UST_END);
+        List<Integer> entries = new ArrayList<>();
+        tree.getModel().getEntries().forEach(entry -> entries.add(entry.getId()));
+        assertFalse(entries.isEmpty());
+
+        WebTarget statesEndpoint = getTimeGraphStatesEndpoint(expUUID, CALL_STACK_DATAPROVIDER_ID);
+        for (int itemCount : ITEM_COUNTS) {
+            // Request existing entries first, then IDs without states
+            List<Integer> items = new ArrayList<>();
+            for (int i = 0; i < itemCount; i++) {
+                items.add(i < entries.size() ? entries.get(i) : Collections.max(entries) + i);
+            }
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put(REQUESTED_TIMERANGE_KEY, ImmutableMap.of(START, UST_START, END, UST_END, NB_TIMES, STATES_NB_TIMES));
+            parameters.put(REQUESTED_ITEMS_KEY, items);
+            benchmarkRoundTrip(String.format(TEST_STATES, itemCount), statesEndpoint, parameters);
+        }
+    }
+
+    /**
+     * Benchmark the XY endpoint
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting for the analysis
+     */
+    @Test
+    public void benchmarkXY() throws InterruptedException {
+        ExperimentModelStub exp = assertPostExperiment(ARM_64_KERNEL_STUB.getName(), ARM_64_KERNEL_STUB);
+        String expUUID = exp.getUUID().toString();
+        XyTreeOutputResponseStub tree = (XyTreeOutputResponseStub) waitForTree(getXYTreeEndpoint(expUUID, XY_DATAPROVIDER_ID), XyTreeOutputResponseStub.class, ARM_64_START, ARM_64_END);
+        List<Integer> items = new ArrayList<>();
+        for (EntryStub entry : tree.getModel().getEntries()) {
+            items.add(entry.getId());
+        }
+        assertFalse(items.isEmpty());
+
+        WebTarget xyEndpoint = getXYSeriesEndpoint(expUUID, XY_DATAPROVIDER_ID);
+        for (int nbTimes : XY_NB_TIMES) {
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put(REQUESTED_TIMERANGE_KEY, ImmutableMap.of(START, ARM_64_START, END, ARM_64_END, NB_TIMES, nbTimes));
+            parameters.put(REQUESTED_ITEMS_KEY, items);
+            benchmarkRoundTrip(String.format(TEST_XY, nbTimes), xyEndpoint, parameters);
+        }
+    }
+
+    private static OutputResponseStub waitForTree(WebTarget treeEndpoint, Class<? extends OutputResponseStub> type, long start, long end) throws InterruptedException {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(REQUESTED_TIMES_KEY, ImmutableList.of(start, end));
+        OutputResponseStub response = null;
+        for (int i = 0; i < MAX_ITER && (response == null || !response.isCompleted()); i++) {
+            if (response != null) {
+                Thread.sleep(100);
+            }
+            Response treeResponse = treeEndpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals(200, treeResponse.getStatus());
+            response = treeResponse.readEntity(type);
+            treeResponse.close();
+        }
+        assertNotNull(response);
+        return response;
+    }
+
+    private static void benchmarkRoundTrip(String name, WebTarget endpoint, Map<String, Object> parameters) {
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(SerializerBenchmark.TEST_ID + name);
+        perf.tagAsSummary(pm, name, Dimension.CPU_TIME);
+        Entity<QueryParameters> query = Entity.json(new QueryParameters(parameters, Collections.emptyList()));
+        for (int i = 0; i < LOOP_COUNT; i++) {
+            DataProviderResponseCache.getInstance().invalidateAll();
+            pm.start();
+            Response response = endpoint.request().post(query);
+            String body = response.readEntity(String.class);
+            pm.stop();
+            assertEquals(200, response.getStatus());
+            assertFalse(body.isEmpty());
+            response.close();
+        }
+        pm.commit();
+    }
+}
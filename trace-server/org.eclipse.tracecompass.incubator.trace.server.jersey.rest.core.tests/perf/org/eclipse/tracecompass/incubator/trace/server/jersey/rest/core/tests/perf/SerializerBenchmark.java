@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.perf;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.QueryParametersUtil;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.JacksonObjectMapperProvider;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.IVirtualTableLine;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.VirtualTableCell;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.VirtualTableLine;
+import org.eclipse.tracecompass.internal.tmf.core.model.TmfXyResponseFactory;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.model.IYModel;
+import org.eclipse.tracecompass.tmf.core.model.OutputElementStyle;
+import org.eclipse.tracecompass.tmf.core.model.YModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.tree.TmfTreeDataModel;
+import org.eclipse.tracecompass.tmf.core.model.tree.TmfTreeModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Benchmarks the serialization of the models returned by the most used
+ * endpoints of the trace server with the serializers of the web application,
+ * and the validation of their query parameters. The models are built in
+ * memory, no trace is needed.
+ */
+@SuppressWarnings("restriction")
+public class SerializerBenchmark {
+
+    /**
+     * Test ID for the trace server benchmarks
+     */
+    public static final String TEST_ID = "org.eclipse.tracecompass.incubator#TraceServer#";
+    private static final String TEST_STATES = "Serialize states (%d rows x %d states)";
+    private static final String TEST_XY = "Serialize XY (%d series x %d points)";
+    private static final String TEST_LINES = "Serialize table lines (%d lines x %d cells)";
+    private static final String TEST_TREE = "Serialize tree (%d entries)";
+    private static final String TEST_VALIDATION = "Validate query parameters (%d items)";
+
+    private static final int LOOP_COUNT = 25;
+    private static final int NB_ROWS = 200;
+    private static final int NB_STATES = 500;
+    private static final int NB_SERIES = 20;
+    private static final int NB_POINTS = 2000;
+    private static final int NB_LINES = 1000;
+    private static final int NB_CELLS = 10;
+    private static final int NB_ENTRIES = 20000;
+    private static final int NB_ITEMS = 100000;
+    private static final int NB_VALIDATIONS = 100;
+
+    private static ObjectMapper fMapper;
+
+    /**
+     * Get the object mapper of the web application
+     */
+    @BeforeClass
+    public static void beforeClass() {
+        fMapper = new JacksonObjectMapperProvider().getContext(Object.class);
+    }
+
+    /**
+     * Benchmark the time graph states serialization
+     *
+     * @throws JsonProcessingException
+     *             if the serialization fails
+     */
+    @Test
+    public void benchmarkStates() throws JsonProcessingException {
+        List<OutputElementStyle> styles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            styles.add(new OutputElementStyle(String.valueOf(i)));
+        }
+        List<ITimeGraphRowModel> rows = new ArrayList<>();
+        for (int i = 0; i < NB_ROWS; i++) {
+            List<ITimeGraphState> states = new ArrayList<>();
+            for (int j = 0; j < NB_STATES; j++) {
+                states.add(new TimeGraphState(j * 100L, 90L, j % 3 == 0 ? "label" + j : null, styles.get(j % styles.size())));
+            }
+            rows.add(new TimeGraphRowModel(i, states));
+        }
+        benchmarkSerialization(String.format(TEST_STATES, NB_ROWS, NB_STATES), new TimeGraphModel(rows));
+    }
+
+    /**
+     * Benchmark the XY model serialization
+     *
+     * @throws JsonProcessingException
+     *             if the serialization fails
+     */
+    @Test
+    public void benchmarkXY() throws JsonProcessingException {
+        long[] xValues = new long[NB_POINTS];
+        for (int i = 0; i < NB_POINTS; i++) {
+            xValues[i] = i * 1000L;
+        }
+        List<IYModel> yModels = new ArrayList<>();
+        for (int i = 0; i < NB_SERIES; i++) {
+            double[] yValues = new double[NB_POINTS];
+            for (int j = 0; j < NB_POINTS; j++) {
+                yValues[j] = Math.sin(i + j / 100.0);
+            }
+            yModels.add(new YModel(i, "series" + i, yValues)); //$NON-NLS-1$
+        }
+        TmfModelResponse<?> response = TmfXyResponseFactory.create("benchmark", xValues, yModels, true); //$NON-NLS-1$
+        benchmarkSerialization(String.format(TEST_XY, NB_SERIES, NB_POINTS), Objects.requireNonNull(response.getModel()));
+    }
+
+    /**
+     * Benchmark the virtual table lines serialization
+     *
+     * @throws JsonProcessingException
+     *             if the serialization fails
+     */
+    @Test
+    public void benchmarkTableLines() throws JsonProcessingException {
+        List<IVirtualTableLine> lines = new ArrayList<>();
+        for (int i = 0; i < NB_LINES; i++) {
+            List<VirtualTableCell> cells = new ArrayList<>();
+            for (int j = 0; j < NB_CELLS; j++) {
+                cells.add(new VirtualTableCell("cell " + i + ':' + j)); //$NON-NLS-1$
+            }
+            lines.add(new VirtualTableLine(i, cells));
+        }
+        benchmarkSerialization(String.format(TEST_LINES, NB_LINES, NB_CELLS), lines);
+    }
+
+    /**
+     * Benchmark the tree model serialization
+     *
+     * @throws JsonProcessingException
+     *             if the serialization fails
+     */
+    @Test
+    public void benchmarkTree() throws JsonProcessingException {
+        List<TmfTreeDataModel> entries = new ArrayList<>();
+        for (int i = 0; i < NB_ENTRIES; i++) {
+            entries.add(new TmfTreeDataModel(i, i < 10 ? -1 : i / 10, ImmutableList.of("entry" + i, String.valueOf(i)))); //$NON-NLS-1$
+        }
+        benchmarkSerialization(String.format(TEST_TREE, NB_ENTRIES), new TmfTreeModel<>(ImmutableList.of("Name", "Id"), entries)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Benchmark the validation of the query parameters of the states and XY
+     * endpoints
+     */
+    @Test
+    public void benchmarkValidation() {
+        List<Long> items = new ArrayList<>(NB_ITEMS);
+        for (long i = 0; i < NB_ITEMS; i++) {
+            items.add(i);
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("requested_timerange", ImmutableMap.of("start", 0L, "end", 1000000L, "nbTimes", 1000)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        params.put("requested_items", Collections.unmodifiableList(items)); //$NON-NLS-1$
+
+        String name = String.format(TEST_VALIDATION, NB_ITEMS);
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + name);
+        perf.tagAsSummary(pm, name, Dimension.CPU_TIME);
+        for (int i = 0; i < LOOP_COUNT; i++) {
+            pm.start();
+            for (int j = 0; j < NB_VALIDATIONS; j++) {
+                assertNull(QueryParametersUtil.validateRequestedQueryParameters(new HashMap<>(params)));
+            }
+            pm.stop();
+        }
+        pm.commit();
+    }
+
+    private static void benchmarkSerialization(String name, Object model) throws JsonProcessingException {
+        TmfModelResponse<?> response = new TmfModelResponse<>(model, ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + name);
+        perf.tagAsSummary(pm, name, Dimension.CPU_TIME);
+        for (int i = 0; i < LOOP_COUNT; i++) {
+            pm.start();
+            byte[] bytes = fMapper.writeValueAsBytes(response);
+            pm.stop();
+            assertTrue(bytes.length > 0);
+        }
+        pm.commit();
+    }
+}
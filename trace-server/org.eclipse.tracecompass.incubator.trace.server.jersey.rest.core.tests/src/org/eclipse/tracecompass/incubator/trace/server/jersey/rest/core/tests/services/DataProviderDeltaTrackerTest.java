@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderDeltaTracker;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderDeltaTracker.DeltaResponse;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.ExperimentManagerService;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.ExperimentModelStub;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.utils.RestServerTest;
+import org.eclipse.tracecompass.internal.tmf.core.model.TmfXyResponseFactory;
+import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
+import org.eclipse.tracecompass.tmf.core.model.IYModel;
+import org.eclipse.tracecompass.tmf.core.model.YModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.xy.ISeriesModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Test the deltas of the {@link DataProviderDeltaTracker} while an analysis
+ * is running. The data providers are simulated by functions whose models
+ * grow with the progress of the analysis, so that the rows and series that
+ * change between two polls are known.
+ */
+public class DataProviderDeltaTrackerTest extends RestServerTest {
+
+    private static final String OUTPUT_ID = "rest.core.test.delta.dp";
+    private static final String WATERMARK_KEY = "requested_watermark";
+    private static final String TITLE = "test";
+    private static final long END = 1000L;
+    private static final long STEP = 100L;
+    private static final List<Long> TIMES;
+    static {
+        List<Long> times = new ArrayList<>();
+        for (long time = 0; time <= END; time += STEP) {
+            times.add(time);
+        }
+        TIMES = Collections.unmodifiableList(times);
+    }
+
+    /* End time of the rows of the simulated states data provider */
+    private static final Map<Long, Long> ROW_ENDS = new HashMap<>();
+    static {
+        ROW_ENDS.put(1L, 200L);
+        ROW_ENDS.put(2L, 600L);
+        ROW_ENDS.put(3L, END);
+        ROW_ENDS.put(4L, 400L);
+    }
+
+    private TmfExperiment fExperiment;
+    private UUID fExpUUID;
+    private long fProgress;
+    private final List<Map<String, Object>> fQueries = new ArrayList<>();
+
+    /**
+     * Open an experiment for the snapshots of the delta tracker
+     */
+    @Before
+    public void openExperiment() {
+        ExperimentModelStub exp = assertPostExperiment(CONTEXT_SWITCHES_UST_STUB.getName(), CONTEXT_SWITCHES_UST_STUB);
+        fExpUUID = exp.getUUID();
+        TmfExperiment experiment = ExperimentManagerService.getExperimentByUUID(fExpUUID);
+        assertNotNull(experiment);
+        fExperiment = experiment;
+        fQueries.clear();
+    }
+
+    /**
+     * Test that the states deltas polled while the analysis is running contain
+     * exactly the rows that changed, and that the known rows are only fetched
+     * for the times that can still change.
+     */
+    @Test
+    public void testStatesDelta() {
+        DataProviderDeltaTracker tracker = DataProviderDeltaTracker.getInstance();
+        Function<Map<String, Object>, TmfModelResponse<?>> fetch = this::fetchStates;
+        Map<String, Object> params = new HashMap<>();
+        params.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, TIMES);
+        params.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, ImmutableList.of(1L, 2L, 3L));
+        params.put(WATERMARK_KEY, "");
+
+        // First poll, the full model
+        fProgress = 300L;
+        DeltaResponse response = tracker.fetchStates(fExperiment, fExpUUID, OUTPUT_ID, params, fetch);
+        assertFalse(response.isDelta());
+        assertEquals(ImmutableSet.of(1L, 2L, 3L), getRowIds(response));
+        assertEquals(ITmfResponse.Status.RUNNING, response.getResponse().getStatus());
+
+        // Rows 2 and 3 grew, row 1 ended before the previous poll
+        fProgress = 500L;
+        response = poll(tracker::fetchStates, params, fetch, response);
+        assertTrue(response.isDelta());
+        assertEquals(ImmutableSet.of(2L, 3L), getRowIds(response));
+        assertLastStateEnd(response, 2L, 500L);
+        assertLastStateEnd(response, 3L, 500L);
+        assertEquals("The known rows should only be fetched from the sample before the previous watermark",
+                Long.valueOf(200L), getRequestedTimes(fQueries.get(fQueries.size() - 1)).get(0));
+
+        // A new row is returned in full with the rows that changed
+        fProgress = 700L;
+        params.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, ImmutableList.of(1L, 2L, 3L, 4L));
+        response = poll(tracker::fetchStates, params, fetch, response);
+        assertTrue(response.isDelta());
+        assertEquals(ImmutableSet.of(2L, 3L, 4L), getRowIds(response));
+        assertLastStateEnd(response, 2L, 600L);
+        assertLastStateEnd(response, 3L, 700L);
+
+        // Only row 3 changed when the analysis completes
+        fProgress = END;
+        response = poll(tracker::fetchStates, params, fetch, response);
+        assertTrue(response.isDelta());
+        assertEquals(ImmutableSet.of(3L), getRowIds(response));
+        assertLastStateEnd(response, 3L, END);
+        assertEquals(ITmfResponse.Status.COMPLETED, response.getResponse().getStatus());
+
+        // Nothing is fetched once the analysis is completed
+        int nbQueries = fQueries.size();
+        response = poll(tracker::fetchStates, params, fetch, response);
+        assertTrue(response.isDelta());
+        assertTrue(getRowIds(response).isEmpty());
+        assertEquals(nbQueries, fQueries.size());
+    }
+
+    /**
+     * Test that the XY deltas polled while the analysis is running contain
+     * exactly the series that changed, from the first time that can still
+     * change.
+     */
+    @Test
+    public void testXYDelta() {
+        DataProviderDeltaTracker tracker = DataProviderDeltaTracker.getInstance();
+        Function<Map<String, Object>, TmfModelResponse<?>> fetch = this::fetchXY;
+        Map<String, Object> params = new HashMap<>();
+        params.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, TIMES);
+        params.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, ImmutableList.of(1L, 2L));
+        params.put(WATERMARK_KEY, "");
+
+        // First poll, the full model
+        fProgress = 300L;
+        DeltaResponse response = tracker.fetchXY(fExperiment, fExpUUID, OUTPUT_ID, params, fetch);
+        assertFalse(response.isDelta());
+        assertEquals(ImmutableSet.of(1L, 2L), getSeries(response).keySet());
+
+        // Both series changed from the time 400
+        fProgress = 500L;
+        response = poll(tracker::fetchXY, params, fetch, response);
+        assertTrue(response.isDelta());
+        Map<Long, ISeriesModel> series = getSeries(response);
+        assertEquals(ImmutableSet.of(1L, 2L), series.keySet());
+        assertArrayEquals(toArray(TIMES), series.get(1L).getXAxis());
+        assertArrayEquals(new double[] { 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 }, series.get(1L).getData(), 0.0);
+
+        // Series 2 is final, series 1 is only returned from the time 400
+        fProgress = 700L;
+        response = poll(tracker::fetchXY, params, fetch, response);
+        assertTrue(response.isDelta());
+        series = getSeries(response);
+        assertEquals(ImmutableSet.of(1L), series.keySet());
+        assertArrayEquals(toArray(TIMES.subList(4, TIMES.size())), series.get(1L).getXAxis());
+        assertArrayEquals(new double[] { 1, 1, 1, 1, 0, 0, 0 }, series.get(1L).getData(), 0.0);
+        assertEquals("The provider should only be queried from the sample before the first change",
+                Long.valueOf(300L), getRequestedTimes(fQueries.get(fQueries.size() - 1)).get(0));
+
+        // The analysis completes
+        fProgress = END;
+        response = poll(tracker::fetchXY, params, fetch, response);
+        assertTrue(response.isDelta());
+        assertEquals(ImmutableSet.of(1L), getSeries(response).keySet());
+        assertEquals(ITmfResponse.Status.COMPLETED, response.getResponse().getStatus());
+
+        // Nothing is fetched once the analysis is completed
+        int nbQueries = fQueries.size();
+        response = poll(tracker::fetchXY, params, fetch, response);
+        assertTrue(response.isDelta());
+        assertTrue(getSeries(response).isEmpty());
+        assertEquals(nbQueries, fQueries.size());
+    }
+
+    private interface DeltaFetcher {
+        DeltaResponse fetch(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> params, Function<Map<String, Object>, TmfModelResponse<?>> fetch);
+    }
+
+    private DeltaResponse poll(DeltaFetcher fetcher, Map<String, Object> params, Function<Map<String, Object>, TmfModelResponse<?>> fetch, DeltaResponse previous) {
+        String watermark = previous.getWatermark();
+        assertNotNull("Tracked responses should have a watermark", watermark);
+        params.put(WATERMARK_KEY, watermark);
+        return fetcher.fetch(fExperiment, fExpUUID, OUTPUT_ID, params, fetch);
+    }
+
+    /**
+     * Simulated states: each row has one state from 0 to the end of the row
+     * or the progress of the analysis, whichever comes first
+     */
+    private TmfModelResponse<?> fetchStates(Map<String, Object> params) {
+        fQueries.add(params);
+        List<ITimeGraphRowModel> rows = new ArrayList<>();
+        for (Long item : getRequestedItems(params)) {
+            long end = Math.min(fProgress, ROW_ENDS.get(item));
+            List<ITimeGraphState> states = Collections.singletonList(new TimeGraphState(0L, end, 0));
+            rows.add(new TimeGraphRowModel(item, states));
+        }
+        boolean completed = fProgress >= END;
+        return new TmfModelResponse<>(new TimeGraphModel(rows), completed ? ITmfResponse.Status.COMPLETED : ITmfResponse.Status.RUNNING, TITLE);
+    }
+
+    /**
+     * Simulated XY: series 1 is 1 until the progress of the analysis, series 2
+     * is 2 until the progress or 400, whichever comes first
+     */
+    private TmfModelResponse<?> fetchXY(Map<String, Object> params) {
+        fQueries.add(params);
+        List<Long> times = getRequestedTimes(params);
+        double[] series1 = new double[times.size()];
+        double[] series2 = new double[times.size()];
+        for (int i = 0; i < times.size(); i++) {
+            long time = times.get(i);
+            series1[i] = time <= fProgress ? 1 : 0;
+            series2[i] = time <= Math.min(fProgress, 400L) ? 2 : 0;
+        }
+        List<IYModel> yModels = ImmutableList.of(new YModel(1L, "1", series1), new YModel(2L, "2", series2));
+        return TmfXyResponseFactory.create(TITLE, toArray(times), yModels, fProgress >= END);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> getRequestedTimes(Map<String, Object> params) {
+        return (List<Long>) params.get(DataProviderParameterUtils.REQUESTED_TIME_KEY);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Long> getRequestedItems(Map<String, Object> params) {
+        return (List<Long>) params.get(DataProviderParameterUtils.REQUESTED_ITEMS_KEY);
+    }
+
+    private static Set<Long> getRowIds(DeltaResponse response) {
+        Object model = response.getResponse().getModel();
+        assertTrue(model instanceof TimeGraphModel);
+        Set<Long> ids = new HashSet<>();
+        for (ITimeGraphRowModel row : ((TimeGraphModel) model).getRows()) {
+            assertTrue("A row should only be returned once", ids.add(row.getEntryID()));
+        }
+        return ids;
+    }
+
+    private static void assertLastStateEnd(DeltaResponse response, long id, long expectedEnd) {
+        for (ITimeGraphRowModel row : ((TimeGraphModel) response.getResponse().getModel()).getRows()) {
+            if (row.getEntryID() == id) {
+                List<ITimeGraphState> states = row.getStates();
+                ITimeGraphState last = states.get(states.size() - 1);
+                assertEquals(expectedEnd, last.getStartTime() + last.getDuration());
+                return;
+            }
+        }
+        throw new AssertionError("Missing row " + id);
+    }
+
+    private static Map<Long, ISeriesModel> getSeries(DeltaResponse response) {
+        Object model = response.getResponse().getModel();
+        assertTrue(model instanceof ITmfXyModel);
+        Map<Long, ISeriesModel> series = new HashMap<>();
+        for (ISeriesModel seriesModel : ((ITmfXyModel) model).getSeriesData()) {
+            series.put(seriesModel.getId(), seriesModel);
+        }
+        return series;
+    }
+
+    private static long[] toArray(List<Long> times) {
+        return times.stream().mapToLong(Long::longValue).toArray();
+    }
+}
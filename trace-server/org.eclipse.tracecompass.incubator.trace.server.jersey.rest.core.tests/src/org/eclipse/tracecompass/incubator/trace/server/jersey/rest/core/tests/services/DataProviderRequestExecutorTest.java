@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderRequestExecutor;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics.EndpointMetrics;
+import org.junit.Test;
+
+/**
+ * Test the supersession of the requests of the
+ * {@link DataProviderRequestExecutor}
+ */
+public class DataProviderRequestExecutorTest {
+
+    private static final String ENDPOINT = "states";
+    private static final String OUTPUT_ID = "output";
+    private static final String CANCELLED = "cancelled";
+    private static final String COMPLETED = "completed";
+    private static final long TIMEOUT_S = 30;
+
+    private static final EndpointMetrics METRICS = RequestMetrics.getInstance().get(ENDPOINT, OUTPUT_ID);
+
+    /**
+     * Asynchronous response that completes a future when it is resumed, and
+     * calls its completion callbacks like the web server
+     */
+    private static final class AsyncResponseStub {
+        private final CompletableFuture<Object> fResult = new CompletableFuture<>();
+        private final List<CompletionCallback> fCallbacks = new ArrayList<>();
+        private final AsyncResponse fProxy;
+
+        public AsyncResponseStub() {
+            fProxy = (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(), new Class<?>[] { AsyncResponse.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "register":
+                    if (args[0] instanceof CompletionCallback) {
+                        fCallbacks.add((CompletionCallback) args[0]);
+                    }
+                    return null;
+                case "resume":
+                    fResult.complete(args[0]);
+                    fCallbacks.forEach(callback -> callback.onComplete(null));
+                    return true;
+                default:
+                    return method.getReturnType() == boolean.class ? false : null;
+                }
+            });
+        }
+
+        public String getEntity() throws Exception {
+            Object result = fResult.get(TIMEOUT_S, TimeUnit.SECONDS);
+            assertTrue("The request should be resumed with a response", result instanceof Response);
+            return String.valueOf(((Response) result).getEntity());
+        }
+    }
+
+    private static AsyncResponseStub submit(String clientId, UUID expUUID, Function<IProgressMonitor, Response> request) {
+        AsyncResponseStub response = new AsyncResponseStub();
+        DataProviderRequestExecutor.getInstance().submit(response.fProxy, clientId, expUUID, OUTPUT_ID, ENDPOINT, METRICS, request);
+        return response;
+    }
+
+    private static Response getState(IProgressMonitor monitor) {
+        return Response.ok(monitor.isCanceled() ? CANCELLED : COMPLETED).build();
+    }
+
+    /**
+     * Test that a running request is cancelled by a newer request from the
+     * same client, and that the newer request is completed
+     *
+     * @throws Exception
+     *             if a request fails
+     */
+    @Test
+    public void testSupersededRequestCancelled() throws Exception {
+        UUID expUUID = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        AsyncResponseStub superseded = submit("testSupersededRequestCancelled", expUUID, monitor -> {
+            started.countDown();
+            // Run until superseded
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+            while (!monitor.isCanceled() && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            return getState(monitor);
+        });
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+        AsyncResponseStub latest = submit("testSupersededRequestCancelled", expUUID, DataProviderRequestExecutorTest::getState);
+        assertEquals("The superseded request should be cancelled", CANCELLED, superseded.getEntity());
+        assertEquals("The latest request should be completed", COMPLETED, latest.getEntity());
+    }
+
+    /**
+     * Test that the requests of other clients, of clients that do not
+     * identify themselves and for other experiments do not supersede a
+     * running request
+     *
+     * @throws Exception
+     *             if a request fails
+     */
+    @Test
+    public void testOtherRequestsNotSuperseding() throws Exception {
+        UUID expUUID = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncResponseStub running = submit("testOtherRequestsNotSuperseding", expUUID, monitor -> {
+            started.countDown();
+            try {
+                release.await(TIMEOUT_S, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return getState(monitor);
+        });
+        assertTrue(started.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+        // The other requests are resolved when they are submitted, before the
+        // running request is released
+        AsyncResponseStub otherClient = submit("otherClient", expUUID, DataProviderRequestExecutorTest::getState);
+        AsyncResponseStub anonymous = submit(null, expUUID, DataProviderRequestExecutorTest::getState);
+        AsyncResponseStub otherExperiment = submit("testOtherRequestsNotSuperseding", UUID.randomUUID(), DataProviderRequestExecutorTest::getState);
+        release.countDown();
+
+        assertEquals("The running request should not be cancelled", COMPLETED, running.getEntity());
+        assertEquals(COMPLETED, otherClient.getEntity());
+        assertEquals(COMPLETED, anonymous.getEntity());
+        assertEquals(COMPLETED, otherExperiment.getEntity());
+    }
+}
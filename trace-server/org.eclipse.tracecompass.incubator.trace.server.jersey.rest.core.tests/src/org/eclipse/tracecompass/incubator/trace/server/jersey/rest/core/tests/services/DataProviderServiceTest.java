@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -37,6 +38,7 @@ import javax.ws.rs.core.Response;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.QueryParameters;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderService;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.ColumnarModelResponseWriter;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.ColumnHeaderEntryStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.DataProviderDescriptorStub;
 import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.stubs.EntryHeaderStub;
@@ -70,6 +72,7 @@ import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 
 /**
@@ -89,6 +92,9 @@ public class DataProviderServiceTest extends RestServerTest {
     private static final String REQUESTED_TIMES_KEY = "requested_times";
     private static final String REQUESTED_ITEMS_KEY = "requested_items";
     private static final String REQUESTED_ELEMENT_KEY = "requested_element";
+    private static final String REQUESTED_WATERMARK_KEY = "requested_watermark";
+    private static final String WATERMARK_HEADER = "X-Tsp-Watermark";
+    private static final String DELTA_HEADER = "X-Tsp-Delta";
     private static final String REQUESTED_COLUMN_IDS_KEY = "requested_table_column_ids";
     private static final String REQUESTED_TABLE_INDEX_KEY = "requested_table_index";
     private static final String REQUESTED_TABLE_COUNT_KEY = "requested_table_count";
@@ -148,6 +154,153 @@ public class DataProviderServiceTest extends RestServerTest {
         assertEquals("Default values should return OK code", 200, defaults.getStatus());
     }
 
+    /**
+     * Test the batch endpoint, with requests of different kinds and an
+     * invalid request
+     *
+     * @throws InterruptedException
+     *             Exception thrown while waiting to execute again
+     */
+    @Test
+    public void testBatch() throws InterruptedException {
+        long start = 1450193697034689597L;
+        long end = 1450193745774189602L;
+        ExperimentModelStub exp = assertPostExperiment(CONTEXT_SWITCHES_UST_STUB.getName(), CONTEXT_SWITCHES_UST_STUB);
+
+        // Make sure the analysis ran enough and we have a model
+        WebTarget callstackTree = getTimeGraphTreeEndpoint(exp.getUUID().toString(), CALL_STACK_DATAPROVIDER_ID);
+        Map<String, Object> treeParameters = new HashMap<>();
+        treeParameters.put(REQUESTED_TIMES_KEY, ImmutableList.of(start, end));
+        TgTreeOutputResponseStub responseModel = null;
+        int iteration = 0;
+        while ((responseModel == null || responseModel.isRunning() || responseModel.getModel() == null) && iteration < MAX_ITER) {
+            if (responseModel != null) {
+                Thread.sleep(100);
+            }
+            Response treeResponse = callstackTree.request().post(Entity.json(new QueryParameters(treeParameters, Collections.emptyList())));
+            assertEquals(200, treeResponse.getStatus());
+            responseModel = treeResponse.readEntity(TgTreeOutputResponseStub.class);
+            treeResponse.close();
+            iteration++;
+        }
+        assertNotNull(responseModel);
+        TgEntryModelStub model = responseModel.getModel();
+        assertNotNull(model);
+        List<Integer> items = new ArrayList<>();
+        model.getEntries().forEach(entry -> items.add(entry.getId()));
+
+        Map<String, Object> statesParameters = new HashMap<>();
+        statesParameters.put(REQUESTED_TIMERANGE_KEY, ImmutableMap.of(START, start, END, end, NB_TIMES, 10));
+        statesParameters.put(REQUESTED_ITEMS_KEY, items);
+        List<Map<String, Object>> requests = ImmutableList.of(
+                ImmutableMap.of("outputId", CALL_STACK_DATAPROVIDER_ID, "kind", "tree", "parameters", treeParameters),
+                ImmutableMap.of("outputId", CALL_STACK_DATAPROVIDER_ID, "kind", "states", "parameters", statesParameters),
+                ImmutableMap.of("outputId", CALL_STACK_DATAPROVIDER_ID, "kind", "unknown", "parameters", statesParameters));
+        WebTarget batch = getApplicationEndpoint().path(EXPERIMENTS).path(exp.getUUID().toString()).path(OUTPUTS_PATH).path("batch");
+        Response batchResponse = batch.request().post(Entity.json(new QueryParameters(ImmutableMap.of("requests", requests), Collections.emptyList())));
+        assertEquals("There should be a positive response for the batch", 200, batchResponse.getStatus());
+        List<?> results = batchResponse.readEntity(List.class);
+        batchResponse.close();
+
+        // The results are in completion order, sort them by index
+        assertEquals(requests.size(), results.size());
+        Map<Integer, Map<?, ?>> resultsByIndex = new HashMap<>();
+        for (Object result : results) {
+            Map<?, ?> map = (Map<?, ?>) result;
+            resultsByIndex.put(((Number) map.get("index")).intValue(), map);
+        }
+        assertEquals(ImmutableSet.of(0, 1, 2), resultsByIndex.keySet());
+        assertEquals(200, ((Number) resultsByIndex.get(0).get("statusCode")).intValue());
+        assertEquals("tree", resultsByIndex.get(0).get("kind"));
+        assertNotNull(((Map<?, ?>) resultsByIndex.get(0).get("response")).get("model"));
+        assertEquals(200, ((Number) resultsByIndex.get(1).get("statusCode")).intValue());
+        Map<?, ?> states = (Map<?, ?>) resultsByIndex.get(1).get("response");
+        assertNotNull(((Map<?, ?>) states.get("model")).get("rows"));
+        assertEquals(400, ((Number) resultsByIndex.get(2).get("statusCode")).intValue());
+    }
+
+    /**
+     * Test the incremental requests of the time graph tree and states, with a
+     * watermark
+     *
+     * @throws InterruptedException
+     *             Exception thrown while waiting to execute again
+     */
+    @Test
+    public void testTimeGraphWatermark() throws InterruptedException {
+        long start = 1450193697034689597L;
+        long end = 1450193745774189602L;
+        ExperimentModelStub exp = assertPostExperiment(CONTEXT_SWITCHES_UST_STUB.getName(), CONTEXT_SWITCHES_UST_STUB);
+
+        // Poll the tree with a watermark until the analysis is completed
+        WebTarget callstackTree = getTimeGraphTreeEndpoint(exp.getUUID().toString(), CALL_STACK_DATAPROVIDER_ID);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(REQUESTED_TIMES_KEY, ImmutableList.of(start, end));
+        parameters.put(REQUESTED_WATERMARK_KEY, "");
+        Set<Integer> items = new HashSet<>();
+        TgTreeOutputResponseStub responseModel = null;
+        for (int iteration = 0; iteration < MAX_ITER && (responseModel == null || !responseModel.isCompleted()); iteration++) {
+            if (responseModel != null) {
+                Thread.sleep(100);
+            }
+            Response treeResponse = callstackTree.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals(200, treeResponse.getStatus());
+            String watermark = treeResponse.getHeaderString(WATERMARK_HEADER);
+            assertNotNull("Tracked responses should have a watermark", watermark);
+            assertEquals(String.valueOf(responseModel != null), treeResponse.getHeaderString(DELTA_HEADER));
+            parameters.put(REQUESTED_WATERMARK_KEY, watermark);
+            responseModel = treeResponse.readEntity(TgTreeOutputResponseStub.class);
+            treeResponse.close();
+            TgEntryModelStub model = responseModel.getModel();
+            if (model != null) {
+                model.getEntries().forEach(entry -> items.add(entry.getId()));
+            }
+        }
+        assertNotNull(responseModel);
+        assertTrue(responseModel.isCompleted());
+        assertFalse(items.isEmpty());
+
+        // Nothing changed since the analysis was completed
+        Response treeResponse = callstackTree.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+        assertEquals("true", treeResponse.getHeaderString(DELTA_HEADER));
+        TgEntryModelStub model = treeResponse.readEntity(TgTreeOutputResponseStub.class).getModel();
+        assertNotNull(model);
+        assertTrue(model.getEntries().isEmpty());
+        treeResponse.close();
+
+        // Get the full states, then the changes since
+        WebTarget statesEndpoint = getTimeGraphStatesEndpoint(exp.getUUID().toString(), CALL_STACK_DATAPROVIDER_ID);
+        parameters = new HashMap<>();
+        parameters.put(REQUESTED_TIMERANGE_KEY, ImmutableMap.of(START, start, END, end, NB_TIMES, 100));
+        parameters.put(REQUESTED_ITEMS_KEY, new ArrayList<>(items));
+        parameters.put(REQUESTED_WATERMARK_KEY, "");
+        Response statesResponse = statesEndpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+        assertEquals(200, statesResponse.getStatus());
+        assertEquals("false", statesResponse.getHeaderString(DELTA_HEADER));
+        parameters.put(REQUESTED_WATERMARK_KEY, statesResponse.getHeaderString(WATERMARK_HEADER));
+        TimeGraphModelStub states = statesResponse.readEntity(TgStatesOutputResponseStub.class).getModel();
+        assertNotNull(states);
+        assertFalse(states.getRows().isEmpty());
+        statesResponse.close();
+
+        statesResponse = statesEndpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+        assertEquals(200, statesResponse.getStatus());
+        assertEquals("true", statesResponse.getHeaderString(DELTA_HEADER));
+        states = statesResponse.readEntity(TgStatesOutputResponseStub.class).getModel();
+        assertNotNull(states);
+        assertTrue(states.getRows().isEmpty());
+        statesResponse.close();
+
+        // An unknown watermark returns the full model
+        parameters.put(REQUESTED_WATERMARK_KEY, "unknown");
+        statesResponse = statesEndpoint.request().post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+        assertEquals("false", statesResponse.getHeaderString(DELTA_HEADER));
+        states = statesResponse.readEntity(TgStatesOutputResponseStub.class).getModel();
+        assertNotNull(states);
+        assertFalse(states.getRows().isEmpty());
+        statesResponse.close();
+    }
+
     /**
      * Ensure that an XY data provider exists and returns correct data. It does
      * not test the data itself, simply that the serialized fields are the
@@ -410,6 +563,54 @@ public class DataProviderServiceTest extends RestServerTest {
             assertFalse(rows.isEmpty());
             statesResponse.close();
 
+            // Request more items than a streaming chunk, the rows should be the same
+            List<Integer> manyItems = new ArrayList<>(items);
+            int maxId = Collections.max(items);
+            for (int i = 1; i <= 200; i++) {
+                manyItems.add(maxId + i);
+            }
+            Map<String, Object> manyItemsParameters = new HashMap<>(parameters);
+            manyItemsParameters.put(REQUESTED_ITEMS_KEY, manyItems);
+            statesResponse = tgStatesEnpoint.request().post(Entity.json(new QueryParameters(manyItemsParameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the data provider", 200, statesResponse.getStatus());
+            TgStatesOutputResponseStub streamedResponse = statesResponse.readEntity(TgStatesOutputResponseStub.class);
+            assertNotNull(streamedResponse);
+            assertEquals(rows, streamedResponse.getModel().getRows());
+            statesResponse.close();
+
+            // Request the same states in the columnar layout
+            statesResponse = tgStatesEnpoint.request(ColumnarModelResponseWriter.COLUMNAR_JSON).post(Entity.json(new QueryParameters(parameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the data provider", 200, statesResponse.getStatus());
+            assertTrue(ColumnarModelResponseWriter.COLUMNAR_JSON_TYPE.isCompatible(statesResponse.getMediaType()));
+            Map<?, ?> columnarResponse = statesResponse.readEntity(Map.class);
+            assertColumnarStates(rows, (Map<?, ?>) columnarResponse.get("model"));
+            statesResponse.close();
+
+            // Fetch the same few states until completed, then once more, the last response should come from the cache
+            Map<String, Object> fewItemsParameters = new HashMap<>(parameters);
+            fewItemsParameters.put(REQUESTED_ITEMS_KEY, items.subList(0, Math.min(10, items.size())));
+            TgStatesOutputResponseStub fewItemsResponse = null;
+            for (iteration = 0; iteration < MAX_ITER && (fewItemsResponse == null || !fewItemsResponse.isCompleted()); iteration++) {
+                if (fewItemsResponse != null) {
+                    Thread.sleep(100);
+                }
+                statesResponse = tgStatesEnpoint.request().post(Entity.json(new QueryParameters(fewItemsParameters, Collections.emptyList())));
+                assertEquals("There should be a positive response for the data provider", 200, statesResponse.getStatus());
+                fewItemsResponse = statesResponse.readEntity(TgStatesOutputResponseStub.class);
+                assertNotNull(fewItemsResponse);
+                statesResponse.close();
+            }
+            assertNotNull(fewItemsResponse);
+            assertTrue("The states response should be completed", fewItemsResponse.isCompleted());
+            long hitCount = getResponseCacheHitCount();
+            statesResponse = tgStatesEnpoint.request().post(Entity.json(new QueryParameters(fewItemsParameters, Collections.emptyList())));
+            assertEquals("There should be a positive response for the data provider", 200, statesResponse.getStatus());
+            TgStatesOutputResponseStub cachedResponse = statesResponse.readEntity(TgStatesOutputResponseStub.class);
+            assertNotNull(cachedResponse);
+            assertEquals(fewItemsResponse.getModel().getRows(), cachedResponse.getModel().getRows());
+            assertEquals("The repeated request should be a cache hit", hitCount + 1, getResponseCacheHitCount());
+            statesResponse.close();
+
             // Test getting the time graph tooltip for a state
             int callstackEntryIdForTooltip = findCallStackEntry(entries);
             TimeGraphRowStub row = null;
@@ -477,6 +678,50 @@ public class DataProviderServiceTest extends RestServerTest {
         }
     }
 
+    private static long getResponseCacheHitCount() {
+        Response response = getApplicationEndpoint().path("health").request().get();
+        Map<?, ?> health = response.readEntity(Map.class);
+        response.close();
+        Map<?, ?> cacheStatistics = (Map<?, ?>) health.get("responseCache");
+        assertNotNull(cacheStatistics);
+        return ((Number) cacheStatistics.get("hitCount")).longValue();
+    }
+
+    private static void assertColumnarStates(Set<TimeGraphRowStub> expectedRows, Map<?, ?> model) {
+        assertNotNull(model);
+        List<?> styles = (List<?>) model.get("styles");
+        List<?> labels = (List<?>) model.get("labels");
+        List<?> rows = (List<?>) model.get("rows");
+        assertEquals(expectedRows.size(), rows.size());
+        Map<Long, TimeGraphRowStub> expectedById = expectedRows.stream().collect(Collectors.toMap(TimeGraphRowStub::getEntryId, row -> row));
+        for (Object element : rows) {
+            Map<?, ?> row = (Map<?, ?>) element;
+            TimeGraphRowStub expected = expectedById.get(((Number) row.get(ENTRY_ID)).longValue());
+            assertNotNull(expected);
+            List<?> starts = (List<?>) row.get("starts");
+            List<?> durations = (List<?>) row.get("durations");
+            List<?> styleIds = (List<?>) row.get("styles");
+            List<?> labelIds = (List<?>) row.get("labels");
+            List<TimeGraphStateStub> states = expected.getStates();
+            assertEquals(states.size(), starts.size());
+            long previousEnd = 0;
+            for (int i = 0; i < states.size(); i++) {
+                TimeGraphStateStub state = states.get(i);
+                long startTime = previousEnd + ((Number) starts.get(i)).longValue();
+                previousEnd = startTime + ((Number) durations.get(i)).longValue();
+                assertEquals(state.getStartTime(), startTime);
+                assertEquals(state.getEndTime(), previousEnd);
+                int labelId = ((Number) labelIds.get(i)).intValue();
+                assertEquals(state.getLabel(), labelId < 0 ? null : labels.get(labelId));
+                int styleId = ((Number) styleIds.get(i)).intValue();
+                assertEquals(state.getStyle() == null, styleId < 0);
+                if (styleId >= 0) {
+                    assertEquals(state.getStyle().getParentKey(), ((Map<?, ?>) styles.get(styleId)).get("parentKey"));
+                }
+            }
+        }
+    }
+
     private static int findCallStackEntry(Set<TimeGraphEntryStub> entries) {
         // Find trace entry
         Optional<TimeGraphEntryStub> traceOptional = entries.stream().filter(entry -> entry.getParentId() == -1).findFirst();
@@ -13,6 +13,8 @@ package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.s
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -21,6 +23,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
@@ -47,6 +55,7 @@ import org.eclipse.tracecompass.testtraces.ctf.CtfTestTrace;
 import org.eclipse.tracecompass.tmf.core.TmfCommonConstants;
 import org.eclipse.tracecompass.tmf.core.TmfProjectNature;
 import org.eclipse.tracecompass.tmf.core.io.ResourceUtil;
+import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableSet;
@@ -61,6 +70,11 @@ public class ExperimentManagerServiceTest extends RestServerTest {
     private static final String TEST = "test";
     private static final @NonNull ImmutableSet<TraceModelStub> CONTEXT_SWITCH_SET = ImmutableSet.of(CONTEXT_SWITCHES_KERNEL_STUB, CONTEXT_SWITCHES_UST_STUB);
     private static final @NonNull ExperimentModelStub EXPECTED = new ExperimentModelStub(TEST, CONTEXT_SWITCH_SET);
+    private static final String OTHER = "other";
+    private static final int NB_THREADS = 4;
+    private static final long OPENING_TIMEOUT_S = 60;
+    private static final long POLLING_INTERVAL_MS = 100;
+    private static final String COMPLETED = "COMPLETED";
 
     /**
      * Basic test for the {@link ExperimentManagerService}
@@ -98,6 +112,51 @@ public class ExperimentManagerServiceTest extends RestServerTest {
         response.close();
     }
 
+    /**
+     * Test that the experiment is opened in the background after it is
+     * posted, and that its indexing status eventually becomes completed
+     *
+     * @throws InterruptedException
+     *             if the test is interrupted while waiting for the indexing
+     */
+    @Test
+    public void testExperimentOpenedInBackground() throws InterruptedException {
+        WebTarget expTarget = getApplicationEndpoint().path(EXPERIMENTS);
+        ExperimentModelStub expStub = assertPostExperiment(EXPECTED.getName(), CONTEXT_SWITCHES_UST_STUB, CONTEXT_SWITCHES_KERNEL_STUB);
+        assertEquals("Failed to POST the experiment", EXPECTED, expStub);
+        assertEquals("The posted experiment should list all its traces", CONTEXT_SWITCH_SET, expStub.getTraces());
+
+        WebTarget experiment = expTarget.path(expStub.getUUID().toString());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(OPENING_TIMEOUT_S);
+        ExperimentModelStub current = experiment.request().get(ExperimentModelStub.class);
+        while (!COMPLETED.equals(current.getIndexingStatus()) && System.nanoTime() < deadline) {
+            Thread.sleep(POLLING_INTERVAL_MS);
+            current = experiment.request().get(ExperimentModelStub.class);
+        }
+        assertEquals("The experiment should be indexed", COMPLETED, current.getIndexingStatus());
+        assertEquals(EXPECTED, current);
+        assertTrue("The indexed experiment should have events", current.getNbEvents() > 0);
+    }
+
+    /**
+     * Test that an experiment can be deleted while it is opened in the
+     * background, without waiting for its traces to be indexed, and that the
+     * opening is then cancelled.
+     */
+    @Test
+    public void testDeleteWhileOpening() {
+        WebTarget expTarget = getApplicationEndpoint().path(EXPERIMENTS);
+        ExperimentModelStub expStub = assertPostExperiment(EXPECTED.getName(), CONTEXT_SWITCHES_UST_STUB, CONTEXT_SWITCHES_KERNEL_STUB);
+        UUID expUUID = expStub.getUUID();
+
+        Response response = expTarget.path(expUUID.toString()).request().delete();
+        assertEquals("Failed to DELETE the experiment", Status.OK.getStatusCode(), response.getStatus());
+        response.close();
+        assertEquals("experiment set should be empty at this point", Collections.emptySet(), getExperiments(expTarget));
+        assertNull("A deleted experiment should not be opened", ExperimentManagerService.getExperimentByUUID(expUUID));
+        assertEquals("A deleted experiment should not be found", Status.NOT_FOUND.getStatusCode(), expTarget.path(expUUID.toString()).request().get().getStatus());
+    }
+
     /**
      * Test posting an experiment twice, it should be OK
      */
@@ -279,4 +338,49 @@ public class ExperimentManagerServiceTest extends RestServerTest {
 
         assertEquals("org.eclipse.linuxtools.lttng2.kernel.tracetype", traceType);
     }
+
+    /**
+     * Test that a lookup of an opened experiment does not wait for another
+     * experiment being opened, and that concurrent lookups of an experiment
+     * being opened share the same opening.
+     *
+     * @throws Exception
+     *             if a lookup thread fails
+     */
+    @Test
+    public void testLookupWhileOpening() throws Exception {
+        ExperimentModelStub openedStub = assertPostExperiment(EXPECTED.getName(), CONTEXT_SWITCHES_UST_STUB, CONTEXT_SWITCHES_KERNEL_STUB);
+        UUID openedUUID = openedStub.getUUID();
+        TmfExperiment opened = ExperimentManagerService.getExperimentByUUID(openedUUID);
+        assertNotNull(opened);
+
+        // The other experiment is opened in the background after it is posted
+        ExperimentModelStub openingStub = assertPostExperiment(OTHER, ARM_64_KERNEL_STUB);
+        UUID openingUUID = openingStub.getUUID();
+        ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        try {
+            CountDownLatch waiting = new CountDownLatch(NB_THREADS);
+            List<Future<TmfExperiment>> openings = new ArrayList<>();
+            for (int i = 0; i < NB_THREADS; i++) {
+                openings.add(executor.submit(() -> {
+                    waiting.countDown();
+                    return ExperimentManagerService.getExperimentByUUID(openingUUID);
+                }));
+            }
+            assertTrue(waiting.await(OPENING_TIMEOUT_S, TimeUnit.SECONDS));
+
+            // The opened experiment is returned while the threads wait for the other one
+            Future<TmfExperiment> lookup = executor.submit(() -> ExperimentManagerService.getExperimentByUUID(openedUUID));
+            assertSame(opened, lookup.get(OPENING_TIMEOUT_S, TimeUnit.SECONDS));
+
+            TmfExperiment experiment = openings.get(0).get(OPENING_TIMEOUT_S, TimeUnit.SECONDS);
+            assertNotNull(experiment);
+            for (Future<TmfExperiment> opening : openings) {
+                assertSame("The experiment should be opened only once", experiment, opening.get(OPENING_TIMEOUT_S, TimeUnit.SECONDS));
+            }
+            assertSame(experiment, ExperimentManagerService.getExperimentByUUID(openingUUID));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
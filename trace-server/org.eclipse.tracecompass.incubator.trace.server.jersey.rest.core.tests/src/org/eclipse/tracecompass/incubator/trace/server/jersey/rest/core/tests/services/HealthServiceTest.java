@@ -12,6 +12,8 @@
 package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.services;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
 
@@ -45,6 +47,10 @@ public class HealthServiceTest extends RestServerTest {
         assertEquals("Health reponse should be OK", 200, response.getStatus());
         Map<Object, Object> responseValues = response.readEntity(Map.class);
         assertEquals("UP", responseValues.get("status"));
+        Map<?, ?> cacheStatistics = (Map<?, ?>) responseValues.get("responseCache");
+        assertNotNull("Health response should contain the response cache statistics", cacheStatistics);
+        assertTrue(cacheStatistics.get("hitCount") instanceof Number);
+        assertTrue(cacheStatistics.get("missCount") instanceof Number);
 
     }
 
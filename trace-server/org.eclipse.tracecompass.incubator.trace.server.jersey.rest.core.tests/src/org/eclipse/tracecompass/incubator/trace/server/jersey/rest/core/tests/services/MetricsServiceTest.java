@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.MetricsService;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics.EndpointMetrics;
+import org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.utils.RestServerTest;
+import org.junit.Test;
+
+/**
+ * Test the {@link MetricsService}
+ */
+public class MetricsServiceTest extends RestServerTest {
+
+    private static final String HEALTH_ENDPOINT = "GET /health";
+    private static final String XY_ENDPOINT = "POST /experiments/{expUUID}/outputs/XY/{outputId}/xy";
+
+    /**
+     * Test that the requests served by the server are reported in the
+     * metrics
+     */
+    @Test
+    public void testMetrics() {
+        WebTarget application = getApplicationEndpoint();
+        int nbRequests = 3;
+        for (int i = 0; i < nbRequests; i++) {
+            Response response = application.path("health").request(MediaType.APPLICATION_JSON).get();
+            assertEquals(200, response.getStatus());
+            response.close();
+        }
+
+        Response response = application.path("metrics").request(MediaType.APPLICATION_JSON).get();
+        assertEquals("Metrics response should be OK", 200, response.getStatus());
+        Map<?, ?> metrics = response.readEntity(Map.class);
+        assertNotNull("Metrics should contain the response cache statistics", metrics.get("responseCache"));
+
+        List<?> endpoints = (List<?>) metrics.get("endpoints");
+        assertNotNull(endpoints);
+        Map<?, ?> health = null;
+        for (Object endpoint : endpoints) {
+            if (HEALTH_ENDPOINT.equals(((Map<?, ?>) endpoint).get("endpoint"))) {
+                health = (Map<?, ?>) endpoint;
+            }
+        }
+        assertNotNull("Metrics should contain the health endpoint", health);
+        assertEquals(0, ((Number) health.get("inFlight")).longValue());
+        Map<?, ?> latency = (Map<?, ?>) health.get("latencyMs");
+        assertTrue(((Number) latency.get("count")).longValue() >= nbRequests);
+        assertTrue(((Number) latency.get("p99")).doubleValue() >= ((Number) latency.get("p50")).doubleValue());
+        Map<?, ?> responseBytes = (Map<?, ?>) health.get("responseBytes");
+        assertTrue("Health responses are not empty", ((Number) responseBytes.get("max")).doubleValue() > 0);
+        response.close();
+    }
+
+    /**
+     * Test that the number of outputs with their own metrics is bounded, the
+     * requests for other outputs are recorded in a shared bucket
+     */
+    @Test
+    public void testOutputMetricsBounded() {
+        RequestMetrics requestMetrics = RequestMetrics.getInstance();
+        requestMetrics.clear();
+        int nbOutputs = RequestMetrics.MAX_OUTPUT_METRICS * 4;
+        for (int i = 0; i < nbOutputs; i++) {
+            EndpointMetrics metrics = requestMetrics.get(XY_ENDPOINT, "output" + i);
+            metrics.requestStarted();
+            metrics.requestCompleted(1, 1);
+        }
+        List<Map<String, Object>> snapshot = requestMetrics.getSnapshot();
+        assertEquals("Only the first outputs and the other outputs should have metrics", RequestMetrics.MAX_OUTPUT_METRICS + 1, snapshot.size());
+
+        Map<String, Object> other = null;
+        for (Map<String, Object> metrics : snapshot) {
+            if (RequestMetrics.OTHER_OUTPUTS.equals(metrics.get("outputId"))) {
+                other = metrics;
+            }
+        }
+        assertNotNull("The other outputs should have metrics", other);
+        Map<?, ?> latency = (Map<?, ?>) other.get("latencyMs");
+        assertEquals(nbOutputs - RequestMetrics.MAX_OUTPUT_METRICS, ((Number) latency.get("count")).longValue());
+        assertSame("A recorded output should keep its own metrics", requestMetrics.get(XY_ENDPOINT, "output0"), requestMetrics.get(XY_ENDPOINT, "output0"));
+        requestMetrics.clear();
+    }
+}
@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.trace.server.jersey.rest.core.tests.webapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.VirtualTableModelWrapper;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.ColumnarModelResponseWriter;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.TmfVirtualTableModel;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.VirtualTableCell;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.VirtualTableLine;
+import org.eclipse.tracecompass.internal.tmf.core.model.TmfXyResponseFactory;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.model.IYModel;
+import org.eclipse.tracecompass.tmf.core.model.OutputElementStyle;
+import org.eclipse.tracecompass.tmf.core.model.StyleProperties;
+import org.eclipse.tracecompass.tmf.core.model.YModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphArrow;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphArrow;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphState;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Test the {@link ColumnarModelResponseWriter}, by decoding the columnar
+ * layout of each model type and comparing it to the model that was written
+ */
+@SuppressWarnings("restriction")
+public class ColumnarModelResponseWriterTest {
+
+    private static final String TITLE = "title";
+    private static final String MODEL = "model";
+    private static final String STYLES = "styles";
+    private static final String LABELS = "labels";
+    private static final String PARENT_KEY = "parentKey";
+    private static final String VALUES = "values";
+
+    private static final OutputElementStyle STYLE_A = new OutputElementStyle("a", ImmutableMap.of(StyleProperties.BACKGROUND_COLOR, "#ff0000"));
+    private static final OutputElementStyle STYLE_B = new OutputElementStyle("b");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Write a response in the columnar layout and parse it back
+     */
+    private static Map<?, ?> writeModel(Object model) throws IOException {
+        TmfModelResponse<?> response = new TmfModelResponse<>(model, ITmfResponse.Status.COMPLETED, CommonStatusMessage.COMPLETED);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new ColumnarModelResponseWriter().writeTo(response, TmfModelResponse.class, TmfModelResponse.class, new Annotation[0],
+                ColumnarModelResponseWriter.COLUMNAR_JSON_TYPE, null, stream);
+        Map<?, ?> written = MAPPER.readValue(stream.toByteArray(), Map.class);
+        assertEquals(ITmfResponse.Status.COMPLETED.name(), written.get("status"));
+        assertEquals(CommonStatusMessage.COMPLETED, written.get("statusMessage"));
+        Map<?, ?> columnarModel = (Map<?, ?>) written.get(MODEL);
+        assertNotNull(columnarModel);
+        return columnarModel;
+    }
+
+    private static List<?> getList(Map<?, ?> map, String key) {
+        List<?> list = (List<?>) map.get(key);
+        assertNotNull(key, list);
+        return list;
+    }
+
+    private static long getLong(List<?> list, int index) {
+        return ((Number) list.get(index)).longValue();
+    }
+
+    private static int getInt(List<?> list, int index) {
+        return ((Number) list.get(index)).intValue();
+    }
+
+    /**
+     * Assert that a style of a dictionary is the written style
+     */
+    private static void assertStyle(OutputElementStyle expected, Object actual) {
+        Map<?, ?> style = (Map<?, ?>) actual;
+        assertEquals(expected.getParentKey(), style.get(PARENT_KEY));
+        assertEquals(expected.getStyleValues(), style.get(VALUES));
+    }
+
+    /**
+     * Test the time graph states, with the starts encoded as gaps from the end
+     * of the previous state and the styles and labels in dictionaries
+     *
+     * @throws IOException
+     *             if the model cannot be written
+     */
+    @Test
+    public void testStates() throws IOException {
+        List<ITimeGraphState> states1 = ImmutableList.of(
+                new TimeGraphState(100, 10, "label1", STYLE_A),
+                new TimeGraphState(110, 5, null, null),
+                new TimeGraphState(130, 20, "label2", STYLE_B));
+        TimeGraphState tagged = new TimeGraphState(105, 50, "label1", STYLE_A);
+        tagged.setActiveProperties(1);
+        List<ITimeGraphState> states2 = ImmutableList.of(tagged);
+        List<ITimeGraphRowModel> rows = ImmutableList.of(new TimeGraphRowModel(1, states1), new TimeGraphRowModel(2, states2));
+
+        Map<?, ?> model = writeModel(new TimeGraphModel(rows));
+        List<?> styles = getList(model, STYLES);
+        List<?> labels = getList(model, LABELS);
+        // The style and label of the second row are the ones of the first
+        // state of the first row
+        assertEquals(2, styles.size());
+        assertEquals(Arrays.asList("label1", "label2"), labels);
+
+        List<?> writtenRows = getList(model, "rows");
+        assertEquals(rows.size(), writtenRows.size());
+        for (int r = 0; r < rows.size(); r++) {
+            Map<?, ?> row = (Map<?, ?>) writtenRows.get(r);
+            assertEquals(rows.get(r).getEntryID(), ((Number) row.get("entryId")).longValue());
+            List<ITimeGraphState> states = rows.get(r).getStates();
+            List<?> starts = getList(row, "starts");
+            List<?> durations = getList(row, "durations");
+            List<?> styleIds = getList(row, STYLES);
+            List<?> labelIds = getList(row, LABELS);
+            assertEquals(states.size(), starts.size());
+            long previousEnd = 0;
+            for (int i = 0; i < states.size(); i++) {
+                ITimeGraphState state = states.get(i);
+                long start = previousEnd + getLong(starts, i);
+                previousEnd = start + getLong(durations, i);
+                assertEquals(state.getStartTime(), start);
+                assertEquals(state.getDuration(), getLong(durations, i));
+                int labelId = getInt(labelIds, i);
+                assertEquals(state.getLabel(), labelId < 0 ? null : labels.get(labelId));
+                OutputElementStyle style = state.getStyle();
+                int styleId = getInt(styleIds, i);
+                if (style == null) {
+                    assertEquals(-1, styleId);
+                } else {
+                    assertStyle(style, styles.get(styleId));
+                }
+            }
+        }
+        // Only the row with a tagged state has tags
+        assertNull(((Map<?, ?>) writtenRows.get(0)).get("tags"));
+        assertEquals(Collections.singletonList(1), ((Map<?, ?>) writtenRows.get(1)).get("tags"));
+    }
+
+    /**
+     * Test the XY model, with the x axes delta-encoded and shared by the
+     * series that have the same x values
+     *
+     * @throws IOException
+     *             if the model cannot be written
+     */
+    @Test
+    public void testXY() throws IOException {
+        long[] xValues = { 1000, 1010, 1025, 1025, 1100 };
+        List<IYModel> yModels = ImmutableList.of(
+                new YModel(1, "series1", new double[] { 0.0, 1.5, 2.0, 3.0, -1.0 }),
+                new YModel(2, "series2", new double[] { 5.0, 4.0, 3.0, 2.0, 1.0 }));
+        TmfModelResponse<?> response = TmfXyResponseFactory.create(TITLE, xValues, yModels, true);
+
+        Map<?, ?> model = writeModel(response.getModel());
+        assertEquals(TITLE, model.get(TITLE));
+        List<?> xAxes = getList(model, "xAxes");
+        assertEquals("The series should share their x axis", 1, xAxes.size());
+
+        List<?> series = getList(model, "series");
+        assertEquals(yModels.size(), series.size());
+        for (int s = 0; s < yModels.size(); s++) {
+            IYModel expected = yModels.get(s);
+            Map<?, ?> serie = (Map<?, ?>) series.get(s);
+            assertEquals(expected.getId(), ((Number) serie.get("seriesId")).longValue());
+            assertEquals(expected.getName(), serie.get("seriesName"));
+
+            List<?> xAxis = (List<?>) xAxes.get(((Number) serie.get("xAxis")).intValue());
+            assertEquals(xValues.length, xAxis.size());
+            long x = 0;
+            for (int i = 0; i < xValues.length; i++) {
+                x += getLong(xAxis, i);
+                assertEquals(xValues[i], x);
+            }
+
+            List<?> yValues = getList(serie, "yValues");
+            double[] data = expected.getData();
+            assertEquals(data.length, yValues.size());
+            for (int i = 0; i < data.length; i++) {
+                assertEquals(data[i], ((Number) yValues.get(i)).doubleValue(), 0.0);
+            }
+            Map<?, ?> style = (Map<?, ?>) serie.get("style");
+            assertNotNull(style);
+            assertEquals("line", ((Map<?, ?>) style.get(VALUES)).get(StyleProperties.SERIES_TYPE));
+        }
+    }
+
+    /**
+     * Test the arrows, with the starts delta-encoded from the start of the
+     * previous arrow, which may be negative, and the styles in a dictionary
+     *
+     * @throws IOException
+     *             if the model cannot be written
+     */
+    @Test
+    public void testArrows() throws IOException {
+        List<ITimeGraphArrow> arrows = ImmutableList.of(
+                new TimeGraphArrow(1, 2, 100, 10, STYLE_A),
+                new TimeGraphArrow(2, 3, 150, 0, null),
+                new TimeGraphArrow(3, 1, 120, 40, STYLE_B),
+                new TimeGraphArrow(1, 3, 300, 5, STYLE_A));
+
+        Map<?, ?> model = writeModel(arrows);
+        List<?> styles = getList(model, STYLES);
+        assertEquals("The repeated style should be written once", 2, styles.size());
+        List<?> sourceIds = getList(model, "sourceIds");
+        List<?> targetIds = getList(model, "targetIds");
+        List<?> starts = getList(model, "starts");
+        List<?> durations = getList(model, "durations");
+        List<?> styleIds = getList(model, "styleIds");
+        assertEquals(arrows.size(), starts.size());
+
+        long start = 0;
+        for (int i = 0; i < arrows.size(); i++) {
+            ITimeGraphArrow arrow = arrows.get(i);
+            start += getLong(starts, i);
+            assertEquals(arrow.getStartTime(), start);
+            assertEquals(arrow.getSourceId(), getLong(sourceIds, i));
+            assertEquals(arrow.getDestinationId(), getLong(targetIds, i));
+            assertEquals(arrow.getDuration(), getLong(durations, i));
+            OutputElementStyle style = arrow.getStyle();
+            int styleId = getInt(styleIds, i);
+            if (style == null) {
+                assertEquals(-1, styleId);
+            } else {
+                assertStyle(style, styles.get(styleId));
+            }
+        }
+        assertEquals(getInt(styleIds, 0), getInt(styleIds, 3));
+    }
+
+    /**
+     * Test the virtual table lines, with the indexes delta-encoded from the
+     * low index, one array of contents per column, and the tags of the lines
+     * and cells
+     *
+     * @throws IOException
+     *             if the model cannot be written
+     */
+    @Test
+    public void testLines() throws IOException {
+        List<Long> columnIds = ImmutableList.of(10L, 11L, 12L);
+        List<VirtualTableLine> lines = new ArrayList<>();
+        lines.add(new VirtualTableLine(5, ImmutableList.of(new VirtualTableCell("a0"), new VirtualTableCell("b0"), new VirtualTableCell("c0"))));
+        VirtualTableCell taggedCell = new VirtualTableCell("b1");
+        taggedCell.setActiveProperties(2);
+        VirtualTableLine taggedLine = new VirtualTableLine(6, ImmutableList.of(new VirtualTableCell("a1"), taggedCell, new VirtualTableCell("c1")));
+        taggedLine.setActiveProperties(1);
+        lines.add(taggedLine);
+        // A line with missing cells, after a gap in the indexes
+        lines.add(new VirtualTableLine(9, ImmutableList.of(new VirtualTableCell("a2"))));
+
+        Map<?, ?> model = writeModel(new VirtualTableModelWrapper(new TmfVirtualTableModel<>(columnIds, lines, 5, 100)));
+        assertEquals(5L, ((Number) model.get("lowIndex")).longValue());
+        assertEquals(100L, ((Number) model.get("size")).longValue());
+        assertEquals(columnIds, getList(model, "columnIds").stream().map(id -> ((Number) id).longValue()).collect(Collectors.toList()));
+
+        List<?> indexes = getList(model, "indexes");
+        List<?> columns = getList(model, "columns");
+        assertEquals(lines.size(), indexes.size());
+        assertEquals(columnIds.size(), columns.size());
+        long index = 5;
+        for (int i = 0; i < lines.size(); i++) {
+            VirtualTableLine line = lines.get(i);
+            index += getLong(indexes, i);
+            assertEquals(line.getIndex(), index);
+            List<VirtualTableCell> cells = line.getCells();
+            for (int column = 0; column < columns.size(); column++) {
+                Object content = ((List<?>) columns.get(column)).get(i);
+                if (column < cells.size()) {
+                    assertEquals(cells.get(column).getContent(), content);
+                } else {
+                    assertNull(content);
+                }
+            }
+        }
+
+        assertEquals(Arrays.asList(0, 1, 0), model.get("lineTags"));
+        assertEquals(Collections.singletonList(Arrays.asList(1, 1, 2)), model.get("cellTags"));
+    }
+
+    /**
+     * Test that the tags are not written when no line or cell has some
+     *
+     * @throws IOException
+     *             if the model cannot be written
+     */
+    @Test
+    public void testLinesWithoutTags() throws IOException {
+        List<VirtualTableLine> lines = ImmutableList.of(new VirtualTableLine(0, ImmutableList.of(new VirtualTableCell("a0"))));
+        Map<?, ?> model = writeModel(new VirtualTableModelWrapper(new TmfVirtualTableModel<>(ImmutableList.of(1L), lines, 0, 1)));
+        assertFalse(model.containsKey("lineTags"));
+        assertFalse(model.containsKey("cellTags"));
+        assertEquals(Collections.singletonList(Collections.singletonList("a0")), model.get("columns"));
+    }
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNull;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Contributes to the model used for TSP swagger-core annotations.
+ */
+public interface BatchQueryParameters {
+
+    /**
+     * @return The parameters.
+     */
+    @NonNull
+    @Schema(required = true)
+    BatchParameters getParameters();
+
+    /**
+     * The requests of the batch
+     */
+    interface BatchParameters {
+
+        @Schema(required = true)
+        List<BatchRequest> getRequests();
+    }
+
+    /**
+     * A request of the batch
+     */
+    interface BatchRequest {
+
+        @Schema(required = true, description = "The output ID of the data provider to query")
+        String getOutputId();
+
+        @Schema(required = true, description = "The kind of model to fetch", allowableValues = { "tree", "states", "xy", "arrows", "annotations", "tooltip", "lines" })
+        String getKind();
+
+        @Schema(required = true, description = "The parameters of the request, as they would be sent to the endpoint of this kind")
+        Map<String, Object> getParameters();
+    }
+}
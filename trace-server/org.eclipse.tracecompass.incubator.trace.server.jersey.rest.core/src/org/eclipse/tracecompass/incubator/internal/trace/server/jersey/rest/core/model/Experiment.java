@@ -58,7 +58,7 @@ public interface Experiment {
     /**
      * @return The indexing status.
      */
-    @Schema(description = "Status of the experiment indexing")
+    @Schema(description = "Status of the experiment indexing. RUNNING while the experiment is opened in the background, FAILED if it could not be opened")
     IndexingStatus getIndexingStatus();
 
     /**
@@ -15,5 +15,5 @@ package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.cor
  * Contributes to the model used for TSP swagger-core annotations.
  */
 enum IndexingStatus {
-    RUNNING, COMPLETED, CLOSED
+    RUNNING, COMPLETED, CLOSED, FAILED
 }
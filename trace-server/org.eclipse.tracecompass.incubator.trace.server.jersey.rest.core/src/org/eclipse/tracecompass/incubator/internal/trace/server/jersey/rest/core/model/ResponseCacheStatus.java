@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Contributes to the model used for TSP swagger-core annotations.
+ */
+public interface ResponseCacheStatus {
+
+    /**
+     * @return The number of hits.
+     */
+    @Schema(description = "The number of requests answered from the cache")
+    long getHitCount();
+
+    /**
+     * @return The number of misses.
+     */
+    @Schema(description = "The number of requests that were not in the cache")
+    long getMissCount();
+
+    /**
+     * @return The hit rate.
+     */
+    @Schema(description = "The ratio of requests answered from the cache")
+    double getHitRate();
+
+    /**
+     * @return The number of evictions.
+     */
+    @Schema(description = "The number of responses evicted from the cache")
+    long getEvictionCount();
+
+    /**
+     * @return The number of entries.
+     */
+    @Schema(description = "The number of responses currently in the cache")
+    long getSize();
+}
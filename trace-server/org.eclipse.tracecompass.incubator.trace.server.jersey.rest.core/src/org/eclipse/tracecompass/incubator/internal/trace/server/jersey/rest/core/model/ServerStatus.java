@@ -30,4 +30,10 @@ public interface ServerStatus {
      */
     @Schema(description = "The status of the server")
     Status getStatus();
+
+    /**
+     * @return The response cache statistics.
+     */
+    @Schema(description = "The statistics of the server's response cache")
+    ResponseCacheStatus getResponseCache();
 }
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.ScopeLog;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.Activator;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+import org.glassfish.jersey.server.ChunkedOutput;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Chunked output for the batch endpoint. The requests of the batch are run
+ * concurrently on the data provider request executor and each result is
+ * written to the response stream by the thread that computed it, as soon as
+ * it is completed, so the output is a JSON array of the results in
+ * completion order and no thread waits for the requests. Each result has the
+ * index of its request in the batch, its output ID and kind, the HTTP status
+ * code it would have had as a single request and the response entity, with
+ * the watermark and delta flag of incremental requests.
+ *
+ * All the requests use the progress monitor of the batch. If the client
+ * disconnects, the monitor is cancelled, so the requests that are still
+ * running are cancelled.
+ */
+class BatchStreamingOutput {
+
+    private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(BatchStreamingOutput.class);
+
+    private static final String INDEX = "index"; //$NON-NLS-1$
+    private static final String OUTPUT_ID = "outputId"; //$NON-NLS-1$
+    private static final String KIND = "kind"; //$NON-NLS-1$
+    private static final String STATUS_CODE = "statusCode"; //$NON-NLS-1$
+    private static final String RESPONSE = "response"; //$NON-NLS-1$
+    private static final String WATERMARK = "watermark"; //$NON-NLS-1$
+    private static final String DELTA = "delta"; //$NON-NLS-1$
+
+    private static final byte[] ARRAY_START = { '[' };
+    private static final byte[] ARRAY_END = { ']' };
+
+    /**
+     * A request of a batch
+     */
+    static final class BatchRequest {
+        private final int fIndex;
+        private final @Nullable String fOutputId;
+        private final @Nullable String fKind;
+        private final Function<IProgressMonitor, Response> fFetch;
+
+        /**
+         * Constructor
+         *
+         * @param index
+         *            the index of the request in the batch
+         * @param outputId
+         *            the output ID of the request
+         * @param kind
+         *            the kind of model requested
+         * @param fetch
+         *            the function computing the response of the request
+         */
+        BatchRequest(int index, @Nullable String outputId, @Nullable String kind, Function<IProgressMonitor, Response> fetch) {
+            fIndex = index;
+            fOutputId = outputId;
+            fKind = kind;
+            fFetch = fetch;
+        }
+    }
+
+    private final ObjectMapper fMapper;
+    private final List<BatchRequest> fRequests;
+    private final IProgressMonitor fMonitor;
+    private final ChunkedOutput<byte[]> fOutput = new ChunkedOutput<>(byte[].class);
+    private int fNbRemaining;
+    private boolean fFirst = true;
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            the object mapper with the serializers of the web application
+     * @param requests
+     *            the requests of the batch
+     * @param monitor
+     *            the progress monitor of the batch, cancelled when the client
+     *            disconnects
+     */
+    public BatchStreamingOutput(ObjectMapper mapper, List<BatchRequest> requests, IProgressMonitor monitor) {
+        fMapper = mapper;
+        fRequests = requests;
+        fMonitor = monitor;
+        fNbRemaining = requests.size();
+    }
+
+    /**
+     * Start running the requests of the batch, without waiting for them
+     *
+     * @param executor
+     *            the executor on which the requests are run
+     * @return the output to which the results are written, to be used as the
+     *         entity of the response
+     */
+    public ChunkedOutput<byte[]> start(Executor executor) {
+        write(ARRAY_START);
+        if (fRequests.isEmpty()) {
+            close();
+        }
+        for (BatchRequest request : fRequests) {
+            try {
+                executor.execute(() -> writeResult(request, run(request, fMonitor)));
+            } catch (RejectedExecutionException e) {
+                writeResult(request, Response.status(Status.SERVICE_UNAVAILABLE).entity(EndpointConstants.SERVER_BUSY).build());
+            }
+        }
+        return fOutput;
+    }
+
+    private static Response run(BatchRequest request, IProgressMonitor monitor) {
+        if (monitor.isCanceled()) {
+            return Response.ok(new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED)).build();
+        }
+        try {
+            return request.fFetch.apply(monitor);
+        } catch (RuntimeException e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(String.valueOf(e.getMessage())).build();
+        }
+    }
+
+    private void writeResult(BatchRequest request, Response response) {
+        byte @Nullable [] result;
+        try (ScopeLog sl = new ScopeLog(LOGGER, Level.FINE, "BatchWriteResult")) { //$NON-NLS-1$
+            result = serialize(request, response);
+        } catch (IOException | RuntimeException e) {
+            Activator.getInstance().logError("Failed to serialize the result of a batch request", e); //$NON-NLS-1$
+            result = null;
+        }
+        synchronized (this) {
+            if (result != null && !fOutput.isClosed()) {
+                if (!fFirst) {
+                    write(new byte[] { ',' });
+                }
+                write(result);
+                fFirst = false;
+            }
+            if (--fNbRemaining == 0) {
+                close();
+            }
+        }
+    }
+
+    private synchronized void write(byte[] bytes) {
+        if (fOutput.isClosed()) {
+            return;
+        }
+        try {
+            fOutput.write(bytes);
+        } catch (IOException e) {
+            // The client is gone, stop the requests that are still running
+            fMonitor.setCanceled(true);
+            closeQuietly();
+        }
+    }
+
+    private synchronized void close() {
+        write(ARRAY_END);
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            fOutput.close();
+        } catch (IOException e) {
+            fMonitor.setCanceled(true);
+        }
+    }
+
+    private byte[] serialize(BatchRequest request, Response response) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (JsonGenerator gen = fMapper.getFactory().createGenerator(stream)) {
+            writeResult(gen, request, response);
+        }
+        return stream.toByteArray();
+    }
+
+    private static void writeResult(JsonGenerator gen, BatchRequest request, Response response) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField(INDEX, request.fIndex);
+        gen.writeStringField(OUTPUT_ID, request.fOutputId);
+        gen.writeStringField(KIND, request.fKind);
+        gen.writeNumberField(STATUS_CODE, response.getStatus());
+        Object watermark = response.getMetadata().getFirst(EndpointConstants.WATERMARK_HEADER);
+        if (watermark != null) {
+            gen.writeStringField(WATERMARK, String.valueOf(watermark));
+            gen.writeObjectField(DELTA, response.getMetadata().getFirst(EndpointConstants.DELTA_HEADER));
+        }
+        gen.writeFieldName(RESPONSE);
+        gen.writeObject(response.getEntity());
+        gen.writeEndObject();
+    }
+}
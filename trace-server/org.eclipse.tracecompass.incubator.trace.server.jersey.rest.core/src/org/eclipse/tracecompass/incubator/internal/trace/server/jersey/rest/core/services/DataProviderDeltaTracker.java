@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.DELTA_HEADER;
+import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.REQUESTED_WATERMARK_KEY;
+import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.WATERMARK_HEADER;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.internal.tmf.core.model.TmfXyResponseFactory;
+import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
+import org.eclipse.tracecompass.tmf.core.model.IYModel;
+import org.eclipse.tracecompass.tmf.core.model.YModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.tree.ITmfTreeDataModel;
+import org.eclipse.tracecompass.tmf.core.model.tree.TmfTreeModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ISeriesModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalManager;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceClosedSignal;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceRangeUpdatedSignal;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceUpdatedSignal;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Tracks the models returned to clients that poll an output while its analysis
+ * is running, so that the next poll only returns what changed.
+ *
+ * A client starts tracking by sending an empty
+ * {@link EndpointConstants#REQUESTED_WATERMARK_KEY} parameter, the response
+ * then has an opaque token in the {@link EndpointConstants#WATERMARK_HEADER}
+ * header, to send as watermark with the next request of the same output and
+ * parameters. When the watermark is still known, the
+ * {@link EndpointConstants#DELTA_HEADER} header is true and the response only
+ * has:
+ * <ul>
+ * <li>for trees, the entries that are new or changed;</li>
+ * <li>for time graph states, the rows that changed, with their states from the
+ * end of the data of the previous response, which replace the states of the
+ * row from the start of the first returned state;</li>
+ * <li>for XY, the series that changed, with their points from the first
+ * requested time that could have changed, which replace the points of the
+ * series from that time.</li>
+ * </ul>
+ * Otherwise, the full model is returned. The time graph states and XY data
+ * providers are only queried for the times that can still change, so the cost
+ * of polling does not grow with the part of the trace that is already
+ * analyzed.
+ */
+public final class DataProviderDeltaTracker {
+
+    private static final String PROPERTY_MAX_WATERMARKS = "traceserver.deltaWatermarks"; //$NON-NLS-1$
+    private static final long DEFAULT_MAX_WATERMARKS = 1000;
+    private static final long EXPIRY_MINUTES = 10;
+
+    private static final long[] NO_STATE = { Long.MIN_VALUE, Long.MIN_VALUE };
+
+    private static final DataProviderDeltaTracker INSTANCE = new DataProviderDeltaTracker(getMaximumSize());
+
+    private final Cache<String, Snapshot> fSnapshots;
+
+    /**
+     * The response of a tracked request, with the watermark to send with the
+     * next request
+     */
+    public static final class DeltaResponse {
+        private final TmfModelResponse<?> fResponse;
+        private final @Nullable String fWatermark;
+        private final boolean fDelta;
+
+        private DeltaResponse(TmfModelResponse<?> response, @Nullable String watermark, boolean delta) {
+            fResponse = response;
+            fWatermark = watermark;
+            fDelta = delta;
+        }
+
+        /**
+         * Get the model response, full or with the changes only
+         *
+         * @return the model response
+         */
+        public TmfModelResponse<?> getResponse() {
+            return fResponse;
+        }
+
+        /**
+         * Get the watermark to send with the next request
+         *
+         * @return the watermark, or null if the request cannot be tracked
+         */
+        public @Nullable String getWatermark() {
+            return fWatermark;
+        }
+
+        /**
+         * Get whether the response only has the changes since the watermark
+         *
+         * @return true if the response is a delta
+         */
+        public boolean isDelta() {
+            return fDelta;
+        }
+
+        /**
+         * Build the HTTP response, with the watermark and delta headers
+         *
+         * @param entity
+         *            the entity of the response
+         * @return the HTTP response
+         */
+        public Response build(Object entity) {
+            ResponseBuilder builder = Response.ok(entity);
+            if (fWatermark != null) {
+                builder.header(WATERMARK_HEADER, fWatermark);
+            }
+            return builder.header(DELTA_HEADER, fDelta).build();
+        }
+    }
+
+    private DataProviderDeltaTracker(long maximumSize) {
+        fSnapshots = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .build();
+        TmfSignalManager.register(this);
+    }
+
+    /**
+     * Get the instance of the delta tracker
+     *
+     * @return the delta tracker
+     */
+    public static DataProviderDeltaTracker getInstance() {
+        return INSTANCE;
+    }
+
+    private static long getMaximumSize() {
+        String sizeStr = System.getProperty(PROPERTY_MAX_WATERMARKS);
+        if (sizeStr != null && !sizeStr.isEmpty()) {
+            try {
+                return Long.parseLong(sizeStr);
+            } catch (NumberFormatException e) {
+                // Fall back to the default size
+            }
+        }
+        return DEFAULT_MAX_WATERMARKS;
+    }
+
+    /**
+     * Get whether a request asks for an incremental model
+     *
+     * @param params
+     *            the query parameters
+     * @return true if the request has a watermark parameter
+     */
+    public static boolean isTracked(Map<String, Object> params) {
+        return params.containsKey(REQUESTED_WATERMARK_KEY);
+    }
+
+    // ------------------------------------------------------------------------
+    // Tree
+    // ------------------------------------------------------------------------
+
+    /**
+     * Fetch a tree, with only the entries that are new or changed since the
+     * watermark if it is known
+     *
+     * @param experiment
+     *            the experiment
+     * @param expUUID
+     *            the experiment UUID
+     * @param outputId
+     *            the output ID
+     * @param params
+     *            the validated query parameters
+     * @param fetch
+     *            the function fetching the tree from the data provider
+     * @return the response
+     */
+    @SuppressWarnings("unchecked")
+    public DeltaResponse fetchTree(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> params, Function<Map<String, Object>, TmfModelResponse<?>> fetch) {
+        Map<String, Object> key = getKey(params, false);
+        TreeSnapshot previous = getSnapshot(params, TreeSnapshot.class, expUUID, outputId, key);
+        TmfModelResponse<?> response = fetch.apply(params);
+        Object model = response.getModel();
+        if (!(model instanceof TmfTreeModel) || isFailed(response)) {
+            return new DeltaResponse(response, null, false);
+        }
+        TmfTreeModel<ITmfTreeDataModel> tree = (TmfTreeModel<ITmfTreeDataModel>) model;
+        Map<Long, ITmfTreeDataModel> entries = new HashMap<>();
+        List<ITmfTreeDataModel> changed = new ArrayList<>();
+        for (ITmfTreeDataModel entry : tree.getEntries()) {
+            entries.put(entry.getId(), entry);
+            if (previous == null || !entry.equals(previous.fEntries.get(entry.getId()))) {
+                changed.add(entry);
+            }
+        }
+        String watermark = putSnapshot(new TreeSnapshot(experiment, expUUID, outputId, key, isCompleted(response), entries));
+        if (previous == null) {
+            return new DeltaResponse(response, watermark, false);
+        }
+        TmfTreeModel<ITmfTreeDataModel> delta = new TmfTreeModel.Builder<ITmfTreeDataModel>()
+                .setColumnDescriptors(tree.getColumnDescriptors())
+                .setEntries(changed)
+                .setScope(tree.getScope())
+                .build();
+        return new DeltaResponse(new TmfModelResponse<>(delta, response.getStatus(), response.getStatusMessage()), watermark, true);
+    }
+
+    // ------------------------------------------------------------------------
+    // Time graph states
+    // ------------------------------------------------------------------------
+
+    /**
+     * Fetch time graph states, with only the rows that changed since the
+     * watermark if it is known. The rows that were already returned are only
+     * fetched from the end of their data in the previous response, the new
+     * rows are fetched for all the requested times.
+     *
+     * @param experiment
+     *            the experiment
+     * @param expUUID
+     *            the experiment UUID
+     * @param outputId
+     *            the output ID
+     * @param params
+     *            the validated query parameters
+     * @param fetch
+     *            the function fetching the states from the data provider
+     * @return the response
+     */
+    public DeltaResponse fetchStates(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> params, Function<Map<String, Object>, TmfModelResponse<?>> fetch) {
+        Map<String, Object> key = getKey(params, true);
+        StatesSnapshot previous = getSnapshot(params, StatesSnapshot.class, expUUID, outputId, key);
+        List<Long> times = DataProviderParameterUtils.extractTimeRequested(params);
+        List<Long> items = DataProviderParameterUtils.extractSelectedItems(params);
+        if (previous == null || times == null || items == null) {
+            TmfModelResponse<?> response = fetch.apply(params);
+            if (isFailed(response)) {
+                return new DeltaResponse(response, null, false);
+            }
+            StatesSnapshot snapshot = new StatesSnapshot(experiment, expUUID, outputId, key, isCompleted(response), new HashMap<>(), Long.MIN_VALUE);
+            snapshot.update(getRows(response), items);
+            snapshot.fStatusMessage = response.getStatusMessage();
+            return new DeltaResponse(response, putSnapshot(snapshot), false);
+        }
+
+        List<Long> knownItems = new ArrayList<>();
+        List<Long> newItems = new ArrayList<>();
+        for (Long item : items) {
+            (previous.fLastStates.containsKey(item) ? knownItems : newItems).add(item);
+        }
+        List<ITimeGraphRowModel> rows = new ArrayList<>();
+        ITmfResponse.Status status = ITmfResponse.Status.COMPLETED;
+        String statusMessage = previous.fStatusMessage;
+        StatesSnapshot snapshot = new StatesSnapshot(experiment, expUUID, outputId, key, true, new HashMap<>(previous.fLastStates), previous.fWatermark);
+
+        if (!newItems.isEmpty()) {
+            Map<String, Object> newParams = new HashMap<>(params);
+            newParams.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, newItems);
+            TmfModelResponse<?> response = fetch.apply(newParams);
+            if (isFailed(response)) {
+                return new DeltaResponse(response, null, false);
+            }
+            List<ITimeGraphRowModel> newRows = getRows(response);
+            rows.addAll(newRows);
+            snapshot.update(newRows, newItems);
+            status = response.getStatus();
+            statusMessage = response.getStatusMessage();
+        }
+
+        if (!knownItems.isEmpty() && !previous.fCompleted) {
+            // Only sample the times that can still change, from the sample before the watermark
+            int index = Collections.binarySearch(times, previous.fWatermark);
+            int from = Math.max(0, (index >= 0 ? index : -index - 1) - 1);
+            Map<String, Object> tailParams = new HashMap<>(params);
+            tailParams.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, times.subList(from, times.size()));
+            tailParams.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, knownItems);
+            TmfModelResponse<?> response = fetch.apply(tailParams);
+            if (isFailed(response)) {
+                return new DeltaResponse(response, null, false);
+            }
+            for (ITimeGraphRowModel row : getRows(response)) {
+                if (!Arrays.equals(previous.fLastStates.get(row.getEntryID()), getLastState(row))) {
+                    rows.add(row);
+                }
+            }
+            snapshot.update(getRows(response), null);
+            if (response.getStatus() != ITmfResponse.Status.COMPLETED) {
+                status = response.getStatus();
+                statusMessage = response.getStatusMessage();
+            } else if (newItems.isEmpty()) {
+                statusMessage = response.getStatusMessage();
+            }
+        }
+        snapshot.fCompleted = status == ITmfResponse.Status.COMPLETED;
+        snapshot.fStatusMessage = statusMessage;
+        return new DeltaResponse(new TmfModelResponse<>(new TimeGraphModel(rows), status, statusMessage), putSnapshot(snapshot), true);
+    }
+
+    private static List<ITimeGraphRowModel> getRows(TmfModelResponse<?> response) {
+        Object model = response.getModel();
+        return model instanceof TimeGraphModel ? ((TimeGraphModel) model).getRows() : Collections.emptyList();
+    }
+
+    private static long[] getLastState(ITimeGraphRowModel row) {
+        List<ITimeGraphState> states = row.getStates();
+        if (states.isEmpty()) {
+            return NO_STATE;
+        }
+        ITimeGraphState last = states.get(states.size() - 1);
+        return new long[] { last.getStartTime(), last.getStartTime() + last.getDuration() };
+    }
+
+    // ------------------------------------------------------------------------
+    // XY
+    // ------------------------------------------------------------------------
+
+    /**
+     * Fetch XY series, with only the series that changed since the watermark
+     * if it is known. The data provider is only queried from the first
+     * requested time whose value changed between the two previous responses,
+     * as the values before it are final.
+     *
+     * @param experiment
+     *            the experiment
+     * @param expUUID
+     *            the experiment UUID
+     * @param outputId
+     *            the output ID
+     * @param params
+     *            the validated query parameters
+     * @param fetch
+     *            the function fetching the series from the data provider
+     * @return the response
+     */
+    public DeltaResponse fetchXY(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> params, Function<Map<String, Object>, TmfModelResponse<?>> fetch) {
+        Map<String, Object> key = getKey(params, false);
+        XySnapshot previous = getSnapshot(params, XySnapshot.class, expUUID, outputId, key);
+        List<Long> times = DataProviderParameterUtils.extractTimeRequested(params);
+        if (times == null || times.isEmpty()) {
+            return new DeltaResponse(fetch.apply(params), null, false);
+        }
+        if (previous != null && previous.fCompleted) {
+            TmfModelResponse<?> empty = TmfXyResponseFactory.create(previous.fTitle, new long[0], Collections.emptyList(), true);
+            return new DeltaResponse(empty, putSnapshot(previous), true);
+        }
+
+        int start = previous == null ? 0 : previous.fStartIndex;
+        // Also query the sample before the start, some series are computed from the previous sample
+        int from = Math.max(0, start - 1);
+        Map<String, Object> query = params;
+        if (from > 0) {
+            query = new HashMap<>(params);
+            query.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, times.subList(from, times.size()));
+        }
+        TmfModelResponse<?> response = fetch.apply(query);
+        Object model = response.getModel();
+        if (!(model instanceof ITmfXyModel) || isFailed(response)) {
+            return new DeltaResponse(response, null, false);
+        }
+        ITmfXyModel xy = (ITmfXyModel) model;
+        int nbTimes = times.size();
+        Map<Long, double[]> values = new HashMap<>();
+        List<IYModel> changed = new ArrayList<>();
+        int firstChange = nbTimes;
+        for (ISeriesModel series : xy.getSeriesData()) {
+            long[] xValues = series.getXAxis();
+            double[] yValues = series.getData();
+            double[] previousValues = previous == null ? null : previous.fValues.get(series.getId());
+            if (xValues.length != nbTimes - from || yValues.length != xValues.length || (previous != null && previousValues == null)) {
+                // The series does not match the requested times, no delta
+                return previous == null ? new DeltaResponse(response, null, false) : fetchXY(experiment, expUUID, outputId, withoutWatermark(params), fetch);
+            }
+            double[] merged = previousValues == null ? new double[nbTimes] : previousValues.clone();
+            int seriesChange = nbTimes;
+            for (int i = start; i < nbTimes; i++) {
+                double value = yValues[i - from];
+                if (seriesChange == nbTimes && (previousValues == null || Double.compare(previousValues[i], value) != 0)) {
+                    seriesChange = i;
+                }
+                merged[i] = value;
+            }
+            values.put(series.getId(), merged);
+            firstChange = Math.min(firstChange, seriesChange);
+            if (seriesChange < nbTimes) {
+                changed.add(new YModel(series.getId(), series.getName(), Arrays.copyOfRange(yValues, start - from, yValues.length)));
+            }
+        }
+
+        boolean completed = isCompleted(response);
+        // The values before the first change were the same twice, they are final
+        int nextStart = (previous == null || firstChange == nbTimes) ? start : Math.max(start, firstChange);
+        String watermark = putSnapshot(new XySnapshot(experiment, expUUID, outputId, key, completed, xy.getTitle(), values, nextStart));
+        if (previous == null) {
+            return new DeltaResponse(response, watermark, false);
+        }
+        long[] xValues = new long[nbTimes - start];
+        for (int i = start; i < nbTimes; i++) {
+            xValues[i - start] = times.get(i);
+        }
+        return new DeltaResponse(TmfXyResponseFactory.create(xy.getTitle(), xValues, changed, completed), watermark, true);
+    }
+
+    private static Map<String, Object> withoutWatermark(Map<String, Object> params) {
+        Map<String, Object> copy = new HashMap<>(params);
+        copy.put(REQUESTED_WATERMARK_KEY, ""); //$NON-NLS-1$
+        return copy;
+    }
+
+    // ------------------------------------------------------------------------
+    // Snapshots
+    // ------------------------------------------------------------------------
+
+    private static boolean isFailed(TmfModelResponse<?> response) {
+        return response.getStatus() == ITmfResponse.Status.FAILED || response.getStatus() == ITmfResponse.Status.CANCELLED;
+    }
+
+    private static boolean isCompleted(TmfModelResponse<?> response) {
+        return response.getStatus() == ITmfResponse.Status.COMPLETED;
+    }
+
+    /**
+     * Get the parameters that must be equal for a watermark to apply: all but
+     * the watermark, and the requested items for time graph states as the new
+     * rows are fetched separately
+     */
+    private static Map<String, Object> getKey(Map<String, Object> params, boolean ignoreItems) {
+        Map<String, Object> key = new HashMap<>(params);
+        key.remove(REQUESTED_WATERMARK_KEY);
+        if (ignoreItems) {
+            key.remove(DataProviderParameterUtils.REQUESTED_ITEMS_KEY);
+        }
+        return DataProviderResponseCache.normalizeMap(key);
+    }
+
+    private <T extends Snapshot> @Nullable T getSnapshot(Map<String, Object> params, Class<T> type, UUID expUUID, String outputId, Map<String, Object> key) {
+        Object watermark = params.get(REQUESTED_WATERMARK_KEY);
+        if (!(watermark instanceof String) || ((String) watermark).isEmpty()) {
+            return null;
+        }
+        Snapshot snapshot = fSnapshots.getIfPresent(watermark);
+        if (type.isInstance(snapshot) && snapshot.matches(expUUID, outputId, key)) {
+            return type.cast(snapshot);
+        }
+        return null;
+    }
+
+    private String putSnapshot(Snapshot snapshot) {
+        String watermark = UUID.randomUUID().toString();
+        fSnapshots.put(watermark, snapshot);
+        return watermark;
+    }
+
+    /**
+     * What was returned for a watermark
+     */
+    private abstract static class Snapshot {
+        private final TmfExperiment fExperiment;
+        private final UUID fExpUUID;
+        private final String fOutputId;
+        private final Map<String, Object> fKey;
+        protected volatile boolean fCompleted;
+
+        protected Snapshot(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> key, boolean completed) {
+            fExperiment = experiment;
+            fExpUUID = expUUID;
+            fOutputId = outputId;
+            fKey = key;
+            fCompleted = completed;
+        }
+
+        public boolean matches(UUID expUUID, String outputId, Map<String, Object> key) {
+            return fExpUUID.equals(expUUID) && fOutputId.equals(outputId) && fKey.equals(key);
+        }
+    }
+
+    private static final class TreeSnapshot extends Snapshot {
+        private final Map<Long, ITmfTreeDataModel> fEntries;
+
+        public TreeSnapshot(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> key, boolean completed, Map<Long, ITmfTreeDataModel> entries) {
+            super(experiment, expUUID, outputId, key, completed);
+            fEntries = entries;
+        }
+    }
+
+    private static final class StatesSnapshot extends Snapshot {
+        /* Start and end time of the last state of each row */
+        private final Map<Long, long[]> fLastStates;
+        private long fWatermark;
+        private String fStatusMessage = ""; //$NON-NLS-1$
+
+        public StatesSnapshot(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> key, boolean completed, Map<Long, long[]> lastStates, long watermark) {
+            super(experiment, expUUID, outputId, key, completed);
+            fLastStates = lastStates;
+            fWatermark = watermark;
+        }
+
+        public void update(List<ITimeGraphRowModel> rows, @Nullable List<Long> items) {
+            for (ITimeGraphRowModel row : rows) {
+                long[] lastState = getLastState(row);
+                fLastStates.put(row.getEntryID(), lastState);
+                fWatermark = Math.max(fWatermark, lastState[1]);
+            }
+            if (items != null) {
+                // Requested items without a row are known too
+                for (Long item : items) {
+                    fLastStates.putIfAbsent(item, NO_STATE);
+                }
+            }
+        }
+    }
+
+    private static final class XySnapshot extends Snapshot {
+        private final String fTitle;
+        /* Values of each series for all the requested times */
+        private final Map<Long, double[]> fValues;
+        /* Index of the first requested time that can still change */
+        private final int fStartIndex;
+
+        public XySnapshot(TmfExperiment experiment, UUID expUUID, String outputId, Map<String, Object> key, boolean completed, String title, Map<Long, double[]> values, int startIndex) {
+            super(experiment, expUUID, outputId, key, completed);
+            fTitle = title;
+            fValues = values;
+            fStartIndex = startIndex;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Signal handlers
+    // ------------------------------------------------------------------------
+
+    /**
+     * The models of an experiment whose trace was updated can change again
+     *
+     * @param signal
+     *            the trace range updated signal
+     */
+    @TmfSignalHandler
+    public void traceRangeUpdated(TmfTraceRangeUpdatedSignal signal) {
+        for (Snapshot snapshot : fSnapshots.asMap().values()) {
+            if (contains(snapshot.fExperiment, signal.getTrace())) {
+                snapshot.fCompleted = false;
+            }
+        }
+    }
+
+    /**
+     * The models of an experiment whose trace was updated can change again
+     *
+     * @param signal
+     *            the trace updated signal
+     */
+    @TmfSignalHandler
+    public void traceUpdated(TmfTraceUpdatedSignal signal) {
+        for (Snapshot snapshot : fSnapshots.asMap().values()) {
+            if (contains(snapshot.fExperiment, signal.getTrace())) {
+                snapshot.fCompleted = false;
+            }
+        }
+    }
+
+    /**
+     * Forget the watermarks of a closed experiment
+     *
+     * @param signal
+     *            the trace closed signal
+     */
+    @TmfSignalHandler
+    public void traceClosed(TmfTraceClosedSignal signal) {
+        fSnapshots.asMap().values().removeIf(snapshot -> contains(snapshot.fExperiment, signal.getTrace()));
+    }
+
+    private static boolean contains(TmfExperiment experiment, ITmfTrace trace) {
+        return experiment.equals(trace) || TmfTraceManager.getFullTraceSet(experiment).contains(trace);
+    }
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.ConnectionCallback;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics.EndpointMetrics;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+
+/**
+ * Executor of the data provider requests of the {@link DataProviderService}.
+ * The requests are run on a bounded pool of threads instead of the web server
+ * threads, each with its own progress monitor. The monitor of a request is
+ * cancelled when the client disconnects, or when a newer request from the
+ * same client for the same endpoint and output supersedes it, so that the
+ * data providers stop computing stale results.
+ *
+ * Clients identify themselves with the {@link #CLIENT_ID_HEADER} header, the
+ * requests of clients that do not are never superseded.
+ */
+public final class DataProviderRequestExecutor {
+
+    /**
+     * Header identifying the client that sent a request
+     */
+    public static final String CLIENT_ID_HEADER = "X-Tsp-Client-Id"; //$NON-NLS-1$
+
+    private static final String PROPERTY_THREADS = "traceserver.dataProviderThreads"; //$NON-NLS-1$
+    private static final String PROPERTY_QUEUE_SIZE = "traceserver.dataProviderQueueSize"; //$NON-NLS-1$
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final DataProviderRequestExecutor INSTANCE = new DataProviderRequestExecutor();
+
+    private final ThreadPoolExecutor fExecutor;
+    private final Map<RequestKey, IProgressMonitor> fRunningRequests = new ConcurrentHashMap<>();
+
+    private DataProviderRequestExecutor() {
+        int nbThreads = getIntProperty(PROPERTY_THREADS, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadCount = new AtomicInteger();
+        fExecutor = new ThreadPoolExecutor(nbThreads, nbThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(getIntProperty(PROPERTY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "DataProviderRequest-" + threadCount.incrementAndGet()); //$NON-NLS-1$
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        fExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the instance of the request executor
+     *
+     * @return the request executor
+     */
+    public static DataProviderRequestExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the executor on which the requests are run, to run the parts of a
+     * request concurrently. The parts must not be waited for from a thread of
+     * this executor.
+     *
+     * @return the executor
+     */
+    Executor getExecutor() {
+        return fExecutor;
+    }
+
+    private static int getIntProperty(String property, int defaultValue) {
+        String valueStr = System.getProperty(property);
+        if (valueStr != null && !valueStr.isEmpty()) {
+            try {
+                return Math.max(1, Integer.parseInt(valueStr));
+            } catch (NumberFormatException e) {
+                // Fall back to the default value
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Submit a request, the asynchronous response is resumed with the
+     * response of the request once it is run
+     *
+     * @param asyncResponse
+     *            the asynchronous response of the request
+     * @param clientId
+     *            the ID of the client that sent the request, or null if the
+     *            client did not identify itself
+     * @param expUUID
+     *            the experiment UUID
+     * @param outputId
+     *            the output ID
+     * @param endpoint
+     *            the name of the endpoint
+     * @param metrics
+     *            the metrics of the endpoint, in which the time spent running
+     *            the request is recorded
+     * @param request
+     *            the request, that computes its response using the given
+     *            progress monitor
+     */
+    public void submit(AsyncResponse asyncResponse, @Nullable String clientId, UUID expUUID, String outputId, String endpoint, EndpointMetrics metrics, Function<IProgressMonitor, Response> request) {
+        IProgressMonitor monitor = new NullProgressMonitor();
+        RequestKey key = clientId == null ? null : new RequestKey(clientId, expUUID, outputId, endpoint);
+        if (key != null) {
+            IProgressMonitor previous = fRunningRequests.put(key, monitor);
+            if (previous != null) {
+                // The previous request of this client is stale
+                previous.setCanceled(true);
+            }
+        }
+        asyncResponse.register((ConnectionCallback) disconnected -> monitor.setCanceled(true));
+        asyncResponse.register((CompletionCallback) throwable -> {
+            if (key != null) {
+                fRunningRequests.remove(key, monitor);
+            }
+        });
+        try {
+            fExecutor.execute(() -> {
+                if (monitor.isCanceled()) {
+                    // Superseded before it started, do not even start it
+                    asyncResponse.resume(Response.ok(new TmfModelResponse<>(null, ITmfResponse.Status.CANCELLED, CommonStatusMessage.TASK_CANCELLED)).build());
+                    return;
+                }
+                long start = System.nanoTime();
+                Response response;
+                try {
+                    response = request.apply(monitor);
+                } catch (RuntimeException e) {
+                    asyncResponse.resume(e);
+                    return;
+                } finally {
+                    metrics.recordFetch(System.nanoTime() - start);
+                }
+                asyncResponse.resume(response);
+            });
+        } catch (RejectedExecutionException e) {
+            if (key != null) {
+                fRunningRequests.remove(key, monitor);
+            }
+            asyncResponse.resume(Response.status(Status.SERVICE_UNAVAILABLE).entity(EndpointConstants.SERVER_BUSY).build());
+        }
+    }
+
+    private static final class RequestKey {
+        private final String fClientId;
+        private final UUID fExpUUID;
+        private final String fOutputId;
+        private final String fEndpoint;
+
+        public RequestKey(String clientId, UUID expUUID, String outputId, String endpoint) {
+            fClientId = clientId;
+            fExpUUID = expUUID;
+            fOutputId = outputId;
+            fEndpoint = endpoint;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fClientId, fExpUUID, fOutputId, fEndpoint);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey other = (RequestKey) obj;
+            return fClientId.equals(other.fClientId) &&
+                    Objects.equals(fExpUUID, other.fExpUUID) &&
+                    Objects.equals(fOutputId, other.fOutputId) &&
+                    fEndpoint.equals(other.fEndpoint);
+        }
+    }
+}
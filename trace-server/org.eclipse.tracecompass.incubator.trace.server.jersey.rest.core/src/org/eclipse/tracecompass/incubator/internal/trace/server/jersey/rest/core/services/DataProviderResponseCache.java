@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ISeriesModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalHandler;
+import org.eclipse.tracecompass.tmf.core.signal.TmfSignalManager;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceClosedSignal;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceRangeUpdatedSignal;
+import org.eclipse.tracecompass.tmf.core.signal.TmfTraceUpdatedSignal;
+import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
+import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
+import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Bounded cache of the responses of the time graph states and XY endpoints.
+ * Entries are keyed on the experiment UUID, the output ID, the kind of model
+ * and the normalized query parameters, and are evicted according to an
+ * estimate of their memory weight.
+ *
+ * Only {@link ITmfResponse.Status#COMPLETED} responses are cached, so a
+ * response computed while an analysis is still running is never reused. The
+ * entries of an experiment are invalidated when it is closed or when the time
+ * range of one of its traces is updated by the indexing.
+ */
+public final class DataProviderResponseCache {
+
+    /**
+     * The kind of model that is cached
+     */
+    public enum ModelKind {
+        /** Time graph states, {@link TimeGraphModel} */
+        STATES,
+        /** XY series, {@link ITmfXyModel} */
+        XY
+    }
+
+    private static final String PROPERTY_CACHE_SIZE = "traceserver.responseCacheMB"; //$NON-NLS-1$
+    private static final long DEFAULT_CACHE_SIZE_MB = 256;
+
+    /* Rough estimates of the retained size of the model objects, in bytes */
+    private static final int BASE_WEIGHT = 256;
+    private static final int ROW_WEIGHT = 64;
+    private static final int STATE_WEIGHT = 96;
+    private static final int POINT_WEIGHT = Long.BYTES + Double.BYTES;
+    private static final int PARAMETER_WEIGHT = 24;
+
+    private static final DataProviderResponseCache INSTANCE = new DataProviderResponseCache(getMaximumWeight());
+
+    private final Cache<CacheKey, TmfModelResponse<?>> fCache;
+    private final Map<UUID, TmfExperiment> fExperiments = new ConcurrentHashMap<>();
+
+    private DataProviderResponseCache(long maximumWeight) {
+        fCache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((CacheKey key, TmfModelResponse<?> value) -> (int) Math.min(Integer.MAX_VALUE, key.getWeight() + getWeight(value)))
+                .recordStats()
+                .build();
+        TmfSignalManager.register(this);
+    }
+
+    /**
+     * Get the instance of the response cache
+     *
+     * @return the response cache
+     */
+    public static DataProviderResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static long getMaximumWeight() {
+        String sizeStr = System.getProperty(PROPERTY_CACHE_SIZE);
+        if (sizeStr != null && !sizeStr.isEmpty()) {
+            try {
+                return Long.parseLong(sizeStr) << 20;
+            } catch (NumberFormatException e) {
+                // Fall back to the default size
+            }
+        }
+        return DEFAULT_CACHE_SIZE_MB << 20;
+    }
+
+    /**
+     * Get a cached response
+     *
+     * @param expUUID
+     *            the experiment UUID
+     * @param outputId
+     *            the output ID
+     * @param kind
+     *            the kind of model
+     * @param params
+     *            the validated query parameters
+     * @return the cached response, or null if there is none
+     */
+    public @Nullable TmfModelResponse<?> get(UUID expUUID, String outputId, ModelKind kind, Map<String, Object> params) {
+        return fCache.getIfPresent(new CacheKey(expUUID, outputId, kind, params));
+    }
+
+    /**
+     * Put a response in the cache. Responses that are not completed are
+     * ignored.
+     *
+     * @param experiment
+     *            the experiment
+     * @param expUUID
+     *            the experiment UUID
+     * @param outputId
+     *            the output ID
+     * @param kind
+     *            the kind of model
+     * @param params
+     *            the validated query parameters
+     * @param response
+     *            the response computed by the data provider
+     */
+    public void put(TmfExperiment experiment, UUID expUUID, String outputId, ModelKind kind, Map<String, Object> params, TmfModelResponse<?> response) {
+        if (response.getStatus() != ITmfResponse.Status.COMPLETED || response.getModel() == null) {
+            return;
+        }
+        fExperiments.put(expUUID, experiment);
+        fCache.put(new CacheKey(expUUID, outputId, kind, params), response);
+    }
+
+    /**
+     * Invalidate all the cached responses of an experiment
+     *
+     * @param expUUID
+     *            the experiment UUID
+     */
+    public void invalidate(UUID expUUID) {
+        fExperiments.remove(expUUID);
+        fCache.asMap().keySet().removeIf(key -> key.fExpUUID.equals(expUUID));
+    }
+
+    /**
+     * Invalidate all the cached responses
+     */
+    public void invalidateAll() {
+        fExperiments.clear();
+        fCache.invalidateAll();
+    }
+
+    /**
+     * Get the hit, miss and eviction statistics of the cache
+     *
+     * @return the statistics, as a map to be serialized
+     */
+    public Map<String, Object> getStatistics() {
+        CacheStats stats = fCache.stats();
+        return ImmutableMap.of(
+                "hitCount", stats.hitCount(), //$NON-NLS-1$
+                "missCount", stats.missCount(), //$NON-NLS-1$
+                "hitRate", stats.hitRate(), //$NON-NLS-1$
+                "evictionCount", stats.evictionCount(), //$NON-NLS-1$
+                "size", fCache.size()); //$NON-NLS-1$
+    }
+
+    // ------------------------------------------------------------------------
+    // Signal handlers
+    // ------------------------------------------------------------------------
+
+    /**
+     * Invalidate the responses of experiments that contain a trace whose time
+     * range was updated by the indexing
+     *
+     * @param signal
+     *            the trace range updated signal
+     */
+    @TmfSignalHandler
+    public void traceRangeUpdated(TmfTraceRangeUpdatedSignal signal) {
+        invalidate(signal.getTrace());
+    }
+
+    /**
+     * Invalidate the responses of experiments that contain an updated trace
+     *
+     * @param signal
+     *            the trace updated signal
+     */
+    @TmfSignalHandler
+    public void traceUpdated(TmfTraceUpdatedSignal signal) {
+        invalidate(signal.getTrace());
+    }
+
+    /**
+     * Invalidate the responses of experiments that contain a closed trace
+     *
+     * @param signal
+     *            the trace closed signal
+     */
+    @TmfSignalHandler
+    public void traceClosed(TmfTraceClosedSignal signal) {
+        invalidate(signal.getTrace());
+    }
+
+    private void invalidate(ITmfTrace trace) {
+        for (Entry<UUID, TmfExperiment> entry : fExperiments.entrySet()) {
+            TmfExperiment experiment = entry.getValue();
+            if (experiment.equals(trace) || TmfTraceManager.getFullTraceSet(experiment).contains(trace)) {
+                invalidate(entry.getKey());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Weight estimation
+    // ------------------------------------------------------------------------
+
+    private static long getWeight(TmfModelResponse<?> response) {
+        long weight = BASE_WEIGHT;
+        Object model = response.getModel();
+        if (model instanceof TimeGraphModel) {
+            for (ITimeGraphRowModel row : ((TimeGraphModel) model).getRows()) {
+                weight += ROW_WEIGHT + (long) STATE_WEIGHT * row.getStates().size();
+            }
+        } else if (model instanceof ITmfXyModel) {
+            Collection<ISeriesModel> series = ((ITmfXyModel) model).getSeriesData();
+            for (ISeriesModel serie : series) {
+                weight += ROW_WEIGHT + (long) POINT_WEIGHT * serie.getXAxis().length;
+            }
+        }
+        return weight;
+    }
+
+    // ------------------------------------------------------------------------
+    // Cache key
+    // ------------------------------------------------------------------------
+
+    private static final class CacheKey {
+        private final UUID fExpUUID;
+        private final String fOutputId;
+        private final ModelKind fKind;
+        private final Map<String, Object> fParameters;
+        private final long fWeight;
+        private final int fHashCode;
+
+        public CacheKey(UUID expUUID, String outputId, ModelKind kind, Map<String, Object> params) {
+            fExpUUID = expUUID;
+            fOutputId = outputId;
+            fKind = kind;
+            fParameters = normalizeMap(params);
+            fWeight = PARAMETER_WEIGHT * (long) countValues(fParameters);
+            fHashCode = Objects.hash(fExpUUID, fOutputId, fKind, fParameters);
+        }
+
+        public long getWeight() {
+            return fWeight;
+        }
+
+        @Override
+        public int hashCode() {
+            return fHashCode;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return fHashCode == other.fHashCode &&
+                    fKind == other.fKind &&
+                    fExpUUID.equals(other.fExpUUID) &&
+                    fOutputId.equals(other.fOutputId) &&
+                    fParameters.equals(other.fParameters);
+        }
+    }
+
+    /**
+     * Normalize the deserialized query parameters so that equivalent queries
+     * have equal keys: map keys are sorted and integral numbers are converted
+     * to {@link Long}, whichever type the JSON deserializer picked.
+     */
+    static Map<String, Object> normalizeMap(Map<?, ?> map) {
+        Map<String, Object> normalized = new TreeMap<>();
+        for (Entry<?, ?> entry : map.entrySet()) {
+            normalized.put(String.valueOf(entry.getKey()), normalize(entry.getValue()));
+        }
+        return normalized;
+    }
+
+    private static Object normalize(@Nullable Object value) {
+        if (value == null) {
+            return ""; //$NON-NLS-1$
+        }
+        if (value instanceof Map) {
+            return normalizeMap((Map<?, ?>) value);
+        }
+        if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                list.add(normalize(element));
+            }
+            return ImmutableList.copyOf(list);
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    private static int countValues(Object value) {
+        if (value instanceof Map) {
+            int count = 0;
+            for (Object element : ((Map<?, ?>) value).values()) {
+                count += countValues(element);
+            }
+            return count + 1;
+        }
+        if (value instanceof Collection) {
+            int count = 0;
+            for (Object element : (Collection<?>) value) {
+                count += countValues(element);
+            }
+            return count + 1;
+        }
+        return 1;
+    }
+}
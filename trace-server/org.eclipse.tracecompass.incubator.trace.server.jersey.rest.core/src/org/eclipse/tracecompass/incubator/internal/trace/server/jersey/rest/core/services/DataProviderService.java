@@ -68,6 +68,7 @@ import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.re
 import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.TREE_ENTRIES;
 import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.VERSION;
 import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.VTB;
+import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.WATERMARK;
 import static org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.EndpointConstants.X_Y;
 
 import java.util.ArrayList;
@@ -81,6 +82,8 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -91,10 +94,18 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
 
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
@@ -104,6 +115,7 @@ import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.AnnotationResponse;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.AnnotationsQueryParameters;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.ArrowsQueryParameters;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.BatchQueryParameters;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.DataProvider;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.LinesQueryParameters;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.MarkerSetsResponse;
@@ -125,6 +137,11 @@ import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.TableColumnHeader;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.TreeModelWrapper;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.VirtualTableModelWrapper;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.BatchStreamingOutput.BatchRequest;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderDeltaTracker.DeltaResponse;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.DataProviderResponseCache.ModelKind;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics.EndpointMetrics;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp.ColumnarModelResponseWriter;
 import org.eclipse.tracecompass.internal.analysis.timing.core.event.matching.EventMatchingLatencyAnalysis;
 import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.ITmfVirtualTableDataProvider;
 import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.ITmfVirtualTableModel;
@@ -154,18 +171,18 @@ import org.eclipse.tracecompass.tmf.core.model.annotations.TraceAnnotationProvid
 import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphArrow;
 import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphDataProvider;
 import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphEntryModel;
-import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
 import org.eclipse.tracecompass.tmf.core.model.tree.ITmfTreeDataModel;
 import org.eclipse.tracecompass.tmf.core.model.tree.ITmfTreeDataProvider;
 import org.eclipse.tracecompass.tmf.core.model.tree.TmfTreeModel;
 import org.eclipse.tracecompass.tmf.core.model.xy.ITmfTreeXYDataProvider;
-import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
 import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
 import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
+import org.glassfish.jersey.server.ExtendedUriInfo;
 import org.w3c.dom.Element;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -208,8 +225,27 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 public class DataProviderService {
     private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(DataProviderService.class);
 
+    private static final String BATCH = "batch"; //$NON-NLS-1$
+    private static final String BATCH_REQUESTS_KEY = "requests"; //$NON-NLS-1$
+    private static final String BATCH_OUTPUT_ID_KEY = "outputId"; //$NON-NLS-1$
+    private static final String BATCH_KIND_KEY = "kind"; //$NON-NLS-1$
+    private static final String BATCH_PARAMETERS_KEY = "parameters"; //$NON-NLS-1$
+    private static final String INVALID_BATCH_KIND = "Invalid kind, must be one of tree, states, xy, arrows, annotations, tooltip or lines"; //$NON-NLS-1$
+
     private final DataProviderManager manager = DataProviderManager.getInstance();
 
+    @Context
+    private Providers fProviders;
+
+    @Context
+    private HttpHeaders fHeaders;
+
+    @Context
+    private Request fRequest;
+
+    @Context
+    private ExtendedUriInfo fUriInfo;
+
     /**
      * Getter for the list of data provider descriptions
      *
@@ -306,7 +342,7 @@ public class DataProviderService {
     public Response getDataTree(
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
-            @RequestBody(description = "Query parameters to fetch the data tree entries. " + TIMERANGE_TREE, content = {
+            @RequestBody(description = "Query parameters to fetch the data tree entries. " + TIMERANGE_TREE + WATERMARK, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMERANGE_EX_TREE +
                             "}}"), schema = @Schema(implementation = TreeQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
@@ -340,7 +376,7 @@ public class DataProviderService {
     public Response getXYTree(
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
-            @RequestBody(description = "Query parameters to fetch the XY tree. " + TIMERANGE_TREE, content = {
+            @RequestBody(description = "Query parameters to fetch the XY tree. " + TIMERANGE_TREE + WATERMARK, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMERANGE_EX_TREE +
                             "}}"), schema = @Schema(implementation = TreeQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
@@ -350,19 +386,20 @@ public class DataProviderService {
     /**
      * Query the provider for the XY view
      *
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
      * @param expUUID
      *            {@link UUID} of the experiment to query
      * @param outputId
      *            Output ID for the data provider to query
      * @param queryParameters
      *            Parameters to fetch XY as described by {@link QueryParameters}
-     * @return an {@link GenericView} with the results
      */
     @POST
     @Path("/XY/{outputId}/xy")
     @Tag(name = X_Y)
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, ColumnarModelResponseWriter.COLUMNAR_JSON_QS })
     @Operation(summary = "API to get the XY model", description = "Unique endpoint for all xy models, " +
             "ensures that the same template is followed for all endpoints.", responses = {
                     @ApiResponse(responseCode = "200", description = "Return the queried XYResponse", content = @Content(schema = @Schema(implementation = XYResponse.class))),
@@ -370,14 +407,19 @@ public class DataProviderService {
                     @ApiResponse(responseCode = "404", description = PROVIDER_NOT_FOUND, content = @Content(schema = @Schema(implementation = String.class))),
                     @ApiResponse(responseCode = "405", description = NO_PROVIDER, content = @Content(schema = @Schema(implementation = String.class)))
             })
-    public Response getXY(
+    public void getXY(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
-            @RequestBody(description = "Query parameters to fetch the XY model. " + TIMERANGE + " " + ITEMS_XY, content = {
+            @RequestBody(description = "Query parameters to fetch the XY model. " + TIMERANGE + " " + ITEMS_XY + WATERMARK, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMERANGE_EX + "," + ITEMS_EX +
                             "}}"), schema = @Schema(implementation = RequestedQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
+        EndpointMetrics metrics = getEndpointMetrics(outputId);
+        submit(asyncResponse, expUUID, outputId, "xy", metrics, monitor -> fetchXY(expUUID, outputId, queryParameters, metrics, monitor)); //$NON-NLS-1$
+    }
 
+    private Response fetchXY(UUID expUUID, String outputId, QueryParameters queryParameters, EndpointMetrics metrics, IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -408,7 +450,19 @@ public class DataProviderService {
                 return Response.status(Status.BAD_REQUEST).entity(errorMessage).build();
             }
 
-            TmfModelResponse<@NonNull ITmfXyModel> response = provider.fetchXY(params, null);
+            if (DataProviderDeltaTracker.isTracked(params)) {
+                ITmfTreeXYDataProvider<@NonNull ITmfTreeDataModel> xyProvider = provider;
+                DeltaResponse delta = DataProviderDeltaTracker.getInstance().fetchXY(experiment, expUUID, outputId, params, p -> xyProvider.fetchXY(p, monitor));
+                return delta.build(delta.getResponse());
+            }
+
+            DataProviderResponseCache cache = DataProviderResponseCache.getInstance();
+            TmfModelResponse<?> response = cache.get(expUUID, outputId, ModelKind.XY, params);
+            metrics.recordCacheLookup(response != null);
+            if (response == null) {
+                response = provider.fetchXY(params, monitor);
+                cache.put(experiment, expUUID, outputId, ModelKind.XY, params, response);
+            }
             return Response.ok(response).build();
         }
     }
@@ -468,7 +522,7 @@ public class DataProviderService {
     public Response getTimeGraphTree(
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
-            @RequestBody(description = "Query parameters to fetch the timegraph tree. " + TIMERANGE_TREE, content = {
+            @RequestBody(description = "Query parameters to fetch the timegraph tree. " + TIMERANGE_TREE + WATERMARK, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMERANGE_EX_TREE +
                             "}}"), schema = @Schema(implementation = TreeQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
@@ -478,6 +532,8 @@ public class DataProviderService {
     /**
      * Query the provider for the time graph states
      *
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
      * @param expUUID
      *            desired experiment UUID
      * @param outputId
@@ -485,27 +541,32 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch time graph states as described by
      *            {@link QueryParameters}
-     * @return {@link GenericView} with the results
      */
     @POST
     @Path("/timeGraph/{outputId}/states")
     @Tag(name = TGR)
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, ColumnarModelResponseWriter.COLUMNAR_JSON_QS })
     @Operation(summary = "API to get the Time Graph states", description = "Unique entry point for all TimeGraph states, ensures that the same template is followed for all views", responses = {
             @ApiResponse(responseCode = "200", description = "Returns a list of time graph rows", content = @Content(schema = @Schema(implementation = TimeGraphStatesResponse.class))),
             @ApiResponse(responseCode = "400", description = MISSING_PARAMETERS, content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "404", description = PROVIDER_NOT_FOUND, content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "405", description = NO_PROVIDER, content = @Content(schema = @Schema(implementation = String.class)))
     })
-    public Response getStates(
+    public void getStates(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
-            @RequestBody(description = "Query parameters to fetch the timegraph states. " + TIMERANGE + " " + ITEMS, content = {
+            @RequestBody(description = "Query parameters to fetch the timegraph states. " + TIMERANGE + " " + ITEMS + WATERMARK, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMERANGE_EX + "," + ITEMS_EX +
                             "}}"), schema = @Schema(implementation = RequestedQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
+        ObjectMapper streamingMapper = isColumnarAccepted() ? null : getObjectMapper();
+        EndpointMetrics metrics = getEndpointMetrics(outputId);
+        submit(asyncResponse, expUUID, outputId, "states", metrics, monitor -> fetchStates(expUUID, outputId, queryParameters, streamingMapper, metrics, monitor)); //$NON-NLS-1$
+    }
 
+    private Response fetchStates(UUID expUUID, String outputId, QueryParameters queryParameters, @Nullable ObjectMapper streamingMapper, EndpointMetrics metrics, IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -530,7 +591,32 @@ public class DataProviderService {
                 return Response.status(Status.BAD_REQUEST).entity(errorMessage).build();
             }
 
-            TmfModelResponse<TimeGraphModel> response = provider.fetchRowModel(params, null);
+            if (DataProviderDeltaTracker.isTracked(params)) {
+                DeltaResponse delta = DataProviderDeltaTracker.getInstance().fetchStates(experiment, expUUID, outputId, params, p -> provider.fetchRowModel(p, monitor));
+                return delta.build(delta.getResponse());
+            }
+
+            DataProviderResponseCache cache = DataProviderResponseCache.getInstance();
+            TmfModelResponse<?> response = cache.get(expUUID, outputId, ModelKind.STATES, params);
+            metrics.recordCacheLookup(response != null);
+            if (response == null) {
+                List<Long> items = DataProviderParameterUtils.extractSelectedItems(params);
+                if (streamingMapper != null && items != null && items.size() > TimeGraphStatesStreamingOutput.ITEMS_PER_CHUNK) {
+                    /*
+                     * Large requests are streamed row by row instead of being
+                     * built in memory, they are not cached
+                     */
+                    TimeGraphStatesStreamingOutput output = new TimeGraphStatesStreamingOutput(streamingMapper, provider, params, items, monitor, metrics);
+                    try {
+                        output.start(DataProviderRequestExecutor.getInstance().getExecutor());
+                    } catch (RejectedExecutionException e) {
+                        return Response.status(Status.SERVICE_UNAVAILABLE).entity(EndpointConstants.SERVER_BUSY).build();
+                    }
+                    return Response.ok(output, MediaType.APPLICATION_JSON).build();
+                }
+                response = provider.fetchRowModel(params, monitor);
+                cache.put(experiment, expUUID, outputId, ModelKind.STATES, params, response);
+            }
             return Response.ok(response).build();
         }
     }
@@ -538,6 +624,8 @@ public class DataProviderService {
     /**
      * Query the provider for the time graph arrows
      *
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
      * @param expUUID
      *            desired experiment UUID
      * @param outputId
@@ -545,13 +633,12 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch time graph arrows as described by
      *            {@link QueryParameters}
-     * @return {@link GenericView} with the results
      */
     @POST
     @Path("/timeGraph/{outputId}/arrows")
     @Tag(name = TGR)
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, ColumnarModelResponseWriter.COLUMNAR_JSON_QS })
     @Operation(summary = "API to get the Time Graph arrows", description = "Unique entry point for all TimeGraph models, " +
             "ensures that the same template is followed for all models", responses = {
                     @ApiResponse(responseCode = "200", description = "Returns a sampled list of TimeGraph arrows", content = @Content(schema = @Schema(implementation = TimeGraphArrowsResponse.class))),
@@ -559,14 +646,18 @@ public class DataProviderService {
                     @ApiResponse(responseCode = "404", description = PROVIDER_NOT_FOUND, content = @Content(schema = @Schema(implementation = String.class))),
                     @ApiResponse(responseCode = "405", description = NO_PROVIDER, content = @Content(schema = @Schema(implementation = String.class)))
             })
-    public Response getArrows(
+    public void getArrows(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
             @RequestBody(description = "Query parameters to fetch the timegraph arrows. " + TIMERANGE, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMERANGE_EX +
                             "}}"), schema = @Schema(implementation = ArrowsQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
+        submit(asyncResponse, expUUID, outputId, "arrows", monitor -> fetchArrows(expUUID, outputId, queryParameters, monitor)); //$NON-NLS-1$
+    }
 
+    private Response fetchArrows(UUID expUUID, String outputId, QueryParameters queryParameters, IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -591,7 +682,7 @@ public class DataProviderService {
                 return Response.status(Status.BAD_REQUEST).entity(errorMessage).build();
             }
 
-            TmfModelResponse<@NonNull List<@NonNull ITimeGraphArrow>> response = provider.fetchArrows(params, null);
+            TmfModelResponse<@NonNull List<@NonNull ITimeGraphArrow>> response = provider.fetchArrows(params, monitor);
             return Response.ok(response).build();
         }
     }
@@ -701,6 +792,8 @@ public class DataProviderService {
 
     /**
      * Query the provider for all annotations for the time range defined by Query parameters
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
      * @param expUUID
      *            desired experiment UUID
      * @param outputId
@@ -708,7 +801,6 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch annotations as described by
      *            {@link QueryParameters}
-     * @return {@link TmfModelResponse} containing {@link AnnotationModel}
      */
     @POST
     @Path("/{outputId}/annotations")
@@ -721,7 +813,8 @@ public class DataProviderService {
             @ApiResponse(responseCode = "404", description = PROVIDER_NOT_FOUND, content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "405", description = NO_PROVIDER, content = @Content(schema = @Schema(implementation = String.class)))
     })
-    public Response getAnnotations(
+    public void getAnnotations(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
             @RequestBody(description = "Query parameters to fetch the annotations. " +
@@ -730,7 +823,10 @@ public class DataProviderService {
                                     TIMERANGE_EX + "," + ITEMS_EX + "," + MARKER_SET_EX + MARKER_CATEGORIES_EX +
                                     "}}"), schema = @Schema(implementation = AnnotationsQueryParameters.class))
                     }, required = true) QueryParameters queryParameters) {
+        submit(asyncResponse, expUUID, outputId, "annotations", monitor -> fetchAnnotations(expUUID, outputId, queryParameters, monitor)); //$NON-NLS-1$
+    }
 
+    private Response fetchAnnotations(UUID expUUID, String outputId, QueryParameters queryParameters, IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -762,7 +858,7 @@ public class DataProviderService {
             // Fetch trace annotations
             TraceAnnotationProvider traceAnnotationProvider = ExperimentManagerService.getTraceAnnotationProvider(expUUID);
             if (traceAnnotationProvider != null) {
-                TmfModelResponse<@NonNull AnnotationModel> traceAnnotations = traceAnnotationProvider.fetchAnnotations(params, null);
+                TmfModelResponse<@NonNull AnnotationModel> traceAnnotations = traceAnnotationProvider.fetchAnnotations(params, monitor);
                 if (traceAnnotations.getStatus() == ITmfResponse.Status.CANCELLED || traceAnnotations.getStatus() == ITmfResponse.Status.FAILED) {
                     return Response.ok(new TmfModelResponse<>(new AnnotationModel(Collections.emptyMap()), traceAnnotations.getStatus(), traceAnnotations.getStatusMessage())).build();
                 }
@@ -771,7 +867,7 @@ public class DataProviderService {
             }
             // Fetch data provider annotations
             if (provider instanceof IOutputAnnotationProvider) {
-                TmfModelResponse<@NonNull AnnotationModel> annotations = ((IOutputAnnotationProvider) provider).fetchAnnotations(params, null);
+                TmfModelResponse<@NonNull AnnotationModel> annotations = ((IOutputAnnotationProvider) provider).fetchAnnotations(params, monitor);
                 if (annotations.getStatus() == ITmfResponse.Status.CANCELLED || annotations.getStatus() == ITmfResponse.Status.FAILED) {
                     return Response.ok(new TmfModelResponse<>(new AnnotationModel(Collections.emptyMap()), annotations.getStatus(), annotations.getStatusMessage())).build();
                 }
@@ -796,6 +892,8 @@ public class DataProviderService {
     /**
      * Query the provider for the time graph tooltips
      *
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
      * @param expUUID
      *            desired experiment UUID
      * @param outputId
@@ -803,7 +901,6 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch time graph tooltip as described by
      *            {@link QueryParameters}
-     * @return {@link GenericView} with the results
      */
     @POST
     @Path("/timeGraph/{outputId}/tooltip")
@@ -816,14 +913,18 @@ public class DataProviderService {
             @ApiResponse(responseCode = "404", description = PROVIDER_NOT_FOUND, content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "405", description = NO_PROVIDER, content = @Content(schema = @Schema(implementation = String.class)))
     })
-    public Response getTimeGraphTooltip(
+    public void getTimeGraphTooltip(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
             @RequestBody(description = "Query parameters to fetch the timegraph tooltip. " + TIMES_TT + ITEMS_TT + ELEMENT, content = {
                     @Content(examples = @ExampleObject("{\"parameters\":{" + TIMES_EX_TT + ITEMS_EX_TT + ELEMENT_EX +
                             "}}"), schema = @Schema(implementation = TooltipQueryParameters.class))
             }, required = true) QueryParameters queryParameters) {
+        submit(asyncResponse, expUUID, outputId, "tooltip", monitor -> fetchTimeGraphTooltip(expUUID, outputId, queryParameters, monitor)); //$NON-NLS-1$
+    }
 
+    private Response fetchTimeGraphTooltip(UUID expUUID, String outputId, QueryParameters queryParameters, IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -848,11 +949,154 @@ public class DataProviderService {
                 return Response.status(Status.BAD_REQUEST).entity(errorMessage).build();
             }
 
-            TmfModelResponse<@NonNull Map<@NonNull String, @NonNull String>> response = provider.fetchTooltip(params, null);
+            TmfModelResponse<@NonNull Map<@NonNull String, @NonNull String>> response = provider.fetchTooltip(params, monitor);
             return Response.ok(response).build();
         }
     }
 
+    /**
+     * Query several outputs of an experiment at once. The requests of the batch
+     * are run concurrently and their results are streamed back as soon as they
+     * are available, as a JSON array in completion order.
+     *
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
+     * @param expUUID
+     *            desired experiment UUID
+     * @param queryParameters
+     *            Parameters with the list of requests of the batch, each with
+     *            its output ID, kind and parameters
+     */
+    @POST
+    @Path("/batch")
+    @Tag(name = EXP)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "API to fetch the models of several outputs at once", description = "The requests are run concurrently and each result is returned as soon as it is available. The results have the index of their request in the batch, the status code and the response that the request would have had if it was sent on its own.", responses = {
+            @ApiResponse(responseCode = "200", description = "Returns the results of the requests, in completion order"),
+            @ApiResponse(responseCode = "400", description = MISSING_PARAMETERS, content = @Content(schema = @Schema(implementation = String.class))),
+            @ApiResponse(responseCode = "404", description = PROVIDER_NOT_FOUND, content = @Content(schema = @Schema(implementation = String.class)))
+    })
+    public void getBatch(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
+            @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
+            @RequestBody(description = "Query parameters with the requests of the batch. Each request has the output ID, the kind of model to fetch (one of tree, states, xy, arrows, annotations, tooltip or lines) and the parameters of the endpoint of this kind.", content = {
+                    @Content(examples = @ExampleObject("{\"parameters\":{\"requests\":[{\"outputId\":\"outputId\",\"kind\":\"states\",\"parameters\":{" + TIMERANGE_EX + "," + ITEMS_EX +
+                            "}}]}}"), schema = @Schema(implementation = BatchQueryParameters.class))
+            }, required = true) QueryParameters queryParameters) {
+        if (queryParameters == null) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST).entity(MISSING_PARAMETERS).build());
+            return;
+        }
+        Object requests = queryParameters.getParameters().get(BATCH_REQUESTS_KEY);
+        if (!(requests instanceof List<?>)) {
+            asyncResponse.resume(Response.status(Status.BAD_REQUEST).entity(MISSING_PARAMETERS).build());
+            return;
+        }
+        List<BatchRequest> batch = new ArrayList<>();
+        int index = 0;
+        for (Object request : (List<?>) requests) {
+            batch.add(createBatchRequest(expUUID, index++, request));
+        }
+        ObjectMapper mapper = getObjectMapper();
+        EndpointMetrics metrics = RequestMetrics.getInstance().get(RequestMetrics.getEndpoint(fRequest.getMethod(), fUriInfo), null);
+        // A batch is not specific to an output, it is never superseded
+        DataProviderRequestExecutor executor = DataProviderRequestExecutor.getInstance();
+        executor.submit(asyncResponse, null, expUUID, BATCH, BATCH, metrics, monitor -> {
+            if (ExperimentManagerService.getExperimentByUUID(expUUID) == null) {
+                return Response.status(Status.NOT_FOUND).entity(NO_SUCH_TRACE).build();
+            }
+            // The results are written by the threads running the requests
+            return Response.ok(new BatchStreamingOutput(mapper, batch, monitor).start(executor.getExecutor()), MediaType.APPLICATION_JSON).build();
+        });
+    }
+
+    private BatchRequest createBatchRequest(UUID expUUID, int index, Object request) {
+        if (!(request instanceof Map<?, ?>)) {
+            return new BatchRequest(index, null, null, monitor -> Response.status(Status.BAD_REQUEST).entity(MISSING_PARAMETERS).build());
+        }
+        Map<?, ?> map = (Map<?, ?>) request;
+        Object outputIdValue = map.get(BATCH_OUTPUT_ID_KEY);
+        Object kindValue = map.get(BATCH_KIND_KEY);
+        Object parameters = map.get(BATCH_PARAMETERS_KEY);
+        String outputId = outputIdValue instanceof String ? (String) outputIdValue : null;
+        String kind = kindValue instanceof String ? (String) kindValue : null;
+        if (outputId == null) {
+            return new BatchRequest(index, null, kind, monitor -> Response.status(Status.BAD_REQUEST).entity(MISSING_OUTPUTID).build());
+        }
+        if (!(parameters instanceof Map<?, ?>)) {
+            return new BatchRequest(index, outputId, kind, monitor -> Response.status(Status.BAD_REQUEST).entity(MISSING_PARAMETERS).build());
+        }
+        Map<String, Object> params = new HashMap<>();
+        ((Map<?, ?>) parameters).forEach((key, value) -> params.put(String.valueOf(key), value));
+        QueryParameters qp = new QueryParameters(params, Collections.emptyList());
+        // The metrics must be resolved on the request thread
+        EndpointMetrics metrics = getEndpointMetrics(outputId);
+        Function<IProgressMonitor, Response> fetch;
+        if (kind == null) {
+            fetch = monitor -> Response.status(Status.BAD_REQUEST).entity(INVALID_BATCH_KIND).build();
+        } else {
+            switch (kind) {
+            case "tree": //$NON-NLS-1$
+                fetch = monitor -> getTree(expUUID, outputId, qp, monitor);
+                break;
+            case "states": //$NON-NLS-1$
+                fetch = monitor -> fetchStates(expUUID, outputId, qp, null, metrics, monitor);
+                break;
+            case "xy": //$NON-NLS-1$
+                fetch = monitor -> fetchXY(expUUID, outputId, qp, metrics, monitor);
+                break;
+            case "arrows": //$NON-NLS-1$
+                fetch = monitor -> fetchArrows(expUUID, outputId, qp, monitor);
+                break;
+            case "annotations": //$NON-NLS-1$
+                fetch = monitor -> fetchAnnotations(expUUID, outputId, qp, monitor);
+                break;
+            case "tooltip": //$NON-NLS-1$
+                fetch = monitor -> fetchTimeGraphTooltip(expUUID, outputId, qp, monitor);
+                break;
+            case "lines": //$NON-NLS-1$
+                fetch = monitor -> fetchLines(expUUID, outputId, qp, monitor);
+                break;
+            default:
+                fetch = monitor -> Response.status(Status.BAD_REQUEST).entity(INVALID_BATCH_KIND).build();
+                break;
+            }
+        }
+        return new BatchRequest(index, outputId, kind, fetch);
+    }
+
+    private void submit(AsyncResponse asyncResponse, UUID expUUID, String outputId, String endpoint, Function<IProgressMonitor, Response> request) {
+        submit(asyncResponse, expUUID, outputId, endpoint, getEndpointMetrics(outputId), request);
+    }
+
+    private void submit(AsyncResponse asyncResponse, UUID expUUID, String outputId, String endpoint, EndpointMetrics metrics, Function<IProgressMonitor, Response> request) {
+        String clientId = fHeaders.getHeaderString(DataProviderRequestExecutor.CLIENT_ID_HEADER);
+        DataProviderRequestExecutor.getInstance().submit(asyncResponse, clientId, expUUID, outputId, endpoint, metrics, request);
+    }
+
+    /**
+     * Get the metrics of the current request, they must be resolved on the
+     * request thread
+     */
+    private EndpointMetrics getEndpointMetrics(String outputId) {
+        return RequestMetrics.getInstance().get(RequestMetrics.getEndpoint(fRequest.getMethod(), fUriInfo), outputId);
+    }
+
+    private boolean isColumnarAccepted() {
+        for (MediaType mediaType : fHeaders.getAcceptableMediaTypes()) {
+            if (!mediaType.isWildcardType() && !mediaType.isWildcardSubtype() && mediaType.isCompatible(ColumnarModelResponseWriter.COLUMNAR_JSON_TYPE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ObjectMapper getObjectMapper() {
+        ContextResolver<ObjectMapper> resolver = fProviders.getContextResolver(ObjectMapper.class, MediaType.APPLICATION_JSON_TYPE);
+        return resolver != null ? resolver.getContext(ObjectMapper.class) : new ObjectMapper();
+    }
+
     private ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> getTimeGraphProvider(@NonNull ITmfTrace trace, String outputId) {
         ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> provider = manager.getDataProvider(trace,
                 outputId, ITimeGraphDataProvider.class);
@@ -915,6 +1159,8 @@ public class DataProviderService {
     /**
      * Query the provider for table lines
      *
+     * @param asyncResponse
+     *            the asynchronous response, resumed with the results
      * @param expUUID
      *            desired experiment UUID
      * @param outputId
@@ -922,13 +1168,12 @@ public class DataProviderService {
      * @param queryParameters
      *            Parameters to fetch table lines as described by
      *            {@link QueryParameters}
-     * @return {@link GenericView} with the results
      */
     @POST
     @Path("/table/{outputId}/lines")
     @Tag(name = VTB)
     @Consumes(MediaType.APPLICATION_JSON)
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({ MediaType.APPLICATION_JSON, ColumnarModelResponseWriter.COLUMNAR_JSON_QS })
     @Operation(summary = "API to get virtual table lines", responses = {
             @ApiResponse(responseCode = "200", description = "Returns a table model with a 2D array of strings and metadata", content = @Content(schema = @Schema(implementation = VirtualTableResponse.class))),
             @ApiResponse(responseCode = "400", description = INVALID_PARAMETERS, content = @Content(schema = @Schema(implementation = String.class))),
@@ -936,7 +1181,8 @@ public class DataProviderService {
             @ApiResponse(responseCode = "405", description = NO_PROVIDER, content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "500", description = "Error reading the experiment", content = @Content(schema = @Schema(implementation = String.class)))
     })
-    public Response getLines(
+    public void getLines(
+            @Parameter(hidden = true) @Suspended AsyncResponse asyncResponse,
             @Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID,
             @Parameter(description = OUTPUT_ID) @PathParam("outputId") String outputId,
             @RequestBody(description = "Query parameters to fetch the table lines. " + ONE_OF +
@@ -945,7 +1191,10 @@ public class DataProviderService {
                                     INDEX_EX + COUNT_EX + COLUMNS_EX + EXPRESSIONS_EX + DIRECTION_EX +
                                     "}}"), schema = @Schema(implementation = LinesQueryParameters.class))
                     }, required = true) QueryParameters queryParameters) {
+        submit(asyncResponse, expUUID, outputId, "lines", monitor -> fetchLines(expUUID, outputId, queryParameters, monitor)); //$NON-NLS-1$
+    }
 
+    private Response fetchLines(UUID expUUID, String outputId, QueryParameters queryParameters, IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -968,7 +1217,7 @@ public class DataProviderService {
                 return Response.status(Status.BAD_REQUEST).entity(errorMessage).build();
             }
 
-            TmfModelResponse<?> response = provider.fetchLines(params, null);
+            TmfModelResponse<?> response = provider.fetchLines(params, monitor);
             if (response.getStatus() == ITmfResponse.Status.FAILED) {
                 return Response.status(Status.BAD_REQUEST).entity(response.getStatusMessage()).build();
             }
@@ -1038,6 +1287,10 @@ public class DataProviderService {
     }
 
     private Response getTree(UUID expUUID, String outputId, QueryParameters queryParameters) {
+        return getTree(expUUID, outputId, queryParameters, null);
+    }
+
+    private Response getTree(UUID expUUID, String outputId, QueryParameters queryParameters, @Nullable IProgressMonitor monitor) {
         Response errorResponse = validateParameters(outputId, queryParameters);
         if (errorResponse != null) {
             return errorResponse;
@@ -1073,9 +1326,18 @@ public class DataProviderService {
                 timeRequested = ImmutableList.of(experiment.getStartTime().toNanos(), experiment.getEndTime().toNanos());
                 params.put(DataProviderParameterUtils.REQUESTED_TIME_KEY, timeRequested);
             }
-            TmfModelResponse<?> treeResponse = provider.fetchTree(params, null);
+            DeltaResponse delta = null;
+            TmfModelResponse<?> treeResponse;
+            if (DataProviderDeltaTracker.isTracked(params)) {
+                ITmfTreeDataProvider<? extends @NonNull ITmfTreeDataModel> treeProvider = provider;
+                delta = DataProviderDeltaTracker.getInstance().fetchTree(experiment, expUUID, outputId, params, p -> treeProvider.fetchTree(p, monitor));
+                treeResponse = delta.getResponse();
+            } else {
+                treeResponse = provider.fetchTree(params, monitor);
+            }
             Object model = treeResponse.getModel();
-            return Response.ok(model instanceof TmfTreeModel ? new TmfModelResponse<>(new TreeModelWrapper((TmfTreeModel<@NonNull ITmfTreeDataModel>) model), treeResponse.getStatus(), treeResponse.getStatusMessage()) : treeResponse).build();
+            Object entity = model instanceof TmfTreeModel ? new TmfModelResponse<>(new TreeModelWrapper((TmfTreeModel<@NonNull ITmfTreeDataModel>) model), treeResponse.getStatus(), treeResponse.getStatusMessage()) : treeResponse;
+            return delta != null ? delta.build(entity) : Response.ok(entity).build();
         }
     }
 
@@ -46,9 +46,21 @@ public final class EndpointConstants {
     /** Error message returned for a request with missing output Id */
     public static final String MISSING_OUTPUTID = "Missing parameter outputId"; //$NON-NLS-1$
 
+    /** Error message returned when too many requests are already queued */
+    public static final String SERVER_BUSY = "Too many pending requests"; //$NON-NLS-1$
+
     /** Query parameter key for requested time range */
     private static final String REQUESTED_TIMERANGE_KEY = "requested_timerange"; //$NON-NLS-1$
 
+    /** Query parameter key for the watermark of an incremental request */
+    static final String REQUESTED_WATERMARK_KEY = "requested_watermark"; //$NON-NLS-1$
+
+    /** Response header with the watermark of an incremental response */
+    static final String WATERMARK_HEADER = "X-Tsp-Watermark"; //$NON-NLS-1$
+
+    /** Response header telling whether a response only has the changes */
+    static final String DELTA_HEADER = "X-Tsp-Delta"; //$NON-NLS-1$
+
     /**
      * Swagger OpenAPI definitions used in the related annotations from
      * {@link DataProviderService}, in order of appearance.
@@ -109,6 +121,8 @@ public final class EndpointConstants {
     static final String TIMERANGE = "The object '" + REQUESTED_TIMERANGE_KEY + "' is the requested time range and number of samples."; //$NON-NLS-1$ //$NON-NLS-2$
     static final String TIMERANGE_TREE = "The object '" + REQUESTED_TIMERANGE_KEY + "' specifies the requested time range. When absent the tree for the full range is returned."; //$NON-NLS-1$ //$NON-NLS-2$
     static final String TIMES_TT = "The array '" + REQUESTED_TIME_KEY + "' is an array with a single timestamp. "; //$NON-NLS-1$ //$NON-NLS-2$
+    static final String WATERMARK = " The optional string '" + REQUESTED_WATERMARK_KEY + "' requests an incremental model. Send it empty to start, then with the '" + //$NON-NLS-1$ //$NON-NLS-2$
+            WATERMARK_HEADER + "' header of the previous response to only get what changed since then, when the '" + DELTA_HEADER + "' header is true."; //$NON-NLS-1$ //$NON-NLS-2$
 
     /**
      * Swagger @RequestBody example constants, named after their parameter name,
@@ -21,6 +21,7 @@ import java.util.UUID;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.experiment.TmfExperiment;
@@ -112,17 +113,81 @@ public final class Experiment implements Serializable {
      * @return the experiment model
      */
     public static Experiment from(IResource experimentResource, UUID expUUID) {
-        List<UUID> traceUUIDs = ExperimentManagerService.getTraceUUIDs(expUUID);
-        Set<Trace> traces = new LinkedHashSet<>(Lists.transform(traceUUIDs, uuid -> Trace.from(TraceManagerService.getTraceResource(uuid), uuid)));
+        return from(experimentResource, expUUID, "CLOSED"); //$NON-NLS-1$
+    }
+
+    /**
+     * Constructs the model of an experiment that is not opened from its
+     * resource, with a given indexing status
+     *
+     * @param experimentResource
+     *            experiment resource
+     * @param expUUID
+     *            experiment UUID
+     * @param indexingStatus
+     *            indexing status
+     * @return the experiment model
+     */
+    public static Experiment from(IResource experimentResource, UUID expUUID, String indexingStatus) {
+        Set<Trace> traces = new LinkedHashSet<>();
+        for (UUID uuid : ExperimentManagerService.getTraceUUIDs(expUUID)) {
+            IResource traceResource = TraceManagerService.getTraceResource(uuid);
+            if (traceResource != null) {
+                traces.add(Trace.from(traceResource, uuid, indexingStatus));
+            }
+        }
         return new Experiment(experimentResource.getName(),
                 expUUID,
                 0L,
                 0L,
                 0L,
-                "CLOSED", //$NON-NLS-1$
+                indexingStatus,
                 traces);
     }
 
+    /**
+     * Constructs the model of an experiment whose traces are being opened
+     *
+     * @param experimentResource
+     *            experiment resource
+     * @param expUUID
+     *            experiment UUID
+     * @param traces
+     *            the trace instances in the order of the experiment, null for
+     *            the traces that are not opened yet
+     * @return the experiment model
+     */
+    public static Experiment from(IResource experimentResource, UUID expUUID, List<@Nullable ITmfTrace> traces) {
+        List<UUID> traceUUIDs = ExperimentManagerService.getTraceUUIDs(expUUID);
+        Set<Trace> traceModels = new LinkedHashSet<>();
+        long nbEvents = 0;
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (int i = 0; i < traceUUIDs.size(); i++) {
+            UUID uuid = traceUUIDs.get(i);
+            ITmfTrace trace = i < traces.size() ? traces.get(i) : null;
+            if (trace != null) {
+                traceModels.add(Trace.from(trace, uuid));
+                nbEvents += trace.getNbEvents();
+                start = Math.min(start, trace.getStartTime().toNanos());
+                end = Math.max(end, trace.getEndTime().toNanos());
+            } else {
+                // The trace may have been deleted meanwhile
+                IResource traceResource = TraceManagerService.getTraceResource(uuid);
+                if (traceResource != null) {
+                    traceModels.add(Trace.from(traceResource, uuid, "RUNNING")); //$NON-NLS-1$
+                }
+            }
+        }
+        return new Experiment(experimentResource.getName(),
+                expUUID,
+                nbEvents,
+                start <= end ? start : 0L,
+                start <= end ? end : 0L,
+                "RUNNING", //$NON-NLS-1$
+                traceModels);
+    }
+
     /**
      * Returns the name
      * @return the name
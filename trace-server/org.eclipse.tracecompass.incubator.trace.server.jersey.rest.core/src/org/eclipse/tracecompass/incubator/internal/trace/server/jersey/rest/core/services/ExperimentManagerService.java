@@ -28,7 +28,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -93,10 +104,44 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 @Tag(name = EndpointConstants.EXP)
 public class ExperimentManagerService {
 
-    private static final Map<UUID, List<UUID>> TRACE_UUIDS = Collections.synchronizedMap(new HashMap<>());
-    private static final Map<UUID, IResource> EXPERIMENT_RESOURCES = Collections.synchronizedMap(initExperimentResources());
-    private static final Map<UUID, TmfExperiment> EXPERIMENTS = Collections.synchronizedMap(new HashMap<>());
-    private static final Map<UUID, TraceAnnotationProvider> TRACE_ANNOTATION_PROVIDERS = Collections.synchronizedMap(new HashMap<>());
+    private static final Map<UUID, List<UUID>> TRACE_UUIDS = new ConcurrentHashMap<>();
+    private static final Map<UUID, IResource> EXPERIMENT_RESOURCES = new ConcurrentHashMap<>(initExperimentResources());
+    private static final Map<UUID, TmfExperiment> EXPERIMENTS = new ConcurrentHashMap<>();
+    private static final Map<UUID, TraceAnnotationProvider> TRACE_ANNOTATION_PROVIDERS = new ConcurrentHashMap<>();
+    /*
+     * Per-experiment monitors, only taken when an experiment is opened or
+     * deleted. Lookups of opened experiments never lock. The monitor of an
+     * experiment is kept when it is deleted, so that threads waiting on it and
+     * threads re-creating the experiment always share the same monitor.
+     */
+    private static final Map<UUID, Object> EXPERIMENT_LOCKS = new ConcurrentHashMap<>();
+    /*
+     * Trace instances of the experiments that are being opened, in the order
+     * of the experiment, null until they are opened. Used to report the
+     * progress of the opening.
+     */
+    private static final Map<UUID, AtomicReferenceArray<ITmfTrace>> OPENING_TRACES = new ConcurrentHashMap<>();
+    /*
+     * Background openings of the experiments, completed with the opened
+     * experiment once it is published, or with null if it could not be
+     * opened. The opening of an experiment is cancelled when it is deleted.
+     */
+    private static final Map<UUID, CompletableFuture<@Nullable TmfExperiment>> OPENINGS = new ConcurrentHashMap<>();
+    /*
+     * Experiments whose last opening failed, reported with a FAILED indexing
+     * status until they are opened again.
+     */
+    private static final Set<UUID> FAILED_EXPERIMENTS = ConcurrentHashMap.newKeySet();
+    private static final String FAILED = "FAILED"; //$NON-NLS-1$
+
+    private static final String PROPERTY_OPENING_THREADS = "traceserver.openingThreads"; //$NON-NLS-1$
+    /*
+     * Bounded pool on which the traces of an experiment are opened and
+     * indexed concurrently, and pool on which the experiments posted by the
+     * clients are opened in the background.
+     */
+    private static final ExecutorService TRACE_OPENING_EXECUTOR = Executors.newFixedThreadPool(getOpeningThreads(), newThreadFactory("TraceOpening")); //$NON-NLS-1$
+    private static final ExecutorService EXPERIMENT_OPENING_EXECUTOR = Executors.newCachedThreadPool(newThreadFactory("ExperimentOpening")); //$NON-NLS-1$
 
     private static final String EXPERIMENTS_FOLDER = "Experiments"; //$NON-NLS-1$
     private static final String TRACES_FOLDER = "Traces"; //$NON-NLS-1$
@@ -113,18 +158,8 @@ public class ExperimentManagerService {
             @ApiResponse(responseCode = "200", description = "Returns a list of experiments", content = @Content(array = @ArraySchema(schema = @Schema(implementation = org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.Experiment.class))))
     })
     public Response getExperiments() {
-        synchronized (EXPERIMENT_RESOURCES) {
-            List<Experiment> experiments = Lists.transform(new ArrayList<>(EXPERIMENT_RESOURCES.entrySet()), e -> {
-                UUID expUUID = e.getKey();
-                TmfExperiment experiment = EXPERIMENTS.get(expUUID);
-                if (experiment != null) {
-                    return Experiment.from(experiment, expUUID);
-                }
-                IResource experimentResource = e.getValue();
-                return Experiment.from(experimentResource, expUUID);
-            });
-            return Response.ok(experiments).build();
-        }
+        List<Experiment> experiments = Lists.transform(new ArrayList<>(EXPERIMENT_RESOURCES.entrySet()), e -> getExperimentModel(e.getKey(), e.getValue()));
+        return Response.ok(experiments).build();
     }
 
     private static Map<UUID, IResource> initExperimentResources() {
@@ -173,7 +208,9 @@ public class ExperimentManagerService {
      * @param expUUID
      *            UUID of the experiment to search for
      *
-     * @return The experiment with the queried {@link UUID} if it exists.
+     * @return The experiment with the queried {@link UUID} if it exists. A
+     *         closed experiment is opened in the background and returned with
+     *         a RUNNING indexing status.
      */
     @GET
     @Path("/{expUUID}")
@@ -183,11 +220,28 @@ public class ExperimentManagerService {
             @ApiResponse(responseCode = "404", description = NO_SUCH_EXPERIMENT, content = @Content(schema = @Schema(implementation = String.class)))
     })
     public Response getExperiment(@Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID) {
-        TmfExperiment experiment = getExperimentByUUID(expUUID);
+        IResource resource = EXPERIMENT_RESOURCES.get(expUUID);
+        if (resource == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        TmfExperiment experiment = EXPERIMENTS.get(expUUID);
         if (experiment != null) {
             return Response.ok(Experiment.from(experiment, expUUID)).build();
         }
-        return Response.status(Status.NOT_FOUND).build();
+        if (!FAILED_EXPERIMENTS.contains(expUUID)) {
+            synchronized (getExperimentLock(expUUID)) {
+                if (EXPERIMENT_RESOURCES.containsKey(expUUID) && !EXPERIMENTS.containsKey(expUUID)) {
+                    // Open a closed experiment in the background, clients poll its indexing status
+                    openExperiment(expUUID);
+                }
+            }
+        }
+        // Do not wait for an experiment being opened, report its progress
+        resource = EXPERIMENT_RESOURCES.get(expUUID);
+        if (resource == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+        return Response.ok(getExperimentModel(expUUID, resource)).build();
     }
 
     /**
@@ -206,25 +260,34 @@ public class ExperimentManagerService {
             @ApiResponse(responseCode = "404", description = NO_SUCH_EXPERIMENT, content = @Content(schema = @Schema(implementation = String.class)))
     })
     public Response deleteExperiment(@Parameter(description = EXP_UUID) @PathParam("expUUID") UUID expUUID) {
-        IResource resource = EXPERIMENT_RESOURCES.remove(expUUID);
-        if (resource == null) {
-            return Response.status(Status.NOT_FOUND).build();
-        }
-        Experiment experimentModel = Experiment.from(resource, expUUID);
-        TmfExperiment experiment = EXPERIMENTS.remove(expUUID);
-        if (experiment != null) {
-            TmfSignalManager.dispatchSignal(new TmfTraceClosedSignal(this, experiment));
-            experiment.dispose();
+        IResource resource;
+        Experiment experimentModel;
+        synchronized (getExperimentLock(expUUID)) {
+            resource = EXPERIMENT_RESOURCES.remove(expUUID);
+            if (resource == null) {
+                return Response.status(Status.NOT_FOUND).build();
+            }
+            experimentModel = Experiment.from(resource, expUUID);
+            TmfExperiment experiment = EXPERIMENTS.remove(expUUID);
+            if (experiment != null) {
+                TmfSignalManager.dispatchSignal(new TmfTraceClosedSignal(this, experiment));
+                experiment.dispose();
+            }
+            TRACE_ANNOTATION_PROVIDERS.remove(expUUID);
+            TRACE_UUIDS.remove(expUUID);
+            OPENING_TRACES.remove(expUUID);
+            FAILED_EXPERIMENTS.remove(expUUID);
+            CompletableFuture<@Nullable TmfExperiment> opening = OPENINGS.remove(expUUID);
+            if (opening != null) {
+                // The opened traces are disposed when the opening ends
+                opening.cancel(false);
+            }
         }
-        TRACE_ANNOTATION_PROVIDERS.remove(expUUID);
-        TRACE_UUIDS.remove(expUUID);
         boolean deleteResources = true;
-        synchronized (EXPERIMENTS) {
-            for (TmfExperiment e : EXPERIMENTS.values()) {
-                if (resource.equals(e.getResource())) {
-                    deleteResources = false;
-                    break;
-                }
+        for (TmfExperiment e : EXPERIMENTS.values()) {
+            if (resource.equals(e.getResource())) {
+                deleteResources = false;
+                break;
             }
         }
         if (deleteResources) {
@@ -261,7 +324,7 @@ public class ExperimentManagerService {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @Operation(summary = "Create a new experiment on the server", responses = {
-            @ApiResponse(responseCode = "200", description = "The experiment was successfully created", content = @Content(schema = @Schema(implementation = org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.Experiment.class))),
+            @ApiResponse(responseCode = "200", description = "The experiment was successfully created, it is opened in the background with a RUNNING indexing status", content = @Content(schema = @Schema(implementation = org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.Experiment.class))),
             @ApiResponse(responseCode = "204", description = "The experiment has at least one trace which hasn't been created yet", content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "400", description = INVALID_PARAMETERS, content = @Content(schema = @Schema(implementation = String.class))),
             @ApiResponse(responseCode = "409", description = "The experiment (name) already exists and both differ", content = @Content(schema = @Schema(implementation = String.class))),
@@ -328,27 +391,181 @@ public class ExperimentManagerService {
             return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage()).build();
         }
 
-        TRACE_UUIDS.put(expUUID, traceUUIDs);
-        EXPERIMENT_RESOURCES.put(expUUID, resource);
-        TmfExperiment experiment = createExperimentInstance(expUUID);
-        if (experiment == null) {
-            return Response.status(Status.INTERNAL_SERVER_ERROR).entity("Failed to instantiate experiment").build(); //$NON-NLS-1$
+        synchronized (getExperimentLock(expUUID)) {
+            TRACE_UUIDS.put(expUUID, traceUUIDs);
+            EXPERIMENT_RESOURCES.put(expUUID, resource);
+            TmfExperiment experiment = EXPERIMENTS.get(expUUID);
+            if (experiment != null) {
+                return Response.ok(Experiment.from(experiment, expUUID)).build();
+            }
+            // Open the experiment in the background, clients poll its indexing status
+            openExperiment(expUUID);
+        }
+        return Response.ok(getExperimentModel(expUUID, resource)).build();
+    }
+
+    /**
+     * Get the model of an experiment, whether it is opened, being opened,
+     * failed to open or closed.
+     */
+    private static Experiment getExperimentModel(UUID expUUID, IResource resource) {
+        TmfExperiment experiment = EXPERIMENTS.get(expUUID);
+        if (experiment != null) {
+            return Experiment.from(experiment, expUUID);
+        }
+        Experiment openingExperiment = getOpeningExperimentModel(resource, expUUID);
+        if (openingExperiment != null) {
+            return openingExperiment;
+        }
+        // The experiment may have been published since it was looked up
+        experiment = EXPERIMENTS.get(expUUID);
+        if (experiment != null) {
+            return Experiment.from(experiment, expUUID);
+        }
+        if (FAILED_EXPERIMENTS.contains(expUUID)) {
+            return Experiment.from(resource, expUUID, FAILED);
+        }
+        return Experiment.from(resource, expUUID);
+    }
+
+    private static @Nullable Experiment getOpeningExperimentModel(IResource resource, UUID expUUID) {
+        AtomicReferenceArray<ITmfTrace> openingTraces = OPENING_TRACES.get(expUUID);
+        if (openingTraces == null) {
+            return null;
         }
+        return Experiment.from(resource, expUUID, toList(openingTraces));
+    }
 
-        return Response.ok(Experiment.from(experiment, expUUID)).build();
+    private static List<@Nullable ITmfTrace> toList(AtomicReferenceArray<ITmfTrace> traces) {
+        List<@Nullable ITmfTrace> list = new ArrayList<>(traces.length());
+        for (int i = 0; i < traces.length(); i++) {
+            list.add(traces.get(i));
+        }
+        return list;
     }
 
-    private static @Nullable TmfExperiment createExperimentInstance(UUID expUUID) {
+    /**
+     * Start opening an experiment in the background, unless it is already
+     * being opened. Must be called while holding the lock of this experiment.
+     *
+     * @return the opening of the experiment
+     */
+    private static CompletableFuture<@Nullable TmfExperiment> openExperiment(UUID expUUID) {
         List<UUID> traceUUIDs = TRACE_UUIDS.get(expUUID);
         IResource resource = EXPERIMENT_RESOURCES.get(expUUID);
         if (traceUUIDs == null || resource == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        AtomicReferenceArray<ITmfTrace> openingTraces = new AtomicReferenceArray<>(traceUUIDs.size());
+        CompletableFuture<@Nullable TmfExperiment> newOpening = new CompletableFuture<>();
+        // Only one opening per experiment, even if the lock was not held
+        CompletableFuture<@Nullable TmfExperiment> opening = OPENINGS.computeIfAbsent(expUUID, uuid -> {
+            FAILED_EXPERIMENTS.remove(uuid);
+            OPENING_TRACES.put(uuid, openingTraces);
+            return newOpening;
+        });
+        if (opening == newOpening) {
+            EXPERIMENT_OPENING_EXECUTOR.execute(() -> runOpening(expUUID, resource, traceUUIDs, openingTraces, newOpening));
+        }
+        return opening;
+    }
+
+    /**
+     * Open the traces and the experiment without holding the lock of the
+     * experiment, then publish the experiment while holding it, unless the
+     * opening was cancelled in the meantime.
+     */
+    private static void runOpening(UUID expUUID, IResource resource, List<UUID> traceUUIDs, AtomicReferenceArray<ITmfTrace> openingTraces, CompletableFuture<@Nullable TmfExperiment> opening) {
+        TmfExperiment experiment = null;
+        try {
+            // Create and set the supplementary folder
+            createSupplementaryFolder(resource);
+            ITmfTrace[] traces = createTraceInstances(traceUUIDs, openingTraces, opening);
+            if (traces != null) {
+                if (!opening.isCancelled()) {
+                    experiment = createExperimentInstance(resource, traces);
+                }
+                if (experiment == null) {
+                    for (ITmfTrace trace : traces) {
+                        trace.dispose();
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            Activator.getInstance().logError("Failed to open experiment " + expUUID, e); //$NON-NLS-1$
+        }
+
+        boolean published = false;
+        if (OPENINGS.get(expUUID) == opening) {
+            synchronized (getExperimentLock(expUUID)) {
+                if (OPENINGS.remove(expUUID, opening)) {
+                    OPENING_TRACES.remove(expUUID, openingTraces);
+                    if (experiment != null) {
+                        EXPERIMENTS.put(expUUID, experiment);
+                        TRACE_ANNOTATION_PROVIDERS.put(expUUID, new TraceAnnotationProvider(experiment));
+                        published = true;
+                    } else {
+                        Activator.getInstance().logWarning("Failed to instantiate experiment " + expUUID); //$NON-NLS-1$
+                        FAILED_EXPERIMENTS.add(expUUID);
+                    }
+                }
+            }
+        }
+        if (!published && experiment != null) {
+            // The experiment was deleted while it was opened
+            TmfSignalManager.dispatchSignal(new TmfTraceClosedSignal(ExperimentManagerService.class, experiment));
+            experiment.dispose();
+        }
+        opening.complete(published ? experiment : null);
+    }
+
+    /**
+     * Open and index the traces of an experiment concurrently. Each opened
+     * trace is set in the opening traces array as soon as it is opened.
+     *
+     * @return the traces in the order of the experiment, or null if one of
+     *         them could not be opened or if the opening was cancelled
+     */
+    private static ITmfTrace @Nullable [] createTraceInstances(List<UUID> traceUUIDs, AtomicReferenceArray<ITmfTrace> openingTraces, Future<?> opening) {
+        List<Future<@Nullable ITmfTrace>> futures = new ArrayList<>(traceUUIDs.size());
+        for (int i = 0; i < traceUUIDs.size(); i++) {
+            int index = i;
+            UUID traceUUID = traceUUIDs.get(i);
+            futures.add(TRACE_OPENING_EXECUTOR.submit(() -> {
+                if (opening.isCancelled()) {
+                    return null;
+                }
+                ITmfTrace trace = TraceManagerService.createTraceInstance(traceUUID);
+                if (index < openingTraces.length()) {
+                    openingTraces.set(index, trace);
+                }
+                return trace;
+            }));
+        }
+        ITmfTrace[] traces = new ITmfTrace[futures.size()];
+        boolean failed = false;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                traces[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Activator.getInstance().logError("Failed to create trace instance for " + traceUUIDs.get(i), e); //$NON-NLS-1$
+            }
+            failed |= traces[i] == null;
+        }
+        if (failed) {
+            for (ITmfTrace trace : traces) {
+                if (trace != null) {
+                    trace.dispose();
+                }
+            }
             return null;
         }
-        // Create and set the supplementary folder
-        createSupplementaryFolder(resource);
+        return traces;
+    }
 
-        // Instantiate the experiment and return it
-        ITmfTrace[] traces = Lists.transform(traceUUIDs, uuid -> TraceManagerService.createTraceInstance(uuid)).toArray(new ITmfTrace[0]);
+    private static @Nullable TmfExperiment createExperimentInstance(IResource resource, ITmfTrace[] traces) {
         // Determine cache size for experiments
         int cacheSize = Integer.MAX_VALUE;
         for (ITmfTrace trace : traces) {
@@ -367,9 +584,6 @@ public class ExperimentManagerService {
                 ctx.dispose();
 
                 TmfSignalManager.dispatchSignal(new TmfTraceOpenedSignal(ExperimentManagerService.class, experiment, null));
-
-                EXPERIMENTS.put(expUUID, experiment);
-                TRACE_ANNOTATION_PROVIDERS.put(expUUID, new TraceAnnotationProvider(experiment));
                 return experiment;
             }
         } catch (CoreException e) {
@@ -497,18 +711,68 @@ public class ExperimentManagerService {
 
     /**
      * Try and find an experiment with the queried UUID in the experiment
-     * manager.
+     * manager. Experiments that are already opened are returned without
+     * locking, otherwise the opening of the experiment is started if needed
+     * and awaited without holding the lock of the experiment, so that it can
+     * be deleted meanwhile.
      *
      * @param expUUID
      *            queried {@link UUID}
-     * @return the experiment or null if none match.
+     * @return the experiment or null if none match, if it could not be opened
+     *         or if it was deleted while it was opened.
      */
-    public static synchronized @Nullable TmfExperiment getExperimentByUUID(UUID expUUID) {
+    public static @Nullable TmfExperiment getExperimentByUUID(UUID expUUID) {
         TmfExperiment experiment = EXPERIMENTS.get(expUUID);
-        if (experiment == null) {
-            experiment = createExperimentInstance(expUUID);
+        if (experiment != null) {
+            return experiment;
         }
-        return experiment;
+        if (!EXPERIMENT_RESOURCES.containsKey(expUUID)) {
+            return null;
+        }
+        CompletableFuture<@Nullable TmfExperiment> opening;
+        synchronized (getExperimentLock(expUUID)) {
+            if (!EXPERIMENT_RESOURCES.containsKey(expUUID)) {
+                return null;
+            }
+            experiment = EXPERIMENTS.get(expUUID);
+            if (experiment != null) {
+                return experiment;
+            }
+            opening = openExperiment(expUUID);
+        }
+        try {
+            return opening.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            // The experiment was deleted while it was opened
+        }
+        return null;
+    }
+
+    private static Object getExperimentLock(UUID expUUID) {
+        return EXPERIMENT_LOCKS.computeIfAbsent(expUUID, uuid -> new Object());
+    }
+
+    private static int getOpeningThreads() {
+        String threadsStr = System.getProperty(PROPERTY_OPENING_THREADS);
+        if (threadsStr != null && !threadsStr.isEmpty()) {
+            try {
+                return Math.max(1, Integer.parseInt(threadsStr));
+            } catch (NumberFormatException e) {
+                // Fall back to the default number of threads
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static ThreadFactory newThreadFactory(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + '-' + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     /**
@@ -530,9 +794,7 @@ public class ExperimentManagerService {
      * @return true if the given trace is in use by any experiment
      */
     public static boolean isTraceInUse(UUID uuid) {
-        synchronized (TRACE_UUIDS) {
-            return TRACE_UUIDS.values().stream().anyMatch(traceUUIDs -> traceUUIDs.contains(uuid));
-        }
+        return TRACE_UUIDS.values().stream().anyMatch(traceUUIDs -> traceUUIDs.contains(uuid));
     }
 
     /**
@@ -561,5 +823,11 @@ public class ExperimentManagerService {
         TRACE_UUIDS.clear();
         EXPERIMENT_RESOURCES.clear();
         TRACE_ANNOTATION_PROVIDERS.clear();
+        EXPERIMENT_LOCKS.clear();
+        OPENING_TRACES.clear();
+        OPENINGS.values().forEach(opening -> opening.cancel(false));
+        OPENINGS.clear();
+        FAILED_EXPERIMENTS.clear();
+        DataProviderResponseCache.getInstance().invalidateAll();
     }
 }
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of positive long values, such as durations in
+ * nanoseconds or sizes in bytes. Values are counted in log-linear buckets:
+ * each power of two is split in {@link #SUB_BUCKETS} buckets, so the reported
+ * percentiles are within 12.5% of the recorded values. Recording a value is a
+ * few atomic increments, it never blocks.
+ */
+final class LongHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NB_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray fBuckets = new AtomicLongArray(NB_BUCKETS);
+    private final LongAdder fCount = new LongAdder();
+    private final LongAdder fSum = new LongAdder();
+    private final AtomicLong fMax = new AtomicLong();
+
+    /**
+     * Record a value, negative values are recorded as 0
+     *
+     * @param value
+     *            the value
+     */
+    public void record(long value) {
+        long v = Math.max(0, value);
+        fBuckets.incrementAndGet(getBucket(v));
+        fCount.increment();
+        fSum.add(v);
+        if (v > fMax.get()) {
+            fMax.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * Get the number of recorded values
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return fCount.sum();
+    }
+
+    /**
+     * Get the sum of the recorded values
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return fSum.sum();
+    }
+
+    /**
+     * Get a summary of the histogram: count, mean, max and the 50th, 90th,
+     * 99th and 99.9th percentiles
+     *
+     * @param scale
+     *            the divisor applied to the values, for example to convert
+     *            nanoseconds to milliseconds
+     * @return the summary, as a map to be serialized
+     */
+    public Map<String, Object> getSummary(double scale) {
+        long[] counts = new long[NB_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            counts[i] = fBuckets.get(i);
+            total += counts[i];
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total); //$NON-NLS-1$
+        summary.put("mean", total == 0 ? 0.0 : fSum.sum() / scale / total); //$NON-NLS-1$
+        summary.put("max", fMax.get() / scale); //$NON-NLS-1$
+        summary.put("p50", getPercentile(counts, total, 0.5) / scale); //$NON-NLS-1$
+        summary.put("p90", getPercentile(counts, total, 0.9) / scale); //$NON-NLS-1$
+        summary.put("p99", getPercentile(counts, total, 0.99) / scale); //$NON-NLS-1$
+        summary.put("p999", getPercentile(counts, total, 0.999) / scale); //$NON-NLS-1$
+        return summary;
+    }
+
+    private long getPercentile(long[] counts, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // Do not report more than the largest recorded value
+                return Math.min(getUpperBound(i), fMax.get());
+            }
+        }
+        return fMax.get();
+    }
+
+    private static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long upper = ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+        // The last bucket overflows
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
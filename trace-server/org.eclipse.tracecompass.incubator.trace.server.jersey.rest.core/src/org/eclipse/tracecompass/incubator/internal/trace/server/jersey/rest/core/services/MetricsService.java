@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+/**
+ * Service to query the metrics of the requests served by the server
+ */
+@Path("/metrics")
+@Tag(name = EndpointConstants.DIA)
+public class MetricsService {
+
+    private static final String ENDPOINTS_KEY = "endpoints"; //$NON-NLS-1$
+    private static final String RESPONSE_CACHE_KEY = "responseCache"; //$NON-NLS-1$
+
+    /**
+     * Getter for the request metrics
+     *
+     * @return the metrics of each endpoint and output, with the statistics of
+     *         the response cache
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Get the metrics of the requests served by this server, per endpoint and output", responses = {
+            @ApiResponse(responseCode = "200", description = "The latency, in-flight count, response size, fetch and serialization time of the requests of each endpoint and output, in milliseconds and bytes")
+    })
+    public Response getMetrics() {
+        return Response.ok(ImmutableMap.of(ENDPOINTS_KEY, RequestMetrics.getInstance().getSnapshot(),
+                RESPONSE_CACHE_KEY, DataProviderResponseCache.getInstance().getStatistics())).build();
+    }
+}
@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Metrics of the requests served by the trace server, per endpoint and per
+ * output ID: latency, in-flight requests, response sizes, response cache hits
+ * and the time spent fetching the models from the data providers versus
+ * serializing them. All the recorders are lock-free, recording a request only
+ * costs a few atomic increments.
+ * <p>
+ * The output IDs come from the request paths, so the number of outputs with
+ * their own metrics is bounded: once {@link #MAX_OUTPUT_METRICS} outputs are
+ * recorded, the requests for other outputs are recorded in the
+ * {@link #OTHER_OUTPUTS} metrics of their endpoint.
+ */
+public final class RequestMetrics {
+
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double BYTES = 1.0;
+
+    /**
+     * The maximum number of endpoint and output pairs with their own metrics
+     */
+    public static final int MAX_OUTPUT_METRICS = 256;
+
+    /**
+     * The output ID of the metrics of the requests for outputs that do not
+     * have their own metrics
+     */
+    public static final String OTHER_OUTPUTS = "other"; //$NON-NLS-1$
+
+    private static final RequestMetrics INSTANCE = new RequestMetrics();
+
+    private final Map<MetricsKey, EndpointMetrics> fMetrics = new ConcurrentHashMap<>();
+    private final AtomicInteger fNbOutputMetrics = new AtomicInteger();
+
+    private RequestMetrics() {
+        // Singleton
+    }
+
+    /**
+     * Get the instance of the request metrics
+     *
+     * @return the request metrics
+     */
+    public static RequestMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the name of the endpoint of a request, its HTTP method followed by
+     * its matched path template, for example
+     * <code>POST /experiments/{expUUID}/outputs/XY/{outputId}/xy</code>
+     *
+     * @param method
+     *            the HTTP method of the request
+     * @param uriInfo
+     *            the URI information of the matched request
+     * @return the endpoint name
+     */
+    public static String getEndpoint(String method, ExtendedUriInfo uriInfo) {
+        StringBuilder sb = new StringBuilder(method).append(' ');
+        // The matched templates are ordered from the resource method to the
+        // root resource
+        for (UriTemplate template : Lists.reverse(uriInfo.getMatchedTemplates())) {
+            String path = template.getTemplate();
+            if (path.isEmpty() || path.equals("/")) { //$NON-NLS-1$
+                continue;
+            }
+            if (path.charAt(0) != '/') {
+                sb.append('/');
+            }
+            sb.append(path.endsWith("/") ? path.substring(0, path.length() - 1) : path); //$NON-NLS-1$
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the metrics of an endpoint
+     *
+     * @param endpoint
+     *            the endpoint name
+     * @param outputId
+     *            the output ID, or null if the endpoint is not specific to an
+     *            output
+     * @return the metrics of the endpoint for this output, or the
+     *         {@link #OTHER_OUTPUTS} metrics of the endpoint if too many
+     *         outputs already have their own metrics
+     */
+    public EndpointMetrics get(String endpoint, @Nullable String outputId) {
+        MetricsKey key = new MetricsKey(endpoint, outputId);
+        EndpointMetrics metrics = fMetrics.get(key);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (outputId != null && fNbOutputMetrics.get() >= MAX_OUTPUT_METRICS) {
+            key = new MetricsKey(endpoint, OTHER_OUTPUTS);
+        }
+        return fMetrics.computeIfAbsent(key, k -> {
+            if (k.fOutputId != null && !OTHER_OUTPUTS.equals(k.fOutputId)) {
+                fNbOutputMetrics.incrementAndGet();
+            }
+            return new EndpointMetrics();
+        });
+    }
+
+    /**
+     * Get a snapshot of the metrics of all the endpoints, durations are in
+     * milliseconds and sizes in bytes
+     *
+     * @return the metrics, as a list to be serialized
+     */
+    public List<Map<String, Object>> getSnapshot() {
+        List<Map.Entry<MetricsKey, EndpointMetrics>> entries = new ArrayList<>(fMetrics.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<MetricsKey, EndpointMetrics> e) -> e.getKey().fEndpoint)
+                .thenComparing(e -> Objects.toString(e.getKey().fOutputId, ""))); //$NON-NLS-1$
+        List<Map<String, Object>> snapshot = new ArrayList<>(entries.size());
+        for (Map.Entry<MetricsKey, EndpointMetrics> entry : entries) {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            metrics.put("endpoint", entry.getKey().fEndpoint); //$NON-NLS-1$
+            String outputId = entry.getKey().fOutputId;
+            if (outputId != null) {
+                metrics.put("outputId", outputId); //$NON-NLS-1$
+            }
+            entry.getValue().fillSnapshot(metrics);
+            snapshot.add(metrics);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Clear all the metrics
+     */
+    public void clear() {
+        fMetrics.clear();
+        fNbOutputMetrics.set(0);
+    }
+
+    /**
+     * Metrics of an endpoint for an output
+     */
+    public static final class EndpointMetrics {
+        private final LongAdder fInFlight = new LongAdder();
+        private final LongHistogram fLatency = new LongHistogram();
+        private final LongHistogram fFetch = new LongHistogram();
+        private final LongHistogram fSerialization = new LongHistogram();
+        private final LongHistogram fResponseSize = new LongHistogram();
+        private final LongAdder fCacheHits = new LongAdder();
+        private final LongAdder fCacheMisses = new LongAdder();
+
+        private EndpointMetrics() {
+            // Created by the request metrics
+        }
+
+        /**
+         * Record the start of a request
+         */
+        public void requestStarted() {
+            fInFlight.increment();
+        }
+
+        /**
+         * Record the end of a request
+         *
+         * @param latencyNanos
+         *            the time between the reception of the request and the end
+         *            of the response, in nanoseconds
+         * @param responseSize
+         *            the size of the serialized response, in bytes
+         */
+        public void requestCompleted(long latencyNanos, long responseSize) {
+            fInFlight.decrement();
+            fLatency.record(latencyNanos);
+            fResponseSize.record(responseSize);
+        }
+
+        /**
+         * Record the time spent computing the model of a response
+         *
+         * @param nanos
+         *            the duration, in nanoseconds
+         */
+        public void recordFetch(long nanos) {
+            fFetch.record(nanos);
+        }
+
+        /**
+         * Record the time spent serializing a response
+         *
+         * @param nanos
+         *            the duration, in nanoseconds
+         */
+        public void recordSerialization(long nanos) {
+            fSerialization.record(nanos);
+        }
+
+        /**
+         * Record a lookup in the response cache
+         *
+         * @param hit
+         *            whether the response was found in the cache
+         */
+        public void recordCacheLookup(boolean hit) {
+            if (hit) {
+                fCacheHits.increment();
+            } else {
+                fCacheMisses.increment();
+            }
+        }
+
+        private void fillSnapshot(Map<String, Object> metrics) {
+            metrics.put("inFlight", fInFlight.sum()); //$NON-NLS-1$
+            metrics.put("latencyMs", fLatency.getSummary(NANOS_PER_MILLI)); //$NON-NLS-1$
+            metrics.put("fetchMs", fFetch.getSummary(NANOS_PER_MILLI)); //$NON-NLS-1$
+            metrics.put("serializationMs", fSerialization.getSummary(NANOS_PER_MILLI)); //$NON-NLS-1$
+            metrics.put("responseBytes", fResponseSize.getSummary(BYTES)); //$NON-NLS-1$
+            long hits = fCacheHits.sum();
+            long lookups = hits + fCacheMisses.sum();
+            if (lookups > 0) {
+                metrics.put("cacheHits", hits); //$NON-NLS-1$
+                metrics.put("cacheLookups", lookups); //$NON-NLS-1$
+                metrics.put("cacheHitRate", (double) hits / lookups); //$NON-NLS-1$
+            }
+        }
+    }
+
+    private static final class MetricsKey {
+        private final String fEndpoint;
+        private final @Nullable String fOutputId;
+
+        public MetricsKey(String endpoint, @Nullable String outputId) {
+            fEndpoint = endpoint;
+            fOutputId = outputId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fEndpoint, fOutputId);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MetricsKey)) {
+                return false;
+            }
+            MetricsKey other = (MetricsKey) obj;
+            return fEndpoint.equals(other.fEndpoint) && Objects.equals(fOutputId, other.fOutputId);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.ScopeLog;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.Activator;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics.EndpointMetrics;
+import org.eclipse.tracecompass.tmf.core.dataprovider.DataProviderParameterUtils;
+import org.eclipse.tracecompass.tmf.core.model.CommonStatusMessage;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphDataProvider;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphEntryModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.response.ITmfResponse;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+/**
+ * Streaming output for the time graph states endpoint. Instead of fetching the
+ * whole {@link TimeGraphModel} before serializing it, the requested items are
+ * fetched in small chunks and the rows of each chunk are written to the
+ * response stream as soon as they are computed, so the memory used by a
+ * request is bounded by the size of a chunk rather than by the whole model.
+ * The compression of the stream is done on the fly by the encoding filter of
+ * the web application.
+ *
+ * The chunks are fetched and serialized by a task of the data provider
+ * request executor, started with {@link #start}, using the progress monitor
+ * of the request. The serialized chunks are handed to the web server thread
+ * through a bounded queue, that thread only writes their bytes. If the client
+ * is slower than the data provider, the task waits for the queue to have room.
+ * If the client disconnects, the task is cancelled.
+ *
+ * The output has the same format as a serialized {@link TmfModelResponse} of
+ * a {@link TimeGraphModel}. As the status is only known once all the chunks
+ * are fetched, it is written after the model.
+ */
+class TimeGraphStatesStreamingOutput implements StreamingOutput {
+
+    /**
+     * Number of requested items fetched at once from the data provider
+     */
+    static final int ITEMS_PER_CHUNK = 64;
+
+    /**
+     * Number of serialized chunks waiting to be written to the stream
+     */
+    private static final int MAX_PENDING_CHUNKS = 4;
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(TimeGraphStatesStreamingOutput.class);
+
+    private static final byte[] MODEL_START = "{\"model\":{\"rows\":[".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+    private static final byte[] STATUS_START = "]},\"status\":\"".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+    private static final byte[] STATUS_MESSAGE_START = "\",\"statusMessage\":".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+
+    /**
+     * A chunk of serialized rows, or the end of the stream with the status of
+     * the response
+     */
+    private static final class Chunk {
+        private final byte[] fRows;
+        private final ITmfResponse.@Nullable Status fStatus;
+        private final @Nullable String fStatusMessage;
+
+        public Chunk(byte[] rows) {
+            fRows = rows;
+            fStatus = null;
+            fStatusMessage = null;
+        }
+
+        public Chunk(ITmfResponse.Status status, @Nullable String statusMessage) {
+            fRows = new byte[0];
+            fStatus = status;
+            fStatusMessage = statusMessage;
+        }
+    }
+
+    private final ObjectMapper fMapper;
+    private final ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> fProvider;
+    private final Map<String, Object> fParameters;
+    private final List<Long> fItems;
+    private final IProgressMonitor fMonitor;
+    private final EndpointMetrics fMetrics;
+    private final BlockingQueue<Chunk> fChunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+    private volatile boolean fClosed = false;
+
+    /**
+     * Constructor
+     *
+     * @param mapper
+     *            the object mapper with the serializers of the web application
+     * @param provider
+     *            the time graph data provider
+     * @param parameters
+     *            the validated query parameters
+     * @param items
+     *            the requested items
+     * @param monitor
+     *            the progress monitor of the request
+     * @param metrics
+     *            the metrics of the endpoint, in which the time spent
+     *            fetching the chunks is recorded
+     */
+    public TimeGraphStatesStreamingOutput(ObjectMapper mapper, ITimeGraphDataProvider<@NonNull ITimeGraphEntryModel> provider, Map<String, Object> parameters, List<Long> items, IProgressMonitor monitor, EndpointMetrics metrics) {
+        fMapper = mapper;
+        fProvider = provider;
+        fParameters = parameters;
+        fItems = items;
+        fMonitor = monitor;
+        fMetrics = metrics;
+    }
+
+    /**
+     * Start fetching the chunks
+     *
+     * @param executor
+     *            the executor on which the chunks are fetched, it must not be
+     *            the executor of the thread writing the stream
+     * @throws java.util.concurrent.RejectedExecutionException
+     *             if the executor is busy
+     */
+    public void start(Executor executor) {
+        executor.execute(this::fetchChunks);
+    }
+
+    private void fetchChunks() {
+        ITmfResponse.Status status = ITmfResponse.Status.COMPLETED;
+        String statusMessage = CommonStatusMessage.COMPLETED;
+        long fetchTime = 0;
+        try (ScopeLog sl = new ScopeLog(LOGGER, Level.FINE, "StreamingStatesFetch")) { //$NON-NLS-1$
+            for (List<Long> chunk : Lists.partition(fItems, ITEMS_PER_CHUNK)) {
+                if (fMonitor.isCanceled()) {
+                    status = ITmfResponse.Status.CANCELLED;
+                    statusMessage = CommonStatusMessage.TASK_CANCELLED;
+                    break;
+                }
+                Map<String, Object> chunkParameters = new HashMap<>(fParameters);
+                chunkParameters.put(DataProviderParameterUtils.REQUESTED_ITEMS_KEY, chunk);
+                long start = System.nanoTime();
+                TmfModelResponse<TimeGraphModel> response = fProvider.fetchRowModel(chunkParameters, fMonitor);
+                fetchTime += System.nanoTime() - start;
+                TimeGraphModel model = response.getModel();
+                if (model != null && !offer(new Chunk(fMapper.writeValueAsBytes(model.getRows())))) {
+                    // The stream is closed, nobody reads the chunks anymore
+                    return;
+                }
+                if (getPriority(response.getStatus()) > getPriority(status)) {
+                    status = response.getStatus();
+                    statusMessage = response.getStatusMessage();
+                }
+                if (status == ITmfResponse.Status.FAILED || status == ITmfResponse.Status.CANCELLED) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Activator.getInstance().logError("Failed to fetch the time graph states", e); //$NON-NLS-1$
+            status = ITmfResponse.Status.FAILED;
+            statusMessage = String.valueOf(e.getMessage());
+        } finally {
+            fMetrics.recordFetch(fetchTime);
+        }
+        offer(new Chunk(status, statusMessage));
+    }
+
+    /**
+     * Queue a chunk, waiting for the queue to have room unless the stream is
+     * closed
+     *
+     * @return false if the stream is closed
+     */
+    private boolean offer(Chunk chunk) {
+        try {
+            while (!fChunks.offer(chunk, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (fClosed) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (ScopeLog sl = new ScopeLog(LOGGER, Level.FINE, "StreamingStatesWrite")) { //$NON-NLS-1$
+            output.write(MODEL_START);
+            boolean first = true;
+            Chunk chunk = fChunks.take();
+            ITmfResponse.Status status = chunk.fStatus;
+            while (status == null) {
+                // Write the rows without the brackets of their array
+                byte[] rows = chunk.fRows;
+                if (rows.length > 2) {
+                    if (!first) {
+                        output.write(',');
+                    }
+                    output.write(rows, 1, rows.length - 2);
+                    first = false;
+                }
+                output.flush();
+                chunk = fChunks.take();
+                status = chunk.fStatus;
+            }
+            output.write(STATUS_START);
+            output.write(status.name().getBytes(StandardCharsets.UTF_8));
+            output.write(STATUS_MESSAGE_START);
+            output.write(fMapper.writeValueAsBytes(chunk.fStatusMessage));
+            output.write('}');
+            output.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            // Stop fetching the chunks if the client is gone
+            fClosed = true;
+            fMonitor.setCanceled(true);
+        }
+    }
+
+    /**
+     * The status of the whole response is the most severe status of the
+     * chunks
+     */
+    private static int getPriority(ITmfResponse.Status status) {
+        switch (status) {
+        case FAILED:
+            return 3;
+        case CANCELLED:
+            return 2;
+        case RUNNING:
+            return 1;
+        case COMPLETED:
+        default:
+            return 0;
+        }
+    }
+}
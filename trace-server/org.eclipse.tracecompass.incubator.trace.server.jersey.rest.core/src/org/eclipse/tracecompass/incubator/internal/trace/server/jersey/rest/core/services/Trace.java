@@ -99,6 +99,21 @@ public final class Trace implements Serializable {
      * @return the trace model
      */
     public static Trace from(IResource traceResource, UUID uuid) {
+        return from(traceResource, uuid, "CLOSED"); //$NON-NLS-1$
+    }
+
+    /**
+     * Constructs a trace model from its resource, with a given indexing status
+     *
+     * @param traceResource
+     *            trace resource
+     * @param uuid
+     *            UUID
+     * @param indexingStatus
+     *            indexing status
+     * @return the trace model
+     */
+    public static Trace from(IResource traceResource, UUID uuid, String indexingStatus) {
         IPath location = ResourceUtil.getLocation(traceResource);
         if (location == null) {
             location = traceResource.getProjectRelativePath();
@@ -110,7 +125,7 @@ public final class Trace implements Serializable {
                 0L,
                 0L,
                 0L,
-                "CLOSED"); //$NON-NLS-1$
+                indexingStatus);
     }
 
     /**
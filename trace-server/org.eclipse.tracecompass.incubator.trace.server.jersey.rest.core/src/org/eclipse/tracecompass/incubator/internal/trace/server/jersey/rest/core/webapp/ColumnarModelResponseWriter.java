@@ -0,0 +1,470 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.Providers;
+
+import org.eclipse.jdt.annotation.NonNull;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLog;
+import org.eclipse.tracecompass.common.core.log.TraceCompassLogUtils.ScopeLog;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.model.views.VirtualTableModelWrapper;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.IVirtualTableLine;
+import org.eclipse.tracecompass.internal.provisional.tmf.core.model.table.VirtualTableCell;
+import org.eclipse.tracecompass.tmf.core.model.OutputElementStyle;
+import org.eclipse.tracecompass.tmf.core.model.StyleProperties;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphArrow;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphRowModel;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.ITimeGraphState;
+import org.eclipse.tracecompass.tmf.core.model.timegraph.TimeGraphModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ISeriesModel;
+import org.eclipse.tracecompass.tmf.core.model.xy.ITmfXyModel;
+import org.eclipse.tracecompass.tmf.core.response.TmfModelResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Writer of {@link TmfModelResponse} in a compact columnar layout, for clients
+ * that negotiate the {@link #COLUMNAR_JSON} media type. JSON objects with
+ * repeated keys are replaced by parallel arrays, timestamps are delta-encoded
+ * and the styles and labels are written once in a dictionary and referenced
+ * by their index, which makes the payloads much smaller and cheaper to decode
+ * than the default JSON serialization.
+ *
+ * The layout of the time graph states, XY, arrows and virtual table models is
+ * described on the methods writing them. Other models are written with the
+ * default serializers.
+ */
+@SuppressWarnings("restriction")
+@Provider
+@Produces(ColumnarModelResponseWriter.COLUMNAR_JSON)
+public class ColumnarModelResponseWriter implements MessageBodyWriter<TmfModelResponse<?>> {
+
+    /**
+     * The columnar media type
+     */
+    public static final String COLUMNAR_JSON = "application/vnd.tsp.columnar+json"; //$NON-NLS-1$
+
+    /**
+     * The columnar media type, with a lower quality of source than JSON, to be
+     * used in the {@link Produces} annotation of the endpoints so that JSON
+     * remains the default when the client accepts both
+     */
+    public static final String COLUMNAR_JSON_QS = COLUMNAR_JSON + ";qs=0.5"; //$NON-NLS-1$
+
+    /**
+     * The columnar media type
+     */
+    public static final MediaType COLUMNAR_JSON_TYPE = MediaType.valueOf(COLUMNAR_JSON);
+
+    private static final @NonNull Logger LOGGER = TraceCompassLog.getLogger(ColumnarModelResponseWriter.class);
+
+    private static final int NO_REFERENCE = -1;
+
+    @Context
+    private @Nullable Providers fProviders;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return TmfModelResponse.class.isAssignableFrom(type) && COLUMNAR_JSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public long getSize(TmfModelResponse<?> t, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(TmfModelResponse<?> response, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        try (ScopeLog sl = new ScopeLog(LOGGER, Level.FINE, "ColumnarModelResponseWrite"); //$NON-NLS-1$
+                JsonGenerator gen = getObjectMapper().getFactory().createGenerator(entityStream)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.writeStartObject();
+            gen.writeFieldName("model"); //$NON-NLS-1$
+            Object model = response.getModel();
+            if (model instanceof TimeGraphModel) {
+                writeStates(gen, (TimeGraphModel) model);
+            } else if (model instanceof ITmfXyModel) {
+                writeXY(gen, (ITmfXyModel) model);
+            } else if (model instanceof VirtualTableModelWrapper) {
+                writeLines(gen, (VirtualTableModelWrapper) model);
+            } else if (model instanceof List && isArrowList((List<?>) model)) {
+                writeArrows(gen, (List<?>) model);
+            } else {
+                gen.writeObject(model);
+            }
+            gen.writeStringField("status", response.getStatus().name()); //$NON-NLS-1$
+            gen.writeStringField("statusMessage", response.getStatusMessage()); //$NON-NLS-1$
+            gen.writeEndObject();
+        }
+    }
+
+    private ObjectMapper getObjectMapper() {
+        Providers providers = fProviders;
+        ContextResolver<ObjectMapper> resolver = providers == null ? null : providers.getContextResolver(ObjectMapper.class, MediaType.APPLICATION_JSON_TYPE);
+        // Without the providers of the web application, use its serializers anyway
+        return resolver != null ? resolver.getContext(ObjectMapper.class) : new JacksonObjectMapperProvider().getContext(ObjectMapper.class);
+    }
+
+    /**
+     * Write the time graph states. Each row has the columns of its states: the
+     * gap between the start of a state and the end of the previous one (or 0
+     * for the first state of the row), the duration, the index of the style
+     * and of the label in the dictionaries (-1 if there is none) and, only if
+     * a state has some, the tags.
+     *
+     * <pre>
+     * {"styles":[{...}], "labels":["..."],
+     *  "rows":[{"entryId":0, "starts":[...], "durations":[...], "styles":[...], "labels":[...], "tags":[...]}]}
+     * </pre>
+     */
+    private static void writeStates(JsonGenerator gen, TimeGraphModel model) throws IOException {
+        Dictionary<List<Object>> styles = new Dictionary<>();
+        Dictionary<String> labels = new Dictionary<>();
+        List<OutputElementStyle> styleValues = new ArrayList<>();
+
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("rows"); //$NON-NLS-1$
+        for (ITimeGraphRowModel row : model.getRows()) {
+            List<ITimeGraphState> states = row.getStates();
+            gen.writeStartObject();
+            gen.writeNumberField("entryId", row.getEntryID()); //$NON-NLS-1$
+
+            gen.writeArrayFieldStart("starts"); //$NON-NLS-1$
+            long previousEnd = 0;
+            for (ITimeGraphState state : states) {
+                gen.writeNumber(state.getStartTime() - previousEnd);
+                previousEnd = state.getStartTime() + state.getDuration();
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("durations"); //$NON-NLS-1$
+            for (ITimeGraphState state : states) {
+                gen.writeNumber(state.getDuration());
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("styles"); //$NON-NLS-1$
+            for (ITimeGraphState state : states) {
+                OutputElementStyle style = getStyle(state);
+                if (style == null) {
+                    gen.writeNumber(NO_REFERENCE);
+                } else {
+                    int index = styles.getIndex(Arrays.asList(style.getParentKey(), style.getStyleValues()));
+                    if (index == styleValues.size()) {
+                        styleValues.add(style);
+                    }
+                    gen.writeNumber(index);
+                }
+            }
+            gen.writeEndArray();
+
+            gen.writeArrayFieldStart("labels"); //$NON-NLS-1$
+            for (ITimeGraphState state : states) {
+                String label = state.getLabel();
+                gen.writeNumber(label == null ? NO_REFERENCE : labels.getIndex(label));
+            }
+            gen.writeEndArray();
+
+            if (states.stream().anyMatch(state -> state.getActiveProperties() != 0)) {
+                gen.writeArrayFieldStart("tags"); //$NON-NLS-1$
+                for (ITimeGraphState state : states) {
+                    gen.writeNumber(state.getActiveProperties());
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("styles"); //$NON-NLS-1$
+        for (OutputElementStyle style : styleValues) {
+            gen.writeObject(style);
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("labels"); //$NON-NLS-1$
+        for (String label : labels.getValues()) {
+            gen.writeString(label);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Same style as the one written by the {@link TimeGraphStateSerializer}
+     */
+    private static @Nullable OutputElementStyle getStyle(ITimeGraphState state) {
+        OutputElementStyle style = state.getStyle();
+        if (style == null && state.getValue() != Integer.MIN_VALUE) {
+            return new OutputElementStyle(String.valueOf(state.getValue()));
+        }
+        return style;
+    }
+
+    /**
+     * Write the XY model. The x axes, usually shared by all the series, are
+     * delta-encoded and written once, and each series references its x axis
+     * by its index.
+     *
+     * <pre>
+     * {"title":"...", "xAxes":[[x0, x1 - x0, ...]],
+     *  "series":[{"seriesId":0, "seriesName":"...", "xAxis":0, "yValues":[...], "style":{...}}]}
+     * </pre>
+     */
+    private static void writeXY(JsonGenerator gen, ITmfXyModel model) throws IOException {
+        Collection<ISeriesModel> series = model.getSeriesData();
+        List<long[]> xAxes = new ArrayList<>();
+        int[] xAxisIndexes = new int[series.size()];
+        int i = 0;
+        for (ISeriesModel serie : series) {
+            xAxisIndexes[i++] = getXAxisIndex(xAxes, serie.getXAxis());
+        }
+
+        gen.writeStartObject();
+        gen.writeStringField("title", model.getTitle()); //$NON-NLS-1$
+        gen.writeArrayFieldStart("xAxes"); //$NON-NLS-1$
+        for (long[] xAxis : xAxes) {
+            gen.writeStartArray();
+            long previous = 0;
+            for (long x : xAxis) {
+                gen.writeNumber(x - previous);
+                previous = x;
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("series"); //$NON-NLS-1$
+        i = 0;
+        for (ISeriesModel serie : series) {
+            gen.writeStartObject();
+            gen.writeNumberField("seriesId", serie.getId()); //$NON-NLS-1$
+            gen.writeStringField("seriesName", serie.getName()); //$NON-NLS-1$
+            gen.writeNumberField("xAxis", xAxisIndexes[i++]); //$NON-NLS-1$
+            gen.writeArrayFieldStart("yValues"); //$NON-NLS-1$
+            for (double y : serie.getData()) {
+                gen.writeNumber(y);
+            }
+            gen.writeEndArray();
+            String displayType = serie.getDisplayType().name().toLowerCase().trim();
+            gen.writeObjectField("style", new OutputElementStyle(null, ImmutableMap.of(StyleProperties.SERIES_TYPE, displayType))); //$NON-NLS-1$
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static int getXAxisIndex(List<long[]> xAxes, long[] xAxis) {
+        for (int i = 0; i < xAxes.size(); i++) {
+            long[] other = xAxes.get(i);
+            if (other == xAxis || Arrays.equals(other, xAxis)) {
+                return i;
+            }
+        }
+        xAxes.add(xAxis);
+        return xAxes.size() - 1;
+    }
+
+    private static boolean isArrowList(List<?> list) {
+        return list.stream().allMatch(ITimeGraphArrow.class::isInstance);
+    }
+
+    /**
+     * Write the time graph arrows as columns. The starts are delta-encoded
+     * from the start of the previous arrow and the styles are referenced in a
+     * dictionary.
+     *
+     * <pre>
+     * {"styles":[{...}], "sourceIds":[...], "targetIds":[...], "starts":[...], "durations":[...], "styleIds":[...]}
+     * </pre>
+     */
+    private static void writeArrows(JsonGenerator gen, List<?> arrows) throws IOException {
+        Dictionary<List<Object>> styles = new Dictionary<>();
+        List<OutputElementStyle> styleValues = new ArrayList<>();
+        int[] styleIds = new int[arrows.size()];
+        for (int i = 0; i < arrows.size(); i++) {
+            OutputElementStyle style = ((ITimeGraphArrow) arrows.get(i)).getStyle();
+            if (style == null) {
+                styleIds[i] = NO_REFERENCE;
+            } else {
+                styleIds[i] = styles.getIndex(Arrays.asList(style.getParentKey(), style.getStyleValues()));
+                if (styleIds[i] == styleValues.size()) {
+                    styleValues.add(style);
+                }
+            }
+        }
+
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("styles"); //$NON-NLS-1$
+        for (OutputElementStyle style : styleValues) {
+            gen.writeObject(style);
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("sourceIds"); //$NON-NLS-1$
+        for (Object arrow : arrows) {
+            gen.writeNumber(((ITimeGraphArrow) arrow).getSourceId());
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("targetIds"); //$NON-NLS-1$
+        for (Object arrow : arrows) {
+            gen.writeNumber(((ITimeGraphArrow) arrow).getDestinationId());
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("starts"); //$NON-NLS-1$
+        long previousStart = 0;
+        for (Object arrow : arrows) {
+            long start = ((ITimeGraphArrow) arrow).getStartTime();
+            gen.writeNumber(start - previousStart);
+            previousStart = start;
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("durations"); //$NON-NLS-1$
+        for (Object arrow : arrows) {
+            gen.writeNumber(((ITimeGraphArrow) arrow).getDuration());
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("styleIds"); //$NON-NLS-1$
+        for (int styleId : styleIds) {
+            gen.writeNumber(styleId);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Write the virtual table lines as columns. The line indexes are
+     * delta-encoded from the low index, the contents of the cells are written
+     * in one array per column and the tags are written only if a line or a
+     * cell has some, as [line, column, tags] triplets for the cells.
+     *
+     * <pre>
+     * {"lowIndex":0, "size":0, "columnIds":[...], "indexes":[...], "columns":[["...", ...]], "lineTags":[...], "cellTags":[[0, 0, 1]]}
+     * </pre>
+     */
+    private static void writeLines(JsonGenerator gen, VirtualTableModelWrapper model) throws IOException {
+        List<IVirtualTableLine> lines = model.getLines();
+        int nbColumns = 0;
+        for (IVirtualTableLine line : lines) {
+            nbColumns = Math.max(nbColumns, line.getCells().size());
+        }
+
+        gen.writeStartObject();
+        gen.writeNumberField("lowIndex", model.getLowIndex()); //$NON-NLS-1$
+        gen.writeNumberField("size", model.getSize()); //$NON-NLS-1$
+        gen.writeArrayFieldStart("columnIds"); //$NON-NLS-1$
+        for (Long columnId : model.getColumnIds()) {
+            gen.writeNumber(columnId);
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("indexes"); //$NON-NLS-1$
+        long previousIndex = model.getLowIndex();
+        for (IVirtualTableLine line : lines) {
+            gen.writeNumber(line.getIndex() - previousIndex);
+            previousIndex = line.getIndex();
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart("columns"); //$NON-NLS-1$
+        for (int column = 0; column < nbColumns; column++) {
+            gen.writeStartArray();
+            for (IVirtualTableLine line : lines) {
+                List<VirtualTableCell> cells = line.getCells();
+                if (column < cells.size()) {
+                    gen.writeString(cells.get(column).getContent());
+                } else {
+                    gen.writeNull();
+                }
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndArray();
+
+        if (lines.stream().anyMatch(line -> line.getActiveProperties() != 0)) {
+            gen.writeArrayFieldStart("lineTags"); //$NON-NLS-1$
+            for (IVirtualTableLine line : lines) {
+                gen.writeNumber(line.getActiveProperties());
+            }
+            gen.writeEndArray();
+        }
+
+        boolean hasCellTags = false;
+        for (int i = 0; i < lines.size(); i++) {
+            List<VirtualTableCell> cells = lines.get(i).getCells();
+            for (int column = 0; column < cells.size(); column++) {
+                int tags = cells.get(column).getActiveProperties();
+                if (tags != 0) {
+                    if (!hasCellTags) {
+                        gen.writeArrayFieldStart("cellTags"); //$NON-NLS-1$
+                        hasCellTags = true;
+                    }
+                    gen.writeStartArray();
+                    gen.writeNumber(i);
+                    gen.writeNumber(column);
+                    gen.writeNumber(tags);
+                    gen.writeEndArray();
+                }
+            }
+        }
+        if (hasCellTags) {
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Dictionary of the values written once and then referenced by their
+     * index, in order of first appearance
+     */
+    private static final class Dictionary<T> {
+        private final Map<T, Integer> fIndexes = new HashMap<>();
+        private final List<T> fValues = new ArrayList<>();
+
+        public int getIndex(T value) {
+            Integer index = fIndexes.get(value);
+            if (index == null) {
+                index = fValues.size();
+                fIndexes.put(value, index);
+                fValues.add(value);
+            }
+            return index;
+        }
+
+        public List<T> getValues() {
+            return fValues;
+        }
+    }
+}
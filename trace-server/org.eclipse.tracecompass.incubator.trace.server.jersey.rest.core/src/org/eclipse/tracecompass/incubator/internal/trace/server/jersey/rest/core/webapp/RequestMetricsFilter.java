@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.webapp;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.RequestMetrics.EndpointMetrics;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+
+/**
+ * Filter recording the {@link RequestMetrics} of the matched requests: the
+ * request is counted as in flight from the request filter until its response
+ * entity is written, the time spent writing the entity is the serialization
+ * time and the number of bytes written, before compression, is the response
+ * size.
+ */
+@Provider
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String OUTPUT_ID = "outputId"; //$NON-NLS-1$
+    private static final String METRICS_PROPERTY = RequestMetricsFilter.class.getName() + ".metrics"; //$NON-NLS-1$
+    private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start"; //$NON-NLS-1$
+
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        UriInfo uriInfo = request.getUriInfo();
+        if (!(uriInfo instanceof ExtendedUriInfo)) {
+            return;
+        }
+        String endpoint = RequestMetrics.getEndpoint(request.getMethod(), (ExtendedUriInfo) uriInfo);
+        EndpointMetrics metrics = RequestMetrics.getInstance().get(endpoint, uriInfo.getPathParameters().getFirst(OUTPUT_ID));
+        metrics.requestStarted();
+        request.setProperty(METRICS_PROPERTY, metrics);
+        request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        Object metrics = request.getProperty(METRICS_PROPERTY);
+        Object start = request.getProperty(START_PROPERTY);
+        if (metrics instanceof EndpointMetrics && start instanceof Long && !response.hasEntity()) {
+            // There is nothing to write, the request is completed
+            request.removeProperty(METRICS_PROPERTY);
+            ((EndpointMetrics) metrics).requestCompleted(System.nanoTime() - (Long) start, 0);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        Object metrics = context.getProperty(METRICS_PROPERTY);
+        Object start = context.getProperty(START_PROPERTY);
+        if (!(metrics instanceof EndpointMetrics) || !(start instanceof Long)) {
+            context.proceed();
+            return;
+        }
+        context.removeProperty(METRICS_PROPERTY);
+        CountingOutputStream output = new CountingOutputStream(context.getOutputStream());
+        context.setOutputStream(output);
+        long serializationStart = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            long end = System.nanoTime();
+            EndpointMetrics endpointMetrics = (EndpointMetrics) metrics;
+            endpointMetrics.recordSerialization(end - serializationStart);
+            endpointMetrics.requestCompleted(end - (Long) start, output.getCount());
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long fCount = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public long getCount() {
+            return fCount;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            fCount++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            fCount += len;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.ExperimentManagerService;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.FilterService;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.HealthService;
+import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.MetricsService;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.TraceManagerService;
 import org.eclipse.tracecompass.incubator.internal.trace.server.jersey.rest.core.services.XmlManagerService;
 import org.eclipse.tracecompass.tmf.core.TmfCommonConstants;
@@ -89,6 +90,8 @@ public class WebApplication {
         registerResourcesAndMappers(rc);
         ServletContainer sc = new ServletContainer(rc);
         ServletHolder holder = new ServletHolder(sc);
+        // The data provider requests are resumed asynchronously
+        holder.setAsyncSupported(true);
         sch.addServlet(holder, PATH_SPEC);
 
         fServer = new Server();
@@ -137,9 +140,12 @@ public class WebApplication {
         rc.register(DataProviderService.class);
         rc.register(FilterService.class);
         rc.register(HealthService.class);
+        rc.register(MetricsService.class);
         rc.register(XmlManagerService.class);
         rc.register(CORSFilter.class);
+        rc.register(RequestMetricsFilter.class);
         rc.register(JacksonObjectMapperProvider.class);
+        rc.register(ColumnarModelResponseWriter.class);
         EncodingFilter.enableFor(rc, GZipEncoder.class);
         rc.register(OpenApiResource.class);
     }
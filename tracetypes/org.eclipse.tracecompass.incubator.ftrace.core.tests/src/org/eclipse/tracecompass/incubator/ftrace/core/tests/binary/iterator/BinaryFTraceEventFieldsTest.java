@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.ftrace.core.tests.binary.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.tracecompass.incubator.ftrace.core.tests.shared.FTraceUtils;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceDataType;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceEventFormat;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceFormatField;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceFormatField.BinaryFTraceFormatFieldBuilder;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceValueSign;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.iterator.BinaryFTraceEventFields;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.iterator.BinaryFTraceIteratorHelper;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.parser.BinaryFTraceFileParser;
+import org.eclipse.tracecompass.testtraces.ftrace.FtraceTestTrace;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BinaryFTraceEventFields}.
+ */
+public class BinaryFTraceEventFieldsTest {
+    private static final String EVENT_NAME = "sched_test";
+    private static final String NAME_KEY = "name";
+
+    /* The payload starts after the header of the event in the buffer */
+    private static final int PAYLOAD_OFFSET = 8;
+    private static final int PAYLOAD_SIZE = 16;
+
+    private static final long PID = 1234;
+    private static final long PRIO = 120;
+    private static final String COMM = "bash";
+
+    private static BinaryFTraceIteratorHelper helper;
+    private static ByteBuffer buffer;
+
+    /**
+     * Initialize the helper decoding the fields and the buffer of the event
+     *
+     * @throws IOException
+     *             if an error occured while getting the test trace paths
+     * @throws TmfTraceException
+     *             if an error occured while parsing the test trace
+     */
+    @BeforeClass
+    public static void initTest() throws TmfTraceException, IOException {
+        helper = new BinaryFTraceIteratorHelper(BinaryFTraceFileParser.parse(FTraceUtils.getTraceAbsolutePath(FtraceTestTrace.TEST_2_6_MULTIPLE_CPUS)));
+
+        buffer = ByteBuffer.allocate(PAYLOAD_OFFSET + PAYLOAD_SIZE + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(PAYLOAD_OFFSET, (int) PID);
+        buffer.putInt(PAYLOAD_OFFSET + 4, (int) PRIO);
+        byte[] comm = COMM.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < comm.length; i++) {
+            buffer.put(PAYLOAD_OFFSET + 8 + i, comm[i]);
+        }
+        // A value after the payload, that should not be read
+        buffer.putInt(PAYLOAD_OFFSET + PAYLOAD_SIZE, 42);
+    }
+
+    private static BinaryFTraceFormatField intField(String name, int offset) {
+        return new BinaryFTraceFormatFieldBuilder()
+                .fieldName(name)
+                .fieldType(BinaryFTraceDataType.INT)
+                .strFieldType("int")
+                .offset(offset)
+                .size(Integer.BYTES)
+                .signed(BinaryFTraceValueSign.SIGNED)
+                .build();
+    }
+
+    private static BinaryFTraceFormatField stringField(String name, int offset, int length) {
+        return new BinaryFTraceFormatFieldBuilder()
+                .fieldName(name)
+                .fieldType(BinaryFTraceDataType.CHAR)
+                .strFieldType("char")
+                .offset(offset)
+                .size(length)
+                .array(length)
+                .build();
+    }
+
+    /**
+     * Create the fields of the event, with a custom field at the offset of
+     * the string for the given key, and a field after the end of the payload
+     */
+    private static BinaryFTraceEventFields createFields(String stringKey) {
+        Map<String, BinaryFTraceFormatField> commonFields = new LinkedHashMap<>();
+        commonFields.put("common_pid", intField("common_pid", 0));
+        Map<String, BinaryFTraceFormatField> customFields = new LinkedHashMap<>();
+        customFields.put("prio", intField("prio", 4));
+        customFields.put(stringKey, stringField(stringKey, 8, 8));
+        customFields.put("after", intField("after", PAYLOAD_SIZE));
+        BinaryFTraceEventFormat format = new BinaryFTraceEventFormat(1, EVENT_NAME, commonFields, customFields, "");
+        return new BinaryFTraceEventFields(helper, format, buffer, PAYLOAD_OFFSET, PAYLOAD_SIZE);
+    }
+
+    /**
+     * Test getting the values of the fields by key
+     */
+    @Test
+    public void testGet() {
+        BinaryFTraceEventFields fields = createFields("comm");
+        assertEquals(PID, fields.get("common_pid"));
+        assertEquals(PRIO, fields.get("prio"));
+        assertEquals(COMM, fields.get("comm"));
+        assertNull(fields.get("unknown"));
+        assertFalse(fields.containsKey("unknown"));
+        assertNull(fields.get(1));
+    }
+
+    /**
+     * Test that a field after the end of the payload is a key of the fields,
+     * but has no value
+     */
+    @Test
+    public void testFieldOutOfPayload() {
+        BinaryFTraceEventFields fields = createFields("comm");
+        assertTrue(fields.containsKey("after"));
+        assertNull(fields.get("after"));
+        for (Entry<String, Object> entry : fields.entrySet()) {
+            if (entry.getKey().equals("after")) {
+                assertNull(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Test the name of the event, under the key "name" when the format has no
+     * field with that name
+     */
+    @Test
+    public void testEventName() {
+        BinaryFTraceEventFields fields = createFields("comm");
+        assertTrue(fields.containsKey(NAME_KEY));
+        assertEquals(EVENT_NAME, fields.get(NAME_KEY));
+        // The 4 fields and the name of the event
+        assertEquals(5, fields.size());
+        assertEquals(5, fields.entrySet().size());
+    }
+
+    /**
+     * Test that a field named "name" takes precedence over the name of the
+     * event
+     */
+    @Test
+    public void testNameField() {
+        BinaryFTraceEventFields fields = createFields(NAME_KEY);
+        assertTrue(fields.containsKey(NAME_KEY));
+        assertEquals(COMM, fields.get(NAME_KEY));
+        assertEquals(4, fields.size());
+        assertEquals(4, fields.entrySet().size());
+
+        List<String> keys = new ArrayList<>();
+        for (Entry<String, Object> entry : fields.entrySet()) {
+            keys.add(entry.getKey());
+        }
+        assertEquals(Arrays.asList("common_pid", "prio", NAME_KEY, "after"), keys);
+        assertFalse(fields.containsValue(EVENT_NAME));
+    }
+
+    /**
+     * Test iterating on the entries of the fields, the name of the event first,
+     * then the common fields and the custom fields, and comparing them to a
+     * map with the same entries
+     */
+    @Test
+    public void testEntries() {
+        BinaryFTraceEventFields fields = createFields("comm");
+        List<String> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (Entry<String, Object> entry : fields.entrySet()) {
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        assertEquals(Arrays.asList(NAME_KEY, "common_pid", "prio", "comm", "after"), keys);
+        assertEquals(Arrays.asList(EVENT_NAME, PID, PRIO, COMM, null), values);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(NAME_KEY, EVENT_NAME);
+        expected.put("common_pid", PID);
+        expected.put("prio", PRIO);
+        expected.put("comm", COMM);
+        expected.put("after", null);
+        assertEquals(expected, fields);
+        assertEquals(fields, expected);
+        assertEquals(expected.hashCode(), fields.hashCode());
+        assertEquals(expected, new HashMap<>(fields));
+    }
+}
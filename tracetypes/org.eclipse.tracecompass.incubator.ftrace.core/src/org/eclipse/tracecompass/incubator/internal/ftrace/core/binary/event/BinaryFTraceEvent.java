@@ -58,7 +58,8 @@ public class BinaryFTraceEvent {
     /**
      * Get the pay load of the event as a map, including the name of the event.
      * The key is the field name. The value is the field value as an Object
-     * instance.
+     * instance. The map may be a read-only view that decodes the value of a
+     * field from the trace only when it is read.
      *
      * @return the type length of the event
      */
@@ -11,6 +11,9 @@
 
 package org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -28,6 +31,10 @@ public class BinaryFTraceEventFormat {
     private final Map<String, BinaryFTraceFormatField> fCommonFields;
     private final String fFormatString;
 
+    // Common and custom fields, flattened once to decode events by index
+    private final List<String> fFieldNames;
+    private final List<BinaryFTraceFormatField> fFields;
+
     /**
      * Constructor
      *
@@ -56,6 +63,19 @@ public class BinaryFTraceEventFormat {
         fCommonFields = commonFields;
         fCustomFields = customFields;
         fFormatString = formatString;
+
+        List<String> fieldNames = new ArrayList<>(commonFields.size() + customFields.size());
+        List<BinaryFTraceFormatField> fields = new ArrayList<>(commonFields.size() + customFields.size());
+        for (Entry<String, BinaryFTraceFormatField> entry : commonFields.entrySet()) {
+            fieldNames.add(entry.getKey());
+            fields.add(entry.getValue());
+        }
+        for (Entry<String, BinaryFTraceFormatField> entry : customFields.entrySet()) {
+            fieldNames.add(entry.getKey());
+            fields.add(entry.getValue());
+        }
+        fFieldNames = Collections.unmodifiableList(fieldNames);
+        fFields = Collections.unmodifiableList(fields);
     }
 
     /**
@@ -86,6 +106,26 @@ public class BinaryFTraceEventFormat {
         return fCommonFields;
     }
 
+    /**
+     * Get the names of all the fields of this event format, the common fields
+     * first. The name at an index matches the field returned by
+     * {@link #getFields()} at the same index.
+     *
+     * @return The names of the fields
+     */
+    public List<String> getFieldNames() {
+        return fFieldNames;
+    }
+
+    /**
+     * Get all the fields of this event format, the common fields first
+     *
+     * @return The fields of this event format
+     */
+    public List<BinaryFTraceFormatField> getFields() {
+        return fFields;
+    }
+
     /**
      * Get the name of the event that follows this format
      *
@@ -111,12 +151,8 @@ public class BinaryFTraceEventFormat {
      */
     public int getEventFormatSize() {
         int eventSize = 0;
-        for (Entry<String, BinaryFTraceFormatField> entry : fCommonFields.entrySet()) {
-            eventSize += entry.getValue().getSize();
-        }
-
-        for (Entry<String, BinaryFTraceFormatField> entry : fCustomFields.entrySet()) {
-            eventSize += entry.getValue().getSize();
+        for (BinaryFTraceFormatField field : fFields) {
+            eventSize += field.getSize();
         }
 
         return eventSize;
@@ -17,6 +17,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.parser.BinaryFTraceMappedFile;
+
 /**
  * A representation of all header information required for parsing the events in
  * the FTrace file.
@@ -46,6 +49,8 @@ public class BinaryFTraceHeaderInfo {
 
     private List<BinaryFTraceFileCPU> cpus;
 
+    private @Nullable BinaryFTraceMappedFile fMappedFile;
+
     /**
      * Constructor
      *
@@ -89,8 +94,24 @@ public class BinaryFTraceHeaderInfo {
      * @param filePath
      *            The file path of the trace file.
      */
-    public void setFilePath(String filePath) {
+    public synchronized void setFilePath(String filePath) {
         this.fFilePath = filePath;
+        fMappedFile = null;
+    }
+
+    /**
+     * Get the memory mapping of the trace file, used to read the CPU data
+     * pages. The mapping is created on the first call and shared afterwards.
+     *
+     * @return The memory mapping of the trace file
+     */
+    public synchronized BinaryFTraceMappedFile getMappedFile() {
+        BinaryFTraceMappedFile mappedFile = fMappedFile;
+        if (mappedFile == null) {
+            mappedFile = new BinaryFTraceMappedFile(fFilePath, fEndianess);
+            fMappedFile = mappedFile;
+        }
+        return mappedFile;
     }
 
     /**
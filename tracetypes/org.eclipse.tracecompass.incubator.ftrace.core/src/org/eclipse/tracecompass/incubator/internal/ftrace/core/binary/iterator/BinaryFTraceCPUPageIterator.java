@@ -13,8 +13,7 @@ package org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.iterator;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
@@ -24,20 +23,22 @@ import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.event.Bina
 import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceCPUDataPage;
 import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceEventFormat;
 import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceHeaderInfo;
-import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.parser.BinaryFTraceByteBuffer;
 
 /**
  * An iterator to loop through events in a single CPU data page. A CPU maybe
  * paged if the trace type is fly_record. This class is used to loop through the
- * event of a single CPUPage in a CPU section (the same CPU).
+ * event of a single CPUPage in a CPU section (the same CPU). The page is read
+ * from the memory mapping of the trace file and the fields of the events are
+ * decoded from it only when they are read.
  *
  * @Author Hoang Thuan Pham
  */
 public class BinaryFTraceCPUPageIterator implements Closeable {
-    // The buffer
-    private @Nullable BinaryFTraceByteBuffer fBuffer;
+    // The buffer on the page in the mapped file
+    private @Nullable ByteBuffer fBuffer;
 
     private final BinaryFTraceHeaderInfo fFileHeader;
+    private final long fPageStart;
     private final long fLimit;
 
     // Reference to the page that is associated with this iterator
@@ -52,6 +53,7 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
 
     // Info to retrieve the new event that has a payload
     private @Nullable BinaryFTraceEventDefinition fEventDef;
+    private @Nullable BinaryFTraceEvent fCurrentEvent;
 
     // Helper to parse data
     private @NonNull BinaryFTraceIteratorHelper fDataParser;
@@ -71,7 +73,8 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
         // Initialize buffer data
         fFileHeader = fileHeader;
         this.fPage = page;
-        fLimit = page.getPageStartingOffset() + page.getSize();
+        fPageStart = page.getPageStartingOffset();
+        fLimit = fPageStart + page.getSize();
         fDataParser = new BinaryFTraceIteratorHelper(fileHeader);
 
         // Initialize various values
@@ -103,11 +106,8 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
      */
     @Override
     public void close() throws IOException {
-        BinaryFTraceByteBuffer buffer = fBuffer;
-        if (buffer != null) {
-            buffer.close();
-            fBuffer = null;
-        }
+        // The mapping is shared and released when it is no longer referenced
+        fBuffer = null;
     }
 
     /**
@@ -129,6 +129,7 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
             // We reset the event definition everytime we try to read a new
             // event
             fEventDef = null;
+            fCurrentEvent = null;
 
             readNextEventTimeStamp();
 
@@ -212,10 +213,9 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
             return false;
         }
 
-        BinaryFTraceByteBuffer buffer = fBuffer;
+        ByteBuffer buffer = fBuffer;
         if (buffer != null) {
-            buffer.movePointerToOffset(fCurrentOffset);
-            int eventTypeLengthAndTimeStamp = buffer.getNextInt();
+            int eventTypeLengthAndTimeStamp = buffer.getInt(getPosition(fCurrentOffset));
             fCurrentTypeLen = fDataParser.getEventTypeLength(eventTypeLengthAndTimeStamp);
             fCurrentTimeDelta = fDataParser.getDeltaTime(eventTypeLengthAndTimeStamp);
             fCurrentOffset += 4;
@@ -241,10 +241,9 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
             return -1;
         }
 
-        BinaryFTraceByteBuffer buffer = fBuffer;
+        ByteBuffer buffer = fBuffer;
         if (buffer != null) {
-            buffer.movePointerToOffset(fCurrentOffset);
-            int nextEventTypeLen = buffer.getNextInt();
+            int nextEventTypeLen = buffer.getInt(getPosition(fCurrentOffset));
             return fDataParser.getEventTypeLength(nextEventTypeLen);
         }
 
@@ -264,9 +263,9 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
         if (fCurrentTypeLen <= fFileHeader.getHeaderEventInfo().getDataMaxTypeLen()) {
             fCurrentTimeStamp += fCurrentTimeDelta;
         } else {
-            BinaryFTraceByteBuffer buffer = fBuffer;
+            ByteBuffer buffer = fBuffer;
             if (buffer != null) {
-                long extend = buffer.getNextInt();
+                long extend = buffer.getInt(getPosition(fCurrentOffset));
                 extend = extend <<= 27;
                 extend += fCurrentTimeDelta;
 
@@ -285,6 +284,13 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
         this.fCurrentOffset += bytesToSkip;
     }
 
+    /**
+     * Get the position of an offset of the file in the buffer of the page
+     */
+    private int getPosition(long offset) {
+        return (int) (offset - fPageStart);
+    }
+
     /**
      * Get the pay load size of the event according to its type length
      *
@@ -299,10 +305,10 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
         if (fCurrentTypeLen == fFileHeader.getHeaderEventInfo().getCustomLengthEventTypeLen()) {
             // If the type length is 0, then the next 4 bytes contain the actual
             // length
-            BinaryFTraceByteBuffer buffer = fBuffer;
+            ByteBuffer buffer = fBuffer;
             if (buffer != null) {
                 // the size includes the size field itself, subtract it to get the actual event length
-                payloadSize = buffer.getNextInt() - 4;
+                payloadSize = buffer.getInt(getPosition(fCurrentOffset)) - 4;
                 this.fCurrentOffset += 4;
             }
         } else if (fCurrentTypeLen <= fFileHeader.getHeaderEventInfo().getDataMaxTypeLen()) {
@@ -323,7 +329,9 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
     }
 
     /**
-     * Lazily read the next event using the event definition information.
+     * Lazily read the next event using the event definition information. The
+     * event is created once per event read and its fields are decoded from the
+     * page only when they are read.
      *
      * @return A BinaryFTraceEvent at the current event definition.
      * @throws IOException
@@ -333,35 +341,34 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
     public @Nullable BinaryFTraceEvent getCurrentEvent() throws IOException {
         // Make a local copy to prevent multithreading null check
         BinaryFTraceEventDefinition eventDef = fEventDef;
+        ByteBuffer buffer = fBuffer;
 
-        if (eventDef != null) {
-            // We use a new buffer to read the current event
-            try (BinaryFTraceByteBuffer tempBuffer = new BinaryFTraceByteBuffer(fFileHeader.getFilePath());) {
-                tempBuffer.setByteOrder(fFileHeader.getEndianess());
-                tempBuffer.movePointerToOffset(eventDef.getPayloadOffset());
+        if (eventDef == null || buffer == null) {
+            return null;
+        }
 
-                byte[] data = tempBuffer.getNextBytes(eventDef.getPayloadSize());
-                BinaryFTraceEventFormat eventFormat = fDataParser.getEventFormat(data);
-                if (eventFormat == null) {
-                    return null;
-                }
+        BinaryFTraceEvent event = fCurrentEvent;
+        if (event != null) {
+            return event;
+        }
 
-                Map<String, Object> properties;
-                if (eventDef.getPayloadSize() > 0) {
-                    properties = fDataParser.parseEventData(eventFormat, data);
-                } else {
-                    properties = new HashMap<>();
-                }
+        int payloadOffset = getPosition(eventDef.getPayloadOffset());
+        int payloadSize = eventDef.getPayloadSize();
+        if (payloadOffset < 0 || payloadSize < 0 || payloadOffset + payloadSize > buffer.limit()) {
+            throw new IOException("The event payload is outside of the CPU data page"); //$NON-NLS-1$
+        }
 
-                BinaryFTraceEvent event = new BinaryFTraceEvent(fCurrentTimeStamp,
-                        properties,
-                        eventFormat.getEventName(),
-                        fPage.getCpu());
-                return event;
-            }
+        BinaryFTraceEventFormat eventFormat = fDataParser.getEventFormat(buffer, payloadOffset, payloadSize);
+        if (eventFormat == null) {
+            return null;
         }
 
-        return null;
+        event = new BinaryFTraceEvent(fCurrentTimeStamp,
+                new BinaryFTraceEventFields(fDataParser, eventFormat, buffer, payloadOffset, payloadSize),
+                eventFormat.getEventName(),
+                fPage.getCpu());
+        fCurrentEvent = event;
+        return event;
     }
 
     /**
@@ -393,6 +400,7 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
          */
         if (timeStampToSeekTo > fCurrentTimeStamp) {
             fEventDef = null; // Set the eventDef to null to indicate no events
+            fCurrentEvent = null;
             return false;
         }
 
@@ -411,7 +419,7 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
     public boolean hasNext() throws IOException {
         boolean ret = true;
 
-        BinaryFTraceByteBuffer buffer = fBuffer;
+        ByteBuffer buffer = fBuffer;
 
         if (buffer == null) {
             ret = false;
@@ -426,7 +434,7 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
                 ret = false;
             } else {
                 // We check the header type length and timestamp
-                int typeLengthAndTimeStamp = buffer.getNextInt();
+                int typeLengthAndTimeStamp = buffer.getInt(getPosition(fCurrentOffset));
 
                 /*
                  * If the type length and timestamp is 0, it might be a custom
@@ -439,16 +447,13 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
                         ret = false;
                     } else {
                         // No custom length, guaranteed to be paddings
-                        int customLength = buffer.getNextInt();
+                        int customLength = buffer.getInt(getPosition(fCurrentOffset + 4));
                         if (customLength == 0) {
                             ret = false;
                         }
                     }
                 }
             }
-
-            // Reset the buffer to avoid issues with other methods
-            buffer.movePointerToOffset(fCurrentOffset);
         }
 
         return ret;
@@ -460,17 +465,11 @@ public class BinaryFTraceCPUPageIterator implements Closeable {
         fCurrentTypeLen = -1;
         fCurrentTimeDelta = -1;
         fEventDef = null;
+        fCurrentEvent = null;
 
-        // Reset the iterator
-        if (fBuffer != null) {
-            fBuffer.movePointerToOffset(fPage.getDataStartingOffset());
-        } else {
-            // Prepare the buffer
-            BinaryFTraceByteBuffer newBuffer = new BinaryFTraceByteBuffer(fFileHeader.getFilePath());
-            newBuffer.setByteOrder(fFileHeader.getEndianess());
-            newBuffer.movePointerToOffset(fPage.getDataStartingOffset());
-
-            fBuffer = newBuffer;
+        // Map the page, the pages of a trace share the same mapping
+        if (fBuffer == null) {
+            fBuffer = fFileHeader.getMappedFile().getBuffer(fPageStart, (int) (fLimit - fPageStart));
         }
     }
 }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.iterator;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceEventFormat;
+import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceFormatField;
+
+/**
+ * A read-only view of the fields of a binary FTrace event. The value of a field
+ * is decoded from the payload of the event, in the mapped trace file, only when
+ * it is read. Like the fields of the event format, the view also contains the
+ * name of the event under the key "name", unless a field has that name.
+ */
+public class BinaryFTraceEventFields extends AbstractMap<String, Object> {
+    private static final String NAME_KEY = "name"; //$NON-NLS-1$
+
+    private final BinaryFTraceIteratorHelper fHelper;
+    private final BinaryFTraceEventFormat fFormat;
+    private final ByteBuffer fBuffer;
+    private final int fPayloadOffset;
+    private final int fPayloadSize;
+
+    private @Nullable Set<Entry<String, Object>> fEntrySet;
+
+    /**
+     * Constructor
+     *
+     * @param helper
+     *            The helper used to decode the fields
+     * @param format
+     *            The format of the event
+     * @param buffer
+     *            The buffer containing the event, in the byte order of the
+     *            trace
+     * @param payloadOffset
+     *            The position of the payload of the event in the buffer
+     * @param payloadSize
+     *            The size of the payload of the event
+     */
+    public BinaryFTraceEventFields(BinaryFTraceIteratorHelper helper, BinaryFTraceEventFormat format, ByteBuffer buffer, int payloadOffset, int payloadSize) {
+        fHelper = helper;
+        fFormat = format;
+        fBuffer = buffer;
+        fPayloadOffset = payloadOffset;
+        fPayloadSize = payloadSize;
+    }
+
+    @Override
+    public @Nullable Object get(@Nullable Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        BinaryFTraceFormatField field = fFormat.getFieldByName((String) key);
+        if (field != null) {
+            return decode(field);
+        }
+        return NAME_KEY.equals(key) ? fFormat.getEventName() : null;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return key instanceof String && (NAME_KEY.equals(key) || fFormat.getFieldByName((String) key) != null);
+    }
+
+    @Override
+    public int size() {
+        return fFormat.getFields().size() + (hasNameField() ? 0 : 1);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Set<Entry<String, Object>> entrySet = fEntrySet;
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new FieldIterator();
+                }
+
+                @Override
+                public int size() {
+                    return BinaryFTraceEventFields.this.size();
+                }
+            };
+            fEntrySet = entrySet;
+        }
+        return entrySet;
+    }
+
+    private boolean hasNameField() {
+        return fFormat.getFieldByName(NAME_KEY) != null;
+    }
+
+    private @Nullable Object decode(BinaryFTraceFormatField field) {
+        return fHelper.getFieldValue(field, fBuffer, fPayloadOffset, fPayloadSize);
+    }
+
+    /**
+     * Iterates on the name of the event, then on the fields of the format.
+     * The values of the fields are not decoded by the iterator.
+     */
+    private class FieldIterator implements Iterator<Entry<String, Object>> {
+        private final List<String> fNames = fFormat.getFieldNames();
+        private final List<BinaryFTraceFormatField> fFields = fFormat.getFields();
+        private int fIndex = hasNameField() ? 0 : -1;
+
+        @Override
+        public boolean hasNext() {
+            return fIndex < fFields.size();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int index = fIndex++;
+            if (index < 0) {
+                return new SimpleImmutableEntry<>(NAME_KEY, fFormat.getEventName());
+            }
+            return new FieldEntry(fNames.get(index), fFields.get(index));
+        }
+    }
+
+    /**
+     * An entry of the view, decoding the value of the field when it is read
+     */
+    private class FieldEntry implements Map.Entry<String, Object> {
+        private final String fName;
+        private final BinaryFTraceFormatField fField;
+
+        public FieldEntry(String name, BinaryFTraceFormatField field) {
+            fName = name;
+            fField = field;
+        }
+
+        @Override
+        public String getKey() {
+            return fName;
+        }
+
+        @Override
+        public @Nullable Object getValue() {
+            return decode(fField);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            return fName.equals(other.getKey()) && Objects.equals(getValue(), other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return fName.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return fName + '=' + getValue();
+        }
+    }
+}
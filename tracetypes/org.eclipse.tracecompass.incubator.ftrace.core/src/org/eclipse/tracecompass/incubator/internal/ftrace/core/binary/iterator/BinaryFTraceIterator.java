@@ -130,13 +130,15 @@ public class BinaryFTraceIterator extends BinaryFTraceReader implements ITmfCont
         // This function call guarantees that name will not be null
         String name = eventNameRewrite(event.getEventName());
 
-        Object commonPidField = event.getFields().getOrDefault("common_pid", null); //$NON-NLS-1$
+        // The fields of the binary event are decoded when they are read
+        Map<String, Object> eventFields = event.getFields();
+        Object commonPidField = eventFields.get("common_pid"); //$NON-NLS-1$
         if (commonPidField != null) {
             pid = ((Long) commonPidField).intValue();
         }
         Integer tid = pid;
 
-        Object tgidField = event.getFields().getOrDefault("tgid", null); //$NON-NLS-1$
+        Object tgidField = eventFields.get("tgid"); //$NON-NLS-1$
         if (tgidField != null) {
             int tgidNumeric = ((Long) tgidField).intValue();
             if (tgidNumeric != pid) {
@@ -144,12 +146,32 @@ public class BinaryFTraceIterator extends BinaryFTraceReader implements ITmfCont
             }
         }
 
-        Map<@NonNull String, @NonNull Object> fields = new HashMap<>();
-        for (Entry<String, Object> field : event.getFields().entrySet()) {
+        // The other fields are decoded only if the content of the event is read
+        @SuppressWarnings("null")
+        GenericFtraceField parsedEvent = new GenericFtraceField(name, cpu, timestampInNano, pid, tid, () -> getContentFields(name, eventFields));
+        return new GenericFtraceEvent(fTrace, fCurRank, parsedEvent);
+    }
+
+    /**
+     * Get the fields of the content of an event, without the common fields
+     *
+     * @param name
+     *            The name of the event
+     * @param eventFields
+     *            The fields of the binary event
+     * @return The fields of the content of the event
+     */
+    private static Map<String, Object> getContentFields(String name, Map<String, Object> eventFields) {
+        Map<String, Object> fields = new HashMap<>();
+        for (Entry<String, Object> field : eventFields.entrySet()) {
             String key = field.getKey();
-            Object value = field.getValue();
+            if (key.startsWith(BinaryFTraceConstants.EVENT_FORMAT_COMMON_FIELD_PREFIX)) {
+                // Skip the common fields without decoding them
+                continue;
+            }
 
-            if (value != null && !key.startsWith(BinaryFTraceConstants.EVENT_FORMAT_COMMON_FIELD_PREFIX)) {
+            Object value = field.getValue();
+            if (value != null) {
                 if (key.equals("parent_pid") && name.equals(GenericFtraceEventLayout.getInstance().eventSchedProcessFork())) { //$NON-NLS-1$
                     key = "pid"; //$NON-NLS-1$
                 }
@@ -157,10 +179,7 @@ public class BinaryFTraceIterator extends BinaryFTraceReader implements ITmfCont
                 fields.put(key, value);
             }
         }
-
-        @SuppressWarnings("null")
-        GenericFtraceField parsedEvent = new GenericFtraceField(name, cpu, timestampInNano, pid, tid, fields);
-        return new GenericFtraceEvent(fTrace, fCurRank, parsedEvent);
+        return fields;
     }
 
     @Override
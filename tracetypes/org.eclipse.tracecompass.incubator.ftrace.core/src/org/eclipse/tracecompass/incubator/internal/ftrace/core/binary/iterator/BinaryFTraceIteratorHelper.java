@@ -14,10 +14,6 @@ package org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.iterator;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.BinaryFTraceCPUDataPage;
@@ -34,6 +30,7 @@ import org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.header.Bin
  */
 public class BinaryFTraceIteratorHelper {
     private final BinaryFTraceHeaderInfo fHeader;
+    private @Nullable BinaryFTraceFormatField fCommonTypeField;
 
     private static final int TYPE_LENGTH_SHIFT_BIG = 27;
     private static final int TIME_DELTA_SHIFT_LITTLE = 5;
@@ -114,108 +111,98 @@ public class BinaryFTraceIteratorHelper {
     }
 
     /**
-     * Extract all field values from the binary payload of a binary FTrace
-     * event.
-     *
-     * @param eventFormat
-     *            The {@link BinaryFTraceEventFormat} that contains information
-     *            required to extract the event data.
-     * @param data
-     *            The binary payload of a binary FTrace event.
-     * @return A Map containing all the the parsed field values.
-     */
-    public Map<String, Object> parseEventData(BinaryFTraceEventFormat eventFormat, byte[] data) {
-        Map<String, Object> eventProperties = new HashMap<>();
-        eventProperties.put("name", eventFormat.getEventName()); // Store //$NON-NLS-1$
-                                                                 // the
-                                                                 // event name
-
-        for (Entry<String, BinaryFTraceFormatField> fieldEntry : eventFormat.getCommonFields().entrySet()) {
-            Object value = getFieldValue(fieldEntry.getValue(), data);
-            eventProperties.put(fieldEntry.getKey(), value);
-        }
-
-        for (Entry<String, BinaryFTraceFormatField> fieldEntry : eventFormat.getCustomFields().entrySet()) {
-            Object value = getFieldValue(fieldEntry.getValue(), data);
-            eventProperties.put(fieldEntry.getKey(), value);
-        }
-
-        return eventProperties;
-    }
-
-    /**
-     * Extract the field value from a binary payload of a binary FTrace event
-     * using information provided by a {@link BinaryFTraceFormatField}.
+     * Decode the value of a field from the binary payload of a binary FTrace
+     * event using information provided by a {@link BinaryFTraceFormatField}.
+     * The value is read directly from the buffer containing the event, without
+     * copying the payload.
      *
      * @param formatField
      *            The {@link BinaryFTraceFormatField} that contains information
      *            to extract the field value from the binary payload of a binary
      *            FTrace event.
-     * @param data
-     *            The binary payload of a binary FTrace event.
-     * @return An {@link Object} that is the extracted value.
+     * @param buffer
+     *            The buffer containing the event, in the byte order of the
+     *            trace
+     * @param payloadOffset
+     *            The position of the payload of the event in the buffer
+     * @param payloadSize
+     *            The size of the payload of the event
+     * @return An {@link Object} that is the extracted value, or null if it
+     *         cannot be read from the payload.
      */
-    public Object getFieldValue(BinaryFTraceFormatField formatField, byte[] data) {
+    public @Nullable Object getFieldValue(BinaryFTraceFormatField formatField, ByteBuffer buffer, int payloadOffset, int payloadSize) {
+        int size = formatField.getSize();
+        if (formatField.getOffset() < 0 || formatField.getOffset() + size > payloadSize) {
+            return null;
+        }
+        int position = payloadOffset + formatField.getOffset();
+
         if (formatField.isPointer()) {
-            byte[] fieldData = extractValue(formatField, data);
-            return readStringPointerField(fieldData);
+            return readStringPointerField(buffer, position, size);
         }
 
         if (formatField.isString()) {
-            byte[] fieldData = new byte[0];
             if (formatField.isDataLoc()) {
-                fieldData = extractDataLocValue(formatField, data);
-            } else {
-                fieldData = extractValue(formatField, data);
+                return readDataLocStringField(formatField, buffer, payloadOffset, payloadSize);
             }
 
-            return readStringField(fieldData);
+            return readStringField(buffer, position, size);
         }
 
         if (formatField.getArrayLength() == 0) {
             // For now for non string type we just print out the pointer value
-            byte[] fieldData = extractValue(formatField, data);
-            return readStringPointerField(fieldData);
+            return readStringPointerField(buffer, position, size);
         }
 
-        byte[] fieldData = extractValue(formatField, data);
-        return getPrimitiveDataValue(formatField, fieldData);
+        return getPrimitiveDataValue(formatField, buffer, position);
     }
 
     /**
      * Get the event format based on the common_type field in a binary payload
      * of a binary FTrace event.
      *
-     * @param data
-     *            The binary payload of a binary FTrace event
+     * @param buffer
+     *            The buffer containing the event, in the byte order of the
+     *            trace
+     * @param payloadOffset
+     *            The position of the payload of the event in the buffer
+     * @param payloadSize
+     *            The size of the payload of the event
      * @return A {@link BinaryFTraceEventFormat} containing the format to parse
      *         the binary FTrace event.
      */
-    public BinaryFTraceEventFormat getEventFormat(byte[] data) {
-        BinaryFTraceFormatField commonTypeField = fHeader.getEventCommonFields().get("common_type"); //$NON-NLS-1$
-        Long eventId = (Long) getFieldValue(commonTypeField, data);
+    public @Nullable BinaryFTraceEventFormat getEventFormat(ByteBuffer buffer, int payloadOffset, int payloadSize) {
+        BinaryFTraceFormatField commonTypeField = fCommonTypeField;
+        if (commonTypeField == null) {
+            commonTypeField = fHeader.getEventCommonFields().get("common_type"); //$NON-NLS-1$
+            if (commonTypeField == null) {
+                return null;
+            }
+            fCommonTypeField = commonTypeField;
+        }
 
-        if (eventId == null) {
+        Object eventId = getFieldValue(commonTypeField, buffer, payloadOffset, payloadSize);
+        if (!(eventId instanceof Long)) {
             return null;
         }
 
-        return fHeader.getEventFormatByID(eventId.intValue());
+        return fHeader.getEventFormatByID(((Long) eventId).intValue());
     }
 
-    private Object getPrimitiveDataValue(BinaryFTraceFormatField formatField, byte[] data) {
+    private static @Nullable Object getPrimitiveDataValue(BinaryFTraceFormatField formatField, ByteBuffer buffer, int position) {
         Object value = null;
         switch (formatField.getFieldType()) {
         case CHAR:
-            value = readCharField(formatField, data);
+            value = readCharField(formatField, buffer, position);
             break;
         case SHORT:
-            value = readShortField(formatField, data);
+            value = readShortField(formatField, buffer, position);
             break;
         case INT:
-            value = readIntField(formatField, data);
+            value = readIntField(formatField, buffer, position);
             break;
         case LONG:
-            value = readLongField(formatField, data);
+            value = readLongField(formatField, buffer, position);
             break;
         case UNKNOWN:
             break;
@@ -226,19 +213,22 @@ public class BinaryFTraceIteratorHelper {
         return value;
     }
 
-    private static String readStringField(byte[] fieldData) {
-        for (int i = 0; i < fieldData.length; i++) {
-            if (fieldData[i] == 0) {
-                return new String(fieldData, 0, i);
-            }
+    private static String readStringField(ByteBuffer buffer, int position, int length) {
+        int stringLength = 0;
+        while (stringLength < length && buffer.get(position + stringLength) != 0) {
+            stringLength++;
+        }
+        byte[] stringBytes = new byte[stringLength];
+        for (int i = 0; i < stringLength; i++) {
+            stringBytes[i] = buffer.get(position + i);
         }
-        return new String(fieldData);
+        return new String(stringBytes);
     }
 
-    private static Long readCharField(BinaryFTraceFormatField formatField, byte[] fieldData) {
+    private static @Nullable Long readCharField(BinaryFTraceFormatField formatField, ByteBuffer buffer, int position) {
         /** A char for ftrace is a 8bit = 1byte value */
-        if (fieldData.length == 1) {
-            Byte byteValue = fieldData[0];
+        if (formatField.getSize() == 1) {
+            byte byteValue = buffer.get(position);
 
             if (formatField.getSigned() == BinaryFTraceValueSign.SIGNED || canBeSignedByte(byteValue)) {
                 return Long.valueOf(byteValue);
@@ -250,12 +240,15 @@ public class BinaryFTraceIteratorHelper {
         return null;
     }
 
-    private static boolean canBeSignedByte(Byte byteValue) {
+    private static boolean canBeSignedByte(byte byteValue) {
         return (Byte.toUnsignedInt(byteValue) - Byte.toUnsignedInt(Byte.MAX_VALUE)) <= 0;
     }
 
-    private Object readShortField(BinaryFTraceFormatField formatField, byte[] fieldData) {
-        Short shortValue = ByteBuffer.wrap(fieldData).order(fHeader.getEndianess()).getShort();
+    private static @Nullable Object readShortField(BinaryFTraceFormatField formatField, ByteBuffer buffer, int position) {
+        if (formatField.getSize() < Short.BYTES) {
+            return null;
+        }
+        short shortValue = buffer.getShort(position);
 
         if (formatField.getSigned() == BinaryFTraceValueSign.SIGNED || canBeSignedShort(shortValue)) {
             return Long.valueOf(shortValue);
@@ -264,12 +257,15 @@ public class BinaryFTraceIteratorHelper {
         return Short.toUnsignedLong(shortValue);
     }
 
-    private static boolean canBeSignedShort(Short shortValue) {
+    private static boolean canBeSignedShort(short shortValue) {
         return (Short.toUnsignedInt(shortValue) - Short.toUnsignedInt(Short.MAX_VALUE)) <= 0;
     }
 
-    private Object readIntField(BinaryFTraceFormatField formatField, byte[] fieldData) {
-        Integer intValue = ByteBuffer.wrap(fieldData).order(fHeader.getEndianess()).getInt();
+    private static @Nullable Object readIntField(BinaryFTraceFormatField formatField, ByteBuffer buffer, int position) {
+        if (formatField.getSize() < Integer.BYTES) {
+            return null;
+        }
+        int intValue = buffer.getInt(position);
 
         if (formatField.getSigned() == BinaryFTraceValueSign.SIGNED || canBeSignedInt(intValue)) {
             return Long.valueOf(intValue);
@@ -278,12 +274,15 @@ public class BinaryFTraceIteratorHelper {
         return Integer.toUnsignedLong(intValue);
     }
 
-    private static boolean canBeSignedInt(Integer byteValue) {
-        return Integer.compareUnsigned(byteValue, Integer.MAX_VALUE) <= 0;
+    private static boolean canBeSignedInt(int intValue) {
+        return Integer.compareUnsigned(intValue, Integer.MAX_VALUE) <= 0;
     }
 
-    private Object readLongField(BinaryFTraceFormatField formatField, byte[] fieldData) {
-        Long longValue = ByteBuffer.wrap(fieldData).order(fHeader.getEndianess()).getLong();
+    private static @Nullable Object readLongField(BinaryFTraceFormatField formatField, ByteBuffer buffer, int position) {
+        if (formatField.getSize() < Long.BYTES) {
+            return null;
+        }
+        long longValue = buffer.getLong(position);
 
         // If the value is unsigned, but can not be fit into a signed value, we
         // return a string of the unsigned value
@@ -294,46 +293,45 @@ public class BinaryFTraceIteratorHelper {
         return longValue;
     }
 
-    private static boolean canBeSignedLong(Long longValue) {
+    private static boolean canBeSignedLong(long longValue) {
         return Long.compareUnsigned(longValue, Long.MAX_VALUE) <= 0;
     }
 
-    private static byte[] extractValue(BinaryFTraceFormatField field, byte[] data) {
-        int size = field.getSize();
-        int offset = field.getOffset();
-        byte[] valueInBytes = Arrays.copyOfRange(data, offset, size + offset);
-
-        return valueInBytes;
-    }
-
-    private byte[] extractDataLocValue(BinaryFTraceFormatField field, byte[] data) {
+    private static @Nullable String readDataLocStringField(BinaryFTraceFormatField field, ByteBuffer buffer, int payloadOffset, int payloadSize) {
         // The dynamic field should be 4 bytes
         if (field.getSize() != 4) {
             return null;
         }
 
-        byte[] dataLocationInBytes = Arrays.copyOfRange(data, field.getOffset(), field.getOffset() + field.getSize()); // The
-        int dataLocation = ByteBuffer.wrap(dataLocationInBytes).order(fHeader.getEndianess()).getInt();
+        int dataLocation = buffer.getInt(payloadOffset + field.getOffset());
 
         int length = BinaryFTraceIteratorHelper.getDataLocLength(dataLocation);
         int offset = BinaryFTraceIteratorHelper.getDataLocOffset(dataLocation);
 
-        if (offset + length <= data.length) {
-            byte[] valueInBytes = Arrays.copyOfRange(data, offset, offset + length);
-            return valueInBytes;
+        if (offset + length <= payloadSize) {
+            return readStringField(buffer, payloadOffset + offset, length);
         }
 
-        return new byte[0];
+        return ""; //$NON-NLS-1$
     }
 
-    private String readStringPointerField(byte[] fieldData) {
-        long pointerAddress = ByteBuffer.wrap(fieldData).order(fHeader.getEndianess()).getLong();
+    private @Nullable String readStringPointerField(ByteBuffer buffer, int position, int size) {
+        long pointerAddress;
+        if (size >= Long.BYTES) {
+            pointerAddress = buffer.getLong(position);
+        } else if (size == Integer.BYTES) {
+            // Pointers of traces recorded on 32 bits machines
+            pointerAddress = Integer.toUnsignedLong(buffer.getInt(position));
+        } else {
+            return null;
+        }
 
         // If the we have a mapping of address to string in the file header, get
         // the string
         String hexAddress = hexPrefix + Long.toHexString(pointerAddress);
-        if (fHeader.getPrintKPointerStringMapping().containsKey(hexAddress)) {
-            return fHeader.getPrintKPointerStringMapping().get(hexAddress);
+        String mappedString = fHeader.getPrintKPointerStringMapping().get(hexAddress);
+        if (mappedString != null) {
+            return mappedString;
         }
 
         // Else we return the hex string representation like trace-cmd
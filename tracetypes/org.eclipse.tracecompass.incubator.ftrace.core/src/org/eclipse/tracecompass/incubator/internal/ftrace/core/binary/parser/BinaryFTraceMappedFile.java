@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.internal.ftrace.core.binary.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A read-only memory mapping of a binary FTrace file, used to read the CPU
+ * data pages without copying them. The file is mapped lazily in windows of
+ * 1 GiB, which are shared by all the readers of the trace.
+ */
+public class BinaryFTraceMappedFile {
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+
+    private final String fPath;
+    private final ByteOrder fByteOrder;
+    private final long fFileSize;
+    private final @Nullable ByteBuffer[] fWindows;
+
+    /**
+     * Constructor
+     *
+     * @param path
+     *            The path to the file
+     * @param byteOrder
+     *            The byte order of the buffers returned by this mapping
+     */
+    public BinaryFTraceMappedFile(String path, ByteOrder byteOrder) {
+        fPath = path;
+        fByteOrder = byteOrder;
+        fFileSize = new File(path).length();
+        fWindows = new @Nullable ByteBuffer[(int) (fFileSize >>> WINDOW_SHIFT) + 1];
+    }
+
+    /**
+     * Get a buffer on a region of the file. The buffer starts at position 0,
+     * is in the byte order of the trace and shares the memory of the mapping.
+     * The region is truncated at the end of the file.
+     *
+     * @param offset
+     *            The offset of the region in the file
+     * @param size
+     *            The size of the region
+     * @return The buffer on the region of the file
+     * @throws IOException
+     *             If the file cannot be mapped
+     */
+    public ByteBuffer getBuffer(long offset, int size) throws IOException {
+        if (offset < 0 || offset > fFileSize) {
+            throw new IOException("Offset " + offset + " is outside of the file " + fPath); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        int length = (int) Math.min(size, fFileSize - offset);
+        int index = (int) (offset >>> WINDOW_SHIFT);
+        long windowStart = index * WINDOW_SIZE;
+        if (offset + length > windowStart + WINDOW_SIZE) {
+            // The region crosses two windows, map it on its own
+            return map(offset, length).order(fByteOrder);
+        }
+        ByteBuffer window = getWindow(index, windowStart);
+        int start = (int) (offset - windowStart);
+        ByteBuffer buffer = window.duplicate();
+        buffer.limit(start + length);
+        buffer.position(start);
+        return buffer.slice().order(fByteOrder);
+    }
+
+    private synchronized ByteBuffer getWindow(int index, long windowStart) throws IOException {
+        ByteBuffer window = fWindows[index];
+        if (window == null) {
+            window = map(windowStart, Math.min(WINDOW_SIZE, fFileSize - windowStart));
+            fWindows[index] = window;
+        }
+        return window;
+    }
+
+    private ByteBuffer map(long offset, long size) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(Paths.get(fPath), StandardOpenOption.READ)) {
+            return channel.map(MapMode.READ_ONLY, offset, size);
+        }
+    }
+}
@@ -46,7 +46,8 @@ public class GenericFtraceEvent extends TmfEvent implements ITmfSourceLookup {
      *            the event field, contains all the needed data
      */
     public GenericFtraceEvent(ITmfTrace trace, long rank, GenericFtraceField field) {
-        super(trace, rank, TmfTimestamp.fromNanos(field.getTs()), GenericFtraceEventTypeFactory.get(field.getName()), field.getContent());
+        // The content is created from the field when first accessed
+        super(trace, rank, TmfTimestamp.fromNanos(field.getTs()), GenericFtraceEventTypeFactory.get(field.getName()), null);
         fField = field;
         fName = field.getName();
         fCallsite = null;
@@ -23,6 +23,7 @@ import org.eclipse.tracecompass.tmf.core.event.TmfEventField;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -72,7 +73,9 @@ public class GenericFtraceField {
     private final Integer fCpu;
     private @Nullable Integer fTid;
     private @Nullable Integer fPid;
-    private ITmfEventField fContent;
+    private @Nullable ITmfEventField fContent;
+    /* The fields of the event, until its content is created */
+    private volatile @Nullable Supplier<Map<String, Object>> fFields;
 
     /**
      * Constructor
@@ -89,10 +92,28 @@ public class GenericFtraceField {
         fCpu = cpu;
         fPid = pid;
         fTid = tid;
-        ITmfEventField[] array = fields.entrySet().stream()
-                .map(entry -> new TmfEventField(entry.getKey(), entry.getValue(), null))
-                .toArray(ITmfEventField[]::new);
-        fContent = new TmfEventField(ITmfEventField.ROOT_FIELD_ID, fields, array);
+        fContent = createContent(fields);
+        fTs = ts;
+    }
+
+    /**
+     * Constructor for an event whose fields are read only when its content is
+     * first accessed
+     *
+     * @param name   event name
+     * @param cpu    the cpu number
+     * @param ts     the timestamp in ns
+     * @param pid    the process id
+     * @param tid    the threadId
+     * @param fields supplier of the event fields (arguments), called once
+     */
+    public GenericFtraceField(String name, Integer cpu, Long ts, @Nullable Integer pid, @Nullable Integer tid, Supplier<Map<String, Object>> fields) {
+        fName = name;
+        fCpu = cpu;
+        fPid = pid;
+        fTid = tid;
+        fContent = null;
+        fFields = fields;
         fTs = ts;
     }
 
@@ -220,7 +241,21 @@ public class GenericFtraceField {
      * @return the event content
      */
     public ITmfEventField getContent() {
-        return fContent;
+        if (fFields != null) {
+            readFields();
+        }
+        ITmfEventField content = fContent;
+        return content != null ? content : new TmfEventField(ITmfEventField.ROOT_FIELD_ID, null, null);
+    }
+
+    private synchronized void readFields() {
+        Supplier<Map<String, Object>> fields = fFields;
+        if (fields == null) {
+            // Already read
+            return;
+        }
+        fContent = createContent(fields.get());
+        fFields = null;
     }
 
     /**
@@ -228,11 +263,16 @@ public class GenericFtraceField {
      *
      * @param fields Map of field values
      */
-    public void setContent(Map<String, Object> fields) {
+    public synchronized void setContent(Map<String, Object> fields) {
+        fContent = createContent(fields);
+        fFields = null;
+    }
+
+    private static ITmfEventField createContent(Map<String, Object> fields) {
         ITmfEventField[] array = fields.entrySet().stream()
                 .map(entry -> new TmfEventField(entry.getKey(), entry.getValue(), null))
                 .toArray(ITmfEventField[]::new);
-        fContent = new TmfEventField(ITmfEventField.ROOT_FIELD_ID, fields, array);
+        return new TmfEventField(ITmfEventField.ROOT_FIELD_ID, fields, array);
     }
 
     /**
@@ -15,6 +15,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -117,6 +121,75 @@ public class OpenTracingTraceTest {
         testTrace(path, nbEvents, startTime, endTime);
     }
 
+    /**
+     * Test indexing a trace large enough to be indexed by chunks, with an
+     * object that is not a span among the spans. The trace ends at that
+     * object, so the spans sorted after it are not events of the trace.
+     *
+     * @throws IOException
+     *             error writing the trace
+     * @throws TmfTraceException
+     *             should not happen
+     */
+    @Test
+    public void testChunkedIndexEndsAtOtherData() throws IOException, TmfTraceException {
+        int nbSpans = 12000;
+        int lastSpan = 9000;
+        long base = 1526674498419000L;
+        char[] padding = new char[128];
+        Arrays.fill(padding, 'x');
+        File file = File.createTempFile("chunked", ".json");
+        try {
+            try (PrintWriter writer = new PrintWriter(file)) {
+                writer.print("{\"data\":[{\"traceID\":\"cf46871fbf4f262b\",\"spans\":[");
+                for (int i = 0; i < nbSpans; i++) {
+                    if (i > 0) {
+                        writer.print(',');
+                    }
+                    writer.print("{\"traceID\":\"cf46871fbf4f262b\",\"spanID\":\"" + i + "\",\"flags\":1,\"operationName\":\"op" + i
+                            + "\",\"references\":[],\"startTime\":" + (base + i * 10) + ",\"duration\":5,\"tags\":[{\"key\":\"padding\",\"type\":\"string\",\"value\":\""
+                            + new String(padding) + "\"}],\"logs\":[],\"processID\":\"p1\",\"warnings\":null}");
+                    if (i == lastSpan) {
+                        // Not a span, sorted right after this span
+                        writer.print(",{\"startTime\":" + (base + i * 10 + 5) + "}");
+                    }
+                }
+                writer.print("],\"processes\":{\"p1\":{\"serviceName\":\"hello-world\",\"tags\":[]}},\"warnings\":null}],\"total\":0,\"limit\":0,\"offset\":0,\"errors\":null}");
+            }
+            int nbEvents = lastSpan + 1;
+            ITmfTrace trace = new OpenTracingTrace();
+            try {
+                trace.initTrace(null, file.getAbsolutePath(), ITmfEvent.class);
+                trace.indexTrace(true);
+                assertEquals(nbEvents, trace.getNbEvents());
+                assertEquals(TmfTimestamp.fromMicros(base).toNanos(), trace.getStartTime().toNanos());
+                assertEquals(TmfTimestamp.fromMicros(base + lastSpan * 10 + 5).toNanos(), trace.getEndTime().toNanos());
+
+                ITmfContext context = trace.seekEvent(0L);
+                ITmfEvent event = trace.getNext(context);
+                long rank = 0;
+                while (event != null) {
+                    assertEquals("op" + rank, event.getName());
+                    if (rank % 997 == 0 || rank == nbEvents - 1) {
+                        ITmfContext rankContext = trace.seekEvent(rank);
+                        ITmfEvent rankEvent = trace.getNext(rankContext);
+                        assertNotNull(rankEvent);
+                        assertEquals(event.getTimestamp(), rankEvent.getTimestamp());
+                        assertEquals(event.getName(), rankEvent.getName());
+                        rankContext.dispose();
+                    }
+                    rank++;
+                    event = trace.getNext(context);
+                }
+                assertEquals(nbEvents, rank);
+            } finally {
+                trace.dispose();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     private static Map<String, String> testTrace(String path, int nbEvents, ITmfTimestamp startTime, ITmfTimestamp endTime) throws TmfTraceException {
         ITmfTrace trace = new OpenTracingTrace();
         try {
@@ -16,7 +16,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 
-import org.eclipse.tracecompass.internal.jsontrace.core.job.SortingJob;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.JsonSortingJob;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 
 import com.google.gson.Gson;
@@ -32,7 +32,7 @@ import com.google.gson.stream.JsonReader;
  * @author Katherine Nadeau
  *
  */
-public class OpenTracingSortingJob extends SortingJob {
+public class OpenTracingSortingJob extends JsonSortingJob {
 
     /**
      * Constructor
@@ -27,6 +27,8 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.ChunkedJsonTraceIndexer;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.ChunkedJsonTraceIndexer.IJsonEventReader;
 import org.eclipse.tracecompass.incubator.internal.opentracing.core.Activator;
 import org.eclipse.tracecompass.incubator.internal.opentracing.core.event.IOpenTracingConstants;
 import org.eclipse.tracecompass.incubator.internal.opentracing.core.event.OpenTracingAspects;
@@ -39,11 +41,13 @@ import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.io.BufferedRandomAccessFile;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
 import org.eclipse.tracecompass.tmf.core.trace.TraceValidationStatus;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfTraceIndexer;
 import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
 import org.eclipse.tracecompass.tmf.core.trace.location.TmfLongLocation;
 
@@ -209,6 +213,45 @@ public class OpenTracingTrace extends JsonTrace {
         }
     }
 
+    @Override
+    protected ITmfTraceIndexer createIndexer(int interval) {
+        return new ChunkedJsonTraceIndexer(this, interval, new EventReader());
+    }
+
+    /**
+     * Reader of the events for the chunked indexer
+     */
+    private class EventReader implements IJsonEventReader {
+
+        @Override
+        public @Nullable File getFile() {
+            return fFile;
+        }
+
+        @Override
+        public void goToDataStart(@NonNull RandomAccessFile file) throws IOException {
+            goToCorrectStart(file);
+        }
+
+        @Override
+        public @Nullable TmfTimeRange getEventRange(@NonNull String json) {
+            OpenTracingField field = OpenTracingField.parseJson(json, null);
+            if (field == null) {
+                return null;
+            }
+            // Same range as in updateAttributes
+            ITmfTimestamp timestamp = TmfTimestamp.fromNanos(field.getStartTime());
+            ITmfTimestamp endTime = TmfTimestamp.fromNanos(field.getStartTime() + field.getDuration());
+            return new TmfTimeRange(timestamp, endTime);
+        }
+
+        @Override
+        public boolean handleOtherData(@NonNull String json) {
+            // The trace ends at the first object that is not a span
+            return false;
+        }
+    }
+
     @Override
     public Iterable<@NonNull ITmfEventAspect<?>> getEventAspects() {
         return fEventAspects;
@@ -14,23 +14,36 @@ package org.eclipse.tracecompass.incubator.perf.profiling.core.tests.callgraph;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.AggregatedCallSite;
 import org.eclipse.tracecompass.incubator.analysis.core.concepts.ISamplingDataProvider;
+import org.eclipse.tracecompass.incubator.analysis.core.weighted.tree.WeightedTree;
+import org.eclipse.tracecompass.incubator.callstack.core.base.ICallStackElement;
+import org.eclipse.tracecompass.incubator.callstack.core.callgraph.CallGraph;
+import org.eclipse.tracecompass.incubator.callstack.core.sampled.callgraph.PackedCallGraph;
 import org.eclipse.tracecompass.incubator.internal.perf.profiling.core.callgraph.PerfCallchainAnalysisModule;
 import org.eclipse.tracecompass.incubator.perf.profiling.core.tests.ActivatorTest;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
+import org.eclipse.tracecompass.tmf.core.exceptions.TmfAnalysisException;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.signal.TmfTraceOpenedSignal;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimestamp;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
+import org.eclipse.tracecompass.tmf.core.util.Pair;
 import org.eclipse.tracecompass.tmf.tests.stubs.trace.xml.TmfXmlTraceStub;
 import org.eclipse.tracecompass.tmf.tests.stubs.trace.xml.TmfXmlTraceStubNs;
 import org.junit.After;
@@ -121,4 +134,178 @@ public class PerfCallGraphTest {
         assertEquals("0x4", callsite.getObject().resolve(Collections.emptySet()));
     }
 
+    /**
+     * Test that the sampling data aggregated from the samples stored by the
+     * analysis is the same as the sampling data read from the trace by a
+     * module that has not run yet
+     *
+     * @throws TmfAnalysisException
+     *             Exceptions setting the trace of the module
+     */
+    @Test
+    public void testSamplingDataFallback() throws TmfAnalysisException {
+        PerfCallchainAnalysisModule module = fModule;
+        assertNotNull(module);
+
+        PerfCallchainAnalysisModule notRun = new PerfCallchainAnalysisModule();
+        try {
+            notRun.setId(PerfCallchainAnalysisModule.ID);
+            notRun.setTrace(fTrace);
+            long[][] ranges = { { 0, 50 }, { 0, 5 }, { 3, 12 }, { 12, 20 }, { 30, 40 } };
+            for (int tid : new int[] { 2, 3, 6, 7, 42 }) {
+                for (long[] range : ranges) {
+                    String message = tid + " [" + range[0] + ", " + range[1] + "]";
+                    Collection<AggregatedCallSite> stored = module.getSamplingData(tid, range[0], range[1]);
+                    Collection<AggregatedCallSite> read = notRun.getSamplingData(tid, range[0], range[1]);
+                    assertEquals(message, read.size(), stored.size());
+                    assertEquals(message, getWeights(read), getWeights(stored));
+                }
+            }
+        } finally {
+            notRun.dispose();
+        }
+    }
+
+    /**
+     * Test that requesting the sampling data of a module that has not run yet
+     * reads the samples from the trace and starts the analysis, so that the
+     * next requests use the stored samples
+     *
+     * @throws TmfAnalysisException
+     *             Exceptions setting the trace of the module
+     */
+    @Test
+    public void testSamplingDataBeforeAnalysis() throws TmfAnalysisException {
+        PerfCallchainAnalysisModule module = fModule;
+        assertNotNull(module);
+        Map<String, Long> expected = getWeights(module.getSamplingData(2, 0, 50));
+
+        PerfCallchainAnalysisModule notRun = new PerfCallchainAnalysisModule();
+        try {
+            notRun.setId(PerfCallchainAnalysisModule.ID);
+            notRun.setTrace(fTrace);
+            assertSame(CallGraph.EMPTY_GRAPH, notRun.getCallGraph());
+
+            assertEquals(expected, getWeights(notRun.getSamplingData(2, 0, 50)));
+
+            // The analysis was started by the request
+            assertTrue(notRun.waitForCompletion());
+            assertNotSame(CallGraph.EMPTY_GRAPH, notRun.getCallGraph());
+            assertEquals(expected, getWeights(notRun.getSamplingData(2, 0, 50)));
+        } finally {
+            notRun.dispose();
+        }
+    }
+
+    /**
+     * Test that the full callgraph built by interning the stack traces is the
+     * same as the callgraph built by adding the callsites of each sample
+     *
+     * @throws TmfAnalysisException
+     *             Exceptions setting the trace of the module
+     */
+    @Test
+    public void testInternedCallGraph() throws TmfAnalysisException {
+        PerfCallchainAnalysisModule module = fModule;
+        assertNotNull(module);
+
+        PerfCallchainAnalysisModule notInterning = new NotInterningModule();
+        try {
+            notInterning.setId(PerfCallchainAnalysisModule.ID);
+            notInterning.setTrace(fTrace);
+            notInterning.schedule();
+            assertTrue(notInterning.waitForCompletion());
+
+            CallGraph interned = module.getCallGraph();
+            CallGraph expected = notInterning.getCallGraph();
+            Map<String, Map<String, Long>> expectedWeights = getThreadWeights(expected);
+            assertFalse(expectedWeights.isEmpty());
+            assertEquals(expectedWeights, getThreadWeights(interned));
+        } finally {
+            notInterning.dispose();
+        }
+    }
+
+    /**
+     * A perf callchain analysis that does not intern the stack traces, each
+     * sample's callsites are added to the callgraph
+     */
+    private static class NotInterningModule extends PerfCallchainAnalysisModule {
+        @Override
+        protected @Nullable Pair<ICallStackElement, long[]> getSampledStackTrace(ITmfEvent event) {
+            return null;
+        }
+
+        @Override
+        protected @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(ITmfEvent event) {
+            Pair<ICallStackElement, long[]> stackTrace = super.getSampledStackTrace(event);
+            if (stackTrace == null) {
+                return null;
+            }
+            ICallStackElement element = stackTrace.getFirst();
+            return new Pair<>(element, getCallSite(element, stackTrace.getSecond(), event.getTimestamp().getValue()));
+        }
+    }
+
+    private static Map<String, Map<String, Long>> getThreadWeights(CallGraph callGraph) {
+        Map<String, Map<String, Long>> weights = new HashMap<>();
+        for (ICallStackElement process : callGraph.getElements()) {
+            for (ICallStackElement thread : process.getChildrenElements()) {
+                weights.put(process.getName() + '/' + thread.getName(), getWeights(callGraph.getCallingContextTree(thread)));
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Test the callgraph for a time range, aggregated from the samples stored
+     * by the analysis
+     */
+    @Test
+    public void testRangeCallGraph() {
+        PerfCallchainAnalysisModule module = fModule;
+        assertNotNull(module);
+
+        // The callgraph for the whole trace should be the full callgraph
+        CallGraph full = module.getCallGraph();
+        CallGraph range = module.getCallGraph(TmfTimestamp.fromNanos(0), TmfTimestamp.fromNanos(100));
+        // The callsites of the samples are packed
+        assertTrue(full instanceof PackedCallGraph && ((PackedCallGraph) full).isPacked());
+        assertTrue(range instanceof PackedCallGraph && ((PackedCallGraph) range).isPacked());
+        assertEquals(full.getElements(), range.getElements());
+        for (ICallStackElement process : full.getElements()) {
+            for (ICallStackElement thread : process.getChildrenElements()) {
+                assertEquals(thread.getName(), getWeights(full.getCallingContextTree(thread)), getWeights(range.getCallingContextTree(thread)));
+            }
+        }
+
+        // Only the first samples, at time 2, are in this range
+        range = module.getCallGraph(TmfTimestamp.fromNanos(0), TmfTimestamp.fromNanos(3));
+        long nbSamples = 0;
+        for (ICallStackElement process : range.getElements()) {
+            for (ICallStackElement thread : process.getChildrenElements()) {
+                for (WeightedTree<?> callsite : range.getCallingContextTree(thread)) {
+                    nbSamples += callsite.getWeight();
+                }
+            }
+        }
+        assertEquals(3, nbSamples);
+    }
+
+    private static Map<String, Long> getWeights(Collection<? extends WeightedTree<?>> trees) {
+        Map<String, Long> weights = new HashMap<>();
+        for (WeightedTree<?> tree : trees) {
+            addWeights(weights, "", tree);
+        }
+        return weights;
+    }
+
+    private static void addWeights(Map<String, Long> weights, String parentPath, WeightedTree<?> tree) {
+        String path = parentPath + '/' + tree.getObject();
+        weights.put(path, tree.getWeight());
+        for (WeightedTree<?> child : tree.getChildren()) {
+            addWeights(weights, path, child);
+        }
+    }
+
 }
@@ -74,6 +74,16 @@ public class PerfCallchainAnalysisModule extends ProfilingCallGraphAnalysisModul
 
     @Override
     protected @Nullable Pair<ICallStackElement, AggregatedCallSite> getProfiledStackTrace(@NonNull ITmfEvent event) {
+        Pair<ICallStackElement, long[]> stackTrace = getSampledStackTrace(event);
+        if (stackTrace == null) {
+            return null;
+        }
+        ICallStackElement element = stackTrace.getFirst();
+        return new Pair<>(element, getCallSite(element, stackTrace.getSecond(), event.getTimestamp().getValue()));
+    }
+
+    @Override
+    protected @Nullable Pair<ICallStackElement, long[]> getSampledStackTrace(@NonNull ITmfEvent event) {
         if (!event.getName().startsWith(EVENT_SAMPLING)) {
             return null;
         }
@@ -92,7 +102,7 @@ public class PerfCallchainAnalysisModule extends ProfilingCallGraphAnalysisModul
             value[j] = tmp;
         }
         ICallStackElement element = getElement(event);
-        return new Pair<>(element, getCallSite(element, value, event.getTimestamp().getValue()));
+        return new Pair<>(element, value);
     }
 
     /**
@@ -172,6 +182,15 @@ public class PerfCallchainAnalysisModule extends ProfilingCallGraphAnalysisModul
         if (trace == null) {
             return Collections.emptyList();
         }
+        // Use the samples stored by the analysis if it has completed
+        String threadName = String.valueOf(tid);
+        Collection<AggregatedCallSite> stored = getStoredSamples(element -> element.getParentElement() != null && element.getName().equals(threadName), start, end);
+        if (stored != null) {
+            return stored;
+        }
+        // Otherwise, start the analysis so the samples get stored, without
+        // waiting for it, and read the samples from the trace
+        schedule();
         List<AggregatedCallSite> callsites = new ArrayList<>();
         TmfEventRequest request = new PerfProfilingEventRequest(trace, start, end, tid, callsites);
         trace.sendRequest(request);
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.traceevent.core.tests.perf;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.eclipse.test.performance.Dimension;
+import org.eclipse.test.performance.Performance;
+import org.eclipse.test.performance.PerformanceMeter;
+import org.eclipse.tracecompass.incubator.internal.traceevent.core.event.TraceEventField;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Benchmarks the parsing of trace event JSON strings, with the streaming
+ * parser used to read the traces and with the parser building the JSON tree.
+ * The events are generated in memory, no trace is needed.
+ */
+public class TraceEventParserBenchmark {
+
+    /**
+     * Test ID for the trace event benchmarks
+     */
+    public static final String TEST_ID = "org.eclipse.tracecompass.incubator#TraceEvent#";
+    private static final String TEST_TREE = "Parse events with tree (%d events)";
+    private static final String TEST_STREAM = "Parse events with stream (%d events)";
+    private static final String TEST_STREAM_ARGS = "Parse events with stream and read args (%d events)";
+
+    private static final int LOOP_COUNT = 25;
+    private static final int NB_EVENTS = 100000;
+
+    private static final List<String> EVENTS = new ArrayList<>();
+
+    /**
+     * Generate the events to parse
+     */
+    @BeforeClass
+    public static void beforeClass() {
+        for (int i = 0; i < NB_EVENTS; i++) {
+            EVENTS.add("{\"cat\":\"renderer\",\"pid\":21296,\"tid\":" + (21296 + i % 8) //$NON-NLS-1$
+                    + ",\"ts\":" + (438877834451L + i * 10L) + ".125" //$NON-NLS-1$ //$NON-NLS-2$
+                    + ",\"ph\":\"" + (i % 2 == 0 ? 'B' : 'E') //$NON-NLS-1$
+                    + "\",\"name\":\"RenderWidget::DoDeferredUpdate" + (i % 100) //$NON-NLS-1$
+                    + "\",\"id\":\"0x" + Integer.toHexString(i) //$NON-NLS-1$
+                    + "\",\"args\":{\"id\":\"(nil)\",\"count\":" + i + ",\"data\":{\"frame\":\"0x1f3a\",\"size\":[1,2,3]}}}"); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Benchmark the parser building the JSON tree of each event
+     */
+    @Test
+    public void benchmarkTree() {
+        benchmarkParser(String.format(TEST_TREE, NB_EVENTS), TraceEventField::parseJsonTree);
+    }
+
+    /**
+     * Benchmark the streaming parser, as used when indexing a trace, where
+     * only the common fields of the events are read
+     */
+    @Test
+    public void benchmarkStream() {
+        benchmarkParser(String.format(TEST_STREAM, NB_EVENTS), TraceEventField::parseJson);
+    }
+
+    /**
+     * Benchmark the streaming parser when the arguments of every event are
+     * read
+     */
+    @Test
+    public void benchmarkStreamArgs() {
+        benchmarkParser(String.format(TEST_STREAM_ARGS, NB_EVENTS), json -> {
+            TraceEventField field = TraceEventField.parseJson(json);
+            if (field != null) {
+                field.getArgs();
+            }
+            return field;
+        });
+    }
+
+    private static void benchmarkParser(String name, Function<String, TraceEventField> parser) {
+        Performance perf = Performance.getDefault();
+        PerformanceMeter pm = perf.createPerformanceMeter(TEST_ID + name);
+        perf.tagAsSummary(pm, name, Dimension.CPU_TIME);
+        for (int i = 0; i < LOOP_COUNT; i++) {
+            pm.start();
+            for (String event : EVENTS) {
+                assertNotNull(parser.apply(event));
+            }
+            pm.stop();
+        }
+        pm.commit();
+    }
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2022 Ericsson
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License 2.0 which
+ * accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *******************************************************************************/
+
+package org.eclipse.tracecompass.incubator.traceevent.core.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.tracecompass.incubator.internal.traceevent.core.event.TraceEventField;
+import org.junit.Test;
+
+/**
+ * Test that the streaming parser of the trace event fields reads the same
+ * fields as the parser building the JSON tree
+ */
+public class TraceEventFieldTest {
+
+    private static final String[] EVENTS = {
+            "{\"cat\":\"renderer\",\"pid\":21296,\"tid\":21297,\"ts\":438877834451.5,\"ph\":\"B\",\"name\":\"RenderWidget::OnUpdateRectAck\",\"args\":{\"id\":\"(nil)\",\"count\":3,\"data\":{\"size\":[1,2]}}}",
+            "{\"pid\":\"Renderer\",\"tid\":\"12\",\"ts\":\"100\",\"ph\":\"X\",\"dur\":12.5,\"name\":\"foo\",\"id\":\"0x12\",\"s\":\"g\",\"unknown\":{\"a\":[1]}}",
+            "{\"ts\":10,\"ph\":\"E\"}",
+            "{\"ts\":10,\"args\":{}}",
+            "{\"ts\":10,\"ph\":\"M\",\"name\":\"process_name\",\"pid\":5,\"args\":{\"name\":\"proc\"}}",
+            "{\"ts\":5,\"args\":{\"msg\":\"a \\\"quoted\\\" } brace, [x]\",\"n\":null,\"b\":true},\"ph\":\"i\",\"name\":\"esc\",\"scope\":\"g\"}",
+            "{ \"ts\" : 8 , \"args\" : { \"list\" : [ 1, { \"k\" : \"v\" } ] } , \"ph\" : \"E\" }",
+            // Lenient JSON, the arguments are read from the whole event
+            "{\"name\":\"lenient\",\"ts\":7,\"ph\":\"B\",\"args\"={\"trace\":\"django-httpd\"}}"
+    };
+
+    /**
+     * Test that both parsers read the same fields, content and arguments
+     */
+    @Test
+    public void testSameFields() {
+        for (String event : EVENTS) {
+            TraceEventField expected = TraceEventField.parseJsonTree(event);
+            TraceEventField actual = TraceEventField.parseJson(event);
+            assertNotNull(event, expected);
+            assertNotNull(event, actual);
+            assertEquals(event, expected.getTs(), actual.getTs());
+            assertEquals(event, expected.getPhase(), actual.getPhase());
+            assertEquals(event, expected.getName(), actual.getName());
+            assertEquals(event, expected.getPid(), actual.getPid());
+            assertEquals(event, expected.getTid(), actual.getTid());
+            assertEquals(event, expected.getDuration(), actual.getDuration());
+            assertEquals(event, expected.getCategory(), actual.getCategory());
+            assertEquals(event, expected.getId(), actual.getId());
+            assertEquals(event, expected.getArgs(), actual.getArgs());
+            assertEquals(event, expected.getContent(), actual.getContent());
+        }
+    }
+
+    /**
+     * Test the events that are not trace events
+     */
+    @Test
+    public void testNoEvent() {
+        assertNull(TraceEventField.parseJson("{}"));
+        assertNull(TraceEventField.parseJson("{\"ph\":\"B\",\"name\":\"foo\",\"args\":{\"a\":1}}"));
+    }
+}
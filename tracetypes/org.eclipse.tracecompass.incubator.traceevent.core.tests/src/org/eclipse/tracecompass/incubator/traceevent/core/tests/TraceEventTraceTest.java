@@ -201,6 +201,46 @@ public class TraceEventTraceTest {
         assertEquals(expectedProperties, properties);
     }
 
+    /**
+     * Test indexing a trace large enough to be indexed by chunks, seeking
+     * events by rank should give the events read in order
+     *
+     * @throws TmfTraceException
+     *             should not happen
+     */
+    @Test
+    public void testChunkedIndex() throws TmfTraceException {
+        String path = "traces/multiple_input_latency.json";
+        int nbEvents = 18006;
+        ITmfTrace trace = new TraceEventTrace();
+        try {
+            trace.initTrace(null, path, ITmfEvent.class);
+            trace.indexTrace(true);
+            assertEquals(nbEvents, trace.getNbEvents());
+            assertEquals(TmfTimestamp.fromMicros(5344155722132L).toNanos(), trace.getStartTime().toNanos());
+            assertEquals(TmfTimestamp.fromMicros(5344173638696L).toNanos(), trace.getEndTime().toNanos());
+
+            ITmfContext context = trace.seekEvent(0L);
+            ITmfEvent event = trace.getNext(context);
+            long rank = 0;
+            while (event != null) {
+                if (rank % 997 == 0 || rank == nbEvents - 1) {
+                    ITmfContext rankContext = trace.seekEvent(rank);
+                    ITmfEvent rankEvent = trace.getNext(rankContext);
+                    assertNotNull(rankEvent);
+                    assertEquals(event.getTimestamp(), rankEvent.getTimestamp());
+                    assertEquals(event.getName(), rankEvent.getName());
+                    rankContext.dispose();
+                }
+                rank++;
+                event = trace.getNext(context);
+            }
+            assertEquals(nbEvents, rank);
+        } finally {
+            trace.dispose();
+        }
+    }
+
     private static Map<String, String> testTrace(String path, int nbEvents, ITmfTimestamp startTime, ITmfTimestamp endTime) throws TmfTraceException {
         ITmfTrace trace = new TraceEventTrace();
         try {
@@ -11,6 +11,9 @@
 
 package org.eclipse.tracecompass.incubator.internal.traceevent.core.event;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
@@ -27,6 +30,9 @@ import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * Trace Event fields. Used as a quick wrapper for Trace Event log data.
@@ -49,8 +55,10 @@ public class TraceEventField {
     private final long fTs;
     private final char fPhase;
     private final String fName;
-    private ITmfEventField fContent;
-    private final @Nullable Map<String, Object> fArgs;
+    private @Nullable ITmfEventField fContent;
+    private @Nullable Map<String, Object> fArgs;
+    /* The fields needed to build the content, until it is parsed */
+    private volatile @Nullable PendingContent fPending;
     private final @Nullable Integer fTid;
     private final @Nullable String fCategory;
     private final @Nullable String fId;
@@ -60,7 +68,33 @@ public class TraceEventField {
     private static final Gson G_SON = new Gson();
 
     /**
-     * Parse a JSON string
+     * The fields of an event that are only needed to build its content, kept
+     * until the content is built the first time it is accessed
+     */
+    private static final class PendingContent {
+        private final String fTimestamp;
+        private final String fPhase;
+        private final double fDuration;
+        private final @Nullable String fScope;
+        /* The JSON string of the arguments object, or of the whole event */
+        private final @Nullable String fArgs;
+        private final boolean fArgsInEvent;
+
+        public PendingContent(String timestamp, String phase, double duration, @Nullable String scope, @Nullable String args, boolean argsInEvent) {
+            fTimestamp = timestamp;
+            fPhase = phase;
+            fDuration = duration;
+            fScope = scope;
+            fArgs = args;
+            fArgsInEvent = argsInEvent;
+        }
+    }
+
+    /**
+     * Parse a JSON string. Only the fields common to all events are read, the
+     * JSON string is streamed without building a tree. The arguments object
+     * is kept as a string and parsed the first time the arguments or content
+     * of the event are accessed.
      *
      * @param fieldsString
      *            the string
@@ -69,6 +103,105 @@ public class TraceEventField {
     public static @Nullable TraceEventField parseJson(String fieldsString) {
         // looks like this
         // {"ts":94824347413117,"phase":"B","tid":39,"name":"TimeGraphView:BuildThread","args"={"trace":"django-httpd"}}
+        try (JsonReader reader = new JsonReader(new StringReader(fieldsString))) {
+            reader.setLenient(true);
+            reader.beginObject();
+            boolean empty = true;
+            double tso = Double.NaN;
+            String timestamp = null;
+            String phase = null;
+            String name = null;
+            int tid = Integer.MIN_VALUE;
+            Object pid = null;
+            double duration = Double.NaN;
+            String category = null;
+            String id = null;
+            String scope = null;
+            boolean hasArgs = false;
+            while (reader.hasNext()) {
+                empty = false;
+                String key = reader.nextName();
+                switch (key) {
+                case ITraceEventConstants.TIMESTAMP:
+                    timestamp = nextString(reader, key);
+                    tso = Double.parseDouble(timestamp);
+                    break;
+                case ITraceEventConstants.PHASE:
+                    phase = nextString(reader, key);
+                    break;
+                case ITraceEventConstants.NAME:
+                    name = nextString(reader, key);
+                    break;
+                case ITraceEventConstants.TID:
+                    tid = nextInt(reader, key);
+                    break;
+                case ITraceEventConstants.PID:
+                    pid = getPid(G_SON.fromJson(reader, JsonElement.class));
+                    break;
+                case ITraceEventConstants.DURATION:
+                    duration = Double.parseDouble(nextString(reader, key));
+                    break;
+                case ITraceEventConstants.CATEGORY:
+                    category = nextString(reader, key);
+                    break;
+                case ITraceEventConstants.ID:
+                    id = nextString(reader, key);
+                    break;
+                case ITraceEventConstants.SCOPE:
+                    scope = nextString(reader, key);
+                    break;
+                case ITraceEventConstants.ARGS:
+                    // The arguments are parsed when first accessed
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        throw new IllegalStateException("Not an object: " + key); //$NON-NLS-1$
+                    }
+                    reader.skipValue();
+                    hasArgs = true;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+                }
+            }
+            reader.endObject();
+            if (empty || timestamp == null) {
+                return null;
+            }
+            long ts = Double.isFinite(tso) ? (long) (tso * MICRO_TO_NANO) : 0;
+            if (phase == null) {
+                phase = "I"; //$NON-NLS-1$
+            }
+            if (name == null) {
+                // We differentiate between the duration exit and the other exits for some reason
+                name = TraceEventPhases.DURATION_END.equals(phase) ? UNKNOWN_DURATION_EXIT_EVENT : UNKNOWN_EXIT_EVENT;
+            }
+            Long dur = Double.isFinite(duration) ? (long) (duration * MICRO_TO_NANO) : null;
+            String args = null;
+            boolean argsInEvent = false;
+            if (hasArgs) {
+                // Keep only the arguments object if it can be found without parsing
+                args = getArgsJson(fieldsString);
+                if (args == null) {
+                    args = fieldsString;
+                    argsInEvent = true;
+                }
+            }
+            PendingContent pending = new PendingContent(timestamp, phase, duration, scope, args, argsInEvent);
+            return new TraceEventField(pending, name, ts, phase, pid, tid == Integer.MIN_VALUE ? null : tid, category, id, dur);
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Parse a JSON string by building its tree, reading all the fields, the
+     * arguments and the content of the event at once
+     *
+     * @param fieldsString
+     *            the string
+     * @return an event field
+     */
+    public static @Nullable TraceEventField parseJsonTree(String fieldsString) {
         JsonObject root;
         Map<@NonNull String, @NonNull Object> argsMap = new HashMap<>();
         root = G_SON.fromJson(fieldsString, JsonObject.class);
@@ -95,9 +228,7 @@ public class TraceEventField {
         if (tid == Integer.MIN_VALUE) {
             tid = null;
         }
-        JsonElement jsonElement = root.get(ITraceEventConstants.PID);
-        JsonPrimitive primitive = jsonElement == null ? null : jsonElement.isJsonPrimitive() ? jsonElement.getAsJsonPrimitive() : null;
-        Object pid = primitive == null ? null : primitive.isNumber() ? primitive.getAsNumber() : primitive.isString() ? primitive.getAsString() : null;
+        Object pid = getPid(root.get(ITraceEventConstants.PID));
         Double duration = optDouble(root, ITraceEventConstants.DURATION);
         if (Double.isFinite(duration)) {
             duration = (duration * MICRO_TO_NANO);
@@ -138,6 +269,214 @@ public class TraceEventField {
         return new TraceEventField(name, ts, phase, pid, tid, category, id, duration, argsMap);
     }
 
+    /**
+     * Get the JSON string of the arguments object of an event, by scanning the
+     * members of the event object without parsing their values
+     *
+     * @return the JSON string of the arguments object, or <code>null</code> if
+     *         it cannot be found without parsing the event, for example if the
+     *         event is lenient JSON
+     */
+    private static @Nullable String getArgsJson(String json) {
+        int length = json.length();
+        int i = skipWhitespace(json, 0);
+        if (i >= length || json.charAt(i) != '{') {
+            return null;
+        }
+        String args = null;
+        i = skipWhitespace(json, i + 1);
+        while (i < length && json.charAt(i) == '"') {
+            int keyEnd = skipString(json, i);
+            if (keyEnd < 0) {
+                return null;
+            }
+            boolean isArgs = keyEnd - i == ITraceEventConstants.ARGS.length() + 2 && json.startsWith(ITraceEventConstants.ARGS, i + 1);
+            i = skipWhitespace(json, keyEnd);
+            if (i >= length || json.charAt(i) != ':') {
+                return null;
+            }
+            int valueStart = skipWhitespace(json, i + 1);
+            int valueEnd = skipValue(json, valueStart);
+            if (valueEnd < 0) {
+                return null;
+            }
+            if (isArgs) {
+                // The last arguments object is the one of the JSON tree
+                args = json.substring(valueStart, valueEnd);
+            }
+            i = skipWhitespace(json, valueEnd);
+            if (i < length && json.charAt(i) == '}') {
+                return args != null && args.startsWith("{") ? args : null; //$NON-NLS-1$
+            }
+            if (i >= length || json.charAt(i) != ',') {
+                return null;
+            }
+            i = skipWhitespace(json, i + 1);
+        }
+        return null;
+    }
+
+    private static int skipWhitespace(String json, int start) {
+        int i = start;
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Get the index after the string starting at an index, or -1 if it is not
+     * terminated
+     */
+    private static int skipString(String json, int start) {
+        for (int i = start + 1; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the index after the value starting at an index, or -1 if it is not
+     * terminated
+     */
+    private static int skipValue(String json, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < json.length()) {
+            switch (json.charAt(i)) {
+            case '"':
+                i = skipString(json, i);
+                if (i < 0 || depth == 0) {
+                    return i;
+                }
+                continue;
+            case '{':
+            case '[':
+                depth++;
+                break;
+            case '}':
+            case ']':
+                if (depth == 0) {
+                    // End of the event object, after a literal
+                    return i;
+                }
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+                break;
+            case ',':
+                if (depth == 0) {
+                    return i;
+                }
+                break;
+            default:
+                break;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * Read an arguments object, adding its values as strings, like in the
+     * JSON tree
+     */
+    private static void readArgs(JsonReader reader, Map<String, Object> fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            String value;
+            switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                value = reader.nextString();
+                break;
+            case BOOLEAN:
+                value = String.valueOf(reader.nextBoolean());
+                break;
+            default:
+                // Nulls, objects and arrays are serialized
+                value = String.valueOf(G_SON.fromJson(reader, JsonElement.class));
+                break;
+            }
+            fields.put(ITraceEventConstants.ARGS + "/" + key, value); //$NON-NLS-1$
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the arguments of a pending content
+     */
+    private static Map<String, Object> readArgs(PendingContent pending) {
+        Map<String, Object> fields = new HashMap<>();
+        String args = pending.fArgs;
+        if (args == null) {
+            return fields;
+        }
+        try (JsonReader reader = new JsonReader(new StringReader(args))) {
+            reader.setLenient(true);
+            if (!pending.fArgsInEvent) {
+                readArgs(reader, fields);
+                return fields;
+            }
+            // Find the arguments in the event, the last ones are kept
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (ITraceEventConstants.ARGS.equals(reader.nextName())) {
+                    fields.clear();
+                    readArgs(reader, fields);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return fields;
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Read the next value as a string, like {@link JsonPrimitive#getAsString()}
+     */
+    private static String nextString(JsonReader reader, String key) throws IOException {
+        switch (reader.peek()) {
+        case STRING:
+        case NUMBER:
+            return reader.nextString();
+        case BOOLEAN:
+            return String.valueOf(reader.nextBoolean());
+        default:
+            throw new IllegalStateException("Not a primitive: " + key); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Read the next value as an int, like {@link JsonPrimitive#getAsInt()}
+     */
+    private static int nextInt(JsonReader reader, String key) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            String value = reader.nextString();
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return new BigDecimal(value).intValue();
+            }
+        }
+        return Integer.parseInt(nextString(reader, key));
+    }
+
+    private static @Nullable Object getPid(@Nullable JsonElement jsonElement) {
+        JsonPrimitive primitive = jsonElement == null ? null : jsonElement.isJsonPrimitive() ? jsonElement.getAsJsonPrimitive() : null;
+        return primitive == null ? null : primitive.isNumber() ? primitive.getAsNumber() : primitive.isString() ? primitive.getAsString() : null;
+    }
+
     private static double optDouble(JsonObject root, String key) {
         JsonElement jsonElement = root.get(key);
         return jsonElement != null ? jsonElement.getAsDouble() : Double.NaN;
@@ -190,14 +529,39 @@ public class TraceEventField {
         fTid = tid;
         fCategory = category;
         fId = id;
+        fTs = ts;
+        fDuration = duration == null ? null : Double.isFinite(duration) ? duration.longValue() : null;
+        fPhase = phase.charAt(0);
+        fPending = null;
+        setContent(fields);
+    }
+
+    /**
+     * Constructor for an event whose content is built when first accessed
+     */
+    private TraceEventField(PendingContent pending, String name, long ts, String phase, @Nullable Object pid, @Nullable Integer tid, @Nullable String category, @Nullable String id, @Nullable Long duration) {
+        fName = name;
+        fPid = pid;
+        fTid = tid;
+        fCategory = category;
+        fId = id;
+        fTs = ts;
+        fDuration = duration;
+        fPhase = phase.charAt(0);
+        fContent = null;
+        fArgs = null;
+        fPending = pending;
+    }
+
+    /**
+     * Set the content and the arguments of the event from its fields
+     */
+    private void setContent(Map<String, Object> fields) {
         ITmfEventField[] array = fields.entrySet().stream()
                 .map(entry -> new TmfEventField(entry.getKey(), entry.getValue(), null))
                 .toArray(ITmfEventField[]::new);
         fContent = new TmfEventField(ITmfEventField.ROOT_FIELD_ID, fields, array);
-        fields.put(ITraceEventConstants.TIMESTAMP, ts / MICRO_TO_NANO);
-        fTs = ts;
-        fDuration = duration == null ? null : Double.isFinite(duration) ? duration.longValue() : null;
-        fPhase = phase.charAt(0);
+        fields.put(ITraceEventConstants.TIMESTAMP, fTs / MICRO_TO_NANO);
         @SuppressWarnings("null")
         Map<@NonNull String, @NonNull Object> args = fields.entrySet().stream()
                 .filter(entry -> {
@@ -205,7 +569,47 @@ public class TraceEventField {
                 })
                 .collect(Collectors.toMap(entry -> entry.getKey().substring(5), Entry::getValue));
         fArgs = args.isEmpty() ? null : args;
+    }
 
+    /**
+     * Build the content of the event from the fields already read and its
+     * arguments, parsed from their JSON string
+     */
+    private synchronized void parseContent() {
+        PendingContent pending = fPending;
+        if (pending == null) {
+            // Already parsed
+            return;
+        }
+        Map<String, Object> fields = readArgs(pending);
+        fields.put(ITraceEventConstants.TIMESTAMP, pending.fTimestamp);
+        fields.put(ITraceEventConstants.PHASE, pending.fPhase);
+        fields.put(ITraceEventConstants.NAME, fName);
+        Integer tid = fTid;
+        if (tid != null) {
+            fields.put(ITraceEventConstants.TID, tid);
+        }
+        Object pid = fPid;
+        if (pid != null) {
+            fields.put(ITraceEventConstants.PID, pid);
+        }
+        if (Double.isFinite(pending.fDuration)) {
+            fields.put(ITraceEventConstants.DURATION, pending.fDuration * MICRO_TO_NANO);
+        }
+        String category = fCategory;
+        if (category != null) {
+            fields.put(ITraceEventConstants.CATEGORY, category);
+        }
+        String id = fId;
+        if (id != null) {
+            fields.put(ITraceEventConstants.ID, id);
+        }
+        String scope = pending.fScope;
+        if (scope != null) {
+            fields.put(ITraceEventConstants.SCOPE, scope);
+        }
+        setContent(fields);
+        fPending = null;
     }
 
     /**
@@ -223,7 +627,11 @@ public class TraceEventField {
      * @return the event content
      */
     public ITmfEventField getContent() {
-        return fContent;
+        if (fPending != null) {
+            parseContent();
+        }
+        ITmfEventField content = fContent;
+        return content != null ? content : new TmfEventField(ITmfEventField.ROOT_FIELD_ID, null, null);
     }
 
     /**
@@ -298,6 +706,9 @@ public class TraceEventField {
      */
     @Nullable
     public Map<String, Object> getArgs() {
+        if (fPending != null) {
+            parseContent();
+        }
         return fArgs;
     }
 }
@@ -13,7 +13,7 @@ package org.eclipse.tracecompass.incubator.internal.traceevent.core.trace;
 
 import java.io.IOException;
 
-import org.eclipse.tracecompass.internal.jsontrace.core.job.SortingJob;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.JsonSortingJob;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 
 /**
@@ -22,7 +22,7 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
  * @author Katherine Nadeau
  *
  */
-public class TraceEventSortingJob extends SortingJob {
+public class TraceEventSortingJob extends JsonSortingJob {
 
     /**
      * Constructor
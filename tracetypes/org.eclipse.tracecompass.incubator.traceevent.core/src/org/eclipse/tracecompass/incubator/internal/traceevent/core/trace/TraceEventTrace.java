@@ -29,6 +29,8 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.ChunkedJsonTraceIndexer;
+import org.eclipse.tracecompass.incubator.internal.analysis.core.trace.ChunkedJsonTraceIndexer.IJsonEventReader;
 import org.eclipse.tracecompass.incubator.internal.traceevent.core.Activator;
 import org.eclipse.tracecompass.incubator.internal.traceevent.core.event.TraceEventAspects;
 import org.eclipse.tracecompass.incubator.internal.traceevent.core.event.TraceEventEvent;
@@ -39,10 +41,12 @@ import org.eclipse.tracecompass.tmf.core.event.aspect.ITmfEventAspect;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.io.BufferedRandomAccessFile;
 import org.eclipse.tracecompass.tmf.core.timestamp.ITmfTimestamp;
+import org.eclipse.tracecompass.tmf.core.timestamp.TmfTimeRange;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceManager;
 import org.eclipse.tracecompass.tmf.core.trace.TmfTraceUtils;
 import org.eclipse.tracecompass.tmf.core.trace.TraceValidationStatus;
+import org.eclipse.tracecompass.tmf.core.trace.indexer.ITmfTraceIndexer;
 import org.eclipse.tracecompass.tmf.core.trace.location.ITmfLocation;
 import org.eclipse.tracecompass.tmf.core.trace.location.TmfLongLocation;
 
@@ -241,6 +245,51 @@ public class TraceEventTrace extends JsonTrace {
         }
     }
 
+    @Override
+    protected ITmfTraceIndexer createIndexer(int interval) {
+        return new ChunkedJsonTraceIndexer(this, interval, new EventReader());
+    }
+
+    /**
+     * Reader of the events for the chunked indexer
+     */
+    private class EventReader implements IJsonEventReader {
+
+        @Override
+        public @Nullable File getFile() {
+            return fFile;
+        }
+
+        @Override
+        public void goToDataStart(@NonNull RandomAccessFile file) throws IOException {
+            goToCorrectStart(file);
+        }
+
+        @Override
+        public @Nullable TmfTimeRange getEventRange(@NonNull String json) {
+            TraceEventField field = TraceEventField.parseJson(json);
+            if (field == null || field.getPhase() == 'M') {
+                return null;
+            }
+            ITmfTimestamp timestamp = createTimestamp(field.getTs());
+            return new TmfTimeRange(timestamp, timestamp);
+        }
+
+        @Override
+        public boolean handleOtherData(@NonNull String json) {
+            // Metadata events are read, other objects are skipped
+            try {
+                TraceEventField field = TraceEventField.parseJson(json);
+                if (field != null && field.getPhase() == 'M') {
+                    parseMetadata(field);
+                }
+            } catch (RuntimeException e) {
+                // Not a trace event, skip it
+            }
+            return true;
+        }
+    }
+
     @Override
     public Iterable<@NonNull ITmfEventAspect<?>> getEventAspects() {
         return fEventAspects;
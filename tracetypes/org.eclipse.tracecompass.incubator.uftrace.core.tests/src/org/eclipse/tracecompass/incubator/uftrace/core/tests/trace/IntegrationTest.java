@@ -12,8 +12,15 @@
 package org.eclipse.tracecompass.incubator.uftrace.core.tests.trace;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tracecompass.incubator.internal.uftrace.core.trace.DatEvent;
 import org.eclipse.tracecompass.incubator.internal.uftrace.core.trace.Uftrace;
+import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
 import org.eclipse.tracecompass.tmf.core.exceptions.TmfTraceException;
 import org.eclipse.tracecompass.tmf.core.trace.ITmfContext;
@@ -44,4 +51,40 @@ public class IntegrationTest {
         assertEquals("event count", 113751, cnt);
     }
 
+    /**
+     * Seek events by rank once the trace is indexed and check that they are
+     * the same events as when reading the trace
+     *
+     * @throws TmfTraceException
+     *             something went wrong
+     */
+    @Test
+    public void seekTrace() throws TmfTraceException {
+        Uftrace uft = new Uftrace();
+        try {
+            uft.initTrace(null, "res/uftrace-ls", TmfEvent.class);
+            List<ITmfEvent> events = new ArrayList<>();
+            ITmfContext ctx = uft.seekEvent(0);
+            ITmfEvent event = uft.getNext(ctx);
+            while (event != null) {
+                events.add(event);
+                event = uft.getNext(ctx);
+            }
+            uft.indexTrace(true);
+            assertEquals("event count", events.size(), uft.getNbEvents());
+            for (int rank : new int[] { 0, 1, 999, 1000, 1001, 56789, events.size() - 1 }) {
+                ITmfEvent expected = events.get(rank);
+                ITmfEvent actual = uft.getNext(uft.seekEvent(rank));
+                assertNotNull(actual);
+                assertEquals("timestamp at " + rank, expected.getTimestamp(), actual.getTimestamp());
+                DatEvent expectedData = (DatEvent) expected.getContent().getValue();
+                DatEvent actualData = (DatEvent) actual.getContent().getValue();
+                assertEquals("address at " + rank, expectedData.getAddress(), actualData.getAddress());
+                assertEquals("depth at " + rank, expectedData.getDepth(), actualData.getDepth());
+            }
+            assertNull(uft.getNext(uft.seekEvent((long) events.size())));
+        } finally {
+            uft.dispose();
+        }
+    }
 }
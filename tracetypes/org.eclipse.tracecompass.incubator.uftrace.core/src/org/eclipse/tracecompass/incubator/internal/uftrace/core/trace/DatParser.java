@@ -13,12 +13,14 @@ package org.eclipse.tracecompass.incubator.internal.uftrace.core.trace;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.StandardOpenOption;
 import java.util.NoSuchElementException;
 
 import org.apache.commons.lang3.math.NumberUtils;
+import org.eclipse.jdt.annotation.Nullable;
 
 import com.google.common.collect.PeekingIterator;
 
@@ -72,47 +74,89 @@ public class DatParser implements Iterable<DatEvent> {
     }
 
     @Override
-    public PeekingIterator<DatEvent> iterator() {
+    public DatIterator iterator() {
+        return iterator(0);
+    }
 
+    /**
+     * Get an iterator on the events of the file, starting at an offset
+     *
+     * @param offset
+     *            the offset of the first event to read, relative to the start
+     *            of this parser, as returned by {@link DatIterator#getOffset()}
+     * @return the iterator
+     */
+    public DatIterator iterator(long offset) {
         try (FileChannel fc = FileChannel.open(fFile.toPath(), StandardOpenOption.READ)) {
-            MappedByteBuffer bb = fc.map(FileChannel.MapMode.READ_ONLY, fStart, fc.size());
+            long start = Math.min(fStart + offset, fc.size());
+            MappedByteBuffer bb = fc.map(FileChannel.MapMode.READ_ONLY, start, fc.size() - start);
             if (bb == null) {
                 throw new IllegalStateException("cannot create a byte buffer!"); //$NON-NLS-1$
             }
-            return new PeekingIterator<DatEvent>() {
-
-                DatEvent fCurrent = null;
-
-                @Override
-                public DatEvent next() {
-                    if (!hasNext()) {
-                        throw new NoSuchElementException("no more data"); //$NON-NLS-1$
-                    }
-                    fCurrent = DatEvent.create(bb,
-                            NumberUtils.toInt(fFile.getName().substring(0, fFile.getName().length() - 4)));
-                    return fCurrent;
-                }
-
-                @Override
-                public boolean hasNext() {
-                    return bb.remaining() > Long.BYTES * 2;
-                }
-
-                @Override
-                public DatEvent peek() {
-                    if (fCurrent == null && hasNext()) {
-                        return next();
-                    }
-                    return fCurrent;
-                }
-
-                @Override
-                public void remove() {
-                    throw new UnsupportedOperationException("can't"); //$NON-NLS-1$
-                }
-            };
+            return new DatIterator(bb, start - fStart, NumberUtils.toInt(fFile.getName().substring(0, fFile.getName().length() - 4)));
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
+
+    /**
+     * Iterator on the events of a data file, that knows the offset of the
+     * next event to read
+     */
+    public static class DatIterator implements PeekingIterator<DatEvent> {
+
+        private final ByteBuffer fBuffer;
+        private final long fStart;
+        private final int fTid;
+        private @Nullable DatEvent fPeeked = null;
+        private boolean fHasPeeked = false;
+
+        private DatIterator(ByteBuffer buffer, long start, int tid) {
+            fBuffer = buffer;
+            fStart = start;
+            fTid = tid;
+        }
+
+        @Override
+        public @Nullable DatEvent next() {
+            if (fHasPeeked) {
+                fHasPeeked = false;
+                return fPeeked;
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException("no more data"); //$NON-NLS-1$
+            }
+            return DatEvent.create(fBuffer, fTid);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return fHasPeeked || fBuffer.remaining() > Long.BYTES * 2;
+        }
+
+        @Override
+        public @Nullable DatEvent peek() {
+            if (!fHasPeeked) {
+                fPeeked = next();
+                fHasPeeked = true;
+            }
+            return fPeeked;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("can't"); //$NON-NLS-1$
+        }
+
+        /**
+         * Get the offset of the next event to read, a peeked event is not read
+         * yet
+         *
+         * @return the offset of the next event, relative to the start of the
+         *         parser
+         */
+        public long getOffset() {
+            return fStart + fBuffer.position() - (fHasPeeked ? Long.BYTES * 2 : 0);
+        }
+    }
 }
@@ -11,9 +11,12 @@
 
 package org.eclipse.tracecompass.incubator.internal.uftrace.core.trace;
 
+import java.util.Comparator;
+import java.util.List;
 import java.util.PriorityQueue;
 
 import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.tracecompass.incubator.internal.uftrace.core.trace.DatParser.DatIterator;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEvent;
 import org.eclipse.tracecompass.tmf.core.event.ITmfEventField;
 import org.eclipse.tracecompass.tmf.core.event.TmfEvent;
@@ -22,19 +25,38 @@ import org.eclipse.tracecompass.tmf.core.trace.ITmfTrace;
 import org.eclipse.tracecompass.tmf.core.trace.TmfContext;
 import org.eclipse.tracecompass.tmf.core.trace.location.TmfLongLocation;
 
-import com.google.common.collect.PeekingIterator;
-
 /**
- * Naive context
+ * Context reading the events of all the data files in timestamp order. Its
+ * location is the number of bytes read from all the data files, and its state
+ * can be saved as the offset in every data file with {@link #getOffsets()}.
  *
  * @author Matthew Khouzam
  *
  */
 public class UfContext extends TmfContext {
 
-    private PriorityQueue<PeekingIterator<DatEvent>> fQueue = new PriorityQueue<>(
-            (o1, o2) -> Long.compare(o1.peek().getTime(), o2.peek().getTime()));
+    private static final int EVENT_SIZE = Long.BYTES * 2;
+
+    /*
+     * Events with the same timestamp are read in the order of the data files,
+     * so that a context restored from offsets reads the same events in the
+     * same order
+     */
+    private PriorityQueue<Source> fQueue = new PriorityQueue<>(
+            Comparator.<Source> comparingLong(source -> getTime(source.fIterator.peek())).thenComparingInt(source -> source.fIndex));
+    private final DatIterator[] fIterators;
     private ITmfTrace fTrace;
+    private long fBytesRead = 0;
+
+    private static class Source {
+        private final DatIterator fIterator;
+        private final int fIndex;
+
+        public Source(DatIterator iterator, int index) {
+            fIterator = iterator;
+            fIndex = index;
+        }
+    }
 
     /**
      * Constructor
@@ -44,14 +66,35 @@ public class UfContext extends TmfContext {
      * @param trace
      *            trace
      */
-    public UfContext(Iterable<DatParser> dats, ITmfTrace trace) {
+    public UfContext(List<DatParser> dats, ITmfTrace trace) {
+        this(dats, null, trace);
+    }
+
+    /**
+     * Constructor restoring the state of another context
+     *
+     * @param dats
+     *            data streams
+     * @param offsets
+     *            the offset to read from in each data stream, as returned by
+     *            {@link #getOffsets()}, or <code>null</code> to read from the
+     *            start
+     * @param trace
+     *            trace
+     */
+    public UfContext(List<DatParser> dats, long @Nullable [] offsets, ITmfTrace trace) {
         fTrace = trace;
-        for (DatParser dp : dats) {
-            PeekingIterator<DatEvent> iterator = dp.iterator();
+        fIterators = new DatIterator[dats.size()];
+        for (int i = 0; i < fIterators.length; i++) {
+            long offset = offsets == null ? 0 : offsets[i];
+            DatIterator iterator = dats.get(i).iterator(offset);
+            fIterators[i] = iterator;
+            fBytesRead += iterator.getOffset();
             if (iterator.hasNext()) {
-                fQueue.add(iterator);
+                fQueue.add(new Source(iterator, i));
             }
         }
+        setLocation(new TmfLongLocation(fBytesRead));
     }
 
     @Override
@@ -60,29 +103,72 @@ public class UfContext extends TmfContext {
     }
 
     /**
-     * Get next event, like an iterator
+     * Get the number of bytes read from all the data streams
+     *
+     * @return the number of bytes read
+     */
+    public long getBytesRead() {
+        return fBytesRead;
+    }
+
+    /**
+     * Get the offset of the next event to read in each data stream
+     *
+     * @return the offsets
+     */
+    public long[] getOffsets() {
+        long[] offsets = new long[fIterators.length];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = fIterators[i].getOffset();
+        }
+        return offsets;
+    }
+
+    /**
+     * Skip the next event, without creating it
+     *
+     * @return whether there was an event to skip
+     */
+    public boolean skip() {
+        Source source = fQueue.poll();
+        if (source == null) {
+            return false;
+        }
+        read(source);
+        return true;
+    }
+
+    /**
+     * Get next event, like an iterator. The location of the context is not
+     * updated, only the number of bytes read is.
      *
      * @return the next event or null
      */
-    public ITmfEvent getNext() {
-        PeekingIterator<DatEvent> eventSource = fQueue.poll();
-        if (eventSource != null) {
-            DatEvent event = eventSource.next();
-            if (eventSource.hasNext()) {
-                fQueue.add(eventSource);
-            }
-            TmfEvent tmfEvent = new TmfEvent(fTrace, getRank(), fTrace.createTimestamp(event.getTime()),
-                    UfEventType.lookup(event.getType()),
-                    new TmfEventField(ITmfEventField.ROOT_FIELD_ID, event, null));
-            TmfLongLocation location = getLocation();
-            if (location != null) {
-                setLocation(new TmfLongLocation(location.getLocationInfo() + Long.BYTES * 2));
-            } else {
-                setLocation(new TmfLongLocation(Long.BYTES * 2));
+    public @Nullable ITmfEvent getNext() {
+        Source source = fQueue.poll();
+        while (source != null) {
+            DatEvent event = read(source);
+            if (event != null) {
+                return new TmfEvent(fTrace, getRank(), fTrace.createTimestamp(event.getTime()),
+                        UfEventType.lookup(event.getType()),
+                        new TmfEventField(ITmfEventField.ROOT_FIELD_ID, event, null));
             }
-            return tmfEvent;
+            // Not a valid event, read the next one
+            source = fQueue.poll();
         }
         return null;
     }
 
+    private @Nullable DatEvent read(Source source) {
+        DatEvent event = source.fIterator.next();
+        fBytesRead += EVENT_SIZE;
+        if (source.fIterator.hasNext()) {
+            fQueue.add(source);
+        }
+        return event;
+    }
+
+    private static long getTime(@Nullable DatEvent event) {
+        return event == null ? Long.MIN_VALUE : event.getTime();
+    }
 }
@@ -16,15 +16,15 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Objects;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.core.resources.IProject;
@@ -79,7 +79,10 @@ import com.google.common.collect.Iterables;
 public class Uftrace extends TmfTrace implements ITmfPropertiesProvider,
         ITmfTraceKnownSize, ITmfTraceWithPreDefinedEvents {
 
-    private Collection<DatParser> fDats = new ArrayList<>();
+    /* The size of an event in the data files */
+    private static final long EVENT_SIZE = Long.BYTES * 2;
+
+    private List<DatParser> fDats = new ArrayList<>();
     private Map<Long, MapParser> fMap = new HashMap<>();
     private Map<String, SymParser> fSyms = new HashMap<>();
     private TaskParser fTasks;
@@ -87,6 +90,11 @@ public class Uftrace extends TmfTrace implements ITmfPropertiesProvider,
     private InfoParser fInfo;
 
     private long fSize;
+    /*
+     * The offsets in every data file of the contexts that read a multiple of
+     * the cache size events, by number of bytes read from all the data files
+     */
+    private final NavigableMap<Long, long[]> fCheckpoints = new ConcurrentSkipListMap<>();
 
     private final ISymbolProvider fSymbolProvider = new UfTraceSymbolProvider();
 
@@ -259,26 +267,17 @@ public class Uftrace extends TmfTrace implements ITmfPropertiesProvider,
 
     @Override
     public ITmfContext seekEvent(ITmfLocation location) {
-        UfContext context = new UfContext(fDats, this);
-        if (location == null) {
-            return context;
+        if (!(location instanceof TmfLongLocation) || ((TmfLongLocation) location).getLocationInfo().longValue() == 0) {
+            return new UfContext(fDats, this);
         }
-        if (location instanceof TmfLongLocation) {
-            TmfLongLocation longLocation = (TmfLongLocation) location;
-            if (longLocation.getLocationInfo().longValue() == 0) {
-                return context;
-            }
-            while (context.getLocation() != null && Long.compare(longLocation.getLocationInfo(), Objects.requireNonNull(context.getLocation()).getLocationInfo()) >= 0) {
-                ITmfEvent next = context.getNext();
-                if (next == null) {
-                    break;
-                }
-                updateAttributes(context, next);
-                if (context.getLocation() == null) {
-                    return context;
-                }
-            }
+        long bytesRead = ((TmfLongLocation) location).getLocationInfo();
+        // Restore the closest context before the location and read the rest
+        Entry<Long, long[]> checkpoint = fCheckpoints.floorEntry(bytesRead);
+        UfContext context = new UfContext(fDats, checkpoint == null ? null : checkpoint.getValue(), this);
+        while (context.getBytesRead() < bytesRead && context.skip()) {
+            // Skip the events before the location
         }
+        context.setLocation(new TmfLongLocation(context.getBytesRead()));
         return context;
     }
 
@@ -289,17 +288,15 @@ public class Uftrace extends TmfTrace implements ITmfPropertiesProvider,
 
     @Override
     public ITmfEvent parseEvent(@Nullable ITmfContext ctx) {
-        ITmfContext context = ctx;
-        if (context == null) {
-            context = seekEvent(0);
-        }
         if (ctx instanceof UfContext) {
             UfContext ufContext = (UfContext) ctx;
+            long bytesRead = ufContext.getBytesRead();
+            if (bytesRead % (EVENT_SIZE * getCacheSize()) == 0 && !fCheckpoints.containsKey(bytesRead)) {
+                fCheckpoints.put(bytesRead, ufContext.getOffsets());
+            }
             ITmfEvent tmfEvent = ufContext.getNext();
             if (tmfEvent != null) {
-                fCurrentLoc = new TmfLongLocation(fCurrentLoc.getLocationInfo() + Long.BYTES * 2);
-                ctx.setLocation(fCurrentLoc);
-                updateAttributes(context, tmfEvent);
+                fCurrentLoc = new TmfLongLocation(ufContext.getBytesRead());
                 return tmfEvent;
             }
         }